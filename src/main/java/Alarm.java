@@ -76,6 +76,28 @@ public class Alarm {
         }
     }
 
+    /**
+     * Quy tắc lặp đọc từ mẫu, null nếu báo thức không lặp hoặc mẫu không hợp lệ.
+     */
+    RecurrenceRule getRecurrenceRule() {
+        if (!recurring || recurrencePattern == null) return null;
+        try {
+            return RecurrenceRule.parse(recurrencePattern);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lần báo kế tiếp sau hẳn {@code after}, tính từ quy tắc lặp mà không sửa báo thức; null nếu không còn lần nào.
+     */
+    LocalDateTime nextOccurrenceAfter(LocalDateTime after) {
+        if (alarmTime == null || after == null) return null;
+        RecurrenceRule rule = getRecurrenceRule();
+        if (rule == null) return alarmTime.isAfter(after) ? alarmTime : null;
+        return rule.firstAfter(alarmTime, after);
+    }
+
     public boolean shouldTrigger(LocalDateTime now) {
         if (alarmTime == null || now == null) return false;
         return !now.isBefore(alarmTime);
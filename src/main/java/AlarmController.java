@@ -1,121 +1,239 @@
 
 import javax.sound.sampled.*;
 import javax.swing.*;
-import java.awt.*;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.io.File;
 import java.net.URL;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class AlarmController {
     private final NoteController noteController;
-    private final MainFrame mainFrame;
     private final ScheduledExecutorService scheduler;
+    private final AlarmScheduler alarmScheduler;
+    private final Clock clock;
     private Clip clip;
-    private final ConcurrentHashMap<Long, LocalDateTime> recentlyTriggeredAlarms = new ConcurrentHashMap<>();
-    private static final int RE_TRIGGER_DELAY_SECONDS = 5;
+    // Báo thức lặp đang được hoãn (chỉ trong phiên, khóa: chính map này); báo thức một lần đã xóa thì hoãn bằng
+    // cách đặt lại báo thức cho note nên vẫn còn sau khi khởi động lại
+    private final Map<Long, LocalDateTime> snoozes = new HashMap<>();
+    private final AlarmNotificationCenter notificationCenter;
 
     public AlarmController(NoteController noteController, MainFrame mainFrame) {
+        this(noteController, mainFrame, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock đồng hồ dùng để hẹn giờ, so hạn và đo độ trễ
+     */
+    AlarmController(NoteController noteController, MainFrame mainFrame, Clock clock) {
         this.noteController = noteController;
-        this.mainFrame = mainFrame;
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.clock = clock;
+        this.notificationCenter = new AlarmNotificationCenter(mainFrame, this);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "XiNoClo-AlarmScheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.alarmScheduler = new AlarmScheduler(clock, (task, delayMillis) -> {
+            if (scheduler.isShutdown()) return () -> { };
+            ScheduledFuture<?> future = scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            return () -> future.cancel(false);
+        }, this::alarmsDue);
         System.out.println("[AlarmController] INFO: AlarmController instance created.");
         startAlarmChecker();
     }
 
     private void startAlarmChecker() {
-        System.out.println("[AlarmController] INFO: Starting alarm checker scheduler (1-second interval).");
-        scheduler.scheduleAtFixedRate(this::checkAlarms, 0, 1, TimeUnit.SECONDS);
+        // Đăng ký trước khi nạp để không lỡ thay đổi nào xảy ra giữa chừng; đặt lại một note là thao tác lũy đẳng
+        noteController.addChangeListener(this::onNotesChanged);
+        reloadAlarms();
+        System.out.println("[AlarmController] INFO: Alarm scheduler started with " + pendingAlarmCount() + " pending alarm(s).");
     }
 
-    private void checkAlarms() {
-        LocalDateTime now = LocalDateTime.now().withSecond(0).withNano(0);
-        List<Note> notes;
+    int pendingAlarmCount() {
+        return alarmScheduler.size();
+    }
+
+    /**
+     * Độ trễ của mỗi lần báo so với hạn (tính tới lúc EDT xử lý), xem {@link AlarmScheduler#recordFired}.
+     */
+    LatencyHistogram getLatenessHistogram() {
+        return alarmScheduler.lateness();
+    }
+
+    LatencyHistogram getJitterHistogram() {
+        return alarmScheduler.jitter();
+    }
+
+    private void reloadAlarms() {
+        NoteSnapshot notes;
         try {
-            notes = noteController.getNotes();
+            notes = noteController.getNoteSnapshot();
         } catch (Exception e) {
-            System.err.println("[" + now.format(DateTimeFormatter.ISO_LOCAL_TIME) + "] ERROR: AlarmController - Error fetching notes: " + e.getMessage());
+            System.err.println("[AlarmController reloadAlarms] ERROR: Error fetching notes: " + e.getMessage());
             return;
         }
-
-        if (notes == null) return;
-
-        recentlyTriggeredAlarms.entrySet().removeIf(entry ->
-                entry.getValue().isBefore(now.minusSeconds(RE_TRIGGER_DELAY_SECONDS))
-        );
-
+        alarmScheduler.clear();
         for (Note note : notes) {
-            Alarm alarm = note.getAlarm();
-
-            if (alarm == null) {
-                if (note.getAlarmId() != null && note.getAlarmId() > 0) {
-                    System.err.println("    !!!! CRITICAL PROBLEM for Note \"" + note.getTitle() + "\": Note.getAlarm() is NULL, but Note.getAlarmId() is " + note.getAlarmId() + ". Alarm cannot trigger!");
-                }
-                continue;
+            if (note.getAlarm() == null && note.getAlarmId() != null && note.getAlarmId() > 0) {
+                System.err.println("    !!!! CRITICAL PROBLEM for Note \"" + note.getTitle() + "\": Note.getAlarm() is NULL, but Note.getAlarmId() is " + note.getAlarmId() + ". Alarm cannot trigger!");
             }
+            rearm(note);
+        }
+    }
 
-            if (alarm.getAlarmTime() == null) {
-                if (note.getAlarmId() != null && note.getAlarmId() > 0) {
-                    System.err.println("    !!!! PROBLEM for Note \"" + note.getTitle() + "\": Alarm object exists but its alarmTime is NULL. Alarm cannot trigger!");
-                }
-                continue;
+    /**
+     * Nhận thay đổi trên EDT: mọi đường sửa báo thức (setAlarm, trình soạn thảo, hoàn thành nhiệm vụ, xóa, nhập)
+     * đều đi qua đây nên chỉ cần đặt lại đúng các note vừa đổi.
+     */
+    private void onNotesChanged(NoteChangeSet changes) {
+        if (changes.isReload()) {
+            reloadAlarms();
+            return;
+        }
+        for (NoteChange change : changes.noteChanges()) {
+            Note note = change.getKind() == NoteChange.Kind.NOTE_DELETED ? null : noteController.getNoteById(change.getId());
+            if (note != null) {
+                rearm(note);
+            } else {
+                alarmScheduler.cancel(change.getId());
             }
+        }
+    }
 
-            if (recentlyTriggeredAlarms.containsKey(alarm.getId())) {
-                continue;
+    private void rearm(Note note) {
+        Alarm alarm = note.getAlarm();
+        if (alarm == null || alarm.getAlarmTime() == null || note.isMissionCompleted()) {
+            synchronized (snoozes) {
+                snoozes.remove(note.getId());
             }
+            alarmScheduler.cancel(note.getId());
+        } else {
+            LocalDateTime time = alarm.getAlarmTime();
+            synchronized (snoozes) {
+                LocalDateTime snoozedUntil = snoozes.get(note.getId());
+                if (snoozedUntil != null && snoozedUntil.isBefore(time)) time = snoozedUntil;
+            }
+            alarmScheduler.schedule(note.getId(), time);
+        }
+    }
 
-            if (!note.isMissionCompleted() && alarm.shouldTrigger(now)) {
-                recentlyTriggeredAlarms.put(alarm.getId(), now);
-
-                System.out.println("    >>>> SUCCESS: TRIGGERING ALARM FOR NOTE: \"" + note.getTitle() + "\" (AlarmID: " + alarm.getId() + ") at " + now.format(DateTimeFormatter.ISO_LOCAL_TIME) +
-                        " (Alarm time was: " + alarm.getAlarmTime().format(DateTimeFormatter.ISO_LOCAL_TIME) + ")");
-
-                final Note noteToProcess = note;
-                final Alarm alarmSnapshot = new Alarm(alarm.getId(), alarm.getAlarmTime(), alarm.isRecurring(), alarm.getRecurrencePattern());
-
-                if (!alarmSnapshot.isRecurring()) {
-                    alarm.setAlarmTime(LocalDateTime.MIN);
+    // Trên luồng hẹn giờ; mọi thay đổi dữ liệu đi qua EDT, cùng đường ghi với giao diện
+    private void alarmsDue(long[] noteIds, long[] deadlines) {
+        SwingUtilities.invokeLater(() -> {
+            int[] fired = {0};
+            // Các báo thức lặp cùng lượt được ghi sang lần kế tiếp trong một lần ghi
+            noteController.getNoteService().inBatch(() -> {
+                for (int i = 0; i < noteIds.length; i++) {
+                    // Lỗi của một báo thức không được làm mất các báo thức cùng lượt
+                    try {
+                        if (fireAlarm(noteIds[i], deadlines[i])) fired[0]++;
+                    } catch (RuntimeException e) {
+                        System.err.println("[AlarmController alarmsDue] ERROR: Lỗi khi kích hoạt báo thức của note ID " + noteIds[i] + ": " + e);
+                    }
                 }
+            });
+            // Cả lượt chỉ phát chuông một lần
+            if (fired[0] > 0) playSound();
+        });
+    }
 
-                SwingUtilities.invokeLater(() -> {
-                    triggerAlarm(noteToProcess);
+    /**
+     * Kiểm tra lại note trên EDT (có thể đã bị sửa sau khi rời hàng đợi), đặt lại hàng đợi rồi đưa vào trung tâm
+     * thông báo. Báo thức một lần được xóa khỏi note; báo thức lặp được ghi ngay sang lần kế tiếp sau hiện tại,
+     * nên dù đã lỡ bao nhiêu kỳ (tắt máy cả tháng) cũng chỉ kêu bù một lần, và truy vấn due:, lần khởi động sau
+     * (kể cả sau khi ứng dụng bị tắt đột ngột) đều thấy lịch mới. Cả hai được ghi qua
+     * {@link NoteService#replaceFiredAlarm} nên không đổi updatedAt của note và không hiện hộp thoại. Lần kêu lại
+     * sau khi hoãn chỉ thông báo, không đẩy báo thức lặp sang kỳ sau.
+     *
+     * @return true nếu báo thức thật sự kêu
+     */
+    private boolean fireAlarm(long noteId, long deadline) {
+        Note note = noteController.getNoteById(noteId);
+        if (note == null) return false;
+        Alarm alarm = note.getAlarm();
+        if (alarm == null || alarm.getAlarmTime() == null || note.isMissionCompleted()) return false;
+        LocalDateTime now = LocalDateTime.now(clock).withSecond(0).withNano(0);
+        LocalDateTime pending = alarm.getAlarmTime();
+        LocalDateTime snoozedUntil;
+        synchronized (snoozes) {
+            snoozedUntil = snoozes.get(noteId);
+            if (snoozedUntil != null && !now.isBefore(snoozedUntil)) snoozes.remove(noteId);
+            else snoozedUntil = null;
+        }
+        if (now.isBefore(pending) && snoozedUntil == null) {
+            rearm(note);
+            return false;
+        }
+        alarmScheduler.recordFired(deadline);
+        if (now.isBefore(pending)) {
+            System.out.println("    >>>> SUCCESS: SNOOZED ALARM FOR NOTE: \"" + note.getTitle() + "\" (AlarmID: " + alarm.getId() + ") at " + now.format(DateTimeFormatter.ISO_LOCAL_TIME));
+            rearm(note);
+            notificationCenter.post(note, new Alarm(alarm.getId(), snoozedUntil, alarm.isRecurring(), alarm.getRecurrencePattern()), now);
+            return true;
+        }
 
-                    if (!alarmSnapshot.isRecurring()) {
-                        System.out.println("    INFO: (InvokeLater) Requesting DB clear for non-recurring alarm: \"" + noteToProcess.getTitle() + "\" (Original AlarmID: " + alarmSnapshot.getId() + ")");
-                        noteController.setAlarm(noteToProcess, null);
-                    }
-                });
+        System.out.println("    >>>> SUCCESS: TRIGGERING ALARM FOR NOTE: \"" + note.getTitle() + "\" (AlarmID: " + alarm.getId() + ") at " + now.format(DateTimeFormatter.ISO_LOCAL_TIME) +
+                " (Alarm time was: " + pending.format(DateTimeFormatter.ISO_LOCAL_TIME) + ")");
+        Alarm firedAlarm = new Alarm(alarm.getId(), pending, alarm.isRecurring(), alarm.getRecurrencePattern());
+        RecurrenceRule rule = alarm.getRecurrenceRule();
+        LocalDateTime next = rule != null ? rule.firstAfter(alarm.getAlarmTime(), now) : null;
+        if (next != null) {
+            System.out.println("    INFO: Recurring alarm for note '" + note.getTitle() + "' (AlarmID: " + alarm.getId() + ") next trigger time: " + next.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            // Mẫu không có DTSTART lấy thời điểm báo thức làm mốc: ghim mốc cũ trước khi dời thời điểm
+            String pattern = rule.getStart() != null ? alarm.getRecurrencePattern()
+                    : rule.withStart(alarm.getAlarmTime()).toString();
+            noteController.getNoteService().replaceFiredAlarm(note, new Alarm(alarm.getId(), next, true, pattern));
+            rearm(note);
+        } else if (alarm.isRecurring() && rule == null) {
+            // Mẫu lặp hỏng: giữ nguyên dữ liệu của người dùng, chỉ không hẹn lại cho tới khi báo thức được sửa
+            System.err.println("    WARNING: Recurring alarm for note '" + note.getTitle() + "' has invalid pattern '" + alarm.getRecurrencePattern() + "'. Cannot schedule next time.");
+        } else {
+            System.out.println("    INFO: Requesting DB clear for " + (alarm.isRecurring() ? "finished recurring" : "non-recurring") + " alarm: \"" + note.getTitle() + "\" (Original AlarmID: " + alarm.getId() + ")");
+            noteController.getNoteService().replaceFiredAlarm(note, null);
+        }
+        notificationCenter.post(note, firedAlarm, now);
+        return true;
+    }
 
-                if (alarmSnapshot.isRecurring()) {
-                    updateAlarmTimeAndSave(noteToProcess, alarmSnapshot);
+    /**
+     * Hoãn các báo thức vừa kêu thêm một số phút, gộp thành một lần ghi. Báo thức lặp giữ nguyên lịch và chỉ
+     * thêm một lần kêu lại trong phiên; báo thức một lần đã được xóa khỏi note nên được đặt lại vào giờ hoãn.
+     */
+    void snooze(long[] noteIds, int minutes) {
+        if (minutes <= 0) {
+            throw new IllegalArgumentException("Số phút hoãn phải dương: " + minutes);
+        }
+        LocalDateTime until = LocalDateTime.now(clock).withSecond(0).withNano(0).plusMinutes(minutes);
+        try {
+            noteController.getNoteService().inBatch(() -> {
+                for (long noteId : noteIds) {
+                    Note note = noteController.getNoteById(noteId);
+                    if (note == null || note.isMissionCompleted()) continue;
+                    if (note.getAlarm() == null) {
+                        noteController.setAlarm(note, new Alarm(until, false, null));
+                        continue;
+                    }
+                    synchronized (snoozes) {
+                        snoozes.put(noteId, until);
+                    }
+                    rearm(note);
                 }
-            }
+            });
+            System.out.println("[AlarmController] INFO: Snoozed " + noteIds.length + " alarm(s) until " + until.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        } catch (RuntimeException e) {
+            System.err.println("[AlarmController snooze] ERROR: Không hoãn được báo thức: " + e.getMessage());
         }
     }
 
-    private void triggerAlarm(Note note) {
-
-        final Alarm currentAlarmStateInNote = note.getAlarm();
-        Runnable onDialogDispose = () -> {
-            if(currentAlarmStateInNote != null && !currentAlarmStateInNote.isRecurring()){
-                recentlyTriggeredAlarms.remove(currentAlarmStateInNote.getId());
-            }
-
-        };
-        playSound();
-        AlarmNotificationDialog dialog = new AlarmNotificationDialog(mainFrame, note, this, onDialogDispose);
-        dialog.setLocationRelativeTo(this.mainFrame);
-
-        dialog.setVisible(true);
+    AlarmNotificationCenter getNotificationCenter() {
+        return notificationCenter;
     }
 
     private void playSound() {
@@ -152,7 +270,7 @@ public class AlarmController {
         }
     }
 
-    private void stopAndCloseClip() {
+    void stopAndCloseClip() {
         if (clip != null) {
             if (clip.isRunning()) {
                 clip.stop();
@@ -164,34 +282,13 @@ public class AlarmController {
         }
     }
 
-    private void updateAlarmTimeAndSave(Note note, Alarm alarmPointInTime) {
-        String pattern = alarmPointInTime.getRecurrencePattern() != null ? alarmPointInTime.getRecurrencePattern().toUpperCase() : "";
-        LocalDateTime currentAlarmTime = alarmPointInTime.getAlarmTime();
-        LocalDateTime newTime = currentAlarmTime;
-        boolean needsUpdate = false;
-
-        switch (pattern) {
-            case "DAILY": newTime = currentAlarmTime.plusDays(1); needsUpdate = true; break;
-            case "WEEKLY": newTime = currentAlarmTime.plusWeeks(1); needsUpdate = true; break;
-            case "MONTHLY": newTime = currentAlarmTime.plusMonths(1); needsUpdate = true; break;
-            case "YEARLY": newTime = currentAlarmTime.plusYears(1); needsUpdate = true; break;
-            default:
-                if (alarmPointInTime.isRecurring() && (pattern == null || pattern.isEmpty())) {
-                    System.err.println("    WARNING: Recurring alarm for note '" + note.getTitle() + "' has invalid/empty pattern. Cannot update time.");
-                }
-                return;
-        }
-
-        if (needsUpdate) {
-            Alarm updatedAlarmInstance = new Alarm(alarmPointInTime.getId(), newTime, true, alarmPointInTime.getRecurrencePattern());
-            System.out.println("    INFO: Recurring alarm for note '" + note.getTitle() + "' (AlarmID: " + alarmPointInTime.getId() + ") next trigger time: " + newTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            noteController.setAlarm(note, updatedAlarmInstance);
-        }
-    }
-
     public void stopSoundAndScheduler() {
         System.out.println("[AlarmController] INFO: stopSoundAndScheduler() called.");
         stopAndCloseClip();
+        notificationCenter.dispose();
+        alarmScheduler.stop();
+        System.out.println("[AlarmController] INFO: Alarm lateness " + alarmScheduler.lateness().summary() + " (catch-up: " + alarmScheduler.catchUps() + ")");
+        System.out.println("[AlarmController] INFO: Alarm jitter " + alarmScheduler.jitter().summary());
         if (scheduler != null && !scheduler.isShutdown()) {
             scheduler.shutdown();
             try {
@@ -205,80 +302,4 @@ public class AlarmController {
         }
         System.out.println("[AlarmController] INFO: Scheduler stopped.");
     }
-
-    private static class AlarmNotificationDialog extends JDialog {
-        private transient AlarmController alarmControllerInstance;
-        private transient Runnable onDisposeCallback;
-
-        public AlarmNotificationDialog(Frame owner, Note note, AlarmController controllerInstance, Runnable onDisposeCallback) {
-            super(owner, "⏰ Alarm Notification ⏰", true);
-            this.alarmControllerInstance = controllerInstance;
-            this.onDisposeCallback = onDisposeCallback;
-
-            setLayout(new BorderLayout(10, 10));
-            setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
-            setAlwaysOnTop(true);
-
-            JPanel mainContentPanel = new JPanel(new BorderLayout(5, 8));
-            mainContentPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
-            JLabel titleLabel = new JLabel("<html><b>" + note.getTitle() + "</b></html>", SwingConstants.CENTER);
-            titleLabel.setFont(new Font("Segoe UI", Font.BOLD, 18));
-            mainContentPanel.add(titleLabel, BorderLayout.NORTH);
-            String missionText;
-            if (note.getMissionContent() != null && !note.getMissionContent().isEmpty()) {
-                missionText = "Nhiệm vụ: " + note.getMissionContent() +
-                        (note.isMissionCompleted() ? " (Đã hoàn thành)" : " (Chưa xong)");
-            } else {
-                missionText = "Không có nội dung nhiệm vụ cụ thể.";
-            }
-            JTextArea contentArea = new JTextArea(missionText);
-            contentArea.setLineWrap(true);
-            contentArea.setWrapStyleWord(true);
-            contentArea.setEditable(false);
-            contentArea.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-            contentArea.setOpaque(false);
-            JScrollPane scrollPane = new JScrollPane(contentArea);
-            scrollPane.setBorder(BorderFactory.createEtchedBorder());
-            mainContentPanel.add(scrollPane, BorderLayout.CENTER);
-
-            Alarm displayAlarm = note.getAlarm();
-            if (displayAlarm != null && displayAlarm.getAlarmTime() != null && displayAlarm.getAlarmTime() != LocalDateTime.MIN) {
-                JLabel alarmTimeLabel = new JLabel("Thời gian báo thức: " +
-                        displayAlarm.getAlarmTime().format(DateTimeFormatter.ofPattern("HH:mm 'ngày' dd/MM/yyyy")),
-                        SwingConstants.CENTER);
-                alarmTimeLabel.setFont(new Font("Segoe UI", Font.ITALIC, 12));
-                mainContentPanel.add(alarmTimeLabel, BorderLayout.SOUTH);
-            } else if (displayAlarm != null && displayAlarm.getAlarmTime() == LocalDateTime.MIN) {
-                JLabel alarmTimeLabel = new JLabel("Báo thức đã kích hoạt (non-recurring)", SwingConstants.CENTER);
-                alarmTimeLabel.setFont(new Font("Segoe UI", Font.ITALIC, 12));
-                mainContentPanel.add(alarmTimeLabel, BorderLayout.SOUTH);
-            }
-            add(mainContentPanel, BorderLayout.CENTER);
-
-            JButton okButton = new JButton("OK");
-            okButton.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-            okButton.addActionListener(e -> {
-                dispose();
-            });
-            JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 10));
-            buttonPanel.add(okButton);
-            add(buttonPanel, BorderLayout.SOUTH);
-
-            pack();
-            int minWidth = 350; int minHeight = 200; int maxWidth = 500; int maxHeight = 350;
-            setSize(Math.min(maxWidth, Math.max(minWidth, getWidth() + 20)),
-                    Math.min(maxHeight, Math.max(minHeight, getHeight() + 20)));
-        }
-
-        @Override
-        public void dispose() {
-            if (alarmControllerInstance != null) {
-                alarmControllerInstance.stopAndCloseClip();
-            }
-            super.dispose();
-            if (this.onDisposeCallback != null) {
-                this.onDisposeCallback.run();
-            }
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 
 import javax.swing.*;
 import java.awt.*;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -17,6 +18,13 @@ public class AlarmDialog extends JDialog {
     private JSpinner dateTimeSpinner;
     private JSpinner timeOnlySpinner;
     private JComboBox<String> recurrenceTypeComboBox;
+    private JSpinner intervalSpinner;
+    private JLabel intervalUnitLabel;
+    private JPanel weekdayPanel;
+    private final JCheckBox[] weekdayBoxes = new JCheckBox[7];
+    private JComboBox<String> endTypeComboBox;
+    private JSpinner countSpinner;
+    private JSpinner untilSpinner;
     private JRadioButton specificDateTimeRadio;
     private JRadioButton recurringTimeRadio;
 
@@ -114,7 +122,42 @@ public class AlarmDialog extends JDialog {
         recurrenceTypeComboBox = new JComboBox<>(recurrenceOptions);
         rpGbc.gridx = 1; rpGbc.weightx = 1.0; rpGbc.fill = GridBagConstraints.HORIZONTAL;
         recurringPanel.add(recurrenceTypeComboBox, rpGbc);
+
+        rpGbc.gridx = 0; rpGbc.gridy = 2; rpGbc.weightx = 0.0; rpGbc.fill = GridBagConstraints.NONE;
+        recurringPanel.add(new JLabel("Mỗi:"), rpGbc);
+        JPanel intervalPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        intervalSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 999, 1));
+        intervalUnitLabel = new JLabel();
+        intervalPanel.add(intervalSpinner);
+        intervalPanel.add(intervalUnitLabel);
+        rpGbc.gridx = 1; rpGbc.weightx = 1.0; rpGbc.fill = GridBagConstraints.HORIZONTAL;
+        recurringPanel.add(intervalPanel, rpGbc);
+
+        weekdayPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 2, 0));
+        String[] weekdayLabels = {"T2", "T3", "T4", "T5", "T6", "T7", "CN"};
+        for (int i = 0; i < weekdayBoxes.length; i++) {
+            weekdayBoxes[i] = new JCheckBox(weekdayLabels[i]);
+            weekdayPanel.add(weekdayBoxes[i]);
+        }
+        rpGbc.gridx = 1; rpGbc.gridy = 3;
+        recurringPanel.add(weekdayPanel, rpGbc);
+
+        rpGbc.gridx = 0; rpGbc.gridy = 4; rpGbc.weightx = 0.0; rpGbc.fill = GridBagConstraints.NONE;
+        recurringPanel.add(new JLabel("Kết thúc:"), rpGbc);
+        JPanel endPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        endTypeComboBox = new JComboBox<>(new String[]{"Không bao giờ", "Sau số lần", "Vào ngày"});
+        countSpinner = new JSpinner(new SpinnerNumberModel(10, 1, 9999, 1));
+        untilSpinner = new JSpinner(new SpinnerDateModel());
+        untilSpinner.setEditor(new JSpinner.DateEditor(untilSpinner, "yyyy-MM-dd"));
+        endPanel.add(endTypeComboBox);
+        endPanel.add(countSpinner);
+        endPanel.add(untilSpinner);
+        rpGbc.gridx = 1; rpGbc.weightx = 1.0; rpGbc.fill = GridBagConstraints.HORIZONTAL;
+        recurringPanel.add(endPanel, rpGbc);
         recurringPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        recurrenceTypeComboBox.addActionListener(e -> updatePanelsVisibility());
+        endTypeComboBox.addActionListener(e -> updatePanelsVisibility());
         mainControlsPanel.add(recurringPanel);
 
         add(mainControlsPanel, BorderLayout.CENTER);
@@ -144,6 +187,19 @@ public class AlarmDialog extends JDialog {
         LocalDateTime defaultTimeOnly = LocalDateTime.now().withMinute(0).withSecond(0).withNano(0);
         timeOnlySpinner.setValue(Date.from(defaultTimeOnly.atZone(ZoneId.systemDefault()).toInstant()));
         recurrenceTypeComboBox.setSelectedItem("DAILY");
+        populateRuleFields(null, LocalDate.now());
+    }
+
+    private void populateRuleFields(RecurrenceRule rule, LocalDate baseDate) {
+        intervalSpinner.setValue(rule != null ? rule.getInterval() : 1);
+        for (int i = 0; i < weekdayBoxes.length; i++) {
+            DayOfWeek day = DayOfWeek.of(i + 1);
+            weekdayBoxes[i].setSelected(rule != null && rule.hasDays() ? rule.repeatsOn(day) : day == baseDate.getDayOfWeek());
+        }
+        LocalDate untilDate = rule != null && rule.getUntil() != null ? rule.getUntil().toLocalDate() : baseDate.plusMonths(1);
+        untilSpinner.setValue(Date.from(untilDate.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        countSpinner.setValue(rule != null && rule.getCount() > 0 ? rule.getCount() : 10);
+        endTypeComboBox.setSelectedIndex(rule == null ? 0 : rule.getCount() > 0 ? 1 : rule.getUntil() != null ? 2 : 0);
     }
 
     private void populateFieldsFromAlarm(Alarm alarm) {
@@ -155,13 +211,12 @@ public class AlarmDialog extends JDialog {
                 LocalDateTime defaultTimeOnly = LocalDateTime.now().withMinute(0).withSecond(0).withNano(0);
                 timeOnlySpinner.setValue(Date.from(defaultTimeOnly.atZone(ZoneId.systemDefault()).toInstant()));
             }
-            if (alarm.getRecurrencePattern() != null) {
-                recurrenceTypeComboBox.setSelectedItem(alarm.getRecurrencePattern().toUpperCase());
-            } else {
-                recurrenceTypeComboBox.setSelectedItem("DAILY");
-            }
+            RecurrenceRule rule = alarm.getRecurrenceRule();
+            recurrenceTypeComboBox.setSelectedItem(rule != null ? rule.getFrequency().name() : "DAILY");
+            populateRuleFields(rule, alarm.getAlarmTime() != null ? alarm.getAlarmTime().toLocalDate() : LocalDate.now());
         } else {
             specificDateTimeRadio.setSelected(true);
+            populateRuleFields(null, alarm.getAlarmTime() != null ? alarm.getAlarmTime().toLocalDate() : LocalDate.now());
             if (alarm.getAlarmTime() != null) {
                 dateTimeSpinner.setValue(Date.from(alarm.getAlarmTime().atZone(ZoneId.systemDefault()).toInstant()));
             } else { // Fallback if alarmTime is null for a non-recurring alarm
@@ -174,6 +229,12 @@ public class AlarmDialog extends JDialog {
     private void updatePanelsVisibility() {
         specificDateTimePanel.setVisible(specificDateTimeRadio.isSelected());
         recurringPanel.setVisible(recurringTimeRadio.isSelected());
+        String frequency = (String) recurrenceTypeComboBox.getSelectedItem();
+        intervalUnitLabel.setText("WEEKLY".equals(frequency) ? "tuần" : "MONTHLY".equals(frequency) ? "tháng"
+                : "YEARLY".equals(frequency) ? "năm" : "ngày");
+        weekdayPanel.setVisible("WEEKLY".equals(frequency));
+        countSpinner.setVisible(endTypeComboBox.getSelectedIndex() == 1);
+        untilSpinner.setVisible(endTypeComboBox.getSelectedIndex() == 2);
         pack();
 
     }
@@ -203,9 +264,36 @@ public class AlarmDialog extends JDialog {
             } else {
                 datePart = LocalDate.now();
             }
-            selectedAlarmTime = LocalDateTime.of(datePart, timePart);
-            recurrencePattern = (String) recurrenceTypeComboBox.getSelectedItem();
-            if (recurrencePattern == null) recurrencePattern = "DAILY";
+            String frequencyName = (String) recurrenceTypeComboBox.getSelectedItem();
+            RecurrenceRule.Frequency frequency = RecurrenceRule.Frequency.valueOf(frequencyName != null ? frequencyName : "DAILY");
+            int interval = (Integer) intervalSpinner.getValue();
+            int dayMask = 0;
+            if (frequency == RecurrenceRule.Frequency.WEEKLY) {
+                for (int i = 0; i < weekdayBoxes.length; i++) {
+                    if (weekdayBoxes[i].isSelected()) dayMask |= RecurrenceRule.bit(DayOfWeek.of(i + 1));
+                }
+                if (dayMask == 0) {
+                    JOptionPane.showMessageDialog(this, "Hãy chọn ít nhất một thứ trong tuần.", "Thiếu thông tin", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+            }
+            int count = endTypeComboBox.getSelectedIndex() == 1 ? (Integer) countSpinner.getValue() : 0;
+            LocalDateTime until = null;
+            if (endTypeComboBox.getSelectedIndex() == 2) {
+                until = ((Date) untilSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalDate().atTime(23, 59);
+            }
+            // Chuỗi lặp bắt đầu ở lần đầu tiên chưa qua, làm mốc (DTSTART) để đếm số lần và giữ ngày trong tháng
+            LocalDateTime candidate = LocalDateTime.of(datePart, timePart);
+            LocalDateTime now = LocalDateTime.now().withSecond(0).withNano(0);
+            LocalDateTime first = new RecurrenceRule(frequency, interval, dayMask, 0, null, candidate)
+                    .firstAtOrAfter(candidate, candidate.isBefore(now) ? now : candidate);
+            if (until != null && first.isAfter(until)) {
+                JOptionPane.showMessageDialog(this, "Ngày kết thúc phải sau lần báo đầu tiên (" +
+                        first.format(DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy")) + ").", "Thời gian không hợp lệ", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            selectedAlarmTime = first;
+            recurrencePattern = new RecurrenceRule(frequency, interval, dayMask, count, until, first).toString();
         }
 
         if (currentAlarmId > 0 && alarmToEdit != null) {
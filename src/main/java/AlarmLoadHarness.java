@@ -0,0 +1,239 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Bài tải không giao diện cho bộ hẹn giờ báo thức: chạy {@link AlarmScheduler} thật trên đồng hồ ảo với nhiều
+ * báo thức trải trong một khoảng ngày ảo (mặc định 100 000 báo thức, 30 ngày), rồi in CPU của luồng hẹn giờ,
+ * bộ nhớ của hàng đợi, số lần thức và histogram độ trễ/jitter. Trong lúc một lần thức đang chạy, đồng hồ ảo trôi
+ * theo thời gian thật, nên các báo thức cùng phút xếp hàng sau nhau và độ trễ đo được là độ trễ do xử lý thật.
+ * <p>
+ * Chạy: {@code java -cp target/classes AlarmLoadHarness [soBaoThuc] [soNgay] [seed]}
+ */
+final class AlarmLoadHarness {
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 0, 0);
+    // Tỷ lệ báo thức lặp và tỷ lệ lần báo kéo theo một lần sửa báo thức khác
+    private static final double RECURRING_SHARE = 0.25;
+    private static final double EDIT_PER_FIRE = 0.1;
+
+    private final int alarmCount;
+    private final int days;
+    private final long seed;
+    private final Random random;
+    private final VirtualClock clock = new VirtualClock(START.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+    private final VirtualTimer timer = new VirtualTimer(clock);
+    private final RecurrenceRule[] rules;
+    private final LocalDateTime[] anchors;
+    private AlarmScheduler scheduler;
+    private long fires;
+    private long dueBatches;
+    private long edits;
+
+    private AlarmLoadHarness(int alarmCount, int days, long seed) {
+        if (alarmCount < 1 || days < 1) {
+            throw new IllegalArgumentException("Số báo thức và số ngày phải dương.");
+        }
+        this.alarmCount = alarmCount;
+        this.days = days;
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.rules = new RecurrenceRule[alarmCount + 1];
+        this.anchors = new LocalDateTime[alarmCount + 1];
+    }
+
+    public static void main(String[] args) {
+        int alarms = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        new AlarmLoadHarness(alarms, days, seed).run();
+    }
+
+    private void run() {
+        generateWorkload();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long heapBefore = usedHeapAfterGc();
+
+        long cpu0 = threads.getCurrentThreadCpuTime();
+        scheduler = new AlarmScheduler(clock, timer, this::alarmsDue);
+        for (int id = 1; id <= alarmCount; id++) {
+            scheduler.schedule(id, anchors[id]);
+        }
+        long setupCpu = threads.getCurrentThreadCpuTime() - cpu0;
+        long heapAfter = usedHeapAfterGc();
+
+        long endMicros = micros(START.plusDays(days).toInstant(ZoneOffset.UTC));
+        long cpu1 = threads.getCurrentThreadCpuTime();
+        long wall = System.nanoTime();
+        timer.runUntil(endMicros);
+        long runCpu = threads.getCurrentThreadCpuTime() - cpu1;
+        wall = System.nanoTime() - wall;
+
+        System.out.println("[AlarmLoadHarness] " + alarmCount + " báo thức (" + Math.round(RECURRING_SHARE * 100)
+                + "% lặp) trong " + days + " ngày ảo, seed " + seed);
+        System.out.printf("  nạp:      CPU %.1f ms (%.2f µs/báo thức), heap hàng đợi ~%d byte/báo thức%n",
+                setupCpu / 1e6, setupCpu / 1e3 / alarmCount, (heapAfter - heapBefore) / alarmCount);
+        System.out.printf("  mô phỏng: CPU %.1f ms (%.2f ms/ngày ảo), %.1f ms thời gian thật%n",
+                runCpu / 1e6, runCpu / 1e6 / days, wall / 1e6);
+        System.out.printf("  %d lần báo, %d lần sửa, %d lần thức (%d lần chỉ đọc lại đồng hồ), còn %d báo thức chờ%n",
+                fires, edits, scheduler.wakeups(), scheduler.wakeups() - dueBatches, scheduler.size());
+        System.out.println("  độ trễ: " + scheduler.lateness().summary());
+        System.out.println("  jitter: " + scheduler.jitter().summary());
+    }
+
+    // Một nửa số giờ báo rơi đúng đầu giờ hoặc nửa giờ, như người dùng hay chọn, để có nhiều báo thức cùng phút
+    private void generateWorkload() {
+        int minutes = days * 24 * 60;
+        for (int id = 1; id <= alarmCount; id++) {
+            LocalDateTime time = START.plusMinutes(random.nextInt(minutes));
+            if (random.nextBoolean()) time = time.withMinute(random.nextBoolean() ? 0 : 30);
+            anchors[id] = time;
+            if (random.nextDouble() < RECURRING_SHARE) {
+                int kind = random.nextInt(20);
+                if (kind < 12) {
+                    rules[id] = RecurrenceRule.of(RecurrenceRule.Frequency.DAILY);
+                } else if (kind < 17) {
+                    rules[id] = RecurrenceRule.parse("FREQ=WEEKLY;BYDAY=MO,TU,WE,TH,FR");
+                } else {
+                    rules[id] = RecurrenceRule.parse("FREQ=WEEKLY;INTERVAL=2");
+                }
+                anchors[id] = rules[id].firstAtOrAfter(time, time);
+            }
+        }
+    }
+
+    // Giống AlarmController: báo thức lặp được hẹn lại lần kế tiếp, thỉnh thoảng một báo thức khác bị sửa
+    private void alarmsDue(long[] noteIds, long[] deadlines) {
+        dueBatches++;
+        for (int i = 0; i < noteIds.length; i++) {
+            scheduler.recordFired(deadlines[i]);
+            fires++;
+            int id = (int) noteIds[i];
+            LocalDateTime now = LocalDateTime.now(clock);
+            if (rules[id] != null) {
+                LocalDateTime next = rules[id].firstAfter(anchors[id], now);
+                if (next != null) scheduler.schedule(id, next);
+            }
+            if (random.nextDouble() < EDIT_PER_FIRE) {
+                int other = 1 + random.nextInt(alarmCount);
+                LocalDateTime moved = now.plusMinutes(1 + random.nextInt(7 * 24 * 60));
+                anchors[other] = rules[other] != null ? rules[other].firstAtOrAfter(moved, moved) : moved;
+                scheduler.schedule(other, anchors[other]);
+                edits++;
+            }
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long micros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    /**
+     * Đồng hồ ảo tính bằng micro giây; trong lúc một tác vụ của {@link VirtualTimer} đang chạy thì trôi theo
+     * System.nanoTime().
+     */
+    static final class VirtualClock extends Clock {
+        private final ZoneId zone;
+        private long micros;
+        private long runningSince = -1;
+
+        VirtualClock(Instant start, ZoneId zone) {
+            this.micros = micros(start);
+            this.zone = zone;
+        }
+
+        long nowMicros() {
+            return runningSince < 0 ? micros : micros + (System.nanoTime() - runningSince) / 1_000;
+        }
+
+        void begin(long atMicros) {
+            micros = Math.max(micros, atMicros);
+            runningSince = System.nanoTime();
+        }
+
+        void end() {
+            micros = nowMicros();
+            runningSince = -1;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException("Đồng hồ ảo chỉ có một múi giờ.");
+        }
+
+        @Override
+        public Instant instant() {
+            long now = nowMicros();
+            return Instant.ofEpochSecond(Math.floorDiv(now, 1_000_000L), Math.floorMod(now, 1_000_000L) * 1_000);
+        }
+
+        @Override
+        public long millis() {
+            return Math.floorDiv(nowMicros(), 1_000L);
+        }
+    }
+
+    /**
+     * Timer chạy các tác vụ theo thứ tự thời điểm ảo trên luồng gọi {@link #runUntil}, nhảy đồng hồ tới từng
+     * thời điểm thay vì chờ.
+     */
+    static final class VirtualTimer implements AlarmScheduler.Timer {
+        private final VirtualClock clock;
+        private final PriorityQueue<Task> tasks = new PriorityQueue<>((a, b) ->
+                a.at != b.at ? Long.compare(a.at, b.at) : Long.compare(a.sequence, b.sequence));
+        private long sequence;
+
+        VirtualTimer(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public Runnable schedule(Runnable task, long delayMillis) {
+            Task entry = new Task(clock.nowMicros() + delayMillis * 1_000, sequence++, task);
+            tasks.add(entry);
+            return () -> entry.cancelled = true;
+        }
+
+        void runUntil(long endMicros) {
+            while (!tasks.isEmpty() && tasks.peek().at <= endMicros) {
+                Task task = tasks.poll();
+                if (task.cancelled) continue;
+                clock.begin(task.at);
+                try {
+                    task.runnable.run();
+                } finally {
+                    clock.end();
+                }
+            }
+        }
+
+        private static final class Task {
+            final long at;
+            final long sequence;
+            final Runnable runnable;
+            boolean cancelled;
+
+            Task(long at, long sequence, Runnable runnable) {
+                this.at = at;
+                this.sequence = sequence;
+                this.runnable = runnable;
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Trung tâm thông báo báo thức: một cửa sổ không modal xếp hàng các báo thức đã kêu, gộp những báo thức kêu
+ * cùng phút thành một nhóm, cho hoãn hoặc tắt từng báo thức, từng nhóm hay tất cả. Không mở vòng lặp sự kiện
+ * modal nào, nên nhiều báo thức kêu cùng lúc không chặn EDT và phần còn lại của giao diện. Mọi phương thức
+ * chạy trên EDT; khi không có màn hình (headless) chỉ giữ hàng đợi, không vẽ.
+ */
+final class AlarmNotificationCenter {
+    static final int[] SNOOZE_MINUTES = {5, 10, 15, 30, 60};
+    // Mỗi nhóm chỉ vẽ chừng này dòng, phần còn lại gộp thành một dòng đếm, để một phút có hàng nghìn báo thức
+    // vẫn vẽ nhanh; hoãn/tắt cả nhóm vẫn áp dụng cho mọi báo thức trong nhóm
+    static final int MAX_ROWS_PER_GROUP = 20;
+
+    private static final DateTimeFormatter GROUP_FORMAT = DateTimeFormatter.ofPattern("HH:mm 'ngày' dd/MM/yyyy");
+    private static final DateTimeFormatter ITEM_FORMAT = DateTimeFormatter.ofPattern("HH:mm dd/MM");
+
+    private final Frame owner;
+    private final AlarmController alarmController;
+    // Nhóm theo phút kêu, cũ nhất trước; mỗi note chỉ có một dòng trong toàn bộ hàng đợi
+    private final TreeMap<LocalDateTime, LinkedHashMap<Long, Item>> groups = new TreeMap<>();
+    private final Map<Long, LocalDateTime> groupOf = new HashMap<>();
+    private boolean renderPending;
+    private int renders;
+
+    private JDialog window;
+    private JLabel headerLabel;
+    private JPanel groupsPanel;
+    private JComboBox<String> snoozeCombo;
+
+    AlarmNotificationCenter(Frame owner, AlarmController alarmController) {
+        this.owner = owner;
+        this.alarmController = alarmController;
+    }
+
+    /**
+     * Thêm một báo thức vừa kêu vào nhóm của phút hiện tại. Note đã có trong hàng đợi (ví dụ lần hoãn trước
+     * chưa tắt) được chuyển sang nhóm mới. Việc vẽ được gộp lại: cả lượt báo thức cùng phút chỉ vẽ một lần.
+     */
+    void post(Note note, Alarm firedAlarm, LocalDateTime firedAt) {
+        LocalDateTime minute = firedAt.truncatedTo(ChronoUnit.MINUTES);
+        RecurrenceRule rule = firedAlarm.isRecurring() ? firedAlarm.getRecurrenceRule() : null;
+        removeItem(note.getId());
+        groups.computeIfAbsent(minute, k -> new LinkedHashMap<>())
+                .put(note.getId(), new Item(note, firedAlarm.getAlarmTime(), rule != null ? rule.describe() : null));
+        groupOf.put(note.getId(), minute);
+        requestRender();
+    }
+
+    int pendingCount() {
+        return groupOf.size();
+    }
+
+    int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Số lần cửa sổ đã được vẽ lại (mỗi lượt thay đổi một lần).
+     */
+    int renderCount() {
+        return renders;
+    }
+
+    void snoozeAll(int minutes) {
+        snooze(new ArrayList<>(groupOf.keySet()), minutes);
+    }
+
+    void dismissAll() {
+        groups.clear();
+        groupOf.clear();
+        requestRender();
+    }
+
+    void dispose() {
+        groups.clear();
+        groupOf.clear();
+        if (window != null) window.dispose();
+        window = null;
+    }
+
+    private void snooze(List<Long> noteIds, int minutes) {
+        if (noteIds.isEmpty()) return;
+        long[] ids = new long[noteIds.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = noteIds.get(i);
+        for (long id : ids) removeItem(id);
+        requestRender();
+        alarmController.snooze(ids, minutes);
+    }
+
+    private void dismiss(List<Long> noteIds) {
+        for (long id : noteIds) removeItem(id);
+        requestRender();
+    }
+
+    private void removeItem(long noteId) {
+        LocalDateTime minute = groupOf.remove(noteId);
+        if (minute == null) return;
+        LinkedHashMap<Long, Item> group = groups.get(minute);
+        group.remove(noteId);
+        if (group.isEmpty()) groups.remove(minute);
+    }
+
+    private void requestRender() {
+        if (renderPending) return;
+        renderPending = true;
+        SwingUtilities.invokeLater(this::render);
+    }
+
+    private void render() {
+        renderPending = false;
+        renders++;
+        if (groupOf.isEmpty()) {
+            alarmController.stopAndCloseClip();
+            if (window != null) window.setVisible(false);
+            return;
+        }
+        if (GraphicsEnvironment.isHeadless()) return;
+        if (window == null) createWindow();
+
+        headerLabel.setText("⏰ " + groupOf.size() + " báo thức" + (groups.size() > 1 ? " trong " + groups.size() + " nhóm" : ""));
+        groupsPanel.removeAll();
+        for (Map.Entry<LocalDateTime, LinkedHashMap<Long, Item>> entry : groups.entrySet()) {
+            groupsPanel.add(createGroupPanel(entry.getKey(), entry.getValue()));
+            groupsPanel.add(Box.createVerticalStrut(6));
+        }
+        groupsPanel.revalidate();
+        groupsPanel.repaint();
+        if (!window.isVisible()) {
+            window.pack();
+            window.setSize(420, Math.min(480, Math.max(200, window.getHeight())));
+            placeBottomRight();
+            window.setVisible(true);
+        }
+    }
+
+    private void createWindow() {
+        window = new JDialog(owner, "⏰ Thông báo báo thức", Dialog.ModalityType.MODELESS);
+        window.setAlwaysOnTop(true);
+        // Không giành focus của ô đang gõ khi báo thức kêu
+        window.setAutoRequestFocus(false);
+        window.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                dismissAll();
+            }
+        });
+        window.setLayout(new BorderLayout(5, 5));
+
+        headerLabel = new JLabel("", SwingConstants.CENTER);
+        headerLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        headerLabel.setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 10));
+        window.add(headerLabel, BorderLayout.NORTH);
+
+        groupsPanel = new JPanel();
+        groupsPanel.setLayout(new BoxLayout(groupsPanel, BoxLayout.Y_AXIS));
+        groupsPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        JScrollPane scrollPane = new JScrollPane(groupsPanel);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        window.add(scrollPane, BorderLayout.CENTER);
+
+        String[] labels = new String[SNOOZE_MINUTES.length];
+        for (int i = 0; i < labels.length; i++) labels[i] = SNOOZE_MINUTES[i] + " phút";
+        snoozeCombo = new JComboBox<>(labels);
+        JButton snoozeAllButton = new JButton("Hoãn tất cả");
+        snoozeAllButton.addActionListener(e -> snoozeAll(selectedSnoozeMinutes()));
+        JButton dismissAllButton = new JButton("Tắt tất cả");
+        dismissAllButton.addActionListener(e -> dismissAll());
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 6, 8));
+        buttonPanel.add(new JLabel("Hoãn:"));
+        buttonPanel.add(snoozeCombo);
+        buttonPanel.add(snoozeAllButton);
+        buttonPanel.add(dismissAllButton);
+        window.add(buttonPanel, BorderLayout.SOUTH);
+    }
+
+    private JPanel createGroupPanel(LocalDateTime minute, LinkedHashMap<Long, Item> items) {
+        JPanel panel = new JPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        panel.setBorder(BorderFactory.createTitledBorder(minute.format(GROUP_FORMAT) + " · " + items.size() + " báo thức"));
+        panel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        int shown = 0;
+        for (Item item : items.values()) {
+            if (shown++ == MAX_ROWS_PER_GROUP) break;
+            panel.add(createItemRow(minute, item));
+        }
+        if (items.size() > MAX_ROWS_PER_GROUP) {
+            JLabel moreLabel = new JLabel("… và " + (items.size() - MAX_ROWS_PER_GROUP) + " báo thức khác");
+            moreLabel.setFont(new Font("Segoe UI", Font.ITALIC, 12));
+            panel.add(moreLabel);
+        }
+        if (items.size() > 1) {
+            JButton snoozeGroupButton = new JButton("Hoãn nhóm");
+            snoozeGroupButton.addActionListener(e -> snooze(new ArrayList<>(items.keySet()), selectedSnoozeMinutes()));
+            JButton dismissGroupButton = new JButton("Tắt nhóm");
+            dismissGroupButton.addActionListener(e -> dismiss(new ArrayList<>(items.keySet())));
+            JPanel groupButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 2));
+            groupButtons.setAlignmentX(Component.LEFT_ALIGNMENT);
+            groupButtons.add(snoozeGroupButton);
+            groupButtons.add(dismissGroupButton);
+            panel.add(groupButtons);
+        }
+        return panel;
+    }
+
+    private JPanel createItemRow(LocalDateTime minute, Item item) {
+        StringBuilder text = new StringBuilder("<html><b>").append(escape(item.title)).append("</b>");
+        List<String> details = new ArrayList<>();
+        if (item.mission != null) details.add(escape(item.mission));
+        // Báo bù sau khi tắt máy: cho biết giờ hẹn thật
+        if (item.alarmTime != null && item.alarmTime.isBefore(minute)) details.add("hẹn lúc " + item.alarmTime.format(ITEM_FORMAT));
+        if (item.recurrence != null) details.add(escape(item.recurrence));
+        if (!details.isEmpty()) text.append("<br>").append(String.join(" · ", details));
+        text.append("</html>");
+
+        JPanel row = new JPanel(new BorderLayout(6, 0));
+        row.setAlignmentX(Component.LEFT_ALIGNMENT);
+        row.setBorder(BorderFactory.createEmptyBorder(3, 2, 3, 2));
+        JLabel label = new JLabel(text.toString());
+        label.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        row.add(label, BorderLayout.CENTER);
+
+        JButton snoozeButton = new JButton("Hoãn");
+        snoozeButton.setMargin(new Insets(2, 6, 2, 6));
+        snoozeButton.addActionListener(e -> snooze(List.of(item.noteId), selectedSnoozeMinutes()));
+        JButton dismissButton = new JButton("Tắt");
+        dismissButton.setMargin(new Insets(2, 6, 2, 6));
+        dismissButton.addActionListener(e -> dismiss(List.of(item.noteId)));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 2, 0));
+        buttons.add(snoozeButton);
+        buttons.add(dismissButton);
+        row.add(buttons, BorderLayout.EAST);
+        row.setMaximumSize(new Dimension(Integer.MAX_VALUE, row.getPreferredSize().height));
+        return row;
+    }
+
+    private int selectedSnoozeMinutes() {
+        int index = snoozeCombo != null ? snoozeCombo.getSelectedIndex() : 0;
+        return SNOOZE_MINUTES[Math.max(0, index)];
+    }
+
+    private void placeBottomRight() {
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        window.setLocation(screen.x + screen.width - window.getWidth() - 10, screen.y + screen.height - window.getHeight() - 10);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // Ảnh chụp những gì cần hiện của note lúc kêu, để cửa sổ không đọc lại note đã có thể bị sửa
+    private static final class Item {
+        final long noteId;
+        final String title;
+        final String mission;
+        final LocalDateTime alarmTime;
+        final String recurrence;
+
+        Item(Note note, LocalDateTime alarmTime, String recurrence) {
+            this.noteId = note.getId();
+            this.title = note.getTitle() != null ? note.getTitle() : "";
+            String content = note.getMissionContent();
+            this.mission = content != null && !content.isEmpty() ? "Nhiệm vụ: " + content : null;
+            this.alarmTime = alarmTime;
+            this.recurrence = recurrence;
+        }
+    }
+}
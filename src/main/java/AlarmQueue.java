@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * Hàng đợi báo thức dạng min-heap nhị phân theo thời điểm kích hoạt (mili giây epoch), mỗi note tối đa một mục.
+ * Vị trí của từng note trong heap được ghi nhớ nên đặt lại hay hủy báo thức của một note là O(log n) và xem
+ * hạn gần nhất là O(1). Lớp không tự đồng bộ; AlarmController giữ khóa khi gọi.
+ */
+class AlarmQueue {
+    interface DueAction {
+        void due(long noteId, long deadline);
+    }
+
+    private long[] deadlines = new long[16];
+    private long[] noteIds = new long[16];
+    private int size;
+    private final LongHashIndex<Integer> positionOf = new LongHashIndex<>();
+
+    /**
+     * Đặt (hoặc dời) thời điểm kích hoạt của note.
+     */
+    void schedule(long noteId, long deadline) {
+        Integer existing = positionOf.get(noteId);
+        if (existing != null) {
+            int pos = existing;
+            long old = deadlines[pos];
+            deadlines[pos] = deadline;
+            if (deadline < old) siftUp(pos); else siftDown(pos);
+            return;
+        }
+        if (size == deadlines.length) {
+            deadlines = Arrays.copyOf(deadlines, size * 2);
+            noteIds = Arrays.copyOf(noteIds, size * 2);
+        }
+        deadlines[size] = deadline;
+        noteIds[size] = noteId;
+        positionOf.put(noteId, size);
+        siftUp(size++);
+    }
+
+    boolean cancel(long noteId) {
+        Integer existing = positionOf.remove(noteId);
+        if (existing == null) return false;
+        int pos = existing;
+        size--;
+        if (pos != size) {
+            long old = deadlines[pos];
+            move(size, pos);
+            if (deadlines[pos] < old) siftUp(pos); else siftDown(pos);
+        }
+        return true;
+    }
+
+    void clear() {
+        size = 0;
+        positionOf.clear();
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return hạn gần nhất, Long.MAX_VALUE nếu hàng đợi rỗng
+     */
+    long peekDeadline() {
+        return size > 0 ? deadlines[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Lấy ra (theo thứ tự hạn) mọi note có hạn không muộn hơn now.
+     */
+    void pollDue(long now, DueAction action) {
+        while (size > 0 && deadlines[0] <= now) {
+            long noteId = noteIds[0];
+            long deadline = deadlines[0];
+            cancel(noteId);
+            action.due(noteId, deadline);
+        }
+    }
+
+    private void siftUp(int pos) {
+        long deadline = deadlines[pos];
+        long noteId = noteIds[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!less(deadline, noteId, deadlines[parent], noteIds[parent])) break;
+            move(parent, pos);
+            pos = parent;
+        }
+        place(pos, deadline, noteId);
+    }
+
+    private void siftDown(int pos) {
+        long deadline = deadlines[pos];
+        long noteId = noteIds[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && less(deadlines[child + 1], noteIds[child + 1], deadlines[child], noteIds[child])) {
+                child++;
+            }
+            if (!less(deadlines[child], noteIds[child], deadline, noteId)) break;
+            move(child, pos);
+            pos = child;
+        }
+        place(pos, deadline, noteId);
+    }
+
+    // Cùng hạn thì note có ID nhỏ hơn trước, để thứ tự kích hoạt ổn định
+    private static boolean less(long deadline, long noteId, long otherDeadline, long otherNoteId) {
+        return deadline < otherDeadline || (deadline == otherDeadline && noteId < otherNoteId);
+    }
+
+    private void move(int from, int to) {
+        place(to, deadlines[from], noteIds[from]);
+    }
+
+    private void place(int pos, long deadline, long noteId) {
+        deadlines[pos] = deadline;
+        noteIds[pos] = noteId;
+        positionOf.put(noteId, pos);
+    }
+}
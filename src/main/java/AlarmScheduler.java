@@ -0,0 +1,205 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+/**
+ * Phần hẹn giờ của báo thức, không phụ thuộc giao diện hay dữ liệu note: giữ {@link AlarmQueue} theo hạn và
+ * đúng một lần thức cho hạn gần nhất, đọc giờ từ {@link Clock} và hẹn giờ qua {@link Timer} được truyền vào,
+ * nên có thể chạy trên đồng hồ ảo (xem AlarmLoadHarness). Mỗi lần báo được ghi độ trễ so với hạn và độ lệch
+ * (jitter) so với lần báo trước vào hai {@link LatencyHistogram}.
+ */
+class AlarmScheduler {
+    /**
+     * Hẹn chạy một tác vụ sau một khoảng thời gian.
+     */
+    interface Timer {
+        /**
+         * @return thao tác hủy lần hẹn này
+         */
+        Runnable schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Nhận các báo thức đến hạn, theo thứ tự hạn, trên luồng của Timer và ngoài khóa của bộ hẹn giờ.
+     */
+    interface DueHandler {
+        void alarmsDue(long[] noteIds, long[] deadlines);
+    }
+
+    // Ngủ tối đa chừng này rồi đọc lại đồng hồ, phòng khi giờ hệ thống bị chỉnh hoặc máy ngủ đông
+    static final long MAX_SLEEP_MILLIS = 60_000;
+
+    private final Clock clock;
+    private final Timer timer;
+    private final DueHandler handler;
+    private final Object lock = new Object();
+    private final AlarmQueue queue = new AlarmQueue();
+    private Runnable cancelWakeup;
+    private long wakeupAt = Long.MAX_VALUE;
+    // Tăng mỗi khi lần thức hiện tại được thay hoặc hủy; tác vụ Timer bị hủy muộn (đã bắt đầu chạy) mang số cũ
+    // nên không được xóa cancelWakeup/wakeupAt của lần thức mới
+    private long wakeupGeneration;
+    private boolean stopped;
+    private long wakeups;
+    private long catchUps;
+
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private final LatencyHistogram jitter = new LatencyHistogram();
+    private long lastLatenessMicros = -1;
+
+    AlarmScheduler(Clock clock, Timer timer, DueHandler handler) {
+        if (clock == null || timer == null || handler == null) {
+            throw new IllegalArgumentException("Clock, Timer và DueHandler không được null.");
+        }
+        this.clock = clock;
+        this.timer = timer;
+        this.handler = handler;
+    }
+
+    Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Đặt (hoặc dời) báo thức của note. Vẫn so ở độ phân giải phút như trước: giờ có lẻ giây kêu ở đầu phút
+     * kế tiếp. Hạn đã qua lúc đặt (báo bù sau khi tắt máy) được tính từ lúc đặt, để độ trễ đo được là của bộ
+     * hẹn giờ chứ không phải khoảng thời gian máy tắt; số lần như vậy có ở {@link #catchUps()}.
+     */
+    void schedule(long noteId, LocalDateTime time) {
+        long deadline = deadlineOf(time);
+        synchronized (lock) {
+            long now = clock.millis();
+            if (deadline < now) {
+                deadline = now;
+                catchUps++;
+            }
+            queue.schedule(noteId, deadline);
+            scheduleWakeupLocked();
+        }
+    }
+
+    void cancel(long noteId) {
+        synchronized (lock) {
+            if (queue.cancel(noteId)) scheduleWakeupLocked();
+        }
+    }
+
+    void clear() {
+        synchronized (lock) {
+            queue.clear();
+            scheduleWakeupLocked();
+        }
+    }
+
+    /**
+     * Dừng hẳn: hủy lần thức đang chờ và không hẹn thêm.
+     */
+    void stop() {
+        synchronized (lock) {
+            stopped = true;
+            clearWakeupLocked();
+        }
+    }
+
+    int size() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Số lần luồng hẹn giờ đã thức dậy, kể cả những lần chỉ để đọc lại đồng hồ.
+     */
+    long wakeups() {
+        synchronized (lock) {
+            return wakeups;
+        }
+    }
+
+    long catchUps() {
+        synchronized (lock) {
+            return catchUps;
+        }
+    }
+
+    long deadlineOf(LocalDateTime time) {
+        LocalDateTime minute = time.truncatedTo(ChronoUnit.MINUTES);
+        if (minute.isBefore(time)) minute = minute.plusMinutes(1);
+        return minute.atZone(clock.getZone()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Ghi nhận một lần báo thật sự (sau khi người nhận đã kiểm tra lại), độ trễ tính tới thời điểm hiện tại
+     * của đồng hồ.
+     */
+    void recordFired(long deadline) {
+        Instant now = clock.instant();
+        long micros = (now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000) - deadline * 1_000;
+        lateness.record(micros);
+        synchronized (jitter) {
+            if (lastLatenessMicros >= 0) jitter.record(Math.abs(Math.max(0, micros) - lastLatenessMicros));
+            lastLatenessMicros = Math.max(0, micros);
+        }
+    }
+
+    LatencyHistogram lateness() {
+        return lateness;
+    }
+
+    LatencyHistogram jitter() {
+        return jitter;
+    }
+
+    // Hẹn đúng một lần thức cho hạn gần nhất; chỉ hẹn lại khi hạn đó sớm hơn lần thức đang chờ
+    private void scheduleWakeupLocked() {
+        if (stopped) return;
+        long deadline = queue.peekDeadline();
+        if (deadline == Long.MAX_VALUE) {
+            clearWakeupLocked();
+            return;
+        }
+        long now = clock.millis();
+        long at = Math.min(deadline, now + MAX_SLEEP_MILLIS);
+        if (cancelWakeup != null && wakeupAt <= at) return;
+        if (cancelWakeup != null) cancelWakeup.run();
+        wakeupAt = at;
+        long generation = ++wakeupGeneration;
+        cancelWakeup = timer.schedule(() -> wake(generation), Math.max(0, at - now));
+    }
+
+    private void clearWakeupLocked() {
+        if (cancelWakeup != null) cancelWakeup.run();
+        cancelWakeup = null;
+        wakeupAt = Long.MAX_VALUE;
+        wakeupGeneration++;
+    }
+
+    /**
+     * @param generation số của lần thức đã hẹn tác vụ này; nếu lần thức đó đã bị thay thì vẫn lấy các báo thức
+     *                   đến hạn nhưng giữ nguyên lần thức hiện tại
+     */
+    private void wake(long generation) {
+        long[][] due = {new long[8], new long[8]};
+        int[] count = {0};
+        synchronized (lock) {
+            if (stopped) return;
+            wakeups++;
+            if (generation == wakeupGeneration) {
+                cancelWakeup = null;
+                wakeupAt = Long.MAX_VALUE;
+            }
+            queue.pollDue(clock.millis(), (noteId, deadline) -> {
+                if (count[0] == due[0].length) {
+                    due[0] = Arrays.copyOf(due[0], count[0] * 2);
+                    due[1] = Arrays.copyOf(due[1], count[0] * 2);
+                }
+                due[0][count[0]] = noteId;
+                due[1][count[0]++] = deadline;
+            });
+            scheduleWakeupLocked();
+        }
+        if (count[0] > 0) handler.alarmsDue(Arrays.copyOf(due[0], count[0]), Arrays.copyOf(due[1], count[0]));
+    }
+}
@@ -0,0 +1,393 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Định dạng snapshot nhị phân có đánh số phiên bản.
+ *
+ * <pre>
+ * "XNCB" | u8 version | varint generation (từ phiên bản 2)
+ * tags:    varint n, n x (varint id, string name)
+ * folders: varint n, n x (varint id, string name, u8 flags, varint k, k x string)
+ * notes:   varint n, n x (varint id, string title, u8 type, u8 flags, time created, time updated,
+ *          varint folderId, string missionContent, varint k, k x varint tagIndex,
+ *          [alarm], [contentHash 32 byte | string content], [drawingHash 32 byte])
+ * </pre>
+ * Chuỗi là UTF-8 có tiền tố độ dài (varint độ dài + 1, 0 là null); thời gian là giây epoch (zigzag varint)
+ * cộng nano giây; tag của note là chỉ số trong bảng tag nên mỗi tên chỉ được ghi một lần.
+ */
+class BinarySnapshotFormat {
+    static final int VERSION = 2;
+    private static final byte[] MAGIC = {'X', 'N', 'C', 'B'};
+
+    private static final int NOTE_FAVORITE = 1;
+    private static final int NOTE_MISSION = 1 << 1;
+    private static final int NOTE_MISSION_COMPLETED = 1 << 2;
+    private static final int NOTE_HAS_ALARM = 1 << 3;
+    private static final int NOTE_CONTENT_HASH = 1 << 4;
+    private static final int NOTE_INLINE_CONTENT = 1 << 5;
+    private static final int NOTE_DRAWING_HASH = 1 << 6;
+    private static final int FOLDER_FAVORITE = 1;
+
+    private final NoteBodyStore bodyStore;
+
+    BinarySnapshotFormat(NoteBodyStore bodyStore) {
+        this.bodyStore = bodyStore;
+    }
+
+    static boolean isBinarySnapshot(File file) throws IOException {
+        if (!file.isFile() || file.length() < MAGIC.length) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+            while (head.hasRemaining() && channel.read(head) >= 0) {
+                // đọc đủ 4 byte đầu
+            }
+            return Arrays.equals(head.array(), MAGIC);
+        }
+    }
+
+    // --- Ghi ---
+
+    byte[] write(SnapshotData data) {
+        Output out = new Output(Math.max(1024, data.notes.size() * 160));
+        out.bytes(MAGIC);
+        out.u8(VERSION);
+        out.varint(data.generation);
+
+        // Bảng tag: gồm các tag của snapshot và các tag chỉ xuất hiện trong note
+        List<Tag> tagTable = new ArrayList<>();
+        Map<String, Integer> tagIndex = new HashMap<>();
+        for (Tag tag : data.tags) {
+            internTag(tag, tagTable, tagIndex);
+        }
+        for (Note note : data.notes) {
+            for (Tag tag : note.getTags()) {
+                internTag(tag, tagTable, tagIndex);
+            }
+        }
+        out.varint(tagTable.size());
+        for (Tag tag : tagTable) {
+            out.varint(tag.getId());
+            out.string(tag.getName());
+        }
+
+        out.varint(data.folders.size());
+        for (Folder folder : data.folders) {
+            out.varint(folder.getId());
+            out.string(folder.getName());
+            out.u8(folder.isFavorite() ? FOLDER_FAVORITE : 0);
+            List<String> subFolderNames = folder.getSubFolderNames();
+            int subCount = subFolderNames != null ? subFolderNames.size() : 0;
+            out.varint(subCount);
+            for (int i = 0; i < subCount; i++) {
+                out.string(subFolderNames.get(i));
+            }
+        }
+
+        out.varint(data.notes.size());
+        for (Note note : data.notes) {
+            boolean text = note.getNoteType() == Note.NoteType.TEXT;
+            String contentHash = text ? note.getContentHash() : null;
+            String drawingHash = text ? null : note.getDrawingHash();
+            int flags = 0;
+            if (note.isFavorite()) flags |= NOTE_FAVORITE;
+            if (note.isMission()) flags |= NOTE_MISSION;
+            if (note.isMissionCompleted()) flags |= NOTE_MISSION_COMPLETED;
+            if (note.getAlarm() != null) flags |= NOTE_HAS_ALARM;
+            if (contentHash != null) flags |= NOTE_CONTENT_HASH;
+            else if (text) flags |= NOTE_INLINE_CONTENT;
+            if (drawingHash != null) flags |= NOTE_DRAWING_HASH;
+
+            out.varint(note.getId());
+            out.string(note.getTitle());
+            out.u8(note.getNoteType().ordinal());
+            out.u8(flags);
+            out.time(note.getCreatedAt());
+            out.time(note.getUpdatedAt());
+            out.varint(note.getFolderId());
+            out.string(note.getMissionContent());
+            List<Tag> tags = note.getTags();
+            out.varint(tags.size());
+            for (Tag tag : tags) {
+                out.varint(tagIndex.get(tagKey(tag)));
+            }
+            if (note.getAlarm() != null) {
+                Alarm alarm = note.getAlarm();
+                out.varint(alarm.getId());
+                out.time(alarm.getAlarmTime());
+                out.u8(alarm.isRecurring() ? 1 : 0);
+                out.string(alarm.getRecurrencePattern());
+            }
+            if (contentHash != null) {
+                out.hash(contentHash);
+            } else if (text) {
+                out.string(note.getContent());
+            }
+            if (drawingHash != null) {
+                out.hash(drawingHash);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void internTag(Tag tag, List<Tag> table, Map<String, Integer> index) {
+        String key = tagKey(tag);
+        if (!index.containsKey(key)) {
+            index.put(key, table.size());
+            table.add(tag);
+        }
+    }
+
+    private static String tagKey(Tag tag) {
+        return tag.getId() + ":" + tag.getName();
+    }
+
+    // --- Đọc ---
+
+    SnapshotData read(File file) throws IOException {
+        // Đọc hẳn vào heap thay vì map file: trên Windows, file đang được map không thể bị thay thế,
+        // nên lần lưu kế tiếp sẽ không đổi tên được bản snapshot mới đè lên nó
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            return read(new Input(buffer));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Snapshot nhị phân " + file.getName() + " bị cắt cụt hoặc hỏng.", e);
+        }
+    }
+
+    private SnapshotData read(Input in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Không phải snapshot nhị phân XiNoClo.");
+        }
+        int version = in.u8();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Phiên bản snapshot nhị phân không được hỗ trợ: " + version);
+        }
+        SnapshotData data = new SnapshotData();
+        if (version >= 2) {
+            data.generation = in.varint();
+        }
+
+        int tagCount = in.count();
+        Tag[] tagTable = new Tag[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            long id = in.varint();
+            Tag tag = new Tag(in.string());
+            tag.setId(id);
+            tagTable[i] = tag;
+            data.tags.add(tag);
+        }
+
+        int folderCount = in.count();
+        for (int i = 0; i < folderCount; i++) {
+            long id = in.varint();
+            Folder folder = new Folder(in.string());
+            folder.setId(id);
+            folder.setFavorite((in.u8() & FOLDER_FAVORITE) != 0);
+            int subCount = in.count();
+            List<String> subFolderNames = new ArrayList<>(subCount);
+            for (int j = 0; j < subCount; j++) {
+                subFolderNames.add(in.string());
+            }
+            folder.setSubFolderNames(subFolderNames);
+            data.folders.add(folder);
+        }
+
+        int noteCount = in.count();
+        for (int i = 0; i < noteCount; i++) {
+            long id = in.varint();
+            String title = in.string();
+            int typeOrdinal = in.u8();
+            Note.NoteType noteType = typeOrdinal < Note.NoteType.values().length
+                    ? Note.NoteType.values()[typeOrdinal] : Note.NoteType.TEXT;
+            int flags = in.u8();
+            LocalDateTime createdAt = in.time();
+            LocalDateTime updatedAt = in.time();
+            long folderId = in.varint();
+            String missionContent = in.string();
+            int noteTagCount = in.count();
+            List<Tag> tags = new ArrayList<>(noteTagCount);
+            for (int j = 0; j < noteTagCount; j++) {
+                tags.add(tagTable[(int) in.varint()]);
+            }
+            Alarm alarm = null;
+            if ((flags & NOTE_HAS_ALARM) != 0) {
+                long alarmId = in.varint();
+                LocalDateTime alarmTime = in.time();
+                boolean recurring = in.u8() != 0;
+                String pattern = in.string();
+                alarm = new Alarm(alarmId, alarmTime, recurring, pattern);
+            }
+            String contentHash = null;
+            String content = null;
+            if ((flags & NOTE_CONTENT_HASH) != 0) {
+                contentHash = in.hash();
+            } else if ((flags & NOTE_INLINE_CONTENT) != 0) {
+                content = in.string();
+            }
+            String drawingHash = (flags & NOTE_DRAWING_HASH) != 0 ? in.hash() : null;
+            if (noteType == Note.NoteType.TEXT && contentHash == null && content == null) {
+                content = "";
+            }
+
+            Note note = new Note(id, title, content, createdAt, updatedAt, folderId,
+                    (flags & NOTE_FAVORITE) != 0, (flags & NOTE_MISSION) != 0, (flags & NOTE_MISSION_COMPLETED) != 0,
+                    missionContent, alarm != null ? alarm.getId() : null, tags, noteType, drawingHash);
+            if (alarm != null) {
+                note.setAlarm(alarm);
+            }
+            if (contentHash != null) {
+                note.attachStoredContent(contentHash, bodyStore, true);
+            }
+            // Các setter ở trên cập nhật updatedAt nên gán lại giá trị đã lưu
+            note.setUpdatedAt(updatedAt);
+            data.notes.add(note);
+        }
+        return data;
+    }
+
+    private static final class Output {
+        private byte[] buf;
+        private int size;
+
+        Output(int initialCapacity) {
+            buf = new byte[initialCapacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        void u8(int value) {
+            ensure(1);
+            buf[size++] = (byte) value;
+        }
+
+        void bytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, buf, size, value.length);
+            size += value.length;
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1L);
+            bytes(utf8);
+        }
+
+        void time(LocalDateTime value) {
+            if (value == null) {
+                value = LocalDateTime.now();
+            }
+            long seconds = value.toEpochSecond(ZoneOffset.UTC);
+            varint((seconds << 1) ^ (seconds >> 63));
+            varint(value.getNano());
+        }
+
+        void hash(String hex) {
+            ensure(32);
+            for (int i = 0; i < 32; i++) {
+                buf[size++] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    private static final class Input {
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int u8() {
+            return buffer.get() & 0xFF;
+        }
+
+        long varint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Varint quá dài trong snapshot nhị phân.");
+        }
+
+        int count() throws IOException {
+            long value = varint();
+            if (value < 0 || value > buffer.remaining()) {
+                throw new IOException("Số phần tử không hợp lệ trong snapshot nhị phân: " + value);
+            }
+            return (int) value;
+        }
+
+        String string() throws IOException {
+            long lengthPlusOne = varint();
+            if (lengthPlusOne == 0) {
+                return null;
+            }
+            int length = (int) (lengthPlusOne - 1);
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Độ dài chuỗi không hợp lệ trong snapshot nhị phân: " + length);
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        LocalDateTime time() throws IOException {
+            long zigzag = varint();
+            long seconds = (zigzag >>> 1) ^ -(zigzag & 1);
+            return LocalDateTime.ofEpochSecond(seconds, (int) varint(), ZoneOffset.UTC);
+        }
+
+        String hash() {
+            StringBuilder sb = new StringBuilder(64);
+            for (int i = 0; i < 32; i++) {
+                int b = buffer.get() & 0xFF;
+                sb.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Kho lưu dữ liệu nhị phân theo địa chỉ nội dung (ảnh PNG của bản vẽ, nội dung note).
+ * Mỗi blob là một file &lt;root&gt;/ab/&lt;sha256&gt;&lt;extension&gt;; cùng nội dung thì cùng file nên ghi lại là không tốn gì.
+ * notes.json chỉ giữ mã băm, dữ liệu chỉ được đọc (map vào bộ nhớ) khi cần.
+ */
+public class BlobStore {
+    private final File root;
+    private final String extension;
+
+    public BlobStore(File root, String extension) {
+        this.root = root;
+        this.extension = extension;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Lưu dữ liệu và trả về mã băm SHA-256 (hex). File được ghi qua file tạm rồi đổi tên
+     * nên không bao giờ có blob ghi dở mang tên hợp lệ.
+     */
+    public String put(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            throw new IllegalArgumentException("Dữ liệu blob không được rỗng.");
+        }
+        String hash = hashOf(data);
+        putWithHash(hash, data);
+        return hash;
+    }
+
+    /**
+     * Ghi blob với mã băm đã tính sẵn (dùng khi băm trên luồng gọi và ghi trên luồng nền).
+     */
+    void putWithHash(String hash, byte[] data) throws IOException {
+        write(hash, data, true);
+    }
+
+    /**
+     * Ghi nhiều blob với mã băm đã tính sẵn trong một lượt: từng file không được fsync riêng mà chỉ đồng bộ
+     * các thư mục đã ghi một lần ở cuối, nên chuyển đổi hàng nghìn nội dung cũ không tốn hàng nghìn lần fsync.
+     */
+    void putAll(Map<String, byte[]> blobs) throws IOException {
+        Set<File> dirs = new LinkedHashSet<>();
+        for (Map.Entry<String, byte[]> entry : blobs.entrySet()) {
+            if (write(entry.getKey(), entry.getValue(), false)) dirs.add(fileFor(entry.getKey()).getParentFile());
+        }
+        if (dirs.isEmpty()) return;
+        dirs.add(root);
+        for (File dir : dirs) {
+            try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Windows không mở được thư mục như file; NTFS tự ghi nhật ký thao tác đổi tên
+            }
+        }
+    }
+
+    // false nếu blob đã có sẵn
+    private boolean write(String hash, byte[] data, boolean sync) throws IOException {
+        File target = fileFor(hash);
+        if (target.isFile() && target.length() == data.length) {
+            return false;
+        }
+        File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Không thể tạo thư mục blob: " + dir);
+        }
+        File temp = new File(dir, hash + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+            if (sync) out.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileAlreadyExistsException e) {
+            // Luồng khác vừa ghi cùng nội dung
+            Files.deleteIfExists(temp.toPath());
+        }
+        return true;
+    }
+
+    public boolean contains(String hash) {
+        return isValidHash(hash) && fileFor(hash).isFile();
+    }
+
+    /**
+     * Map blob vào bộ nhớ ở chế độ chỉ đọc; dữ liệu không nằm trên heap.
+     */
+    public MappedByteBuffer map(String hash) throws IOException {
+        File file = existingFile(hash);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Đọc cả blob vào heap. Với blob nhỏ (nội dung note) cách này nhanh hơn map vì không phải map/unmap từng file.
+     */
+    public byte[] read(String hash) throws IOException {
+        return Files.readAllBytes(existingFile(hash).toPath());
+    }
+
+    public InputStream openStream(String hash) throws IOException {
+        return new ByteBufferInputStream(map(hash));
+    }
+
+    /**
+     * Xóa các blob không còn được note nào tham chiếu. Chỉ gọi khi không còn thay đổi nào đang chờ ghi.
+     *
+     * @return số blob đã xóa
+     */
+    public int retainOnly(Set<String> liveHashes) {
+        File[] buckets = root.listFiles(File::isDirectory);
+        if (buckets == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (File bucket : buckets) {
+            File[] files = bucket.listFiles();
+            if (files == null) continue;
+            for (File blob : files) {
+                String name = blob.getName();
+                String hash = name.endsWith(extension) ? name.substring(0, name.length() - extension.length()) : null;
+                // File .tmp còn sót lại sau khi bị tắt đột ngột cũng được dọn
+                if (hash == null || !liveHashes.contains(hash)) {
+                    if (blob.delete()) removed++;
+                }
+            }
+            String[] remaining = bucket.list();
+            if (remaining != null && remaining.length == 0) {
+                bucket.delete();
+            }
+        }
+        return removed;
+    }
+
+    public static boolean isValidHash(String hash) {
+        if (hash == null || hash.length() != 64) return false;
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) return false;
+        }
+        return true;
+    }
+
+    private File existingFile(String hash) throws FileNotFoundException {
+        if (!isValidHash(hash)) {
+            throw new IllegalArgumentException("Mã băm blob không hợp lệ: " + hash);
+        }
+        File file = fileFor(hash);
+        if (!file.isFile()) {
+            throw new FileNotFoundException("Không tìm thấy blob " + hash + " trong " + root);
+        }
+        return file;
+    }
+
+    private File fileFor(String hash) {
+        return new File(new File(root, hash.substring(0, 2)), hash + extension);
+    }
+
+    public static String hashOf(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
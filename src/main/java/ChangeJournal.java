@@ -0,0 +1,120 @@
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Nhật ký thay đổi dạng append-only đi kèm file snapshot (mặc định notes.bin, cùng tên với đuôi .journal).
+ * Mỗi dòng là một bản ghi JSON: {"op": "...", "data": ...}. Khi tải, snapshot được đọc trước
+ * rồi các bản ghi được áp dụng lại theo thứ tự; upsert/delete theo ID nên việc áp dụng lặp lại là an toàn.
+ */
+public class ChangeJournal {
+
+    public enum Op {
+        UPSERT_NOTE,
+        DELETE_NOTE,
+        UPSERT_FOLDER,
+        DELETE_FOLDER,
+        UPSERT_TAG,
+        DELETE_TAG
+    }
+
+    public interface RecordHandler {
+        /**
+         * Đọc phần "data" của bản ghi trực tiếp từ reader (đang đứng tại giá trị của trường data).
+         */
+        void apply(Op op, JsonReader data) throws IOException;
+    }
+
+    private final File file;
+    private long recordCount;
+
+    public ChangeJournal(File file) {
+        this.file = file;
+        this.recordCount = 0;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param dataJson giá trị JSON đã được mã hóa sẵn (object hoặc số ID)
+     */
+    public static String encode(Op op, String dataJson) {
+        return "{\"op\":\"" + op.name() + "\",\"data\":" + dataJson + "}";
+    }
+
+    /**
+     * Ghi một lô bản ghi đã mã hóa (mỗi phần tử một dòng) và fsync trước khi trả về.
+     */
+    public void appendAll(List<String> lines) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        recordCount += lines.size();
+    }
+
+    /**
+     * Áp dụng lại toàn bộ bản ghi. Dừng ở dòng hỏng đầu tiên (thường là dòng cuối bị ghi dở khi ứng dụng bị tắt đột ngột).
+     */
+    public int replay(RecordHandler handler) {
+        recordCount = 0;
+        if (!file.exists() || file.length() == 0) {
+            return 0;
+        }
+        int applied = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) continue;
+                try (JsonReader json = new JsonReader(new StringReader(line))) {
+                    json.beginObject();
+                    if (!"op".equals(json.nextName())) {
+                        throw new MalformedJsonException("Thiếu trường op");
+                    }
+                    Op op = Op.valueOf(json.nextString());
+                    if (!"data".equals(json.nextName())) {
+                        throw new MalformedJsonException("Thiếu trường data");
+                    }
+                    handler.apply(op, json);
+                    json.endObject();
+                } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException e) {
+                    System.err.println("[ChangeJournal] Bản ghi hỏng tại dòng " + lineNumber + " của " + file.getName() + ", bỏ qua phần còn lại: " + e.getMessage());
+                    break;
+                }
+                applied++;
+            }
+        } catch (IOException e) {
+            System.err.println("[ChangeJournal] Lỗi I/O khi đọc " + file.getName() + ": " + e.getMessage());
+        }
+        recordCount = applied;
+        return applied;
+    }
+
+    public void truncate() throws IOException {
+        // Mở ở chế độ ghi đè để cắt file về 0 byte
+        new FileOutputStream(file, false).close();
+        recordCount = 0;
+    }
+
+    public long length() {
+        return file.exists() ? file.length() : 0;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+}
@@ -1,286 +1,1036 @@
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.*;
-import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 
 public class DataStorage {
-    private final Gson gson;
+    // Journal chỉ được gộp vào snapshot khi lớn hơn ngưỡng này hoặc nửa kích thước snapshot,
+    // nên chi phí ghi lại toàn bộ được chia đều cho các thay đổi nhỏ.
+    private static final long MIN_COMPACTION_BYTES = 256 * 1024;
+
+    private final LocalDateTimeAdapter dateTimeAdapter = new LocalDateTimeAdapter();
+    private final TagAdapter tagAdapter = new TagAdapter();
+    private final FolderAdapter folderAdapter = new FolderAdapter();
+    private final AlarmAdapter alarmAdapter = new AlarmAdapter(dateTimeAdapter);
+    private final NoteAdapter noteAdapter;
+    private final NoteAdapter portableNoteAdapter;
+    private final BinarySnapshotFormat binaryFormat;
+
     private final File file;
+    private final ChangeJournal journal;
+    private final ShardLayout shards;
+    // Shard có bản ghi trong journal chưa được gộp; chỉ dùng trên luồng ghi (và khi tải, trước khi luồng ghi chạy)
+    private final Set<Long> journalShards = new HashSet<>();
+    private final BlobStore blobStore;
+    private final NoteBodyStore bodyStore;
+    // Có mặt khi một lần gộp journal đã xong mà blob chưa được dọn; lần khởi động sau mới quét blobs/ và bodies/
+    private final File blobCleanupMarker;
+    private final PersistenceWriter writer;
+    // Thế hệ lớn nhất đã cấp cho một manifest, và thế hệ của manifest mới nhất đã nằm trên đĩa
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long committedGeneration;
+    private final boolean binarySnapshot;
 
     public DataStorage(String filePath) {
+        this(filePath, PersistenceWriter.DEFAULT_COALESCE_MILLIS);
+    }
+
+    /**
+     * @param filePath file snapshot; đuôi ".bin" dùng định dạng nhị phân, các đuôi khác dùng JSON
+     */
+    public DataStorage(String filePath, long coalesceMillis) {
         this.file = new File(filePath);
-        GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter());
-        builder.registerTypeAdapter(Note.class, new NoteAdapter());
-        builder.registerTypeAdapter(Folder.class, new FolderAdapter());
-        builder.registerTypeAdapter(Tag.class, new TagAdapter());
-        this.gson = builder.setPrettyPrinting().create();
+        this.binarySnapshot = filePath.endsWith(".bin");
+        this.journal = new ChangeJournal(siblingFile(".journal"));
+        this.shards = new ShardLayout(siblingFile(".shards"), binarySnapshot ? ".bin" : ".json");
+        this.blobCleanupMarker = siblingFile(".gc");
+        File dataDir = file.getAbsoluteFile().getParentFile();
+        this.blobStore = new BlobStore(new File(dataDir, "blobs"), ".png");
+        this.bodyStore = new NoteBodyStore(new BlobStore(new File(dataDir, "bodies"), ".txt"), NoteBodyStore.DEFAULT_CACHE_CHARS);
+        this.noteAdapter = new NoteAdapter(dateTimeAdapter, tagAdapter, alarmAdapter, blobStore, bodyStore, false);
+        this.portableNoteAdapter = new NoteAdapter(dateTimeAdapter, tagAdapter, alarmAdapter, blobStore, bodyStore, true);
+        this.binaryFormat = new BinarySnapshotFormat(bodyStore);
+        this.writer = new PersistenceWriter(this, coalesceMillis);
+    }
+
+
+    private File siblingFile(String extension) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = (dot > 0) ? name.substring(0, dot) : name;
+        return new File(file.getAbsoluteFile().getParentFile(), baseName + extension);
+    }
+
+    public void saveNote(Note note) {
+        storeBody(note);
+        Set<Long> affected = shards.noteSaved(note.getId(), note.getFolderId());
+        enqueueChange("note:" + note.getId(), ChangeJournal.Op.UPSERT_NOTE, toJson(noteAdapter, note), affected);
+    }
+
+    public void deleteNote(long noteId) {
+        Set<Long> affected = shards.noteDeleted(noteId);
+        enqueueChange("note:" + noteId, ChangeJournal.Op.DELETE_NOTE, Long.toString(noteId), affected);
+    }
+
+    // Folder và tag nằm trong manifest nên không làm bẩn shard nào
+    public void saveFolder(Folder folder) {
+        enqueueChange("folder:" + folder.getId(), ChangeJournal.Op.UPSERT_FOLDER, toJson(folderAdapter, folder), Collections.emptySet());
     }
 
+    public void deleteFolder(long folderId) {
+        enqueueChange("folder:" + folderId, ChangeJournal.Op.DELETE_FOLDER, Long.toString(folderId), Collections.emptySet());
+    }
+
+    public void saveTag(Tag tag) {
+        enqueueChange("tag:" + tag.getId(), ChangeJournal.Op.UPSERT_TAG, toJson(tagAdapter, tag), Collections.emptySet());
+    }
+
+    public void deleteTag(long tagId) {
+        enqueueChange("tag:" + tagId, ChangeJournal.Op.DELETE_TAG, Long.toString(tagId), Collections.emptySet());
+    }
 
+    /**
+     * Băm nội dung vừa sửa trên luồng gọi; file nội dung được ghi trên luồng nền trước bản ghi tham chiếu đến nó.
+     * Note bỏ bản trong bộ nhớ và đọc lại qua LRU như lúc tải; trong lúc chờ ghi, NoteBodyStore giữ nội dung.
+     */
+    private void storeBody(Note note) {
+        if (note.getNoteType() != Note.NoteType.TEXT || note.getContentHash() != null) {
+            return;
+        }
+        String content = note.getContent();
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String hash = BlobStore.hashOf(bytes);
+        if (!bodyStore.getBlobStore().contains(hash)) {
+            bodyStore.stage(hash, content);
+            writer.enqueueBlob(hash, bytes);
+        }
+        bodyStore.remember(hash, content);
+        note.attachStoredContent(hash, bodyStore, true);
+    }
+
+    private void enqueueChange(String key, ChangeJournal.Op op, String dataJson, Set<Long> affectedShards) {
+        // Mã hóa ngay trên luồng gọi để luồng ghi nền không phải đọc các đối tượng đang bị UI sửa đổi
+        writer.enqueueRecord(key, ChangeJournal.encode(op, dataJson), affectedShards);
+    }
+
+    private static <T> String toJson(TypeAdapter<T> adapter, T value) {
+        StringWriter out = new StringWriter();
+        try {
+            adapter.write(new JsonWriter(out), value);
+        } catch (IOException e) {
+            // StringWriter không ném IOException
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private byte[] encodeSnapshot(SnapshotData data) {
+        if (binarySnapshot) {
+            return binaryFormat.write(data);
+        }
+        StringWriter out = new StringWriter();
+        try {
+            writeData(new JsonWriter(out), data, noteAdapter, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Manifest chứa folder và tag; mỗi shard trong {@code shardIds} chứa note của folder tương ứng
+     * (null nếu folder không còn note nào). Nếu {@code detach} thì note, folder và tag được chép ra bản
+     * tách rời để luồng ghi nền mã hóa trong khi UI vẫn sửa bản gốc; chỉ note của các shard cần ghi bị chép.
+     */
+    private ShardedSnapshot splitIntoShards(SnapshotData data, Set<Long> shardIds, boolean detach) {
+        SnapshotData manifest = new SnapshotData();
+        manifest.folders = data.folders;
+        manifest.tags = data.tags;
+        if (detach) {
+            manifest.folders = new ArrayList<>(data.folders.size());
+            for (Folder folder : data.folders) manifest.folders.add(folder.snapshotCopy());
+            manifest.tags = new ArrayList<>(data.tags.size());
+            for (Tag tag : data.tags) manifest.tags.add(new Tag(tag.getId(), tag.getName()));
+        }
+        manifest.generation = generation.incrementAndGet();
+
+        Map<Long, SnapshotData> byShard = new HashMap<>();
+        for (Note note : data.notes) {
+            if (!shardIds.contains(note.getFolderId())) continue;
+            byShard.computeIfAbsent(note.getFolderId(), id -> new SnapshotData()).notes.add(detach ? note.snapshotCopy() : note);
+        }
+        Map<Long, SnapshotData> shardData = new LinkedHashMap<>();
+        for (Long shardId : shardIds) {
+            shardData.put(shardId, byShard.get(shardId));
+        }
+        return new ShardedSnapshot(manifest, shardData, manifest.generation);
+    }
+
+    private void writeData(JsonWriter out, SnapshotData data, NoteAdapter noteAdapter, boolean pretty) throws IOException {
+        if (pretty) {
+            out.setIndent("  ");
+        }
+        out.beginObject();
+        if (data.generation > 0) {
+            out.name("generation").value(data.generation);
+        }
+        out.name("notes").beginArray();
+        for (Note note : data.notes) {
+            noteAdapter.write(out, note);
+        }
+        out.endArray();
+        out.name("folders").beginArray();
+        for (Folder folder : data.folders) {
+            folderAdapter.write(out, folder);
+        }
+        out.endArray();
+        out.name("tags").beginArray();
+        for (Tag tag : data.tags) {
+            tagAdapter.write(out, tag);
+        }
+        out.endArray();
+        out.endObject();
+        out.flush();
+    }
+
+    private SnapshotData readData(JsonReader in) throws IOException {
+        SnapshotData data = new SnapshotData();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) continue;
+            switch (name) {
+                case "notes": readArray(in, noteAdapter, data.notes); break;
+                case "folders": readArray(in, folderAdapter, data.folders); break;
+                case "tags": readArray(in, tagAdapter, data.tags); break;
+                case "generation": data.generation = in.nextLong(); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return data;
+    }
+
+    private static <T> void readArray(JsonReader in, TypeAdapter<T> adapter, List<T> target) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            T item = adapter.read(in);
+            if (item != null) target.add(item);
+        }
+        in.endArray();
+    }
+
+    /**
+     * Chụp toàn bộ trạng thái hiện tại thành bản sao tách rời; việc mã hóa và ghi file diễn ra trên luồng nền.
+     */
     public void save(NoteManager noteManager) {
-        try (Writer writer = new FileWriter(file)) {
-            Data data = new Data();
-            data.notes = new ArrayList<>(noteManager.getAllNotes());
-            data.folders = new ArrayList<>(noteManager.getAllFolders());
-            data.tags = new ArrayList<>(new HashSet<>(noteManager.getAllTags()));
-
-            System.out.println("Đang lưu dữ liệu vào " + file.getName() + ": " +
-                    data.notes.size() + " notes, " +
-                    data.folders.size() + " folders, " +
-                    data.tags.size() + " tags.");
-            gson.toJson(data, writer);
-            System.out.println("Lưu dữ liệu thành công.");
+        SnapshotData data = collect(noteManager);
+        for (Note note : data.notes) {
+            storeBody(note);
+        }
+
+        Set<Long> dirtyShards = shards.takeDirty(data.notes);
+
+        System.out.println("Đang lưu dữ liệu vào " + file.getName() + ": " +
+                data.notes.size() + " notes, " +
+                data.folders.size() + " folders, " +
+                data.tags.size() + " tags (ghi lại " + dirtyShards.size() + " shard).");
+        writer.enqueueSnapshot(splitIntoShards(data, dirtyShards, true));
+    }
+
+    private static SnapshotData collect(NoteManager noteManager) {
+        SnapshotData data = new SnapshotData();
+        data.notes = noteManager.getWorkingNotes().toList();
+        data.folders = new ArrayList<>(noteManager.getModifiableFoldersList());
+        data.tags = new ArrayList<>(new HashSet<>(noteManager.getModifiableTagsList()));
+        return data;
+    }
+
+    /**
+     * Xuất toàn bộ dữ liệu ra JSON độc lập: nội dung note được ghi trực tiếp và bản vẽ ở dạng Base64,
+     * nên file có thể mở ở máy khác mà không cần thư mục bodies/ và blobs/.
+     */
+    public void exportJson(NoteManager noteManager, File target) throws IOException {
+        SnapshotData data = collect(noteManager);
+        File temp = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+        try (JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8)))) {
+            writeData(out, data, portableNoteAdapter, true);
+        } catch (UncheckedIOException e) {
+            // Nội dung một note không đọc được: bỏ file dở dang thay vì xuất nội dung rỗng
+            Files.deleteIfExists(temp.toPath());
+            throw e.getCause();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Đã xuất " + data.notes.size() + " notes ra " + target.getName() + ".");
+    }
+
+    /**
+     * Thay toàn bộ dữ liệu của NoteManager bằng nội dung file JSON (định dạng xuất hoặc notes.json cũ).
+     */
+    public void importJson(NoteManager noteManager, File source) throws IOException {
+        SnapshotData data = readSnapshot(source);
+        if (data == null) {
+            throw new IOException("File " + source.getName() + " không chứa dữ liệu JSON hợp lệ.");
+        }
+        noteAdapter.takeMigratedCount();
+        writeMigratedBodies();
+        populate(noteManager, data);
+        shards.reset(data.notes, shards.listShardIdsOnDisk(), Collections.emptySet(), true);
+    }
+
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Gom mọi thay đổi tới {@link #endBatch()} thành một lần ghi, xem {@link PersistenceWriter#beginBatch()}.
+     */
+    void beginBatch() {
+        writer.beginBatch();
+    }
+
+    void endBatch() {
+        writer.endBatch();
+    }
+
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    public NoteBodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    public int getQueueDepth() {
+        return writer.getQueueDepth();
+    }
+
+    public long getLastSaveLatencyMillis() {
+        return writer.getLastSaveLatencyMillis();
+    }
+
+    /**
+     * Thế hệ của manifest mới nhất trên đĩa (đọc lúc tải hoặc vừa ghi). Mọi lần ghi manifest, kể cả khi gộp
+     * journal, đều cấp một thế hệ mới lớn hơn, nên dữ liệu dẫn xuất (chỉ mục tìm kiếm) ghi kèm số này
+     * biết được nó có được dựng từ chính kho này hay không.
+     */
+    long getGeneration() {
+        return committedGeneration;
+    }
+
+    /**
+     * Thư mục chứa các file segment của chỉ mục tìm kiếm, nằm cạnh file snapshot.
+     */
+    File getSearchIndexDir() {
+        return siblingFile(".search");
+    }
+
+    // --- Các thao tác dưới đây chỉ chạy trên luồng của PersistenceWriter ---
+
+    void commitSnapshot(ShardedSnapshot snapshot) throws IOException {
+        File shardDir = shards.getDir();
+        if (!snapshot.shards.isEmpty() && !shardDir.isDirectory() && !shardDir.mkdirs()) {
+            throw new IOException("Không thể tạo thư mục shard: " + shardDir);
+        }
+        long bytes = 0;
+        for (Map.Entry<Long, SnapshotData> entry : snapshot.shards.entrySet()) {
+            File shardFile = shards.shardFile(entry.getKey());
+            if (entry.getValue() != null) {
+                byte[] encoded = encodeSnapshot(entry.getValue());
+                writeAtomically(shardFile, encoded);
+                bytes += encoded.length;
+            } else {
+                Files.deleteIfExists(shardFile.toPath());
+            }
+        }
+        // Manifest được ghi sau cùng; các shard ở trên không chứa thay đổi nào chưa có trong journal
+        byte[] manifest = encodeSnapshot(snapshot.manifest);
+        writeAtomically(file, manifest);
+        bytes += manifest.length;
+        committedGeneration = Math.max(committedGeneration, snapshot.generation);
+        System.out.println("Lưu dữ liệu thành công (" + snapshot.shards.size() + " shard, " + bytes + " bytes).");
+        // Snapshot đã chứa mọi thay đổi; nếu bị tắt trước khi cắt journal thì replay lại vẫn cho cùng kết quả.
+        journal.truncate();
+        journalShards.clear();
+    }
+
+    void writeBodies(Map<String, byte[]> bodies) throws IOException {
+        for (Map.Entry<String, byte[]> entry : bodies.entrySet()) {
+            bodyStore.getBlobStore().putWithHash(entry.getKey(), entry.getValue());
+            bodyStore.written(entry.getKey());
+        }
+    }
+
+    /**
+     * Ghi nội dung cũ vừa được chuyển ra khỏi JSON trong một lượt {@link BlobStore#putAll(Map)}; nếu lỗi thì giao
+     * cho luồng ghi nền thử lại như nội dung mới, trong lúc chờ vẫn đọc được từ NoteBodyStore.
+     */
+    private void writeMigratedBodies() {
+        Map<String, byte[]> bodies = noteAdapter.takeMigratedBodies();
+        if (bodies.isEmpty()) return;
+        try {
+            bodyStore.getBlobStore().putAll(bodies);
+            for (String hash : bodies.keySet()) bodyStore.written(hash);
         } catch (IOException e) {
-            System.err.println("Lỗi nghiêm trọng: Không thể lưu dữ liệu vào file " + file.getName() + ": " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("[DataStorage writeMigratedBodies] Không thể ghi " + bodies.size() + " nội dung cũ: " + e.getMessage() + ". Chuyển cho luồng ghi nền.");
+            for (Map.Entry<String, byte[]> entry : bodies.entrySet()) writer.enqueueBlob(entry.getKey(), entry.getValue());
         }
     }
 
-    public void load(NoteManager noteManager) {
-        if (!file.exists() || file.length() == 0) {
-            System.out.println("File " + file.getName() + " không tồn tại hoặc rỗng. Bỏ qua việc tải, NoteManager sẽ dùng dữ liệu mặc định.");
+    void appendRecords(List<String> records, Set<Long> affectedShards) throws IOException {
+        journal.appendAll(records);
+        journalShards.addAll(affectedShards);
+    }
+
+    void compactIfNeeded() throws IOException {
+        long threshold = Math.max(MIN_COMPACTION_BYTES, file.length() / 2);
+        if (journal.length() <= threshold) {
             return;
         }
+        System.out.println("Journal " + journal.getFile().getName() + " đạt " + journal.length() + " bytes, đang gộp vào snapshot...");
+        // Chỉ đọc và ghi lại các shard mà journal chạm tới; snapshot một file cũ thì phải tách toàn bộ
+        Set<Long> rewrite = new HashSet<>(journalShards);
+        while (true) {
+            SnapshotData data = (file.exists() && file.length() > 0) ? readSnapshot(file) : new SnapshotData();
+            if (data == null) {
+                throw new IOException("Snapshot " + file.getName() + " không hợp lệ, không thể gộp journal.");
+            }
+            if (!data.notes.isEmpty()) {
+                rewrite.addAll(shards.listShardIdsOnDisk());
+                for (Note note : data.notes) rewrite.add(note.getFolderId());
+            }
+            readShards(data, rewrite);
+            Set<Long> touched = new HashSet<>();
+            applyJournal(data, touched);
+            writeMigratedBodies();
+            if (rewrite.containsAll(touched)) {
+                // Dữ liệu vừa đọc từ đĩa, không ai khác giữ nên không cần chép
+                commitSnapshot(splitIntoShards(data, rewrite, false));
+                // Không dọn ngay: note mới có thể đang tham chiếu một blob sẵn có mà bản ghi chưa tới luồng này
+                if (!blobCleanupMarker.createNewFile() && !blobCleanupMarker.isFile()) {
+                    System.err.println("[DataStorage compactIfNeeded] Không thể tạo " + blobCleanupMarker.getName() + ".");
+                }
+                return;
+            }
+            // Không nên xảy ra: ghi một shard thiếu sẽ làm mất note, nên đọc thêm các shard đó rồi làm lại
+            System.err.println("[DataStorage compactIfNeeded] Journal chạm tới shard chưa được đánh dấu: " + touched + ". Đọc lại.");
+            rewrite.addAll(touched);
+        }
+    }
 
-        try (Reader reader = new FileReader(file)) {
-            JsonElement jsonElement = JsonParser.parseReader(reader);
-            if (!jsonElement.isJsonObject()) {
-                System.err.println("Lỗi: Định dạng JSON trong " + file.getName() + " không hợp lệ. Sử dụng dữ liệu mặc định.");
-                handleCorruptedFile();
+    private void setLoadedGeneration(long loaded) {
+        committedGeneration = loaded;
+        generation.set(loaded);
+    }
+
+    private void readShards(SnapshotData data, Collection<Long> shardIds) throws IOException {
+        for (Long shardId : shardIds) {
+            File shardFile = shards.shardFile(shardId);
+            if (!shardFile.isFile()) continue;
+            SnapshotData shard = readSnapshot(shardFile);
+            if (shard == null) {
+                throw new IOException("Shard " + shardFile.getName() + " không hợp lệ.");
+            }
+            data.notes.addAll(shard.notes);
+        }
+    }
+
+    private static void writeAtomically(File target, byte[] content) throws IOException {
+        File temp = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(content);
+            out.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private SnapshotData readSnapshot(File source) throws IOException {
+        if (BinarySnapshotFormat.isBinarySnapshot(source)) {
+            return binaryFormat.read(source);
+        }
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(source), StandardCharsets.UTF_8)))) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
+            }
+            return readData(reader);
+        }
+    }
+
+    public void load(NoteManager noteManager) {
+        File source = file;
+        if (!file.exists() || file.length() == 0) {
+            // Lần đầu chuyển sang snapshot nhị phân: đọc notes.json cũ (nếu có), snapshot mới được ghi sau khi tải
+            File legacyJson = siblingFile(".json");
+            if (binarySnapshot && legacyJson.isFile() && legacyJson.length() > 0) {
+                System.out.println("Nhập dữ liệu từ " + legacyJson.getName() + " sang định dạng nhị phân " + file.getName() + "...");
+                source = legacyJson;
+            }
+        }
+        if (!source.exists() || source.length() == 0) {
+            if (journal.length() > 0) {
+                System.out.println("File " + file.getName() + " không tồn tại hoặc rỗng. Khôi phục từ journal " + journal.getFile().getName() + "...");
+                SnapshotData data = new SnapshotData();
+                Set<Long> touched = new HashSet<>();
+                applyJournal(data, touched);
+                populate(noteManager, data);
+                shards.reset(data.notes, shards.listShardIdsOnDisk(), touched, true);
+                journalShards.addAll(touched);
+                afterLoad(noteManager, data);
                 return;
             }
+            System.out.println("File " + file.getName() + " không tồn tại hoặc rỗng. Bỏ qua việc tải, NoteManager sẽ dùng dữ liệu mặc định.");
+            return;
+        }
 
-            Data data = gson.fromJson(jsonElement, Data.class);
+        try {
+            SnapshotData data = readSnapshot(source);
 
             if (data != null) {
-                noteManager.getModifiableNotesList().clear();
-                noteManager.getModifiableFoldersList().clear();
-                noteManager.getModifiableTagsList().clear();
-
-                if (data.folders != null) {
-                    noteManager.getModifiableFoldersList().addAll(data.folders);
-                }
-                if (data.tags != null) {
-                    noteManager.getModifiableTagsList().addAll(data.tags);
+                setLoadedGeneration(data.generation);
+                // Manifest mới không chứa note; còn note nghĩa là snapshot một file cũ hoặc notes.json đang được nhập
+                boolean rewriteAll = source != file || !data.notes.isEmpty();
+                List<Long> shardsOnDisk = shards.listShardIdsOnDisk();
+                if (source == file) {
+                    readShards(data, shardsOnDisk);
                 }
-                if (data.notes != null) {
-                    noteManager.getModifiableNotesList().addAll(data.notes);
+                Set<Long> touched = new HashSet<>();
+                applyJournal(data, touched);
+                populate(noteManager, data);
+                shards.reset(data.notes, shardsOnDisk, touched, rewriteAll);
+                journalShards.addAll(touched);
+                afterLoad(noteManager, data);
+                if (rewriteAll) {
+                    save(noteManager);
                 }
-
-                System.out.println("Đã tải dữ liệu từ " + file.getName() + ": " +
-                        (data.notes != null ? data.notes.size() : 0) + " notes, " +
-                        (data.folders != null ? data.folders.size() : 0) + " folders, " +
-                        (data.tags != null ? data.tags.size() : 0) + " tags.");
             } else {
-                System.err.println("Lỗi: Không thể deserialize dữ liệu từ " + file.getName() + ". File có thể bị hỏng. Sử dụng dữ liệu mặc định.");
+                System.err.println("Lỗi: Không thể deserialize dữ liệu từ " + source.getName() + ". File có thể bị hỏng. Sử dụng dữ liệu mặc định.");
                 handleCorruptedFile();
             }
 
         } catch (IOException e) {
-            System.err.println("Lỗi I/O khi tải dữ liệu từ " + file.getName() + ": " + e.getMessage());
+            System.err.println("Lỗi I/O khi tải dữ liệu từ " + source.getName() + ": " + e.getMessage());
             e.printStackTrace();
             handleCorruptedFile();
-        } catch (JsonSyntaxException e) {
-            System.err.println("Lỗi cú pháp JSON khi tải dữ liệu từ " + file.getName() + ": " + e.getMessage());
+        } catch (JsonParseException | IllegalStateException e) {
+            System.err.println("Lỗi cú pháp JSON khi tải dữ liệu từ " + source.getName() + ": " + e.getMessage());
             e.printStackTrace();
             handleCorruptedFile();
         } catch (Exception e) {
-            System.err.println("Lỗi không xác định khi tải dữ liệu từ " + file.getName() + ": " + e.getMessage());
+            System.err.println("Lỗi không xác định khi tải dữ liệu từ " + source.getName() + ": " + e.getMessage());
             e.printStackTrace();
             handleCorruptedFile();
         }
     }
 
-    private void handleCorruptedFile() {
-        System.out.println("Đang cố gắng tạo file dữ liệu mới do file cũ bị lỗi hoặc không tồn tại.");
+    /**
+     * Chỉ chạy khi tải thành công: lưu lại snapshot nếu có bản vẽ Base64 hoặc nội dung cũ vừa được chuyển sang BlobStore.
+     * Nếu lần chạy trước đã gộp journal thì dọn luôn các blob không còn note nào tham chiếu (lúc này chưa có thay đổi
+     * nào đang chờ ghi); các lần khởi động khác không phải duyệt blobs/ và bodies/.
+     */
+    private void afterLoad(NoteManager noteManager, SnapshotData data) {
+        writeMigratedBodies();
+        int migrated = noteAdapter.takeMigratedCount();
+        if (migrated > 0) {
+            System.out.println("Đã chuyển " + migrated + " bản vẽ/nội dung note cũ sang kho blob.");
+            shards.markAllDirty();
+            save(noteManager);
+        }
+        if (!blobCleanupMarker.isFile()) {
+            return;
+        }
+        Set<String> liveDrawings = new HashSet<>();
+        Set<String> liveBodies = new HashSet<>();
+        for (Note note : data.notes) {
+            if (note.getDrawingHash() != null) liveDrawings.add(note.getDrawingHash());
+            if (note.getContentHash() != null) liveBodies.add(note.getContentHash());
+        }
+        int removed = blobStore.retainOnly(liveDrawings) + bodyStore.getBlobStore().retainOnly(liveBodies);
+        if (removed > 0) {
+            System.out.println("Đã xóa " + removed + " blob không còn được sử dụng.");
+        }
+        if (!blobCleanupMarker.delete()) {
+            System.err.println("[DataStorage afterLoad] Không thể xóa " + blobCleanupMarker.getName() + ".");
+        }
     }
 
-    private static class Data {
-        List<Note> notes = new ArrayList<>();
-        List<Folder> folders = new ArrayList<>();
-        List<Tag> tags = new ArrayList<>();
+    private void populate(NoteManager noteManager, SnapshotData data) {
+        noteManager.getModifiableFoldersList().clear();
+        noteManager.getModifiableTagsList().clear();
+
+        if (data.folders != null) {
+            noteManager.getModifiableFoldersList().addAll(data.folders);
+        }
+        if (data.tags != null) {
+            noteManager.getModifiableTagsList().addAll(data.tags);
+        }
+        noteManager.replaceLoadedNotes(data.notes);
+
+        System.out.println("Đã tải dữ liệu từ " + file.getName() + ": " +
+                (data.notes != null ? data.notes.size() : 0) + " notes, " +
+                (data.folders != null ? data.folders.size() : 0) + " folders, " +
+                (data.tags != null ? data.tags.size() : 0) + " tags.");
+    }
+
+    /**
+     * @param touchedShards nhận các shard bị bản ghi journal thay đổi (shard cũ và mới của note)
+     */
+    private void applyJournal(SnapshotData data, Set<Long> touchedShards) {
+        Map<Long, Note> notesById = indexById(data.notes, Note::getId);
+        Map<Long, Folder> foldersById = indexById(data.folders, Folder::getId);
+        Map<Long, Tag> tagsById = indexById(data.tags, Tag::getId);
+
+        int applied = journal.replay((op, element) -> {
+            switch (op) {
+                case UPSERT_NOTE: {
+                    Note note = noteAdapter.read(element);
+                    Note previous = notesById.put(note.getId(), note);
+                    if (previous != null) touchedShards.add(previous.getFolderId());
+                    touchedShards.add(note.getFolderId());
+                    break;
+                }
+                case DELETE_NOTE: {
+                    Note removed = notesById.remove(element.nextLong());
+                    if (removed != null) touchedShards.add(removed.getFolderId());
+                    break;
+                }
+                case UPSERT_FOLDER: {
+                    Folder folder = folderAdapter.read(element);
+                    foldersById.put(folder.getId(), folder);
+                    break;
+                }
+                case DELETE_FOLDER: foldersById.remove(element.nextLong()); break;
+                case UPSERT_TAG: {
+                    Tag tag = tagAdapter.read(element);
+                    tagsById.put(tag.getId(), tag);
+                    break;
+                }
+                case DELETE_TAG: tagsById.remove(element.nextLong()); break;
+            }
+        });
+
+        if (applied > 0) {
+            data.notes = new ArrayList<>(notesById.values());
+            data.folders = new ArrayList<>(foldersById.values());
+            data.tags = new ArrayList<>(tagsById.values());
+            System.out.println("Đã áp dụng " + applied + " bản ghi từ journal " + journal.getFile().getName() + ".");
+        }
+    }
+
+    private static <T> Map<Long, T> indexById(List<T> items, ToLongFunction<T> idOf) {
+        Map<Long, T> map = new LinkedHashMap<>();
+        if (items == null) return map;
+        long anonymousKey = -1;
+        for (T item : items) {
+            long id = idOf.applyAsLong(item);
+            // Đối tượng chưa có ID (0) được giữ lại với khóa âm để NoteManager gán ID sau
+            map.put(id != 0 ? id : anonymousKey--, item);
+        }
+        return map;
     }
 
-    private static class LocalDateTimeAdapter implements JsonSerializer<LocalDateTime>, JsonDeserializer<LocalDateTime> {
+    private void handleCorruptedFile() {
+        System.out.println("Đang cố gắng tạo file dữ liệu mới do file cũ bị lỗi hoặc không tồn tại.");
+    }
+
+    private static class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
         private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
         @Override
-        public JsonElement serialize(LocalDateTime src, Type typeOfSrc, JsonSerializationContext context) {
-            return src == null ? null : new JsonPrimitive(src.format(FORMATTER));
+        public void write(JsonWriter out, LocalDateTime value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(value.format(FORMATTER));
+            }
         }
 
         @Override
-        public LocalDateTime deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            return json == null ? null : LocalDateTime.parse(json.getAsString(), FORMATTER);
+        public LocalDateTime read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return LocalDateTime.parse(in.nextString(), FORMATTER);
         }
     }
 
-    private static class NoteAdapter implements JsonSerializer<Note>, JsonDeserializer<Note> {
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static class AlarmAdapter extends TypeAdapter<Alarm> {
+        private final LocalDateTimeAdapter dateTimeAdapter;
+
+        AlarmAdapter(LocalDateTimeAdapter dateTimeAdapter) {
+            this.dateTimeAdapter = dateTimeAdapter;
+        }
+
         @Override
-        public JsonElement serialize(Note src, Type typeOfSrc, JsonSerializationContext context) {
-            JsonObject json = new JsonObject();
-            json.addProperty("id", src.getId());
-            json.addProperty("title", src.getTitle());
-            if (src.getNoteType() == Note.NoteType.TEXT && src.getContent() != null) {
-                json.addProperty("content", src.getContent());
-            } else if (src.getNoteType() == Note.NoteType.TEXT) {
-                json.add("content", JsonNull.INSTANCE);
+        public void write(JsonWriter out, Alarm src) throws IOException {
+            if (src == null) {
+                out.nullValue();
+                return;
             }
+            out.beginObject();
+            out.name("id").value(src.getId());
+            out.name("alarmTime");
+            dateTimeAdapter.write(out, src.getAlarmTime());
+            out.name("recurring").value(src.isRecurring());
+            if (src.getRecurrencePattern() != null) {
+                out.name("recurrencePattern").value(src.getRecurrencePattern());
+            }
+            out.endObject();
+        }
 
-            json.add("createdAt", context.serialize(src.getCreatedAt()));
-            json.add("updatedAt", context.serialize(src.getUpdatedAt()));
-            json.addProperty("isFavorite", src.isFavorite());
-            json.addProperty("isMission", src.isMission());
-            json.addProperty("isMissionCompleted", src.isMissionCompleted());
-            json.addProperty("missionContent", src.getMissionContent());
-            json.addProperty("folderId", src.getFolderId());
+        @Override
+        public Alarm read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            long id = 0;
+            LocalDateTime alarmTime = null;
+            boolean recurring = false;
+            String recurrencePattern = null;
 
-            if (src.getTags() != null) {
-                json.add("tags", context.serialize(src.getTags()));
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) continue;
+                switch (name) {
+                    case "id": id = in.nextLong(); break;
+                    case "alarmTime": alarmTime = dateTimeAdapter.read(in); break;
+                    case "recurring": recurring = in.nextBoolean(); break;
+                    case "recurrencePattern": recurrencePattern = in.nextString(); break;
+                    default: in.skipValue();
+                }
             }
+            in.endObject();
 
-            if (src.getAlarm() != null) {
-                json.add("alarm", context.serialize(src.getAlarm()));
-            } else {
-                json.add("alarm", JsonNull.INSTANCE);
+            if (alarmTime == null) {
+                System.err.println("Cảnh báo: Alarm ID " + id + " không có alarmTime. Bỏ qua báo thức này.");
+                return null;
             }
+            return new Alarm(id, alarmTime, recurring, recurrencePattern);
+        }
+    }
 
-            json.addProperty("noteType", src.getNoteType().name());
-            if (src.getNoteType() == Note.NoteType.DRAWING && src.getDrawingData() != null) {
-                json.addProperty("drawingData", src.getDrawingData());
-            } else if (src.getNoteType() == Note.NoteType.DRAWING) {
-                json.add("drawingData", JsonNull.INSTANCE);
-            }
-            return json;
+    private static class NoteAdapter extends TypeAdapter<Note> {
+        private final LocalDateTimeAdapter dateTimeAdapter;
+        private final TagAdapter tagAdapter;
+        private final AlarmAdapter alarmAdapter;
+        private final BlobStore blobStore;
+        private final NoteBodyStore bodyStore;
+        // Dùng khi xuất JSON: ghi nội dung và bản vẽ trực tiếp thay vì mã băm
+        private final boolean portable;
+        private int migratedCount;
+        // Nội dung cũ đã chuyển đổi nhưng chưa ghi xuống BlobStore, xem writeMigratedBodies
+        private final Map<String, byte[]> migratedBodies = new LinkedHashMap<>();
+
+        NoteAdapter(LocalDateTimeAdapter dateTimeAdapter, TagAdapter tagAdapter, AlarmAdapter alarmAdapter,
+                    BlobStore blobStore, NoteBodyStore bodyStore, boolean portable) {
+            this.dateTimeAdapter = dateTimeAdapter;
+            this.tagAdapter = tagAdapter;
+            this.alarmAdapter = alarmAdapter;
+            this.blobStore = blobStore;
+            this.bodyStore = bodyStore;
+            this.portable = portable;
         }
 
-        @Override
-        public Note deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
+        int takeMigratedCount() {
+            int count = migratedCount;
+            migratedCount = 0;
+            return count;
+        }
 
-            long id = obj.has("id") ? obj.get("id").getAsLong() : 0;
-            String title = obj.has("title") ? obj.get("title").getAsString() : "Untitled";
+        Map<String, byte[]> takeMigratedBodies() {
+            Map<String, byte[]> bodies = new LinkedHashMap<>(migratedBodies);
+            migratedBodies.clear();
+            return bodies;
+        }
 
-            LocalDateTime createdAt = obj.has("createdAt") && !obj.get("createdAt").isJsonNull() ?
-                    context.deserialize(obj.get("createdAt"), LocalDateTime.class) : LocalDateTime.now();
-            LocalDateTime updatedAt = obj.has("updatedAt") && !obj.get("updatedAt").isJsonNull() ?
-                    context.deserialize(obj.get("updatedAt"), LocalDateTime.class) : createdAt;
+        // Dữ liệu cũ lưu ảnh dạng Base64 ngay trong notes.json
+        private String migrateLegacyDrawing(long noteId, String base64) throws IOException {
+            try {
+                String hash = blobStore.put(Base64.getDecoder().decode(base64));
+                migratedCount++;
+                return hash;
+            } catch (IllegalArgumentException e) {
+                System.err.println("Cảnh báo: drawingData của note ID " + noteId + " không phải Base64 hợp lệ. Bỏ qua bản vẽ.");
+                return null;
+            }
+        }
 
-            boolean isFavorite = obj.has("isFavorite") && !obj.get("isFavorite").isJsonNull() && obj.get("isFavorite").getAsBoolean();
-            boolean isMission = obj.has("isMission") && !obj.get("isMission").isJsonNull() && obj.get("isMission").getAsBoolean();
-            boolean isMissionCompleted = obj.has("isMissionCompleted") && !obj.get("isMissionCompleted").isJsonNull() && obj.get("isMissionCompleted").getAsBoolean();
-            String missionContent = obj.has("missionContent") && !obj.get("missionContent").isJsonNull() ?
-                    obj.get("missionContent").getAsString() : "";
-            long folderId = obj.has("folderId") && !obj.get("folderId").isJsonNull() ?
-                    obj.get("folderId").getAsLong() : 0;
+        @Override
+        public void write(JsonWriter out, Note src) throws IOException {
+            if (src == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(src.getId());
+            out.name("title").value(src.getTitle());
+            if (src.getNoteType() == Note.NoteType.TEXT) {
+                if (!portable && src.getContentHash() != null) {
+                    out.name("contentHash").value(src.getContentHash());
+                } else {
+                    out.name("content").value(src.getContent());
+                }
+            }
+            out.name("createdAt");
+            dateTimeAdapter.write(out, src.getCreatedAt());
+            out.name("updatedAt");
+            dateTimeAdapter.write(out, src.getUpdatedAt());
+            out.name("isFavorite").value(src.isFavorite());
+            out.name("isMission").value(src.isMission());
+            out.name("isMissionCompleted").value(src.isMissionCompleted());
+            out.name("missionContent").value(src.getMissionContent());
+            out.name("folderId").value(src.getFolderId());
 
-            List<Tag> tags = new ArrayList<>();
-            if (obj.has("tags") && !obj.get("tags").isJsonNull()) {
-                Type listType = new TypeToken<ArrayList<Tag>>() {}.getType();
-                tags = context.deserialize(obj.get("tags"), listType);
+            out.name("tags").beginArray();
+            for (Tag tag : src.getTags()) {
+                tagAdapter.write(out, tag);
             }
+            out.endArray();
 
-            Alarm alarm = null;
-            if (obj.has("alarm") && !obj.get("alarm").isJsonNull()) {
-                alarm = context.deserialize(obj.get("alarm"), Alarm.class);
+            if (src.getAlarm() != null) {
+                out.name("alarm");
+                alarmAdapter.write(out, src.getAlarm());
             }
-            Long alarmId = (alarm != null) ? alarm.getId() : null;
 
-            Note.NoteType noteType = Note.NoteType.TEXT;
-            if (obj.has("noteType") && !obj.get("noteType").isJsonNull()) {
-                try {
-                    noteType = Note.NoteType.valueOf(obj.get("noteType").getAsString());
-                } catch (IllegalArgumentException e) {
-                    System.err.println("Cảnh báo: Giá trị noteType không hợp lệ trong JSON: " + obj.get("noteType").getAsString() + ". Sử dụng TEXT mặc định.");
-                    noteType = Note.NoteType.TEXT;
+            out.name("noteType").value(src.getNoteType().name());
+            if (src.getNoteType() == Note.NoteType.DRAWING && src.getDrawingHash() != null) {
+                if (portable) {
+                    ByteBuffer image = blobStore.map(src.getDrawingHash());
+                    byte[] bytes = new byte[image.remaining()];
+                    image.get(bytes);
+                    out.name("drawingData").value(Base64.getEncoder().encodeToString(bytes));
+                } else {
+                    out.name("drawingHash").value(src.getDrawingHash());
                 }
             }
+            out.endObject();
+        }
 
+        @Override
+        public Note read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            long id = 0;
+            String title = "Untitled";
             String content = null;
-            if (noteType == Note.NoteType.TEXT) {
-                content = obj.has("content") && !obj.get("content").isJsonNull() ? obj.get("content").getAsString() : "";
+            String contentHash = null;
+            LocalDateTime createdAt = null;
+            LocalDateTime updatedAt = null;
+            boolean isFavorite = false;
+            boolean isMission = false;
+            boolean isMissionCompleted = false;
+            String missionContent = "";
+            long folderId = 0;
+            List<Tag> tags = new ArrayList<>();
+            Alarm alarm = null;
+            Note.NoteType noteType = Note.NoteType.TEXT;
+            String drawingHash = null;
+            String legacyDrawingData = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) continue;
+                switch (name) {
+                    case "id": id = in.nextLong(); break;
+                    case "title": title = in.nextString(); break;
+                    case "content": content = in.nextString(); break;
+                    case "contentHash": contentHash = in.nextString(); break;
+                    case "createdAt": createdAt = dateTimeAdapter.read(in); break;
+                    case "updatedAt": updatedAt = dateTimeAdapter.read(in); break;
+                    case "isFavorite": isFavorite = in.nextBoolean(); break;
+                    case "isMission": isMission = in.nextBoolean(); break;
+                    case "isMissionCompleted": isMissionCompleted = in.nextBoolean(); break;
+                    case "missionContent": missionContent = in.nextString(); break;
+                    case "folderId": folderId = in.nextLong(); break;
+                    case "tags":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            Tag tag = tagAdapter.read(in);
+                            if (tag != null) tags.add(tag);
+                        }
+                        in.endArray();
+                        break;
+                    case "alarm": alarm = alarmAdapter.read(in); break;
+                    case "noteType": {
+                        String typeName = in.nextString();
+                        try {
+                            noteType = Note.NoteType.valueOf(typeName);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Cảnh báo: Giá trị noteType không hợp lệ trong JSON: " + typeName + ". Sử dụng TEXT mặc định.");
+                            noteType = Note.NoteType.TEXT;
+                        }
+                        break;
+                    }
+                    case "drawingHash": drawingHash = in.nextString(); break;
+                    case "drawingData": legacyDrawingData = in.nextString(); break;
+                    default: in.skipValue();
+                }
             }
+            in.endObject();
 
-            String drawingData = null;
-            if (noteType == Note.NoteType.DRAWING) {
-                drawingData = obj.has("drawingData") && !obj.get("drawingData").isJsonNull() ?
-                        obj.get("drawingData").getAsString() : null;
+            if (createdAt == null) createdAt = LocalDateTime.now();
+            if (updatedAt == null) updatedAt = createdAt;
+            if (noteType == Note.NoteType.TEXT) {
+                if (contentHash == null && content != null && !content.isEmpty()) {
+                    // Dữ liệu cũ lưu nội dung ngay trong notes.json: chỉ băm và giữ lại, ghi cả lượt sau khi đọc xong
+                    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+                    contentHash = BlobStore.hashOf(bytes);
+                    bodyStore.stage(contentHash, content);
+                    migratedBodies.put(contentHash, bytes);
+                    migratedCount++;
+                }
+                content = (contentHash != null) ? null : (content != null ? content : "");
+                drawingHash = null;
+            } else {
+                content = null;
+                contentHash = null;
+                if (drawingHash == null && legacyDrawingData != null && !legacyDrawingData.isEmpty()) {
+                    drawingHash = migrateLegacyDrawing(id, legacyDrawingData);
+                }
             }
+            Long alarmId = (alarm != null) ? alarm.getId() : null;
+
             Note note = new Note(id, title, content, createdAt, updatedAt, folderId, isFavorite,
                     isMission, isMissionCompleted, missionContent, alarmId, tags,
-                    noteType, drawingData);
+                    noteType, drawingHash);
             if (alarm != null) {
                 note.setAlarm(alarm);
             }
-
+            if (contentHash != null) {
+                note.attachStoredContent(contentHash, bodyStore, true);
+            }
+            // setAlarm cập nhật updatedAt nên gán lại giá trị đã lưu
+            note.setUpdatedAt(updatedAt);
             return note;
         }
     }
 
-    private static class FolderAdapter implements JsonSerializer<Folder>, JsonDeserializer<Folder> {
+    private static class FolderAdapter extends TypeAdapter<Folder> {
         @Override
-        public JsonElement serialize(Folder src, Type typeOfSrc, JsonSerializationContext context) {
-            JsonObject json = new JsonObject();
-            json.addProperty("id", src.getId());
-            json.addProperty("name", src.getName());
-            json.addProperty("isFavorite", src.isFavorite());
-
+        public void write(JsonWriter out, Folder src) throws IOException {
+            if (src == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(src.getId());
+            out.name("name").value(src.getName());
+            out.name("isFavorite").value(src.isFavorite());
             if (src.getSubFolderNames() != null && !src.getSubFolderNames().isEmpty()) {
-                json.add("subFolderNames", context.serialize(src.getSubFolderNames()));
+                out.name("subFolderNames").beginArray();
+                for (String subFolderName : src.getSubFolderNames()) {
+                    out.value(subFolderName);
+                }
+                out.endArray();
             }
-            return json;
+            out.endObject();
         }
 
         @Override
-        public Folder deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
-            long id = obj.has("id") ? obj.get("id").getAsLong() : 0;
-            String name = obj.has("name") ? obj.get("name").getAsString() : "Unnamed Folder";
+        public Folder read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            long id = 0;
+            String name = "Unnamed Folder";
+            boolean favorite = false;
+            List<String> subFolderNames = new ArrayList<>();
 
-            Folder folder = new Folder(name);
-            folder.setId(id);
-
-            if (obj.has("isFavorite") && !obj.get("isFavorite").isJsonNull()) {
-                folder.setFavorite(obj.get("isFavorite").getAsBoolean());
-            } else {
-                folder.setFavorite(false);
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (skipNull(in)) continue;
+                switch (field) {
+                    case "id": id = in.nextLong(); break;
+                    case "name": name = in.nextString(); break;
+                    case "isFavorite": favorite = in.nextBoolean(); break;
+                    case "subFolderNames":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            if (!skipNull(in)) subFolderNames.add(in.nextString());
+                        }
+                        in.endArray();
+                        break;
+                    default: in.skipValue();
+                }
             }
+            in.endObject();
 
-            if (obj.has("subFolderNames") && !obj.get("subFolderNames").isJsonNull()) {
-                Type listType = new TypeToken<ArrayList<String>>() {}.getType();
-                List<String> subFolderNames = context.deserialize(obj.get("subFolderNames"), listType);
-                folder.setSubFolderNames(subFolderNames);
-            } else {
-                folder.setSubFolderNames(new ArrayList<>());
-            }
+            Folder folder = new Folder(name);
+            folder.setId(id);
+            folder.setFavorite(favorite);
+            folder.setSubFolderNames(subFolderNames);
             return folder;
         }
     }
 
-    private static class TagAdapter implements JsonSerializer<Tag>, JsonDeserializer<Tag> {
+    private static class TagAdapter extends TypeAdapter<Tag> {
         @Override
-        public JsonElement serialize(Tag src, Type typeOfSrc, JsonSerializationContext context) {
-            JsonObject json = new JsonObject();
-            json.addProperty("id", src.getId());
-            json.addProperty("name", src.getName());
-            return json;
+        public void write(JsonWriter out, Tag src) throws IOException {
+            if (src == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(src.getId());
+            out.name("name").value(src.getName());
+            out.endObject();
         }
 
         @Override
-        public Tag deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
-            long id = obj.has("id") ? obj.get("id").getAsLong() : 0;
-            String name = obj.has("name") ? obj.get("name").getAsString() : "Unnamed Tag";
+        public Tag read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            long id = 0;
+            String name = "Unnamed Tag";
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (skipNull(in)) continue;
+                switch (field) {
+                    case "id": id = in.nextLong(); break;
+                    case "name": name = in.nextString(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
 
             Tag tag = new Tag(name);
             tag.setId(id);
@@ -9,9 +9,9 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Base64;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
 import javax.imageio.ImageIO;
-import java.io.ByteArrayInputStream;
 import javax.swing.border.EmptyBorder;
 
 
@@ -34,6 +34,7 @@ public class DrawScreen extends JPanel {
     private JButton colorButton;
     private JButton eraserButton;
     private JButton pencilButton;
+    private JButton saveButton;
     private JLabel currentStrokeLabel;
 
     private Color currentColor = Color.BLACK;
@@ -65,7 +66,7 @@ public class DrawScreen extends JPanel {
 
 
         JPanel mainButtonsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
-        JButton saveButton = new JButton(SAVE_LABEL);
+        saveButton = new JButton(SAVE_LABEL);
         saveButton.setToolTipText("Lưu bản vẽ hiện tại");
         saveButton.addActionListener(e -> saveDrawing());
         JButton backButton = new JButton(BACK_LABEL);
@@ -340,9 +341,9 @@ public class DrawScreen extends JPanel {
                 new Note("Bản vẽ " + System.currentTimeMillis()%10000, Note.NoteType.DRAWING, controller.getCurrentFolder());
 
         titleField.setText(this.currentDrawingNote.getTitle());
-        if (this.currentDrawingNote.getDrawingData() != null && !this.currentDrawingNote.getDrawingData().isEmpty()) {
-            try {
-                drawingPanel.loadImageFromBase64(this.currentDrawingNote.getDrawingData());
+        if (this.currentDrawingNote.getDrawingHash() != null) {
+            try (InputStream imageStream = controller.getNoteService().openDrawingImage(this.currentDrawingNote)) {
+                drawingPanel.loadImage(imageStream);
             } catch (IOException e) {
                 System.err.println("Lỗi khi tải dữ liệu bản vẽ: " + e.getMessage());
                 JOptionPane.showMessageDialog(this, "Không thể tải dữ liệu bản vẽ.", "Lỗi", JOptionPane.ERROR_MESSAGE);
@@ -362,6 +363,10 @@ public class DrawScreen extends JPanel {
         drawingPanel.setCurrentStrokeSize(currentStrokeSize);
     }
 
+    /**
+     * Chỉ chép ảnh trên EDT; mã hóa PNG, băm và ghi blob (kèm fsync) chạy trên luồng nền của SwingWorker,
+     * note chỉ được cập nhật khi ảnh đã nằm trên đĩa.
+     */
     private void saveDrawing() {
         String title = titleField.getText().trim();
         if (title.isEmpty()) {
@@ -370,40 +375,66 @@ public class DrawScreen extends JPanel {
             return;
         }
 
-        try {
-            String base64Image = drawingPanel.getImageAsBase64("png");
+        Note note = currentDrawingNote;
+        BufferedImage image = drawingPanel.snapshotImage();
+        saveButton.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws IOException {
+                byte[] imageBytes = DrawingPanel.toImageBytes(image, "png");
+                return (imageBytes != null) ? controller.getNoteService().storeDrawingImage(imageBytes) : null;
+            }
 
-            boolean isNew = (currentDrawingNote.getId() == 0);
+            @Override
+            protected void done() {
+                saveButton.setEnabled(true);
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    applySavedDrawing(note, title, get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    cause.printStackTrace();
+                    JOptionPane.showMessageDialog(DrawScreen.this, "Lỗi khi lưu bản vẽ: " + cause.getMessage(), "Lỗi Lưu", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
 
-            currentDrawingNote.setTitle(title);
-            currentDrawingNote.setDrawingData(base64Image);
-            currentDrawingNote.setNoteType(Note.NoteType.DRAWING);
-            currentDrawingNote.setContent(null);
+    private void applySavedDrawing(Note note, String title, String drawingHash) {
+        try {
+            boolean isNew = (note.getId() == 0);
+
+            note.setTitle(title);
+            note.setDrawingHash(drawingHash);
+            note.setNoteType(Note.NoteType.DRAWING);
+            note.setContent(null);
 
             if (isNew) {
-                if (currentDrawingNote.getFolderId() <= 0 && controller.getCurrentFolder() != null) {
-                    currentDrawingNote.setFolder(controller.getCurrentFolder());
-                } else if (currentDrawingNote.getFolderId() <= 0) {
+                if (note.getFolderId() <= 0 && controller.getCurrentFolder() != null) {
+                    note.setFolder(controller.getCurrentFolder());
+                } else if (note.getFolderId() <= 0) {
                     Folder rootFolder = controller.getFolderByName("Root").orElse(null);
                     if (rootFolder != null) {
-                        currentDrawingNote.setFolder(rootFolder);
+                        note.setFolder(rootFolder);
                     } else {
                         JOptionPane.showMessageDialog(this, "Không thể xác định thư mục. Vui lòng tạo thư mục 'Root'.", "Lỗi Lưu", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
                 }
-                controller.addNote(currentDrawingNote);
+                controller.addNote(note);
             } else {
-                controller.updateExistingNote(currentDrawingNote.getId(), currentDrawingNote);
+                controller.updateExistingNote(note.getId(), note);
             }
 
+            // Người dùng đã rời màn hình trong lúc lưu thì không kéo họ về lại
+            if (note != currentDrawingNote || !isShowing()) return;
             String message = isNew ? "Bản vẽ '" + title + "' đã được lưu!" : "Bản vẽ '" + title + "' đã được cập nhật!";
             JOptionPane.showMessageDialog(this, message, "Thành Công", JOptionPane.INFORMATION_MESSAGE);
             mainFrame.showMainMenuScreen();
 
-        } catch (IOException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Lỗi khi lưu bản vẽ: " + e.getMessage(), "Lỗi Lưu", JOptionPane.ERROR_MESSAGE);
         } catch (Exception e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(this, "Đã xảy ra lỗi không mong muốn khi lưu: " + e.getMessage(), "Lỗi Lưu", JOptionPane.ERROR_MESSAGE);
@@ -528,23 +559,30 @@ public class DrawScreen extends JPanel {
             }
         }
 
-        public String getImageAsBase64(String formatName) throws IOException {
+        /**
+         * Bản chép của ảnh hiện tại (null nếu chưa vẽ gì), để mã hóa trên luồng khác trong khi vẫn vẽ tiếp được.
+         */
+        public BufferedImage snapshotImage() {
             if (canvasImage == null || !hasDrawingContent) return null;
+            return new BufferedImage(canvasImage.getColorModel(), canvasImage.copyData(null),
+                    canvasImage.isAlphaPremultiplied(), null);
+        }
+
+        public static byte[] toImageBytes(BufferedImage image, String formatName) throws IOException {
+            if (image == null) return null;
 
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(canvasImage, formatName, baos);
+            ImageIO.write(image, formatName, baos);
             byte[] imageBytes = baos.toByteArray();
-            return (imageBytes.length == 0) ? null : Base64.getEncoder().encodeToString(imageBytes);
+            return (imageBytes.length == 0) ? null : imageBytes;
         }
 
-        public void loadImageFromBase64(String base64Image) throws IOException {
-            if (base64Image == null || base64Image.isEmpty()) {
+        public void loadImage(InputStream imageStream) throws IOException {
+            if (imageStream == null) {
                 clearDrawing();
                 return;
             }
-            byte[] imageBytes = Base64.getDecoder().decode(base64Image);
-            ByteArrayInputStream bais = new ByteArrayInputStream(imageBytes);
-            BufferedImage loadedImage = ImageIO.read(bais);
+            BufferedImage loadedImage = ImageIO.read(imageStream);
 
             if (loadedImage != null) {
                 if (getWidth() <= 0 || getHeight() <= 0) {
@@ -559,7 +597,7 @@ public class DrawScreen extends JPanel {
                 hasDrawingContent = true;
                 repaint();
             } else {
-                throw new IOException("Không thể giải mã dữ liệu ảnh từ Base64.");
+                throw new IOException("Không thể giải mã dữ liệu ảnh PNG.");
             }
         }
     }
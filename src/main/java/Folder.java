@@ -64,6 +64,14 @@ public class Folder {
         }
     }
 
+    /**
+     * Thêm note mà không kiểm tra trùng; NoteManager đã biết note chưa có trong thư mục nhờ chỉ mục folder -> note.
+     */
+    void attachNote(Note note) {
+        getNotes().add(note);
+        note.setFolder(this);
+    }
+
     public void removeNote(Note note) {
         if (note != null) {
             getNotes().remove(note);
@@ -155,4 +163,14 @@ public class Folder {
     public void setFavorite(boolean favorite) {
         this.favorite = favorite;
     }
+
+    /**
+     * Bản sao tách rời (chỉ các trường được lưu) cho luồng ghi nền.
+     */
+    Folder snapshotCopy() {
+        Folder copy = new Folder(id, name);
+        copy.favorite = favorite;
+        copy.subFolderNames = new ArrayList<>(getSubFolderNames());
+        return copy;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,723 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongPredicate;
+
+/**
+ * Chỉ mục đảo ngược cho tìm kiếm toàn văn: từ (đã gập dấu) -&gt; tập ID note chứa từ đó trong tiêu đề,
+ * nội dung hoặc tên tag. Danh sách posting nằm trong bảng băm, còn một bản sắp xếp của từ điển
+ * (chỉ đổi khi có từ mới hoặc từ biến mất) giúp truy vấn tiền tố chỉ duyệt một đoạn liên tục.
+ * "ghi chu" khớp "Ghi chú" vì cả chỉ mục và truy vấn đều bỏ dấu tiếng Việt, đ -&gt; d và về chữ thường.
+ * Kèm theo là một {@link TrigramIndex} trên cùng văn bản đã gập cho tìm kiếm chuỗi con và một
+ * {@link FuzzyTitleIndex} trên các từ của tiêu đề và tên tag cho tìm kiếm gần đúng.
+ * Không tự đồng bộ: NoteManager đọc chỉ mục dưới khóa đọc và cập nhật dưới khóa ghi của riêng nó.
+ */
+class FullTextIndex {
+    // Từ quá dài (chuỗi base64, URL...) hầu như không bao giờ được gõ lại nên chỉ giữ phần đầu
+    private static final int MAX_TERM_LENGTH = 32;
+    // Các trường của note theo thứ tự trong văn bản đã gập
+    private static final int TITLE = 0;
+    private static final int CONTENT = 1;
+    private static final int TAGS = 2;
+    private static final int FIELDS = 3;
+    // Tham số BM25F: trọng số từng trường, độ bão hòa tần suất và mức chuẩn hóa theo độ dài
+    // (tiêu đề và tag vốn ngắn nên ít bị chuẩn hóa theo độ dài hơn nội dung)
+    private static final double[] FIELD_WEIGHTS = {5.0, 1.0, 3.0};
+    private static final double[] FIELD_B = {0.5, 0.75, 0.5};
+    private static final double K1 = 1.2;
+    // Từ trong note chỉ chứa (không trùng) từ truy vấn được tính một nửa điểm
+    private static final double PARTIAL_MATCH = 0.5;
+    // Kết quả đối chiếu một ứng viên với các từ của nó
+    private static final int NO_MATCH = 0;
+    private static final int MATCH = 1;
+    private static final int UNKNOWN = 2;
+    // Số ứng viên tối đa được kiểm tra trên văn bản thật trong một lần tìm chuỗi con
+    private static final int MAX_VERIFIED = 256;
+    // Bảng gập ký tự: chữ/số -> chữ thường không dấu, dấu kết hợp -> SKIP, ký tự khác -> SEPARATOR
+    private static final char SEPARATOR = 0;
+    private static final char SKIP = 1;
+    private static final char[] FOLD = buildFoldTable();
+
+    private final HashMap<String, LongIdSet> postings = new HashMap<>();
+    private final TreeSet<String> sortedTerms = new TreeSet<>();
+    // Các từ đã đánh chỉ mục của từng note (kèm tần suất theo trường để xếp hạng), để gỡ đúng các danh sách khi note bị sửa hoặc xóa
+    private final LongHashIndex<NoteTerms> termsOfNote = new LongHashIndex<>();
+    // Tổng số từ theo trường trên mọi note, để tính độ dài trung bình cho BM25
+    private final long[] totalLength = new long[FIELDS];
+    private final TrigramIndex trigrams = new TrigramIndex();
+    private final FuzzyTitleIndex titles = new FuzzyTitleIndex();
+
+    /**
+     * Đánh chỉ mục (lại) một note, chỉ cập nhật các danh sách có thay đổi.
+     */
+    void update(Note note) {
+        if (note.getId() == 0) return;
+        String content = note.peekContent();
+        List<String> tagNames = tagNamesOf(note);
+        put(note.getId(), documentText(note.getTitle(), content, tagNames),
+                fingerprint(note.getTitle(), note.getContentHash(), content, tagNames));
+    }
+
+    private void put(long noteId, String text, long fingerprint) {
+        // Văn bản đã gập nên tách từ chỉ còn là cắt theo khoảng trắng và ranh giới trường
+        HashMap<String, int[]> counts = new HashMap<>();
+        int[] lengths = new int[FIELDS];
+        int field = TITLE;
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : TrigramIndex.FIELD_BREAK;
+            if (c != ' ' && c != TrigramIndex.FIELD_BREAK) continue;
+            if (i > start) {
+                String term = text.substring(start, Math.min(i, start + MAX_TERM_LENGTH));
+                counts.computeIfAbsent(term, t -> new int[FIELDS])[field]++;
+                lengths[field]++;
+            }
+            start = i + 1;
+            if (c == TrigramIndex.FIELD_BREAK && field < TAGS) field++;
+        }
+        NoteTerms old = termsOfNote.get(noteId);
+        if (old != null) {
+            for (String term : old.terms) {
+                if (!counts.containsKey(term)) removePosting(term, noteId);
+            }
+            for (int f = 0; f < FIELDS; f++) totalLength[f] -= old.lengths[f];
+        }
+        List<String> titleWords = new ArrayList<>();
+        String[] terms = new String[counts.size()];
+        int[] frequencies = new int[terms.length];
+        int n = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            String term = entry.getKey();
+            LongIdSet ids = postings.get(term);
+            if (ids == null) {
+                ids = new LongIdSet();
+                postings.put(term, ids);
+                sortedTerms.add(term);
+            }
+            ids.add(noteId);
+            terms[n] = term;
+            frequencies[n++] = packFrequencies(entry.getValue());
+            if (entry.getValue()[TITLE] > 0 || entry.getValue()[TAGS] > 0) titleWords.add(term);
+        }
+        // Note không có từ nào vẫn được giữ lại để checkpoint biết nó đã được đánh chỉ mục
+        termsOfNote.put(noteId, new NoteTerms(terms, frequencies, lengths, fingerprint));
+        for (int f = 0; f < FIELDS; f++) totalLength[f] += lengths[f];
+        trigrams.put(noteId, text);
+        titles.put(noteId, titleWords);
+    }
+
+    /**
+     * Dựng chỉ mục từ ảnh chụp các note, chạy được trên luồng nền vì không chạm vào đối tượng Note.
+     */
+    static FullTextIndex build(List<Document> documents, NoteBodyStore bodyStore) {
+        FullTextIndex index = new FullTextIndex();
+        for (Document doc : documents) {
+            index.put(doc.id, doc.text(bodyStore), doc.fingerprint);
+        }
+        return index;
+    }
+
+    /**
+     * Số note trong ảnh chụp mà chỉ mục chưa có hoặc có với dấu vân tay khác, cộng số note chỉ mục có mà ảnh chụp không có.
+     */
+    int countStale(List<Document> documents) {
+        int stale = 0;
+        int current = 0;
+        for (Document doc : documents) {
+            NoteTerms indexed = termsOfNote.get(doc.id);
+            if (indexed == null || indexed.fingerprint != doc.fingerprint) {
+                stale++;
+            } else {
+                current++;
+            }
+        }
+        return stale + (termsOfNote.size() - current);
+    }
+
+    /**
+     * Đưa chỉ mục (nạp từ checkpoint) về đúng ảnh chụp: chỉ đọc nội dung và đánh chỉ mục lại các note đã đổi
+     * theo dấu vân tay, rồi gỡ các note không còn trong ảnh chụp.
+     *
+     * @return số note đã đánh chỉ mục lại hoặc gỡ bỏ
+     */
+    int replay(List<Document> documents, NoteBodyStore bodyStore) {
+        LongIdSet present = new LongIdSet(documents.size());
+        int changed = 0;
+        for (Document doc : documents) {
+            present.add(doc.id);
+            NoteTerms indexed = termsOfNote.get(doc.id);
+            if (indexed == null || indexed.fingerprint != doc.fingerprint) {
+                put(doc.id, doc.text(bodyStore), doc.fingerprint);
+                changed++;
+            }
+        }
+        LongIdSet removed = new LongIdSet();
+        termsOfNote.forEachEntry((noteTerms, id) -> {
+            if (!present.contains(id)) removed.add(id);
+        });
+        removed.forEach(this::remove);
+        return changed + removed.size();
+    }
+
+    /**
+     * Ghi chỉ mục vào ba segment (xem {@link SearchIndexStore}). Chỉ mục trigram được dồn lại trước khi ghi.
+     */
+    void write(SearchIndexStore.Output terms, SearchIndexStore.Output trigramSegment, SearchIndexStore.Output titleSegment) {
+        HashMap<String, Integer> ordinals = new HashMap<>(postings.size() * 2);
+        terms.varint(sortedTerms.size());
+        for (String term : sortedTerms) {
+            ordinals.put(term, ordinals.size());
+            terms.string(term);
+            terms.varint(postings.get(term).size());
+        }
+        terms.varint(termsOfNote.size());
+        termsOfNote.forEachEntry((noteTerms, id) -> {
+            terms.varint(id);
+            terms.fixed64(noteTerms.fingerprint);
+            for (int f = 0; f < FIELDS; f++) terms.varint(noteTerms.lengths[f]);
+            terms.varint(noteTerms.terms.length);
+            for (int i = 0; i < noteTerms.terms.length; i++) {
+                terms.varint(ordinals.get(noteTerms.terms[i]));
+                terms.varint(Integer.toUnsignedLong(noteTerms.frequencies[i]));
+            }
+        });
+        trigrams.write(trigramSegment);
+        titles.write(titleSegment);
+    }
+
+    /**
+     * Dựng lại chỉ mục từ ba segment do {@link #write} ghi. Danh sách posting của từ được suy ra từ các từ của
+     * từng note; mỗi từ chỉ có một đối tượng String dùng chung cho mọi note.
+     */
+    static FullTextIndex read(SearchIndexStore.Input terms, SearchIndexStore.Input trigramSegment, SearchIndexStore.Input titleSegment) throws IOException {
+        FullTextIndex index = new FullTextIndex();
+        int termCount = terms.count();
+        String[] dictionary = new String[termCount];
+        LongIdSet[] idsOfTerm = new LongIdSet[termCount];
+        for (int i = 0; i < termCount; i++) {
+            dictionary[i] = terms.string();
+            idsOfTerm[i] = new LongIdSet(terms.count());
+            index.postings.put(dictionary[i], idsOfTerm[i]);
+        }
+        index.sortedTerms.addAll(Arrays.asList(dictionary));
+        int noteCount = terms.count();
+        for (int n = 0; n < noteCount; n++) {
+            long id = terms.varint();
+            long fingerprint = terms.fixed64();
+            int[] lengths = new int[FIELDS];
+            for (int f = 0; f < FIELDS; f++) {
+                lengths[f] = (int) terms.varint();
+                index.totalLength[f] += lengths[f];
+            }
+            int count = terms.count();
+            String[] noteTerms = new String[count];
+            int[] frequencies = new int[count];
+            for (int i = 0; i < count; i++) {
+                int ordinal = terms.index(termCount);
+                noteTerms[i] = dictionary[ordinal];
+                frequencies[i] = (int) terms.varint();
+                idsOfTerm[ordinal].add(id);
+            }
+            index.termsOfNote.put(id, new NoteTerms(noteTerms, frequencies, lengths, fingerprint));
+        }
+        index.trigrams.read(trigramSegment);
+        index.titles.read(titleSegment);
+        return index;
+    }
+
+    void remove(long noteId) {
+        NoteTerms old = termsOfNote.remove(noteId);
+        if (old == null) return;
+        for (String term : old.terms) removePosting(term, noteId);
+        titles.remove(noteId);
+        for (int f = 0; f < FIELDS; f++) totalLength[f] -= old.lengths[f];
+        trigrams.remove(noteId);
+    }
+
+    void clear() {
+        postings.clear();
+        sortedTerms.clear();
+        termsOfNote.clear();
+        Arrays.fill(totalLength, 0);
+        trigrams.clear();
+        titles.clear();
+    }
+
+    int getTermCount() {
+        return postings.size();
+    }
+
+    /**
+     * Tìm các note chứa mọi từ trong truy vấn; mỗi từ của truy vấn được coi là tiền tố
+     * ("ghi ch" khớp "ghi chú"). Truy vấn không có từ nào trả về null để bên gọi hiểu là "không lọc".
+     */
+    LongIdSet searchWords(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) return null;
+        LongIdSet result = null;
+        for (String token : tokens) {
+            LongIdSet matches = matchPrefix(token);
+            result = result == null ? matches : LongIdSet.intersect(result, matches);
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+
+    /**
+     * Tìm kiếm chuỗi con với truy vấn đã gập bằng {@link #fold(String)}. Chỉ mục trigram cho tập ứng viên;
+     * các từ đã đánh chỉ mục của từng ứng viên loại bớt (hoặc khẳng định luôn, với truy vấn một từ) mà không
+     * phải đọc nội dung, phần còn lại mới được kiểm tra bằng {@code verifier} trên văn bản thật. Chỉ
+     * {@link #MAX_VERIFIED} ứng viên đầu được kiểm tra; các ứng viên sau đó đã chứa mọi từ của truy vấn nên
+     * được giữ mà không đọc nội dung, để một truy vấn phổ biến không kéo theo hàng nghìn lần đọc.
+     */
+    LongIdSet searchSubstring(String foldedQuery, LongPredicate verifier) {
+        return searchSubstring(foldedQuery, null, verifier);
+    }
+
+    /**
+     * Như {@link #searchSubstring(String, LongPredicate)} nhưng chỉ trong tập {@code within} (null = mọi note):
+     * ứng viên được giao với tập này trước khi kiểm tra, nên số note phải đọc nội dung không vượt quá nó.
+     */
+    LongIdSet searchSubstring(String foldedQuery, LongIdSet within, LongPredicate verifier) {
+        LongIdSet candidates = trigrams.candidates(foldedQuery);
+        if (candidates != null && within != null) {
+            candidates = LongIdSet.intersect(candidates, within);
+        }
+        if (candidates == null) {
+            // Truy vấn một hai ký tự không có khoảng trắng nên nằm gọn trong một từ: quét từ điển là đủ
+            List<LongIdSet> matches = new ArrayList<>();
+            int total = 0;
+            for (Map.Entry<String, LongIdSet> entry : postings.entrySet()) {
+                if (entry.getKey().contains(foldedQuery)) {
+                    matches.add(entry.getValue());
+                    total += entry.getValue().size();
+                }
+            }
+            LongIdSet matching = union(matches, total);
+            return within != null ? LongIdSet.intersect(matching, within) : matching;
+        }
+        // Mọi trigram của truy vấn 3 ký tự đều đã khớp nên không cần kiểm tra thêm
+        if (foldedQuery.length() == TrigramIndex.GRAM) return candidates;
+        String[] words = foldedQuery.split(" ");
+        LongIdSet result = new LongIdSet(candidates.size());
+        int[] verified = {0};
+        candidates.forEach(id -> {
+            NoteTerms noteTerms = termsOfNote.get(id);
+            int match = matchTerms(noteTerms != null ? noteTerms.terms : null, words);
+            if (match == MATCH || (match == UNKNOWN && (verified[0]++ >= MAX_VERIFIED || verifier.test(id)))) {
+                result.add(id);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Xếp hạng các note khớp theo BM25F trên các từ của truy vấn (tiêu đề nặng nhất, rồi tới tag, rồi nội dung)
+     * và chỉ giữ {@code k} note điểm cao nhất trong một heap có giới hạn, không sắp xếp toàn bộ tập khớp.
+     *
+     * @return ID theo điểm giảm dần; cùng điểm thì note mới hơn (ID lớn hơn) đứng trước
+     */
+    long[] rank(LongIdSet matches, String query, int k) {
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        int docs = Math.max(1, termsOfNote.size());
+        double[] averageLength = new double[FIELDS];
+        for (int f = 0; f < FIELDS; f++) {
+            averageLength[f] = Math.max(1.0, (double) totalLength[f] / docs);
+        }
+        TopK top = new TopK(Math.min(k, matches.size()));
+        matches.forEach(id -> top.offer(id, score(termsOfNote.get(id), words, docs, averageLength)));
+        return top.toSortedIds();
+    }
+
+    private double score(NoteTerms noteTerms, List<String> words, int docs, double[] averageLength) {
+        if (noteTerms == null) return 0;
+        double[] norm = new double[FIELDS];
+        for (int f = 0; f < FIELDS; f++) {
+            norm[f] = 1 - FIELD_B[f] + FIELD_B[f] * noteTerms.lengths[f] / averageLength[f];
+        }
+        double score = 0;
+        for (String word : words) {
+            // Mỗi từ truy vấn chỉ lấy từ khớp tốt nhất trong note, không cộng dồn mọi biến thể chứa nó
+            double best = 0;
+            for (int i = 0; i < noteTerms.terms.length; i++) {
+                String term = noteTerms.terms[i];
+                double match = term.equals(word) ? 1.0 : term.contains(word) ? PARTIAL_MATCH : 0;
+                if (match == 0) continue;
+                int frequencies = noteTerms.frequencies[i];
+                double tf = 0;
+                for (int f = 0; f < FIELDS; f++) {
+                    tf += FIELD_WEIGHTS[f] * frequency(frequencies, f) / norm[f];
+                }
+                LongIdSet ids = postings.get(term);
+                int df = ids != null ? ids.size() : 1;
+                double idf = Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+                best = Math.max(best, match * idf * tf / (K1 + tf));
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    // Tần suất theo trường gói trong một int: tiêu đề 6 bit, tag 6 bit, nội dung 20 bit (bão hòa ở giá trị lớn nhất)
+    private static int packFrequencies(int[] counts) {
+        return Math.min(counts[TITLE], 0x3F) << 26 | Math.min(counts[TAGS], 0x3F) << 20 | Math.min(counts[CONTENT], 0xFFFFF);
+    }
+
+    private static int frequency(int packed, int field) {
+        switch (field) {
+            case TITLE:
+                return packed >>> 26;
+            case TAGS:
+                return (packed >>> 20) & 0x3F;
+            default:
+                return packed & 0xFFFFF;
+        }
+    }
+
+    /**
+     * Đối chiếu truy vấn với các từ của note: truy vấn một từ phải nằm trong một từ nào đó; truy vấn nhiều từ
+     * thì từ đầu phải là đuôi, các từ giữa phải trùng và từ cuối phải là đầu của một từ trong note, còn việc
+     * chúng có đứng liền nhau hay không chỉ biết được khi đọc văn bản. Từ bị cắt ở {@link #MAX_TERM_LENGTH}
+     * thì không kết luận được gì.
+     */
+    private static int matchTerms(String[] terms, String[] words) {
+        if (terms == null) return NO_MATCH;
+        boolean truncated = false;
+        for (String term : terms) {
+            if (term.length() >= MAX_TERM_LENGTH) truncated = true;
+        }
+        if (words.length == 1) {
+            for (String term : terms) {
+                if (term.contains(words[0])) return MATCH;
+            }
+            return truncated ? UNKNOWN : NO_MATCH;
+        }
+        if (truncated) return UNKNOWN;
+        for (int w = 0; w < words.length; w++) {
+            boolean found = false;
+            for (String term : terms) {
+                if (w == 0 ? term.endsWith(words[w]) : w == words.length - 1 ? term.startsWith(words[w]) : term.equals(words[w])) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return NO_MATCH;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Tìm gần đúng (sai chính tả 1-2 ký tự) theo từ trong tiêu đề và tên tag, xem {@link FuzzyTitleIndex}.
+     */
+    LongIdSet searchTitlesFuzzy(String foldedQuery) {
+        return titles.search(foldedQuery);
+    }
+
+    /**
+     * Kiểm tra thật sự một note có chứa truy vấn đã gập trong tiêu đề, tên tag hoặc nội dung hay không.
+     * Nội dung đọc qua bộ đệm LRU nên các note vừa kiểm tra không phải đọc lại từ đĩa ở lần gõ tiếp theo;
+     * note không đọc được nội dung coi như không khớp.
+     */
+    static boolean containsFolded(Note note, String foldedQuery) {
+        if (titleOrTagsContainFolded(note, foldedQuery)) return true;
+        try {
+            return fold(note.getContent()).contains(foldedQuery);
+        } catch (UncheckedIOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Như {@link #containsFolded} nhưng chỉ xét tiêu đề và tên tag, không đọc nội dung.
+     */
+    static boolean titleOrTagsContainFolded(Note note, String foldedQuery) {
+        if (fold(note.getTitle()).contains(foldedQuery)) return true;
+        if (note.getTags() != null) {
+            for (Tag tag : note.getTags()) {
+                if (fold(tag.getName()).contains(foldedQuery)) return true;
+            }
+        }
+        return false;
+    }
+
+    private LongIdSet matchPrefix(String prefix) {
+        List<LongIdSet> matches = new ArrayList<>();
+        int total = 0;
+        for (String term : sortedTerms.subSet(prefix, prefix + Character.MAX_VALUE)) {
+            LongIdSet ids = postings.get(term);
+            matches.add(ids);
+            total += ids.size();
+        }
+        return union(matches, total);
+    }
+
+    // Luôn là tập mới: kết quả được dùng sau khi nhả khóa đọc của chỉ mục, không được trỏ vào danh sách posting
+    private static LongIdSet union(List<LongIdSet> matches, int total) {
+        LongIdSet union = new LongIdSet(total);
+        for (LongIdSet ids : matches) {
+            union.addAll(ids);
+        }
+        return union;
+    }
+
+    private void removePosting(String term, long noteId) {
+        LongIdSet ids = postings.get(term);
+        if (ids != null && ids.remove(noteId) && ids.isEmpty()) {
+            postings.remove(term);
+            sortedTerms.remove(term);
+        }
+    }
+
+    /**
+     * Gập văn bản như khi tách từ nhưng giữ lại khoảng cách giữa các từ: mỗi dãy ký tự không phải chữ/số
+     * thành đúng một khoảng trắng, bỏ khoảng trắng hai đầu. "Ghi  chú!" -&gt; "ghi chu".
+     */
+    static String fold(String text) {
+        if (text == null || text.isEmpty()) return "";
+        StringBuilder out = new StringBuilder(text.length());
+        fold(text, out);
+        return out.toString();
+    }
+
+    private static void fold(String text, StringBuilder out) {
+        int start = out.length();
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = FOLD[text.charAt(i)];
+            if (c == SKIP) {
+                continue;
+            }
+            if (c == SEPARATOR) {
+                space = true;
+            } else {
+                if (space && out.length() > start) out.append(' ');
+                space = false;
+                out.append(c);
+            }
+        }
+    }
+
+    // Các trường đã gập nối với nhau bằng ranh giới trường, để trigram và cụm từ không vắt từ trường này sang trường khác
+    private static String documentText(String title, String content, List<String> tagNames) {
+        StringBuilder out = new StringBuilder((title != null ? title.length() : 0) + (content != null ? content.length() : 0) + 16);
+        if (title != null) fold(title, out);
+        out.append(TrigramIndex.FIELD_BREAK);
+        if (content != null) fold(content, out);
+        for (String tagName : tagNames) {
+            out.append(TrigramIndex.FIELD_BREAK);
+            if (tagName != null) fold(tagName, out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Dấu vân tay (FNV-1a 64 bit) của phần văn bản được đánh chỉ mục: tiêu đề, nội dung và tên tag. Nội dung đã
+     * lưu được đại diện bằng mã băm của nó nên tính được mà không phải đọc file nội dung.
+     */
+    private static long fingerprint(String title, String contentHash, String content, List<String> tagNames) {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, title);
+        h = mix(h, contentHash != null ? "#" + contentHash : content);
+        for (String tagName : tagNames) h = mix(h, tagName);
+        return h;
+    }
+
+    private static long mix(long h, String s) {
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        }
+        // Ký tự kết thúc để ("ab", "c") khác ("a", "bc"); null khác chuỗi rỗng
+        h ^= s != null ? 0xFFFF : 0xFFFE;
+        return h * 0x100000001b3L;
+    }
+
+    private static List<String> tagNamesOf(Note note) {
+        List<String> names = new ArrayList<>();
+        if (note.getTags() != null) {
+            for (Tag tag : note.getTags()) names.add(tag.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Tách văn bản thành các từ đã gập: bỏ dấu, đ/Đ -&gt; d, chữ thường. Từ là dãy liên tiếp chữ cái hoặc chữ số.
+     * Văn bản ở dạng dựng sẵn (NFC) hay tổ hợp (NFD) đều cho cùng kết quả.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text != null) tokenize(text, tokens);
+        return tokens;
+    }
+
+    private static void tokenize(String text, Collection<String> tokens) {
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = FOLD[text.charAt(i)];
+            if (c == SKIP) {
+                continue;
+            }
+            if (c != SEPARATOR) {
+                if (current.length() < MAX_TERM_LENGTH) current.append(c);
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) tokens.add(current.toString());
+    }
+
+    // Tính một lần cho cả 65536 ký tự để tách từ chỉ còn là tra bảng, không phải chuẩn hóa cả văn bản
+    private static char[] buildFoldTable() {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            char c = (char) i;
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                table[i] = SKIP;
+            } else if (!Character.isLetterOrDigit(c)) {
+                table[i] = SEPARATOR;
+            } else if (c == 'đ' || c == 'Đ') {
+                table[i] = 'd';
+            } else {
+                table[i] = Character.toLowerCase(baseLetter(c));
+            }
+        }
+        return table;
+    }
+
+    // Chữ gốc khi bỏ dấu; chỉ bỏ khi phần còn lại toàn là dấu kết hợp (không tách âm tiết Hangul chẳng hạn)
+    private static char baseLetter(char c) {
+        if (c < 0x80) return c;
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        for (int i = 1; i < decomposed.length(); i++) {
+            if (Character.getType(decomposed.charAt(i)) != Character.NON_SPACING_MARK) return c;
+        }
+        char base = decomposed.charAt(0);
+        return Character.isLetterOrDigit(base) ? base : c;
+    }
+
+    private static final class NoteTerms {
+        final String[] terms;
+        final int[] frequencies;
+        final int[] lengths;
+        final long fingerprint;
+
+        NoteTerms(String[] terms, int[] frequencies, int[] lengths, long fingerprint) {
+            this.terms = terms;
+            this.frequencies = frequencies;
+            this.lengths = lengths;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Heap nhỏ nhất có giới hạn: phần tử gốc là note kém nhất đang được giữ, note mới chỉ vào heap khi hơn nó.
+     */
+    private static final class TopK {
+        private final long[] ids;
+        private final double[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            ids = new long[capacity];
+            scores = new double[capacity];
+        }
+
+        void offer(long id, double score) {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (size > 0 && worse(ids[0], scores[0], id, score)) {
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        long[] toSortedIds() {
+            long[] result = new long[size];
+            // Lấy dần phần tử kém nhất ra khỏi heap và điền từ cuối mảng lên
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = ids[0];
+                size--;
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private static boolean worse(long idA, double scoreA, long idB, double scoreB) {
+            return scoreA < scoreB || (scoreA == scoreB && idA < idB);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!worse(ids[i], scores[i], ids[parent], scores[parent])) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && worse(ids[left], scores[left], ids[smallest], scores[smallest])) smallest = left;
+                if (right < size && worse(ids[right], scores[right], ids[smallest], scores[smallest])) smallest = right;
+                if (smallest == i) return;
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    /**
+     * Ảnh chụp phần văn bản của một note, lấy trên luồng sửa note để luồng nền dựng chỉ mục một cách an toàn.
+     * Nội dung chưa nạp chỉ giữ mã băm; blob trong NoteBodyStore không bao giờ bị sửa nên đọc ở luồng nào cũng được.
+     */
+    static final class Document {
+        final long id;
+        final String title;
+        final String content;
+        final String contentHash;
+        final List<String> tagNames;
+        final long fingerprint;
+
+        Document(Note note) {
+            this.id = note.getId();
+            this.title = note.getTitle();
+            this.content = note.isContentLoaded() ? note.getContent() : null;
+            this.contentHash = note.getContentHash();
+            this.tagNames = tagNamesOf(note);
+            this.fingerprint = FullTextIndex.fingerprint(title, contentHash, content, tagNames);
+        }
+
+        String text(NoteBodyStore bodyStore) {
+            String body = content != null ? content : (contentHash != null ? bodyStore.peek(contentHash) : null);
+            return documentText(title, body, tagNames);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Chỉ mục tìm gần đúng trên các từ (đã gập) của tiêu đề và tên tag, theo kiểu "symmetric delete":
+ * mỗi từ được đăng ký dưới mọi biến thể xóa bớt tối đa {@link #editsFor(int)} ký tự. Hai từ cách nhau
+ * không quá d phép sửa thì luôn có chung một biến thể xóa không quá d ký tự, nên tra các biến thể của
+ * từ truy vấn cho đủ ứng viên, rồi chỉ cần tính khoảng cách thật cho số ít ứng viên đó.
+ */
+class FuzzyTitleIndex {
+    private static final String[] NO_WORDS = new String[0];
+
+    private final HashMap<String, LongIdSet> notesByWord = new HashMap<>();
+    // Mã băm 64 bit của biến thể xóa -> từ sinh ra nó (String) hoặc các từ (String[]). Không giữ chuỗi biến thể:
+    // hai biến thể trùng mã băm chỉ thêm ứng viên, mà ứng viên nào cũng được tính khoảng cách thật
+    private final LongHashIndex<Object> wordsByDelete = new LongHashIndex<>();
+    private final TreeSet<String> sortedWords = new TreeSet<>();
+    private final LongHashIndex<String[]> wordsOfNote = new LongHashIndex<>();
+
+    /**
+     * Số phép sửa cho phép theo độ dài từ: từ một hai ký tự phải khớp đúng, tới 5 ký tự được sai 1, dài hơn được sai 2.
+     */
+    static int editsFor(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    void put(long noteId, Collection<String> words) {
+        String[] old = wordsOfNote.get(noteId);
+        if (old != null) {
+            for (String word : old) {
+                if (!words.contains(word)) removeWord(word, noteId);
+            }
+        }
+        for (String word : words) {
+            LongIdSet ids = notesByWord.get(word);
+            if (ids == null) {
+                ids = new LongIdSet();
+                notesByWord.put(word, ids);
+                sortedWords.add(word);
+                for (String variant : deletes(word, editsFor(word.length()))) {
+                    long key = hash(variant);
+                    wordsByDelete.put(key, withOwner(wordsByDelete.get(key), word));
+                }
+            }
+            ids.add(noteId);
+        }
+        if (!words.isEmpty()) {
+            wordsOfNote.put(noteId, words.toArray(NO_WORDS));
+        } else {
+            wordsOfNote.remove(noteId);
+        }
+    }
+
+    void remove(long noteId) {
+        String[] old = wordsOfNote.remove(noteId);
+        if (old == null) return;
+        for (String word : old) removeWord(word, noteId);
+    }
+
+    void clear() {
+        notesByWord.clear();
+        wordsByDelete.clear();
+        sortedWords.clear();
+        wordsOfNote.clear();
+    }
+
+    /**
+     * Ghi vào segment: các từ (kèm số note có từ đó), từ của từng note, rồi bảng biến thể xóa; từ được ghi một lần
+     * và về sau chỉ nhắc đến bằng số thứ tự, nên nạp lại không phải sinh lại các biến thể.
+     */
+    void write(SearchIndexStore.Output out) {
+        HashMap<String, Integer> ordinals = new HashMap<>(sortedWords.size() * 2);
+        out.varint(sortedWords.size());
+        for (String word : sortedWords) {
+            ordinals.put(word, ordinals.size());
+            out.string(word);
+            out.varint(notesByWord.get(word).size());
+        }
+        out.varint(wordsOfNote.size());
+        wordsOfNote.forEachEntry((words, id) -> {
+            out.varint(id);
+            out.varint(words.length);
+            for (String word : words) out.varint(ordinals.get(word));
+        });
+        out.varint(wordsByDelete.size());
+        wordsByDelete.forEachEntry((owners, key) -> {
+            out.fixed64(key);
+            if (owners instanceof String) {
+                out.varint(1);
+                out.varint(ordinals.get(owners));
+            } else {
+                String[] words = (String[]) owners;
+                out.varint(words.length);
+                for (String word : words) out.varint(ordinals.get(word));
+            }
+        });
+    }
+
+    /**
+     * Nạp lại chỉ mục rỗng này từ segment do {@link #write} ghi.
+     */
+    void read(SearchIndexStore.Input in) throws IOException {
+        clear();
+        int wordCount = in.count();
+        String[] dictionary = new String[wordCount];
+        LongIdSet[] idsOfWord = new LongIdSet[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            dictionary[i] = in.string();
+            idsOfWord[i] = new LongIdSet(in.count());
+            notesByWord.put(dictionary[i], idsOfWord[i]);
+        }
+        sortedWords.addAll(Arrays.asList(dictionary));
+        int noteCount = in.count();
+        for (int n = 0; n < noteCount; n++) {
+            long id = in.varint();
+            String[] words = new String[in.count()];
+            for (int i = 0; i < words.length; i++) {
+                int ordinal = in.index(wordCount);
+                words[i] = dictionary[ordinal];
+                idsOfWord[ordinal].add(id);
+            }
+            wordsOfNote.put(id, words);
+        }
+        int variantCount = in.count();
+        for (int v = 0; v < variantCount; v++) {
+            long key = in.fixed64();
+            int owners = in.count();
+            if (owners == 1) {
+                wordsByDelete.put(key, dictionary[in.index(wordCount)]);
+            } else {
+                String[] words = new String[owners];
+                for (int i = 0; i < owners; i++) words[i] = dictionary[in.index(wordCount)];
+                wordsByDelete.put(key, words);
+            }
+        }
+    }
+
+    /**
+     * Các note có mỗi từ của truy vấn (đã gập) khớp gần đúng một từ trong tiêu đề hoặc tên tag.
+     * Từ cuối cùng còn khớp như tiền tố, vì người dùng có thể đang gõ dở.
+     */
+    LongIdSet search(String foldedQuery) {
+        String[] queryWords = foldedQuery.split(" ");
+        LongIdSet result = null;
+        for (int i = 0; i < queryWords.length; i++) {
+            Set<String> matches = similarWords(queryWords[i]);
+            if (i == queryWords.length - 1) {
+                matches.addAll(sortedWords.subSet(queryWords[i], queryWords[i] + Character.MAX_VALUE));
+            }
+            LongIdSet ids = new LongIdSet();
+            for (String word : matches) ids.addAll(notesByWord.get(word));
+            result = result == null ? ids : LongIdSet.intersect(result, ids);
+            if (result.isEmpty()) break;
+        }
+        return result != null ? result : new LongIdSet();
+    }
+
+    private Set<String> similarWords(String word) {
+        Set<String> result = new HashSet<>();
+        int maxEdits = editsFor(word.length());
+        for (String variant : deletes(word, maxEdits)) {
+            Object owners = wordsByDelete.get(hash(variant));
+            if (owners instanceof String) {
+                addIfSimilar(result, word, (String) owners, maxEdits);
+            } else if (owners != null) {
+                for (String candidate : (String[]) owners) addIfSimilar(result, word, candidate, maxEdits);
+            }
+        }
+        return result;
+    }
+
+    private static void addIfSimilar(Set<String> result, String word, String candidate, int maxEdits) {
+        int allowed = Math.min(maxEdits, editsFor(candidate.length()));
+        if (!result.contains(candidate) && distance(word, candidate, allowed) <= allowed) {
+            result.add(candidate);
+        }
+    }
+
+    private void removeWord(String word, long noteId) {
+        LongIdSet ids = notesByWord.get(word);
+        if (ids == null || !ids.remove(noteId) || !ids.isEmpty()) return;
+        notesByWord.remove(word);
+        sortedWords.remove(word);
+        for (String variant : deletes(word, editsFor(word.length()))) {
+            long key = hash(variant);
+            Object rest = withoutOwner(wordsByDelete.get(key), word);
+            if (rest == null) {
+                wordsByDelete.remove(key);
+            } else {
+                wordsByDelete.put(key, rest);
+            }
+        }
+    }
+
+    // Bản thân từ cùng mọi biến thể xóa bớt 1..maxEdits ký tự
+    private static Set<String> deletes(String word, int maxEdits) {
+        Set<String> result = new HashSet<>();
+        result.add(word);
+        List<String> frontier = new ArrayList<>(result);
+        for (int edits = 0; edits < maxEdits; edits++) {
+            List<String> next = new ArrayList<>();
+            for (String s : frontier) {
+                for (int i = 0; i < s.length(); i++) {
+                    String variant = s.substring(0, i) + s.substring(i + 1);
+                    if (result.add(variant)) next.add(variant);
+                }
+            }
+            frontier = next;
+        }
+        return result;
+    }
+
+    /**
+     * Khoảng cách Damerau-Levenshtein (bản "optimal string alignment": thêm, xóa, thay, đổi chỗ hai ký tự kề nhau).
+     * Dừng sớm và trả về limit + 1 khi cả một hàng đã vượt limit.
+     */
+    static int distance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) return limit + 1;
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > limit) return limit + 1;
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+
+    private static Object withOwner(Object owners, String word) {
+        if (owners == null) return word;
+        if (owners instanceof String) return owners.equals(word) ? owners : new String[]{(String) owners, word};
+        String[] words = (String[]) owners;
+        for (String w : words) {
+            if (w.equals(word)) return owners;
+        }
+        String[] result = Arrays.copyOf(words, words.length + 1);
+        result[words.length] = word;
+        return result;
+    }
+
+    private static Object withoutOwner(Object owners, String word) {
+        if (owners == null || owners instanceof String) return word.equals(owners) ? null : owners;
+        String[] words = (String[]) owners;
+        int n = 0;
+        String[] rest = new String[words.length];
+        for (String w : words) {
+            if (!w.equals(word)) rest[n++] = w;
+        }
+        return n == 1 ? rest[0] : Arrays.copyOf(rest, n);
+    }
+
+    // FNV-1a 64 bit; 0 là ô trống của LongHashIndex nên được đổi thành 1
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h != 0 ? h : 1;
+    }
+}
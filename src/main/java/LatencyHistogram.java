@@ -0,0 +1,82 @@
+import java.util.Arrays;
+
+/**
+ * Histogram độ trễ theo micro giây với bucket log-tuyến tính: mỗi lũy thừa của 2 chia thành 16 bucket nên
+ * phân vị sai lệch tối đa khoảng 6%, bộ nhớ cố định dù ghi bao nhiêu giá trị. Giá trị âm được tính là 0.
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_COUNT];
+    private long total;
+    private long max;
+    private long sum;
+
+    synchronized void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[bucketOf(value)]++;
+        total++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    synchronized long count() {
+        return total;
+    }
+
+    synchronized long max() {
+        return max;
+    }
+
+    synchronized double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Cận trên của bucket chứa phân vị p (0-100), không vượt quá giá trị lớn nhất đã ghi.
+     */
+    synchronized long percentile(double p) {
+        if (p < 0 || p > 100) throw new IllegalArgumentException("Phân vị phải trong [0, 100]: " + p);
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, upperBoundOf(i));
+        }
+        return max;
+    }
+
+    synchronized void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    /**
+     * Tóm tắt một dòng, đơn vị mili giây.
+     */
+    synchronized String summary() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                total, mean() / 1000.0, percentile(50) / 1000.0, percentile(90) / 1000.0,
+                percentile(99) / 1000.0, percentile(99.9) / 1000.0, max / 1000.0);
+    }
+
+    // Giá trị nhỏ hơn SUB_COUNT có bucket riêng; còn lại theo bậc lũy thừa 2 và SUB_BITS bit kế tiếp
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        long lower = (1L << exponent) | (sub << (exponent - SUB_BITS));
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Bảng băm địa chỉ mở (dò tuyến tính) với khóa long nguyên thủy, không tạo đối tượng Long khi tra cứu.
+ * Khóa 0 được dùng làm ô trống nên không thể lưu: ID 0 nghĩa là đối tượng chưa được gán ID.
+ * Không đồng bộ; NoteManager giữ nó song song với danh sách tương ứng.
+ */
+class LongHashIndex<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int resizeAt;
+
+    LongHashIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    LongHashIndex(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (key == 0) return null;
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return (V) values[i];
+            if (k == 0) return null;
+        }
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return giá trị cũ của khóa, hoặc null
+     */
+    V put(long key, V value) {
+        return insert(key, value, true);
+    }
+
+    /**
+     * Chỉ thêm khi khóa chưa có; dùng khi dựng lại chỉ mục để giữ phần tử đầu tiên như khi quét danh sách.
+     */
+    V putIfAbsent(long key, V value) {
+        return insert(key, value, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (key == 0) return null;
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == 0) return null;
+            i = (i + 1) & mask;
+        }
+        V previous = (V) values[i];
+        // Dời các phần tử phía sau lên để chuỗi dò không bị đứt (không cần đánh dấu "đã xóa")
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        size--;
+        return previous;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) action.accept((V) values[i]);
+        }
+    }
+
+    /**
+     * Duyệt mọi cặp (giá trị, khóa) theo thứ tự ô trong bảng.
+     */
+    @SuppressWarnings("unchecked")
+    void forEachEntry(ObjLongConsumer<V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) action.accept((V) values[i], keys[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(long key, V value, boolean replace) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Không thể đánh chỉ mục cho ID 0.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Giá trị chỉ mục không được null.");
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                if (replace) values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == 0) continue;
+            int i = slot(k, mask);
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = k;
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        resizeAt = capacity / 2;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < expectedSize) capacity <<= 1;
+        return capacity;
+    }
+
+    // ID tăng dần liên tiếp nên cần trộn bit để tránh cụm dài khi dò tuyến tính
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
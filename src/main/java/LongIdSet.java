@@ -0,0 +1,138 @@
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Tập ID long nguyên thủy (địa chỉ mở, dò tuyến tính), gọn hơn nhiều so với HashSet&lt;Long&gt;.
+ * Cũng như {@link LongHashIndex}, ID 0 dùng làm ô trống nên không thể thêm vào tập.
+ */
+class LongIdSet {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private int size;
+
+    LongIdSet() {
+        keys = new long[MIN_CAPACITY];
+    }
+
+    LongIdSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < expectedSize) capacity <<= 1;
+        keys = new long[capacity];
+    }
+
+    boolean add(long id) {
+        if (id == 0) {
+            throw new IllegalArgumentException("Không thể thêm ID 0 vào tập.");
+        }
+        int mask = keys.length - 1;
+        int i = slot(id, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == id) return false;
+            i = (i + 1) & mask;
+        }
+        keys[i] = id;
+        if (++size > keys.length / 2) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    boolean contains(long id) {
+        if (id == 0) return false;
+        int mask = keys.length - 1;
+        for (int i = slot(id, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == id) return true;
+            if (keys[i] == 0) return false;
+        }
+    }
+
+    boolean remove(long id) {
+        if (id == 0) return false;
+        int mask = keys.length - 1;
+        int i = slot(id, mask);
+        while (keys[i] != id) {
+            if (keys[i] == 0) return false;
+            i = (i + 1) & mask;
+        }
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                gap = j;
+            }
+        }
+        keys[gap] = 0;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    void addAll(LongIdSet other) {
+        for (long id : other.keys) {
+            if (id != 0) add(id);
+        }
+    }
+
+    void forEach(LongConsumer action) {
+        for (long id : keys) {
+            if (id != 0) action.accept(id);
+        }
+    }
+
+    /**
+     * Giao của hai tập; duyệt tập nhỏ hơn và tra trong tập lớn hơn.
+     */
+    static LongIdSet intersect(LongIdSet a, LongIdSet b) {
+        LongIdSet small = a.size <= b.size ? a : b;
+        LongIdSet large = small == a ? b : a;
+        LongIdSet result = new LongIdSet(small.size);
+        for (long id : small.keys) {
+            if (id != 0 && large.contains(id)) result.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * Các ID theo thứ tự tăng dần (cũng là thứ tự tạo note).
+     */
+    long[] toSortedArray() {
+        long[] result = new long[size];
+        int n = 0;
+        for (long id : keys) {
+            if (id != 0) result[n++] = id;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        keys = new long[capacity];
+        int mask = capacity - 1;
+        for (long id : old) {
+            if (id == 0) continue;
+            int i = slot(id, mask);
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = id;
+        }
+    }
+
+    private static int slot(long id, int mask) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Ánh xạ khóa long (không âm) -&gt; đối tượng mà các phiên bản liên tiếp dùng chung cấu trúc, để NoteManager công
+ * bố chỉ mục ID cho người đọc không khóa giống {@link NoteSnapshot}: phiên bản đã lấy không bao giờ đổi dưới tay
+ * người đọc. Đây là trie cơ số 64 trên các bit của khóa, cao vừa đủ cho khóa lớn nhất; mỗi nút giữ bitmap 64 bit
+ * các nhánh có mặt và một mảng gọn chỉ gồm các nhánh đó, nên ID liên tiếp hay thưa đều không tốn chỗ.
+ * <p>
+ * Mỗi lần sửa nhận một đối tượng {@code edit} của bên ghi: nút (và chính trie) đã thuộc lần sửa đó được sửa tại
+ * chỗ, nút của phiên bản cũ thì được chép trên đường đi xuống. Một lượt nhiều thay đổi dưới cùng một edit (dựng
+ * chỉ mục khi khởi động, một nhóm thay đổi) nhờ vậy chỉ chép mỗi nút một lần. Bên ghi phải đổi edit trước khi công
+ * bố phiên bản cho người đọc, sau đó phiên bản đó không còn bị sửa nữa.
+ */
+final class LongIdTrie<V> {
+    private static final int BITS = 6;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object[] NO_CHILDREN = new Object[0];
+    private static final LongIdTrie<Object> EMPTY = new LongIdTrie<>(null, 0, 0, null);
+
+    private Node root;
+    // Số bit phải dịch ở tầng gốc; tầng lá là 0
+    private int shift;
+    private int size;
+    private final Object edit;
+
+    private LongIdTrie(Node root, int shift, int size, Object edit) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+        this.edit = edit;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> LongIdTrie<V> empty() {
+        return (LongIdTrie<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (root == null || key < 0 || (key >>> shift) >>> BITS != 0) return null;
+        Node node = root;
+        for (int s = shift; ; s -= BITS) {
+            long bit = 1L << ((key >>> s) & MASK);
+            if ((node.bitmap & bit) == 0) return null;
+            Object child = node.children[Long.bitCount(node.bitmap & (bit - 1))];
+            if (s == 0) return (V) child;
+            node = (Node) child;
+        }
+    }
+
+    /**
+     * @return phiên bản có {@code key -> value}; là chính trie này nếu nó đã thuộc lần sửa {@code edit}
+     */
+    LongIdTrie<V> put(long key, V value, Object edit) {
+        if (key < 0 || value == null) {
+            throw new IllegalArgumentException("Khóa phải không âm và giá trị không được null: " + key);
+        }
+        LongIdTrie<V> trie = editable(edit);
+        trie.insert(key, value);
+        return trie;
+    }
+
+    /**
+     * @return phiên bản không còn {@code key}; là chính trie này nếu khóa vốn không có
+     */
+    LongIdTrie<V> remove(long key, Object edit) {
+        if (get(key) == null) return this;
+        LongIdTrie<V> trie = editable(edit);
+        trie.delete(key);
+        return trie;
+    }
+
+    /**
+     * Duyệt các giá trị theo thứ tự khóa tăng dần.
+     */
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<V> action) {
+        if (root != null) forEachValue(root, shift, (Consumer<Object>) action);
+    }
+
+    private static void forEachValue(Node node, int s, Consumer<Object> action) {
+        for (Object child : node.children) {
+            if (s == 0) action.accept(child); else forEachValue((Node) child, s - BITS, action);
+        }
+    }
+
+    private LongIdTrie<V> editable(Object edit) {
+        if (edit != null && this.edit == edit) return this;
+        return new LongIdTrie<>(root, shift, size, edit);
+    }
+
+    private void insert(long key, Object value) {
+        // Thêm tầng phía trên gốc cho tới khi khóa nằm trong tầm của trie
+        while ((key >>> shift) >>> BITS != 0) {
+            if (root != null) root = new Node(edit, 1L, new Object[]{root});
+            shift += BITS;
+        }
+        root = root == null ? new Node(edit, 0, NO_CHILDREN) : root.editable(edit);
+        Node node = root;
+        for (int s = shift; ; s -= BITS) {
+            long bit = 1L << ((key >>> s) & MASK);
+            int pos = Long.bitCount(node.bitmap & (bit - 1));
+            if ((node.bitmap & bit) == 0) {
+                Object child = s == 0 ? value : new Node(edit, 0, NO_CHILDREN);
+                node.insertChild(bit, pos, child);
+                if (s == 0) {
+                    size++;
+                    return;
+                }
+                node = (Node) child;
+            } else if (s == 0) {
+                node.children[pos] = value;
+                return;
+            } else {
+                Node child = ((Node) node.children[pos]).editable(edit);
+                node.children[pos] = child;
+                node = child;
+            }
+        }
+    }
+
+    // Khóa chắc chắn có mặt; nhánh rỗng sau khi xóa được gỡ khỏi nút cha
+    private void delete(long key) {
+        Node[] path = new Node[shift / BITS + 1];
+        root = root.editable(edit);
+        Node node = root;
+        int depth = 0;
+        for (int s = shift; s > 0; s -= BITS) {
+            path[depth++] = node;
+            long bit = 1L << ((key >>> s) & MASK);
+            int pos = Long.bitCount(node.bitmap & (bit - 1));
+            Node child = ((Node) node.children[pos]).editable(edit);
+            node.children[pos] = child;
+            node = child;
+        }
+        path[depth] = node;
+        for (int level = depth, s = 0; level >= 0; level--, s += BITS) {
+            Node current = path[level];
+            current.removeChild(1L << ((key >>> s) & MASK));
+            if (current.bitmap != 0) break;
+            if (level == 0) root = null;
+        }
+        size--;
+    }
+
+    private static final class Node {
+        private final Object edit;
+        private long bitmap;
+        private Object[] children;
+
+        Node(Object edit, long bitmap, Object[] children) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        Node editable(Object edit) {
+            return edit != null && this.edit == edit ? this : new Node(edit, bitmap, children.clone());
+        }
+
+        void insertChild(long bit, int pos, Object child) {
+            Object[] grown = new Object[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, pos);
+            grown[pos] = child;
+            System.arraycopy(children, pos, grown, pos + 1, children.length - pos);
+            children = grown;
+            bitmap |= bit;
+        }
+
+        void removeChild(long bit) {
+            int pos = Long.bitCount(bitmap & (bit - 1));
+            Object[] shrunk = Arrays.copyOf(children, children.length - 1);
+            System.arraycopy(children, pos + 1, shrunk, pos, children.length - pos - 1);
+            children = shrunk;
+            bitmap &= ~bit;
+        }
+    }
+}
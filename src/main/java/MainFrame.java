@@ -271,11 +271,10 @@ public class MainFrame extends JFrame {
     }
 
 
+    // Các màn hình tự cập nhật theo thay đổi dữ liệu nên chuyển màn hình không phải dựng lại danh sách
     public void showMainMenuScreen() {
         showScreen("Notes");
-        if (mainMenuScreen != null) {
-            mainMenuScreen.refresh();
-        } else if (this.controller == null) {
+        if (mainMenuScreen == null && this.controller == null) {
             cardLayout.show(contentPanel, "ErrorScreen");
         }
     }
@@ -283,7 +282,7 @@ public class MainFrame extends JFrame {
     public void showMissionsScreen() {
         showScreen("Missions");
         if (missionScreen != null) {
-            missionScreen.refreshMissions();
+            missionScreen.updateMissions();
         }
     }
 
@@ -304,6 +303,7 @@ public class MainFrame extends JFrame {
                     if (manager != null) {
                         System.out.println("[MainFrame confirmAndExit] Đang lưu dữ liệu cuối cùng...");
                         manager.saveData();
+                        manager.flushData();
                     } else {
                         System.err.println("[MainFrame confirmAndExit] Lỗi: NoteManager là null, không thể lưu dữ liệu khi thoát.");
                     }
@@ -368,9 +368,6 @@ public class MainFrame extends JFrame {
                 String name = JOptionPane.showInputDialog(MainFrame.this, "Enter folder name:");
                 if (name != null && !name.trim().isEmpty()) {
                     controller.addNewFolder(name.trim());
-                    if (mainMenuScreen != null && mainMenuScreen.isShowing()) {
-                        mainMenuScreen.refreshFolderPanel();
-                    }
                 }
             }
         });
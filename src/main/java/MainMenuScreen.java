@@ -1,17 +1,22 @@
 import javax.swing.*;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class MainMenuScreen extends JPanel {
@@ -21,18 +26,30 @@ public class MainMenuScreen extends JPanel {
     private static final String ADD_NOTE_LABEL = "Thêm ghi chú";
     private static final String ADD_DRAW_PANEL_LABEL = "Thêm Bản Vẽ";
     private static final String REFRESH_LABEL = "Làm mới";
-    private static final String TITLE_SEARCH_PLACEHOLDER = "Tìm theo tiêu đề...";
-    private static final String TAG_SEARCH_PLACEHOLDER = "Tìm theo tag...";
+    private static final String DATA_LABEL = "Dữ liệu";
+    private static final String SEARCH_PLACEHOLDER = "Tìm kiếm (tag: folder: is: due<)...";
+    // Một khung có nhiều thay đổi hơn thế này thì dựng lại bảng nhanh hơn vá từng dòng
+    private static final int NOTE_PATCH_LIMIT = 500;
+    // Kết quả tìm kiếm được xếp hạng và nạp từng trang khi cuộn gần cuối bảng
+    private static final int SEARCH_PAGE_SIZE = 200;
+    private static final String INDEXING_LABEL = "Đang lập chỉ mục…";
+    // Root luôn đứng đầu danh sách thư mục, các thư mục khác theo thứ tự này
+    private static final Comparator<Folder> FOLDER_ORDER = Comparator.comparing(Folder::isFavorite, Comparator.reverseOrder())
+            .thenComparing(Folder::getName, String.CASE_INSENSITIVE_ORDER);
 
     private final NoteController controller;
     private final MainFrame mainFrame;
     private JPanel folderPanel;
     private JTable noteTable;
-    private JTextField titleSearchField;
-    private JTextField tagSearchField;
+    private JTextField searchField;
+    private JCheckBox fuzzySearchCheckBox;
+    // Báo kết quả tìm kiếm tạm thời chỉ xét tiêu đề và tag vì chỉ mục toàn văn chưa sẵn sàng
+    private JLabel indexingLabel;
     private JList<Folder> folderList;
     private DefaultListModel<Folder> folderListModel;
     private List<Note> filteredNotes;
+    // Ô tìm kiếm đang có truy vấn và còn trang kết quả chưa nạp
+    private boolean searchHasMore;
     private ImageIcon[] hourIcons;
     private ListSelectionListener folderListSelectionHandler;
 
@@ -42,6 +59,10 @@ public class MainMenuScreen extends JPanel {
         loadAlarmIcons();
         initializeUI();
         setupShortcuts();
+        if (controller != null) {
+            controller.addChangeListener(this::applyChanges);
+            controller.addTextIndexListener(() -> SwingUtilities.invokeLater(this::textIndexReady));
+        }
     }
 
     private void loadAlarmIcons() {
@@ -110,6 +131,7 @@ public class MainMenuScreen extends JPanel {
                     Folder folder = (Folder) value;
                     StringBuilder displayText = new StringBuilder(folder.getName());
                     if (folder.isFavorite()) displayText.append(" ★");
+                    displayText.append(" (").append(controller.countNotesInFolder(folder)).append(")");
                     setText(displayText.toString());
                     setBorder(BorderFactory.createEmptyBorder(3, 5, 3, 5));
                 }
@@ -181,8 +203,7 @@ public class MainMenuScreen extends JPanel {
 
         List<Folder> otherFolders = foldersFromController.stream()
                 .filter(f -> rootFolder == null || f.getId() != rootFolder.getId())
-                .sorted(Comparator.comparing(Folder::isFavorite, Comparator.reverseOrder())
-                        .thenComparing(Folder::getName, String.CASE_INSENSITIVE_ORDER))
+                .sorted(FOLDER_ORDER)
                 .collect(Collectors.toList());
 
         for (Folder folder : otherFolders) {
@@ -242,7 +263,6 @@ public class MainMenuScreen extends JPanel {
                 String newName = JOptionPane.showInputDialog(mainFrame, "Nhập tên thư mục mới:", folder.getName());
                 if (newName != null && !newName.trim().isEmpty() && controller != null) {
                     controller.renameFolder(folder, newName.trim());
-                    refreshFolderPanel();
                 }
             });
             popup.add(renameItem);
@@ -251,7 +271,6 @@ public class MainMenuScreen extends JPanel {
             favoriteItem.addActionListener(ev -> {
                 if (controller != null) {
                     controller.setFolderFavorite(folder, !folder.isFavorite());
-                    refreshFolderPanel();
                 }
             });
             popup.add(favoriteItem);
@@ -260,8 +279,6 @@ public class MainMenuScreen extends JPanel {
             deleteItem.addActionListener(ev -> {
                 if (controller != null) {
                     controller.deleteFolder(folder);
-                    refreshFolderPanel();
-                    populateNoteTableModel();
                 }
             });
             popup.add(deleteItem);
@@ -277,7 +294,6 @@ public class MainMenuScreen extends JPanel {
             String name = JOptionPane.showInputDialog(mainFrame, "Nhập tên thư mục:");
             if (name != null && !name.trim().isEmpty() && controller != null) {
                 controller.addNewFolder(name.trim());
-                refreshFolderPanel();
             }
         });
         return addFolderButton;
@@ -292,6 +308,13 @@ public class MainMenuScreen extends JPanel {
         noteTable = createNoteTable();
         JScrollPane tableScrollPane = new JScrollPane(noteTable);
         tableScrollPane.setBorder(BorderFactory.createEmptyBorder());
+        tableScrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (e.getValueIsAdjusting() || !searchHasMore) return;
+            BoundedRangeModel range = tableScrollPane.getVerticalScrollBar().getModel();
+            if (range.getValue() + range.getExtent() >= range.getMaximum() - 5 * noteTable.getRowHeight()) {
+                loadMoreSearchResults();
+            }
+        });
         notesPanel.add(tableScrollPane, BorderLayout.CENTER);
         notesPanel.add(createNoteControlPanel(), BorderLayout.NORTH);
         populateNoteTableModel();
@@ -406,7 +429,6 @@ public class MainMenuScreen extends JPanel {
                                 if (controller != null) {
                                     controller.updateMission(selectedNote, result);
                                 }
-                                populateNoteTableModel();
                             }
                         }
                         else if (col == 3) {
@@ -421,6 +443,14 @@ public class MainMenuScreen extends JPanel {
                 if (SwingUtilities.isRightMouseButton(e)) {
                     int row = noteTable.rowAtPoint(e.getPoint());
                     if (row >= 0 && row < noteTable.getRowCount()) {
+                        // Nhấp phải vào một dòng trong vùng đang chọn nhiều dòng thì giữ nguyên vùng chọn
+                        if (noteTable.isRowSelected(row) && noteTable.getSelectedRowCount() > 1) {
+                            List<Note> selectedNotes = getSelectedNotes();
+                            if (controller != null && !selectedNotes.isEmpty()) {
+                                showBulkNotePopup(e, selectedNotes);
+                            }
+                            return;
+                        }
                         noteTable.setRowSelectionInterval(row, row);
                         if (filteredNotes == null || row >= filteredNotes.size()) {
                             return;
@@ -452,8 +482,8 @@ public class MainMenuScreen extends JPanel {
         LocalDateTime initialDateTimeToShow = (currentAlarm != null && currentAlarm.getAlarmTime() != null) ?
                 currentAlarm.getAlarmTime() :
                 LocalDateTime.now().plusHours(1).withMinute(0).withSecond(0);
-        String initialTypeStr = (currentAlarm != null && currentAlarm.isRecurring() && currentAlarm.getRecurrencePattern() != null) ?
-                currentAlarm.getRecurrencePattern().toUpperCase() : "ONCE";
+        RecurrenceRule currentRule = currentAlarm != null ? currentAlarm.getRecurrenceRule() : null;
+        String initialTypeStr = currentRule != null ? currentRule.getFrequency().name() : "ONCE";
         if(currentAlarm != null && !currentAlarm.isRecurring()) initialTypeStr = "ONCE";
 
 
@@ -507,6 +537,7 @@ public class MainMenuScreen extends JPanel {
                 String selectedType = (String) typeComboBox.getSelectedItem();
                 boolean isRecurring = !"ONCE".equals(selectedType);
                 LocalDateTime newAlarmDateTime;
+                String recurrencePattern = null;
 
                 int hour = (Integer) hourSpinner.getValue();
                 int minute = (Integer) minuteSpinner.getValue();
@@ -521,7 +552,19 @@ public class MainMenuScreen extends JPanel {
                 } else {
                     LocalDate baseDateForRecurring = (currentAlarm != null && currentAlarm.isRecurring() && currentAlarm.getAlarmTime() != null) ?
                             currentAlarm.getAlarmTime().toLocalDate() : LocalDate.now();
-                    newAlarmDateTime = LocalDateTime.of(baseDateForRecurring, LocalTime.of(hour, minute));
+                    LocalDateTime candidate = LocalDateTime.of(baseDateForRecurring, LocalTime.of(hour, minute));
+                    RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.Frequency.valueOf(selectedType), 1, 0, 0, null, candidate);
+                    if (currentRule != null && currentRule.getFrequency() == rule.getFrequency() && !currentRule.isSimple()) {
+                        // Giữ khoảng lặp, các thứ, số lần và ngày kết thúc của quy tắc hiện tại, chỉ đổi giờ
+                        rule = currentRule.withTime(LocalTime.of(hour, minute));
+                    }
+                    LocalDateTime now = LocalDateTime.now().withSecond(0).withNano(0);
+                    newAlarmDateTime = rule.firstAtOrAfter(candidate, candidate.isBefore(now) ? now : candidate);
+                    if (newAlarmDateTime == null) {
+                        JOptionPane.showMessageDialog(dialog, "Chuỗi lặp của báo thức này đã kết thúc.", "Cảnh báo", JOptionPane.WARNING_MESSAGE);
+                        return;
+                    }
+                    recurrencePattern = rule.toString();
                 }
 
                 Alarm alarmToSet;
@@ -529,12 +572,11 @@ public class MainMenuScreen extends JPanel {
                     alarmToSet = currentAlarm;
                     alarmToSet.setAlarmTime(newAlarmDateTime);
                     alarmToSet.setRecurring(isRecurring);
-                    alarmToSet.setRecurrencePattern(isRecurring ? selectedType.toUpperCase() : null);
+                    alarmToSet.setRecurrencePattern(recurrencePattern);
                 } else {
-                    alarmToSet = new Alarm(newAlarmDateTime, isRecurring, isRecurring ? selectedType.toUpperCase() : null);
+                    alarmToSet = new Alarm(newAlarmDateTime, isRecurring, recurrencePattern);
                 }
                 controller.setAlarm(note, alarmToSet);
-                populateNoteTableModel();
                 dialog.dispose();
             } catch (java.time.format.DateTimeParseException dtpe) {
                 JOptionPane.showMessageDialog(dialog, "Định dạng ngày không hợp lệ! Vui lòng dùng yyyy-MM-dd.", "Lỗi Định Dạng Ngày", JOptionPane.ERROR_MESSAGE);
@@ -549,7 +591,6 @@ public class MainMenuScreen extends JPanel {
         deleteButton.addActionListener(e -> {
             if (existingAlarmId > 0) {
                 controller.setAlarm(note, null);
-                populateNoteTableModel();
             }
             dialog.dispose();
         });
@@ -616,62 +657,65 @@ public class MainMenuScreen extends JPanel {
         gbc.weightx = 0;
 
 
-        // Title Search Field
-        titleSearchField = new JTextField(15);
-        titleSearchField.setText(TITLE_SEARCH_PLACEHOLDER);
-        titleSearchField.setForeground(Color.GRAY);
-        titleSearchField.addFocusListener(new FocusAdapter() {
+        // Search Field (truy vấn có cấu trúc, xem NoteQuery)
+        searchField = new JTextField(28);
+        searchField.setText(SEARCH_PLACEHOLDER);
+        searchField.setForeground(Color.GRAY);
+        searchField.setToolTipText("<html>Ví dụ: <b>tag:work folder:Projects is:mission -is:done due&lt;2026-11-01 \"cụm từ\"</b><br>" +
+                "is: mission, done, favorite, alarm &nbsp;·&nbsp; due: &lt; &lt;= &gt; &gt;= : với yyyy-MM-dd, today, tomorrow<br>" +
+                "Dấu - phía trước để loại trừ, title: để chỉ tìm trong tiêu đề, từ* để tìm từ bắt đầu bằng \"từ\"</html>");
+        searchField.addFocusListener(new FocusAdapter() {
             @Override
             public void focusGained(FocusEvent e) {
-                if (titleSearchField.getText().equals(TITLE_SEARCH_PLACEHOLDER)) {
-                    titleSearchField.setText("");
-                    titleSearchField.setForeground(UIManager.getColor("TextField.foreground"));
+                if (searchField.getText().equals(SEARCH_PLACEHOLDER)) {
+                    searchField.setText("");
+                    searchField.setForeground(UIManager.getColor("TextField.foreground"));
                 }
             }
             @Override
             public void focusLost(FocusEvent e) {
-                if (titleSearchField.getText().isEmpty()) {
-                    titleSearchField.setText(TITLE_SEARCH_PLACEHOLDER);
-                    titleSearchField.setForeground(Color.GRAY);
+                if (searchField.getText().isEmpty()) {
+                    searchField.setText(SEARCH_PLACEHOLDER);
+                    searchField.setForeground(Color.GRAY);
                 }
             }
         });
-        addSearchFieldListener(titleSearchField);
+        addSearchFieldListener(searchField);
         gbc.gridx = 4; gbc.gridy = 0;
-        panel.add(titleSearchField, gbc);
+        panel.add(searchField, gbc);
 
-        // Tag Search Field
-        tagSearchField = new JTextField(15);
-        tagSearchField.setText(TAG_SEARCH_PLACEHOLDER);
-        tagSearchField.setForeground(Color.GRAY);
-        tagSearchField.addFocusListener(new FocusAdapter() {
-            @Override
-            public void focusGained(FocusEvent e) {
-                if (tagSearchField.getText().equals(TAG_SEARCH_PLACEHOLDER)) {
-                    tagSearchField.setText("");
-                    tagSearchField.setForeground(UIManager.getColor("TextField.foreground"));
-                }
-            }
-            @Override
-            public void focusLost(FocusEvent e) {
-                if (tagSearchField.getText().isEmpty()) {
-                    tagSearchField.setText(TAG_SEARCH_PLACEHOLDER);
-                    tagSearchField.setForeground(Color.GRAY);
-                }
-            }
-        });
-        addSearchFieldListener(tagSearchField);
+        // Fuzzy Title Search Toggle
+        fuzzySearchCheckBox = new JCheckBox("Gần đúng");
+        fuzzySearchCheckBox.setToolTipText("Từ tìm kiếm khớp cả tiêu đề/tag gõ sai 1-2 ký tự");
+        fuzzySearchCheckBox.addActionListener(e -> populateNoteTableModel());
         gbc.gridx = 5; gbc.gridy = 0;
-        panel.add(tagSearchField, gbc);
+        panel.add(fuzzySearchCheckBox, gbc);
 
-        // Spacer to push stats and refresh to the right
+        // Chỉ báo lập chỉ mục, đồng thời là khoảng trống đẩy các nút còn lại sang phải
+        indexingLabel = new JLabel();
+        indexingLabel.setForeground(Color.GRAY);
+        indexingLabel.setToolTipText("Kết quả tạm thời chỉ xét tiêu đề và tag, sẽ tự cập nhật khi lập chỉ mục xong");
         gbc.gridx = 6; gbc.weightx = 1.0;
         gbc.fill = GridBagConstraints.HORIZONTAL;
-        panel.add(Box.createHorizontalGlue(), gbc);
+        panel.add(indexingLabel, gbc);
         gbc.weightx = 0;
         gbc.fill = GridBagConstraints.NONE;
 
 
+        // Xuất/nhập JSON: snapshot trên đĩa là nhị phân, JSON là định dạng trao đổi
+        JButton dataButton = new JButton(DATA_LABEL);
+        dataButton.setToolTipText("Xuất hoặc nhập toàn bộ dữ liệu dạng JSON");
+        JPopupMenu dataMenu = new JPopupMenu();
+        JMenuItem exportItem = new JMenuItem("Xuất ra JSON...");
+        exportItem.addActionListener(e -> exportData());
+        JMenuItem importItem = new JMenuItem("Nhập từ JSON...");
+        importItem.addActionListener(e -> importData());
+        dataMenu.add(exportItem);
+        dataMenu.add(importItem);
+        dataButton.addActionListener(e -> dataMenu.show(dataButton, 0, dataButton.getHeight()));
+        gbc.gridx = 7; gbc.gridy = 0;
+        panel.add(dataButton, gbc);
+
         // Refresh Button
         JButton refreshButton = new JButton(REFRESH_LABEL);
         refreshButton.setToolTipText("Làm mới danh sách (Ctrl+R)");
@@ -683,6 +727,45 @@ public class MainMenuScreen extends JPanel {
 
         return panel;
     }
+    private void exportData() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Xuất dữ liệu ra JSON");
+        chooser.setFileFilter(new FileNameExtensionFilter("JSON (*.json)", "json"));
+        chooser.setSelectedFile(new File("XiNoClo-" + LocalDate.now() + ".json"));
+        if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION) return;
+        File target = chooser.getSelectedFile();
+        if (!target.getName().toLowerCase().endsWith(".json")) {
+            target = new File(target.getParentFile(), target.getName() + ".json");
+        }
+        if (target.exists() && JOptionPane.showConfirmDialog(mainFrame, "File '" + target.getName() + "' đã tồn tại. Ghi đè?",
+                "Xác Nhận", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try {
+            controller.exportDataToJson(target);
+        } finally {
+            setCursor(Cursor.getDefaultCursor());
+        }
+    }
+
+    private void importData() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Nhập dữ liệu từ JSON");
+        chooser.setFileFilter(new FileNameExtensionFilter("JSON (*.json)", "json"));
+        if (chooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION) return;
+        int confirm = JOptionPane.showConfirmDialog(mainFrame,
+                "Toàn bộ ghi chú, thư mục và tag hiện tại sẽ được thay bằng dữ liệu trong file. Tiếp tục?",
+                "Xác Nhận Nhập Dữ Liệu", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (confirm != JOptionPane.YES_OPTION) return;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try {
+            controller.importDataFromJson(chooser.getSelectedFile());
+        } finally {
+            setCursor(Cursor.getDefaultCursor());
+        }
+    }
+
     private void addSearchFieldListener(JTextField searchField) {
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             private Timer debounceTimer;
@@ -699,47 +782,204 @@ public class MainMenuScreen extends JPanel {
     }
 
     private void populateNoteTableModel() {
+        populateNoteTableModel(SEARCH_PAGE_SIZE);
+    }
+
+    /**
+     * Không tìm kiếm thì hiện cả folder đang xem theo thứ tự danh sách; có truy vấn thì hiện kết quả đã xếp
+     * hạng, ít nhất {@code searchResults} kết quả đầu, phần còn lại nạp khi cuộn.
+     */
+    private void populateNoteTableModel(int searchResults) {
         if (noteTable == null || controller == null) return;
         DefaultTableModel model = (DefaultTableModel) noteTable.getModel();
         model.setRowCount(0);
+        searchHasMore = false;
 
-        String titleQuery = (titleSearchField != null && !TITLE_SEARCH_PLACEHOLDER.equals(titleSearchField.getText())) ?
-                titleSearchField.getText().trim().toLowerCase() : "";
-        String tagQuery = (tagSearchField != null && !TAG_SEARCH_PLACEHOLDER.equals(tagSearchField.getText())) ?
-                tagSearchField.getText().trim().toLowerCase() : "";
-
-        List<Note> notesToDisplay = controller.getSortedNotes();
-
-        if (notesToDisplay != null) {
-            filteredNotes = notesToDisplay.stream()
-                    .filter(note -> {
-                        boolean titleMatch = titleQuery.isEmpty() || (note.getTitle() != null && note.getTitle().toLowerCase().contains(titleQuery));
-                        boolean tagMatch = tagQuery.isEmpty() || (note.getTags() != null && note.getTags().stream()
-                                .anyMatch(tag -> tag.getName().toLowerCase().contains(tagQuery)));
-                        return titleMatch && tagMatch;
-                    })
-                    .collect(Collectors.toList());
+        if (isSearching()) {
+            SearchPage page = controller.searchNotesRanked(currentQueryText(), isFuzzySearch(), 0, searchResults);
+            filteredNotes = new ArrayList<>(page.getNotes());
+            searchHasMore = page.hasMore();
+            showIndexing(page.isIndexing());
+        } else {
+            List<Note> notesToDisplay = controller.getSortedNotes();
+            filteredNotes = notesToDisplay != null ? notesToDisplay : new ArrayList<>();
+            showIndexing(false);
+        }
+        for (Note note : filteredNotes) {
+            model.addRow(rowOf(note));
+        }
+    }
 
-            for (Note note : filteredNotes) {
-                Object alarmValue = (note.getAlarm() != null && note.getAlarm().getAlarmTime() != null) ?
-                        note.getAlarm().getAlarmTime().getHour() : null;
-                String missionDisplay = "";
-                if (note.isMission() && note.getMissionContent() != null && !note.getMissionContent().isEmpty()) {
-                    missionDisplay = "✔ " + note.getMissionContent();
-                    if (note.isMissionCompleted()) {
-                        missionDisplay += " (Xong)";
-                    }
-                }
-                model.addRow(new Object[]{
-                        note,
-                        note.isFavorite() ? "★" : "",
-                        missionDisplay,
-                        alarmValue,
-                        note.getFormattedModificationDate()
-                });
+    // Nối trang kết quả kế tiếp; bỏ qua note đã có nếu thứ hạng thay đổi giữa hai lần nạp
+    private void loadMoreSearchResults() {
+        if (!searchHasMore || filteredNotes == null) return;
+        SearchPage page = controller.searchNotesRanked(currentQueryText(), isFuzzySearch(), filteredNotes.size(), SEARCH_PAGE_SIZE);
+        searchHasMore = page.hasMore();
+        LongIdSet shownIds = new LongIdSet(filteredNotes.size());
+        for (Note note : filteredNotes) shownIds.add(note.getId());
+        DefaultTableModel model = (DefaultTableModel) noteTable.getModel();
+        for (Note note : page.getNotes()) {
+            if (shownIds.contains(note.getId())) continue;
+            filteredNotes.add(note);
+            model.addRow(rowOf(note));
+        }
+    }
+
+    private void showIndexing(boolean indexing) {
+        if (indexingLabel != null) indexingLabel.setText(indexing ? INDEXING_LABEL : "");
+    }
+
+    // Kết quả đang hiện được tìm khi chưa có chỉ mục thì tìm lại, giữ số dòng đã nạp và vùng chọn
+    private void textIndexReady() {
+        if (indexingLabel == null || indexingLabel.getText().isEmpty() || filteredNotes == null) return;
+        LongIdSet selectedIds = selectedNoteIds();
+        populateNoteTableModel(Math.max(SEARCH_PAGE_SIZE, filteredNotes.size()));
+        restoreSelection(selectedIds);
+    }
+
+    private String currentQueryText() {
+        return (searchField != null && !SEARCH_PLACEHOLDER.equals(searchField.getText())) ? searchField.getText() : "";
+    }
+
+    private boolean isSearching() {
+        return !currentQueryText().trim().isEmpty();
+    }
+
+    private boolean isFuzzySearch() {
+        return fuzzySearchCheckBox != null && fuzzySearchCheckBox.isSelected();
+    }
+
+    private Object[] rowOf(Note note) {
+        Object alarmValue = (note.getAlarm() != null && note.getAlarm().getAlarmTime() != null) ?
+                note.getAlarm().getAlarmTime().getHour() : null;
+        String missionDisplay = "";
+        if (note.isMission() && note.getMissionContent() != null && !note.getMissionContent().isEmpty()) {
+            missionDisplay = "✔ " + note.getMissionContent();
+            if (note.isMissionCompleted()) {
+                missionDisplay += " (Xong)";
             }
-        } else {
-            filteredNotes = new ArrayList<>();
+        }
+        return new Object[]{
+                note,
+                note.isFavorite() ? "★" : "",
+                missionDisplay,
+                alarmValue,
+                note.getFormattedModificationDate()
+        };
+    }
+
+    /**
+     * Áp dụng các thay đổi dữ liệu của một khung: chỉ vá những thư mục và dòng ghi chú bị ảnh hưởng.
+     */
+    private void applyChanges(NoteChangeSet changes) {
+        if (noteTable == null || folderList == null) return;
+        if (changes.isReload()) {
+            refresh();
+            return;
+        }
+        if (!changes.folderIds().isEmpty()) {
+            patchFolders(changes.folderIds());
+        }
+        if (!changes.noteChanges().isEmpty()) {
+            patchNoteRows(changes.noteChanges());
+            // Số ghi chú cạnh tên thư mục được tính lúc vẽ
+            folderList.repaint();
+        }
+    }
+
+    private void patchFolders(Set<Long> folderIds) {
+        Folder selectedFolder = folderList.getSelectedValue();
+        long selectedId = selectedFolder != null ? selectedFolder.getId() : 0;
+        folderList.removeListSelectionListener(folderListSelectionHandler);
+        int selectionIndex;
+        try {
+            for (long folderId : folderIds) {
+                int index = indexOfFolder(folderId);
+                if (index >= 0) folderListModel.remove(index);
+                Folder folder = controller.getFolderById(folderId);
+                if (folder != null) folderListModel.add(folderInsertionIndex(folder), folder);
+            }
+            selectionIndex = indexOfFolder(selectedId);
+            if (selectionIndex >= 0) folderList.setSelectedIndex(selectionIndex);
+        } finally {
+            folderList.addListSelectionListener(folderListSelectionHandler);
+        }
+        // Thư mục đang chọn đã bị xóa: chọn lại Root, kéo theo cập nhật danh sách ghi chú
+        if (selectionIndex < 0 && !folderListModel.isEmpty()) {
+            folderList.setSelectedIndex(0);
+        }
+    }
+
+    private int indexOfFolder(long folderId) {
+        for (int i = 0; i < folderListModel.getSize(); i++) {
+            if (folderListModel.getElementAt(i).getId() == folderId) return i;
+        }
+        return -1;
+    }
+
+    private int folderInsertionIndex(Folder folder) {
+        if ("Root".equalsIgnoreCase(folder.getName())) return 0;
+        int index = 0;
+        while (index < folderListModel.getSize()) {
+            Folder existing = folderListModel.getElementAt(index);
+            if (!"Root".equalsIgnoreCase(existing.getName()) && FOLDER_ORDER.compare(folder, existing) < 0) break;
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Gỡ dòng của các note thay đổi rồi chèn lại những note còn thuộc danh sách đang xem vào đúng vị trí theo
+     * thứ tự của danh sách, giữ nguyên vùng chọn. Khi đang tìm kiếm, thứ hạng có thể đổi nên kết quả được xếp
+     * hạng lại (giữ số dòng đã nạp và vùng chọn).
+     */
+    private void patchNoteRows(Collection<NoteChange> changes) {
+        if (filteredNotes == null || changes.size() > NOTE_PATCH_LIMIT) {
+            populateNoteTableModel();
+            return;
+        }
+        LongIdSet selectedIds = selectedNoteIds();
+        if (isSearching()) {
+            populateNoteTableModel(Math.max(SEARCH_PAGE_SIZE, filteredNotes.size()));
+            restoreSelection(selectedIds);
+            return;
+        }
+        DefaultTableModel model = (DefaultTableModel) noteTable.getModel();
+        LongIdSet changedIds = new LongIdSet(changes.size());
+        for (NoteChange change : changes) changedIds.add(change.getId());
+
+        // Từ dưới lên để chỉ số các dòng phía trên không đổi
+        for (int row = filteredNotes.size() - 1; row >= 0; row--) {
+            if (changedIds.contains(filteredNotes.get(row).getId())) {
+                filteredNotes.remove(row);
+                model.removeRow(row);
+            }
+        }
+
+        Comparator<Note> order = controller.getNoteListOrder();
+        for (NoteChange change : changes) {
+            if (change.getKind() == NoteChange.Kind.NOTE_DELETED) continue;
+            Note note = controller.getNoteById(change.getId());
+            if (note == null || !controller.isInCurrentList(note)) continue;
+            int row = Collections.binarySearch(filteredNotes, note, order);
+            if (row < 0) row = -row - 1;
+            filteredNotes.add(row, note);
+            model.insertRow(row, rowOf(note));
+        }
+        restoreSelection(selectedIds);
+    }
+
+    private LongIdSet selectedNoteIds() {
+        LongIdSet selectedIds = new LongIdSet(Math.max(1, noteTable.getSelectedRowCount()));
+        for (Note note : getSelectedNotes()) selectedIds.add(note.getId());
+        return selectedIds;
+    }
+
+    private void restoreSelection(LongIdSet selectedIds) {
+        if (selectedIds.isEmpty()) return;
+        noteTable.clearSelection();
+        for (int row = 0; row < filteredNotes.size(); row++) {
+            if (selectedIds.contains(filteredNotes.get(row).getId())) noteTable.addRowSelectionInterval(row, row);
         }
     }
 
@@ -764,7 +1004,6 @@ public class MainMenuScreen extends JPanel {
             String newTitle = JOptionPane.showInputDialog(mainFrame, "Nhập tiêu đề mới:", note.getTitle());
             if (newTitle != null && !newTitle.trim().isEmpty()) {
                 controller.renameNote(note, newTitle.trim());
-                populateNoteTableModel();
             }
         });
         popup.add(renameItem);
@@ -772,7 +1011,6 @@ public class MainMenuScreen extends JPanel {
         JCheckBoxMenuItem favoriteItem = new JCheckBoxMenuItem("Yêu thích", note.isFavorite());
         favoriteItem.addActionListener(ev -> {
             controller.setNoteFavorite(note, !note.isFavorite());
-            populateNoteTableModel();
         });
         popup.add(favoriteItem);
 
@@ -787,7 +1025,6 @@ public class MainMenuScreen extends JPanel {
                     String result = dialog.getResult();
                     controller.updateMission(note, result != null ? result.trim() : "");
                 }
-                populateNoteTableModel();
             });
             popup.add(missionItemOriginal);
         }
@@ -834,7 +1071,6 @@ public class MainMenuScreen extends JPanel {
                 Folder selectedFolder = (Folder) folderCombo.getSelectedItem();
                 if (selectedFolder != null) {
                     controller.moveNoteToFolder(note, selectedFolder);
-                    populateNoteTableModel();
                 }
             }
         });
@@ -847,13 +1083,79 @@ public class MainMenuScreen extends JPanel {
         popup.show(e.getComponent(), e.getX(), e.getY());
     }
 
+    private List<Note> getSelectedNotes() {
+        List<Note> selected = new ArrayList<>();
+        if (filteredNotes == null) return selected;
+        for (int row : noteTable.getSelectedRows()) {
+            if (row < filteredNotes.size()) selected.add(filteredNotes.get(row));
+        }
+        return selected;
+    }
+
+    /**
+     * Menu cho nhiều ghi chú đang chọn: mỗi mục áp dụng cho cả nhóm trong một lần lưu và một lượt cập nhật danh sách.
+     */
+    private void showBulkNotePopup(MouseEvent e, List<Note> notes) {
+        JPopupMenu popup = new JPopupMenu();
+
+        JMenuItem moveItem = new JMenuItem("Di chuyển " + notes.size() + " ghi chú");
+        moveItem.addActionListener(ev -> {
+            List<Folder> allFolders = controller.getFolders();
+            if (allFolders.isEmpty()) {
+                JOptionPane.showMessageDialog(mainFrame, "Không có thư mục để di chuyển đến.", "Di Chuyển Ghi Chú", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            JComboBox<Folder> folderCombo = new JComboBox<>(allFolders.toArray(new Folder[0]));
+            folderCombo.setRenderer(new DefaultListCellRenderer() {
+                @Override
+                public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                    super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                    if (value instanceof Folder) setText(((Folder) value).getName());
+                    return this;
+                }
+            });
+            int result = JOptionPane.showConfirmDialog(mainFrame, folderCombo, "Di chuyển đến Thư mục", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (result == JOptionPane.OK_OPTION && folderCombo.getSelectedItem() != null) {
+                controller.moveNotesToFolder(notes, (Folder) folderCombo.getSelectedItem());
+            }
+        });
+        popup.add(moveItem);
+
+        JMenuItem tagItem = new JMenuItem("Thêm tag...");
+        tagItem.addActionListener(ev -> {
+            String tagName = JOptionPane.showInputDialog(mainFrame, "Tên tag cho " + notes.size() + " ghi chú:");
+            if (tagName != null && !tagName.trim().isEmpty()) {
+                controller.addTagToNotes(notes, tagName.trim());
+            }
+        });
+        popup.add(tagItem);
+
+        boolean allFavorite = notes.stream().allMatch(Note::isFavorite);
+        JMenuItem favoriteItem = new JMenuItem(allFavorite ? "Bỏ yêu thích" : "Yêu thích");
+        favoriteItem.addActionListener(ev -> {
+            controller.setNotesFavorite(notes, !allFavorite);
+        });
+        popup.add(favoriteItem);
+
+        JMenuItem deleteItem = new JMenuItem("Xóa " + notes.size() + " ghi chú");
+        deleteItem.addActionListener(ev -> {
+            int confirm = JOptionPane.showConfirmDialog(mainFrame,
+                    "Xóa " + notes.size() + " ghi chú đã chọn?", "Xác nhận", JOptionPane.YES_NO_OPTION);
+            if (confirm == JOptionPane.YES_OPTION) {
+                controller.deleteNotes(notes);
+            }
+        });
+        popup.add(deleteItem);
+
+        popup.show(e.getComponent(), e.getX(), e.getY());
+    }
+
     private void handleNoteDeletion(Note note) {
         if (controller == null) return;
         int confirm = JOptionPane.showConfirmDialog(mainFrame,
                 "Xóa '" + note.getTitle() + "'?", "Xác nhận", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
             controller.deleteNote(note);
-            populateNoteTableModel();
         }
     }
 
@@ -904,7 +1206,6 @@ public class MainMenuScreen extends JPanel {
                 String name = JOptionPane.showInputDialog(mainFrame, "Enter folder name:");
                 if (name != null && !name.trim().isEmpty()) {
                     controller.addNewFolder(name.trim());
-                    refreshFolderPanel();
                 }
             }
         });
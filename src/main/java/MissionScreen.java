@@ -7,9 +7,11 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Comparator;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 public class MissionScreen extends JPanel {
     private JButton refreshButton;
@@ -22,6 +24,10 @@ public class MissionScreen extends JPanel {
     private JComboBox<String> sortComboBox;
     private JLabel filterLabel;
     private JLabel sortLabel;
+    // Thẻ đang hiển thị theo ID note, để khi dữ liệu thay đổi chỉ dựng lại thẻ của những note thay đổi
+    private final Map<Long, MissionCard> missionCards = new HashMap<>();
+    // Note đã thay đổi trong lúc màn hình bị ẩn, được áp dụng ở lần hiển thị tiếp theo
+    private final Set<Long> pendingChangedIds = new HashSet<>();
 
 
     private static final String FILTER_ALL = "All Missions";
@@ -39,6 +45,25 @@ public class MissionScreen extends JPanel {
         this.controller = controller;
         this.mainFrame = mainFrame;
         initializeUI();
+        controller.addChangeListener(this::applyChanges);
+    }
+
+    @Override
+    public void updateUI() {
+        super.updateUI();
+        // Thẻ giữ màu của giao diện lúc dựng nên được dựng lại sau khi đổi giao diện (gọi cả trong constructor của JPanel)
+        if (missionCards != null) missionCards.clear();
+    }
+
+    private static final class MissionCard {
+        final JPanel panel;
+        // Trạng thái quá hạn lúc dựng thẻ; trạng thái này đổi theo thời gian chứ không theo dữ liệu
+        final boolean overdue;
+
+        MissionCard(JPanel panel, boolean overdue) {
+            this.panel = panel;
+            this.overdue = overdue;
+        }
     }
 
     private Font getEmojiSupportedFont(int size) {
@@ -98,7 +123,7 @@ public class MissionScreen extends JPanel {
                 FILTER_ALL, FILTER_INCOMPLETE, FILTER_OVERDUE, FILTER_COMPLETED
         });
         filterComboBox.setFont(new Font("Roboto Mono", Font.PLAIN, 13));
-        filterComboBox.addActionListener(e -> refreshMissions());
+        filterComboBox.addActionListener(e -> updateMissions());
         filterSortPanel.add(filterComboBox);
 
         filterSortPanel.add(Box.createHorizontalStrut(15));
@@ -112,7 +137,7 @@ public class MissionScreen extends JPanel {
                 SORT_DEFAULT, SORT_DUE_DATE_ASC, SORT_DUE_DATE_DESC, SORT_MODIFIED_DATE_DESC
         });
         sortComboBox.setFont(new Font("Roboto Mono", Font.PLAIN, 13));
-        sortComboBox.addActionListener(e -> refreshMissions());
+        sortComboBox.addActionListener(e -> updateMissions());
         filterSortPanel.add(sortComboBox);
 
         topPanel.add(filterSortPanel, BorderLayout.WEST);
@@ -170,84 +195,94 @@ public class MissionScreen extends JPanel {
         refreshMissions();
     }
 
+    /**
+     * Dựng lại toàn bộ các thẻ (nút Refresh, đổi chế độ xóa).
+     */
     public void refreshMissions() {
-        missionContainer.removeAll();
+        missionCards.clear();
+        updateMissions();
+    }
+
+    /**
+     * Cập nhật danh sách theo bộ lọc và thứ tự hiện tại: thẻ của note không đổi được dùng lại, chỉ thẻ của note
+     * đã thay đổi (hoặc vừa quá hạn) được dựng lại.
+     */
+    public void updateMissions() {
         LocalDateTime consistencyNow = LocalDateTime.now();
+        List<Note> missions = loadMissions(consistencyNow);
+
+        Map<Long, MissionCard> previousCards = new HashMap<>(missionCards);
+        missionCards.clear();
+        int index = 0;
+        for (Note note : missions) {
+            boolean overdue = isOverdue(note, consistencyNow);
+            MissionCard card = previousCards.remove(note.getId());
+            if (card == null || card.overdue != overdue || pendingChangedIds.contains(note.getId())) {
+                if (card != null) missionContainer.remove(card.panel);
+                card = new MissionCard(createMissionPanel(note, consistencyNow), overdue);
+            }
+            missionCards.put(note.getId(), card);
+            if (index >= missionContainer.getComponentCount() || missionContainer.getComponent(index) != card.panel) {
+                missionContainer.remove(card.panel);
+                missionContainer.add(card.panel, index);
+            }
+            index++;
+        }
+        for (MissionCard staleCard : previousCards.values()) {
+            missionContainer.remove(staleCard.panel);
+        }
+        while (missionContainer.getComponentCount() > index) {
+            missionContainer.remove(missionContainer.getComponentCount() - 1);
+        }
+        pendingChangedIds.clear();
 
-        List<Note> missions = controller.getMissions();
+        missionContainer.revalidate();
+        missionContainer.repaint();
+    }
 
-        String selectedFilter = (String) filterComboBox.getSelectedItem();
-        if (selectedFilter != null) {
-            missions = missions.stream().filter((Note note) -> {
-                boolean isCompleted = note.isMissionCompleted();
-                boolean isOverdue = !isCompleted && note.getAlarm() != null &&
-                        !note.getAlarm().isRecurring() &&
-                        note.getAlarm().getAlarmTime().isBefore(consistencyNow);
-                switch (selectedFilter) {
-                    case FILTER_COMPLETED: return isCompleted;
-                    case FILTER_INCOMPLETE: return !isCompleted;
-                    case FILTER_OVERDUE: return isOverdue;
-                    case FILTER_ALL:
-                    default: return true;
-                }
-            }).collect(Collectors.toList());
+    private void applyChanges(NoteChangeSet changes) {
+        if (changes.isReload()) {
+            missionCards.clear();
+        } else if (changes.noteChanges().isEmpty()) {
+            return;
+        }
+        for (NoteChange change : changes.noteChanges()) {
+            pendingChangedIds.add(change.getId());
         }
+        if (isShowing()) {
+            updateMissions();
+        }
+    }
 
-        String selectedSort = (String) sortComboBox.getSelectedItem();
-        if (selectedSort != null) {
-            switch (selectedSort) {
-                case SORT_DUE_DATE_ASC:
-                    missions.sort(Comparator.comparing(
-                            (Note note) -> (note.getAlarm() != null && note.getAlarm().getAlarmTime() != null) ? note.getAlarm().getAlarmTime() : LocalDateTime.MAX,
-                            Comparator.nullsLast(LocalDateTime::compareTo)
-                    ).thenComparing(Note::getModificationDate, Comparator.reverseOrder()));
-                    break;
-                case SORT_DUE_DATE_DESC:
-                    missions.sort(Comparator.comparing(
-                            (Note note) -> (note.getAlarm() != null && note.getAlarm().getAlarmTime() != null) ? note.getAlarm().getAlarmTime() : LocalDateTime.MIN,
-                            Comparator.nullsFirst(LocalDateTime::compareTo)
-                    ).reversed().thenComparing(Note::getModificationDate, Comparator.reverseOrder()));
-                    break;
-                case SORT_MODIFIED_DATE_DESC:
-                    missions.sort(Comparator.comparing(Note::getModificationDate, Comparator.reverseOrder()));
-                    break;
-                case SORT_DEFAULT:
-                default:
-                    missions.sort((n1, n2) -> {
-                        boolean n1Completed = n1.isMissionCompleted();
-                        boolean n2Completed = n2.isMissionCompleted();
-                        boolean n1IsOverdue = !n1Completed && n1.getAlarm() != null && !n1.getAlarm().isRecurring() && n1.getAlarm().getAlarmTime().isBefore(consistencyNow);
-                        boolean n2IsOverdue = !n2Completed && n2.getAlarm() != null && !n2.getAlarm().isRecurring() && n2.getAlarm().getAlarmTime().isBefore(consistencyNow);
-
-                        int cat1 = n1Completed ? 3 : (n1IsOverdue ? 2 : 1);
-                        int cat2 = n2Completed ? 3 : (n2IsOverdue ? 2 : 1);
-
-                        if (cat1 != cat2) return Integer.compare(cat1, cat2);
-
-                        if (cat1 == 1) {
-                            LocalDateTime t1 = (n1.getAlarm() != null && n1.getAlarm().getAlarmTime() != null) ? n1.getAlarm().getAlarmTime() : LocalDateTime.MAX;
-                            LocalDateTime t2 = (n2.getAlarm() != null && n2.getAlarm().getAlarmTime() != null) ? n2.getAlarm().getAlarmTime() : LocalDateTime.MAX;
-                            int alarmCompare = t1.compareTo(t2);
-                            if (alarmCompare != 0) return alarmCompare;
-                        } else if (cat1 == 2) {
-                            LocalDateTime t1 = (n1.getAlarm() != null && n1.getAlarm().getAlarmTime() != null) ? n1.getAlarm().getAlarmTime() : LocalDateTime.MIN;
-                            LocalDateTime t2 = (n2.getAlarm() != null && n2.getAlarm().getAlarmTime() != null) ? n2.getAlarm().getAlarmTime() : LocalDateTime.MIN;
-                            int alarmCompare = t1.compareTo(t2);
-                            if (alarmCompare != 0) return alarmCompare;
-                        }
-                        return n2.getModificationDate().compareTo(n1.getModificationDate());
-                    });
-                    break;
+    private List<Note> loadMissions(LocalDateTime now) {
+        String selectedFilter = (String) filterComboBox.getSelectedItem();
+        NoteManager.MissionFilter filter = NoteManager.MissionFilter.ALL;
+        if (selectedFilter != null) {
+            switch (selectedFilter) {
+                case FILTER_COMPLETED: filter = NoteManager.MissionFilter.COMPLETED; break;
+                case FILTER_INCOMPLETE: filter = NoteManager.MissionFilter.INCOMPLETE; break;
+                case FILTER_OVERDUE: filter = NoteManager.MissionFilter.OVERDUE; break;
+                case FILTER_ALL:
+                default: break;
             }
         }
-
-        for (Note note : missions) {
-            JPanel missionPanel = createMissionPanel(note, consistencyNow);
-            missionContainer.add(missionPanel);
+        String selectedSort = (String) sortComboBox.getSelectedItem();
+        NoteManager.MissionOrder order;
+        switch (selectedSort != null ? selectedSort : SORT_DEFAULT) {
+            case SORT_DUE_DATE_ASC: order = NoteManager.MissionOrder.DUE_ASC; break;
+            case SORT_DUE_DATE_DESC: order = NoteManager.MissionOrder.DUE_DESC; break;
+            case SORT_MODIFIED_DATE_DESC: order = NoteManager.MissionOrder.MODIFIED_DESC; break;
+            case SORT_DEFAULT:
+            default: order = NoteManager.MissionOrder.DEFAULT; break;
         }
+        return controller.getMissions(filter, order, now);
+    }
 
-        missionContainer.revalidate();
-        missionContainer.repaint();
+    private static boolean isOverdue(Note note, LocalDateTime now) {
+        return !note.isMissionCompleted() &&
+                note.getAlarm() != null &&
+                note.getAlarm().getAlarmTime().isBefore(now) &&
+                !note.getAlarm().isRecurring();
     }
 
     private JPanel createMissionPanel(Note note, LocalDateTime currentTime) {
@@ -259,10 +294,7 @@ public class MissionScreen extends JPanel {
 
         Color missionPanelBackgroundColor = UIManager.getColor("Panel.background");
         boolean isCompleted = note.isMissionCompleted();
-        boolean isOverdue = !isCompleted &&
-                note.getAlarm() != null &&
-                note.getAlarm().getAlarmTime().isBefore(currentTime) &&
-                !note.getAlarm().isRecurring();
+        boolean isOverdue = isOverdue(note, currentTime);
 
         Color titleColor = UIManager.getColor("Label.foreground");
 
@@ -284,7 +316,6 @@ public class MissionScreen extends JPanel {
         completeCheckbox.setOpaque(false);
         completeCheckbox.addActionListener(e -> {
             controller.completeMission(note, completeCheckbox.isSelected());
-            refreshMissions();
         });
         controlPanel.add(completeCheckbox, BorderLayout.WEST);
 
@@ -392,7 +423,6 @@ public class MissionScreen extends JPanel {
                 if (dialog.isSaved()) {
                     String result = dialog.getResult();
                     controller.updateMission(note, result);
-                    refreshMissions();
                 }
             }
         });
@@ -407,7 +437,6 @@ public class MissionScreen extends JPanel {
         if (alarmDialog.isOkPressed()) {
             Alarm resultAlarm = alarmDialog.getResult();
             controller.setAlarm(note, resultAlarm);
-            refreshMissions();
         }
     }
 
@@ -416,7 +445,13 @@ public class MissionScreen extends JPanel {
         DateTimeFormatter formatterFull = DateTimeFormatter.ofPattern("dd/MM/yy HH:mm");
         DateTimeFormatter formatterShort = DateTimeFormatter.ofPattern("HH:mm");
         if (alarm.isRecurring()) {
-            return alarm.getAlarmTime().format(formatterShort) + " (" + alarm.getRecurrencePattern() + ")";
+            // Thời điểm đã lưu có thể là lần đã kêu trong phiên này, nên tính lần kế tiếp từ quy tắc
+            RecurrenceRule rule = alarm.getRecurrenceRule();
+            LocalDateTime next = alarm.nextOccurrenceAfter(LocalDateTime.now().withSecond(0).withNano(0).minusMinutes(1));
+            if (next == null) next = alarm.getAlarmTime();
+            DateTimeFormatter formatter = rule != null && rule.isSimple() && rule.getFrequency() == RecurrenceRule.Frequency.DAILY
+                    ? formatterShort : formatterFull;
+            return next.format(formatter) + " (" + (rule != null ? rule.describe() : alarm.getRecurrencePattern()) + ")";
         } else {
             return alarm.getAlarmTime().format(formatterFull);
         }
@@ -0,0 +1,85 @@
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Chỉ mục tên không phân biệt hoa thường cho folder/tag. Tên được chuẩn hóa bằng {@link #fold(String)}
+ * nên "Công Việc", "công việc" và cùng chuỗi đó gõ ở dạng tổ hợp (NFD) đều cho cùng một khóa.
+ * Chỉ mục nhớ khóa đã dùng cho từng ID để khi đối tượng được đổi tên tại chỗ vẫn gỡ được khóa cũ.
+ */
+class NameIndex<T> {
+    private final Function<T, String> nameOf;
+    private final ToLongFunction<T> idOf;
+    private final Map<String, T> byKey = new HashMap<>();
+    private final LongHashIndex<String> keyById = new LongHashIndex<>();
+
+    NameIndex(Function<T, String> nameOf, ToLongFunction<T> idOf) {
+        this.nameOf = nameOf;
+        this.idOf = idOf;
+    }
+
+    /**
+     * Khóa so sánh tên: bỏ khoảng trắng hai đầu, chuẩn hóa Unicode về NFC rồi gập chữ hoa/thường
+     * với Locale.ROOT (tránh lỗi chữ i của tiếng Thổ Nhĩ Kỳ, giữ nguyên dấu tiếng Việt).
+     */
+    static String fold(String name) {
+        if (name == null) return "";
+        String normalized = Normalizer.normalize(name.trim(), Normalizer.Form.NFC);
+        return normalized.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    T get(String name) {
+        if (name == null || name.trim().isEmpty()) return null;
+        return byKey.get(fold(name));
+    }
+
+    /**
+     * Thêm hoặc cập nhật (sau khi đổi tên) một đối tượng. Nếu tên mới đã thuộc về đối tượng khác thì
+     * đối tượng đó vẫn được giữ, giống việc quét danh sách trả về phần tử đầu tiên.
+     */
+    void put(T item, List<T> all) {
+        long id = idOf.applyAsLong(item);
+        String key = fold(nameOf.apply(item));
+        String oldKey = id != 0 ? keyById.get(id) : null;
+        if (oldKey != null && !oldKey.equals(key)) {
+            unlink(oldKey, id, all);
+        }
+        if (id != 0) keyById.put(id, key);
+        byKey.putIfAbsent(key, item);
+    }
+
+    void remove(T item, List<T> all) {
+        long id = idOf.applyAsLong(item);
+        String key = id != 0 ? keyById.remove(id) : null;
+        if (key == null) key = fold(nameOf.apply(item));
+        unlink(key, id, all);
+    }
+
+    void rebuild(List<T> all) {
+        byKey.clear();
+        keyById.clear();
+        for (T item : all) {
+            String key = fold(nameOf.apply(item));
+            long id = idOf.applyAsLong(item);
+            if (id != 0) keyById.putIfAbsent(id, key);
+            byKey.putIfAbsent(key, item);
+        }
+    }
+
+    // Nếu khóa đang trỏ tới đối tượng này thì tìm đối tượng khác cùng tên (dữ liệu cũ có thể bị trùng tên)
+    private void unlink(String key, long id, List<T> all) {
+        T current = byKey.get(key);
+        if (current == null || idOf.applyAsLong(current) != id) return;
+        byKey.remove(key);
+        for (T other : all) {
+            if (idOf.applyAsLong(other) != id && key.equals(fold(nameOf.apply(other)))) {
+                byKey.put(key, other);
+                return;
+            }
+        }
+    }
+}
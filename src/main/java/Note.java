@@ -17,7 +17,10 @@ public class Note {
     private transient boolean disableAutoUpdate = false;
     private long id;
     private String title;
+    // Nội dung đang nằm trong bộ nhớ (vừa sửa hoặc note mới); null nếu chỉ có contentHash và chưa đọc
     private String content;
+    private transient String contentHash;
+    private transient NoteBodyStore bodyStore;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private boolean isFavorite;
@@ -34,7 +37,8 @@ public class Note {
     private transient Alarm alarm;
 
     private NoteType noteType;
-    private String drawingData;
+    // Mã băm SHA-256 của ảnh PNG trong BlobStore (chỉ với note DRAWING)
+    private String drawingHash;
 
     public Note(String title, String content, boolean isFavorite) {
         this(0L, title, content, LocalDateTime.now(), LocalDateTime.now(),
@@ -50,7 +54,7 @@ public class Note {
                 LocalDateTime.now(), LocalDateTime.now(),
                 (initialFolder != null ? initialFolder.getId() : 0L),
                 false, false, false, "", null, new ArrayList<>(),
-                type, (type == NoteType.DRAWING ? "" : null));
+                type, null);
         if (initialFolder != null) {
             this.folder = initialFolder;
         }
@@ -61,7 +65,7 @@ public class Note {
                 long folderId, boolean isFavorite,
                 boolean isMission, boolean isMissionCompleted, String missionContent,
                 Long alarmId, List<Tag> tags,
-                NoteType noteType, String drawingData
+                NoteType noteType, String drawingHash
     ) {
         if (title == null || title.trim().isEmpty()) {
             this.title = (id == 0) ? "Untitled Note" : "Note ID " + id;
@@ -80,7 +84,7 @@ public class Note {
         this.alarmId = alarmId;
         this.tags = (tags != null) ? new ArrayList<>(tags) : new ArrayList<>();
         this.noteType = (noteType != null) ? noteType : NoteType.TEXT;
-        this.drawingData = drawingData;
+        this.drawingHash = drawingHash;
     }
 
     // Getters and Setters
@@ -106,14 +110,66 @@ public class Note {
     }
 
     public String getContent() {
+        if (content == null && contentHash != null && bodyStore != null) {
+            return bodyStore.load(contentHash);
+        }
         return content;
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.contentHash = null;
         updateUpdatedAt();
     }
 
+    /**
+     * Nội dung cho các lần quét toàn bộ (chỉ mục tìm kiếm): không làm thay đổi bộ đệm LRU.
+     */
+    String peekContent() {
+        if (content == null && contentHash != null && bodyStore != null) {
+            return bodyStore.peek(contentHash);
+        }
+        return content;
+    }
+
+    String getContentHash() {
+        return contentHash;
+    }
+
+    boolean isContentLoaded() {
+        return content != null || contentHash == null;
+    }
+
+    /**
+     * Gắn nội dung đã lưu trong NoteBodyStore. Nếu dropLoadedContent thì bỏ bản trong bộ nhớ,
+     * lần đọc sau sẽ đi qua bộ đệm LRU.
+     */
+    void attachStoredContent(String hash, NoteBodyStore store, boolean dropLoadedContent) {
+        this.contentHash = hash;
+        this.bodyStore = store;
+        if (dropLoadedContent) {
+            this.content = null;
+        }
+    }
+
+    /**
+     * Bản sao tách rời cho luồng ghi nền: tag và báo thức cũng được chép, nội dung chưa đọc vẫn chỉ là mã băm.
+     */
+    Note snapshotCopy() {
+        List<Tag> tagCopies = new ArrayList<>(getTags().size());
+        for (Tag tag : getTags()) {
+            tagCopies.add(new Tag(tag.getId(), tag.getName()));
+        }
+        Note copy = new Note(id, title, content, createdAt, updatedAt, folderId, isFavorite, isMission,
+                isMissionCompleted, missionContent, alarmId, tagCopies, noteType, drawingHash);
+        copy.contentHash = contentHash;
+        copy.bodyStore = bodyStore;
+        if (alarm != null) {
+            copy.alarm = new Alarm(alarm.getId(), alarm.getAlarmTime(), alarm.isRecurring(), alarm.getRecurrencePattern());
+        }
+        return copy;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -185,7 +241,7 @@ public class Note {
 
     public void setFolderId(long folderId) {
         this.folderId = folderId;
-        updateUpdatedAt();
+        if (!disableAutoUpdate) updateUpdatedAt();
     }
 
     public Folder getFolder() {
@@ -266,20 +322,21 @@ public class Note {
         updateUpdatedAt();
     }
 
-    public String getDrawingData() {
-        return drawingData;
+    public String getDrawingHash() {
+        return drawingHash;
     }
 
-    public void setDrawingData(String drawingData) {
-        this.drawingData = drawingData;
+    public void setDrawingHash(String drawingHash) {
+        this.drawingHash = drawingHash;
         updateUpdatedAt();
     }
 
     public int getWordCount() {
-        if (noteType == NoteType.DRAWING || content == null || content.trim().isEmpty()) {
+        String text = getContent();
+        if (noteType == NoteType.DRAWING || text == null || text.trim().isEmpty()) {
             return 0;
         }
-        String[] words = content.trim().split("\\s+");
+        String[] words = text.trim().split("\\s+");
         return words.length;
     }
 
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Nội dung note được lưu tách khỏi snapshot (metadata) trong một BlobStore riêng.
+ * Khi cần, nội dung được đọc theo mã băm qua một bộ đệm LRU giới hạn theo tổng số ký tự,
+ * nên bộ nhớ lúc khởi động chỉ phụ thuộc vào số note chứ không phụ thuộc vào độ dài nội dung.
+ * Nội dung vừa sửa nhưng chưa được luồng ghi nền đưa xuống đĩa nằm trong một bảng riêng cho tới khi ghi xong,
+ * nên note không cần giữ bản trong bộ nhớ và LRU có loại nó ra cũng không mất.
+ */
+public class NoteBodyStore {
+    public static final long DEFAULT_CACHE_CHARS = 4L * 1024 * 1024;
+
+    private final BlobStore blobs;
+    private final long maxCachedChars;
+    // accessOrder = true: phần tử được truy cập gần nhất nằm cuối, phần tử đầu là ứng viên bị loại
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedChars;
+    private final Map<String, String> unwritten = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    public NoteBodyStore(BlobStore blobs, long maxCachedChars) {
+        this.blobs = blobs;
+        this.maxCachedChars = Math.max(0, maxCachedChars);
+    }
+
+    BlobStore getBlobStore() {
+        return blobs;
+    }
+
+    /**
+     * Đọc nội dung theo mã băm. Không đọc được thì ném UncheckedIOException chứ không trả về chuỗi rỗng,
+     * để không ai lưu nhầm chuỗi rỗng đè lên nội dung thật.
+     */
+    public String load(String hash) {
+        synchronized (this) {
+            String cached = cache.get(hash);
+            if (cached == null) cached = unwritten.get(hash);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        String body = read(hash, "load");
+        remember(hash, body);
+        return body;
+    }
+
+    /**
+     * Đọc nội dung nhưng không đưa vào bộ đệm (dùng khi quét toàn bộ note, ví dụ dựng chỉ mục tìm kiếm),
+     * để không đẩy các note đang mở ra khỏi LRU. Trả về null nếu không đọc được.
+     */
+    public String peek(String hash) {
+        synchronized (this) {
+            String cached = cache.get(hash);
+            if (cached == null) cached = unwritten.get(hash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        try {
+            return read(hash, "peek");
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    private String read(String hash, String operation) {
+        try {
+            return new String(blobs.read(hash), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("[NoteBodyStore " + operation + "] Không thể đọc nội dung " + hash + ": " + e.getMessage());
+            throw new UncheckedIOException(e);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[NoteBodyStore " + operation + "] Không thể đọc nội dung " + hash + ": " + e.getMessage());
+            throw new UncheckedIOException(new IOException(e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Giữ nội dung đã được xếp hàng ghi cho tới khi {@link #written(String)} được gọi.
+     */
+    synchronized void stage(String hash, String body) {
+        unwritten.put(hash, body);
+    }
+
+    synchronized void written(String hash) {
+        unwritten.remove(hash);
+    }
+
+    /**
+     * Đưa nội dung vừa lưu vào bộ đệm để lần đọc sau không phải chạm đĩa.
+     */
+    public synchronized void remember(String hash, String body) {
+        if (body.length() > maxCachedChars) {
+            return;
+        }
+        String previous = cache.put(hash, body);
+        if (previous != null) {
+            cachedChars -= previous.length();
+        }
+        cachedChars += body.length();
+        Iterator<Map.Entry<String, String>> it = cache.entrySet().iterator();
+        while (cachedChars > maxCachedChars && it.hasNext()) {
+            Map.Entry<String, String> eldest = it.next();
+            cachedChars -= eldest.getValue().length();
+            it.remove();
+        }
+    }
+
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    public synchronized long getCachedChars() {
+        return cachedChars;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Một thay đổi dữ liệu do NoteManager phát ra qua {@link NoteChangeBus}. Với note, previousFolderId là thư mục
+ * trước thay đổi (0 nếu note mới) và folderId là thư mục sau thay đổi (0 nếu note đã bị xóa); với folder và tag
+ * chỉ có ID của đối tượng, màn hình tự đọc lại trạng thái hiện tại.
+ */
+final class NoteChange {
+    enum Kind { NOTE_ADDED, NOTE_UPDATED, NOTE_MOVED, NOTE_DELETED, TAG_CHANGED, FOLDER_CHANGED }
+
+    private final Kind kind;
+    private final long id;
+    private final long previousFolderId;
+    private final long folderId;
+
+    private NoteChange(Kind kind, long id, long previousFolderId, long folderId) {
+        this.kind = kind;
+        this.id = id;
+        this.previousFolderId = previousFolderId;
+        this.folderId = folderId;
+    }
+
+    static NoteChange noteAdded(long noteId, long folderId) {
+        return new NoteChange(Kind.NOTE_ADDED, noteId, 0, folderId);
+    }
+
+    /**
+     * Note đã có được lưu lại: NOTE_MOVED nếu thư mục đổi, ngược lại NOTE_UPDATED.
+     */
+    static NoteChange noteSaved(long noteId, long previousFolderId, long folderId) {
+        Kind kind = previousFolderId == folderId ? Kind.NOTE_UPDATED : Kind.NOTE_MOVED;
+        return new NoteChange(kind, noteId, previousFolderId, folderId);
+    }
+
+    static NoteChange noteDeleted(long noteId, long previousFolderId) {
+        return new NoteChange(Kind.NOTE_DELETED, noteId, previousFolderId, 0);
+    }
+
+    static NoteChange tagChanged(long tagId) {
+        return new NoteChange(Kind.TAG_CHANGED, tagId, 0, 0);
+    }
+
+    static NoteChange folderChanged(long folderId) {
+        return new NoteChange(Kind.FOLDER_CHANGED, folderId, 0, 0);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    long getPreviousFolderId() {
+        return previousFolderId;
+    }
+
+    long getFolderId() {
+        return folderId;
+    }
+
+    boolean isNoteChange() {
+        return kind != Kind.TAG_CHANGED && kind != Kind.FOLDER_CHANGED;
+    }
+
+    /**
+     * Gộp một thay đổi mới hơn của cùng note vào thay đổi này, giữ thư mục ban đầu và thư mục cuối cùng.
+     *
+     * @return thay đổi tương đương cả hai, null nếu chúng triệt tiêu nhau (thêm rồi xóa)
+     */
+    NoteChange then(NoteChange later) {
+        if (kind == Kind.NOTE_ADDED) {
+            return later.kind == Kind.NOTE_DELETED ? null : noteAdded(id, later.folderId);
+        }
+        if (later.kind == Kind.NOTE_DELETED) {
+            return noteDeleted(id, previousFolderId);
+        }
+        return noteSaved(id, previousFolderId, later.folderId);
+    }
+
+    @Override
+    public String toString() {
+        return kind + "#" + id + (isNoteChange() ? " (" + previousFolderId + " -> " + folderId + ")" : "");
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.SwingUtilities;
+
+/**
+ * Phát các thay đổi của NoteManager tới màn hình. Thay đổi từ bất kỳ luồng nào được gom vào một
+ * {@link NoteChangeSet} và giao trên EDT đúng một lần cho mỗi khung: mọi thay đổi xảy ra trước khi lượt giao
+ * kịp chạy (ví dụ cả một thao tác của người dùng trên EDT) đến tay listener cùng lúc. Trong lúc đang giữ
+ * ({@link #hold()}, dùng cho nhóm thay đổi) việc giao được hoãn tới khi nhả.
+ */
+class NoteChangeBus {
+    interface Listener {
+        /**
+         * Được gọi trên EDT.
+         */
+        void notesChanged(NoteChangeSet changes);
+    }
+
+    private final Object lock = new Object();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private NoteChangeSet pending = new NoteChangeSet();
+    private boolean dispatchScheduled;
+    private int holdDepth;
+
+    void addListener(Listener listener) {
+        if (listener == null) throw new IllegalArgumentException("Listener cannot be null.");
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    void publish(NoteChange change) {
+        // Chưa có màn hình nào lắng nghe (lúc tải, chạy không giao diện) thì không cần giữ lại thay đổi
+        if (listeners.isEmpty()) return;
+        synchronized (lock) {
+            pending.add(change);
+            scheduleDispatchLocked();
+        }
+    }
+
+    void publishReload() {
+        if (listeners.isEmpty()) return;
+        synchronized (lock) {
+            pending.markReload();
+            scheduleDispatchLocked();
+        }
+    }
+
+    void hold() {
+        synchronized (lock) {
+            holdDepth++;
+        }
+    }
+
+    void release() {
+        synchronized (lock) {
+            if (holdDepth == 0) {
+                throw new IllegalStateException("release() được gọi khi không giữ thay đổi nào.");
+            }
+            if (--holdDepth == 0 && !pending.isEmpty()) {
+                scheduleDispatchLocked();
+            }
+        }
+    }
+
+    private void scheduleDispatchLocked() {
+        if (!dispatchScheduled && holdDepth == 0) {
+            dispatchScheduled = true;
+            SwingUtilities.invokeLater(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        NoteChangeSet changes;
+        synchronized (lock) {
+            dispatchScheduled = false;
+            if (holdDepth > 0 || pending.isEmpty()) return;
+            changes = pending;
+            pending = new NoteChangeSet();
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.notesChanged(changes);
+            } catch (RuntimeException e) {
+                System.err.println("[NoteChangeBus dispatch] Lỗi khi áp dụng thay đổi: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+}
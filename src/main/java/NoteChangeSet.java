@@ -0,0 +1,67 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Các thay đổi đã gộp của một khung EDT: mỗi note còn một thay đổi tương đương (xem {@link NoteChange#then}),
+ * folder và tag chỉ còn tập ID. Khi dữ liệu bị thay toàn bộ (nhập JSON) thì chỉ còn cờ {@link #isReload()}.
+ */
+final class NoteChangeSet {
+    private final Map<Long, NoteChange> notes = new LinkedHashMap<>();
+    private final Set<Long> folders = new LinkedHashSet<>();
+    private final Set<Long> tags = new LinkedHashSet<>();
+    private boolean reload;
+
+    void add(NoteChange change) {
+        if (reload) return;
+        switch (change.getKind()) {
+            case FOLDER_CHANGED:
+                folders.add(change.getId());
+                break;
+            case TAG_CHANGED:
+                tags.add(change.getId());
+                break;
+            default:
+                NoteChange earlier = notes.get(change.getId());
+                NoteChange merged = earlier == null ? change : earlier.then(change);
+                if (merged != null) {
+                    notes.put(change.getId(), merged);
+                } else {
+                    notes.remove(change.getId());
+                }
+        }
+    }
+
+    void markReload() {
+        reload = true;
+        notes.clear();
+        folders.clear();
+        tags.clear();
+    }
+
+    /**
+     * Dữ liệu đã bị thay toàn bộ; màn hình nên dựng lại thay vì vá từng phần.
+     */
+    boolean isReload() {
+        return reload;
+    }
+
+    Collection<NoteChange> noteChanges() {
+        return Collections.unmodifiableCollection(notes.values());
+    }
+
+    Set<Long> folderIds() {
+        return Collections.unmodifiableSet(folders);
+    }
+
+    Set<Long> tagIds() {
+        return Collections.unmodifiableSet(tags);
+    }
+
+    boolean isEmpty() {
+        return !reload && notes.isEmpty() && folders.isEmpty() && tags.isEmpty();
+    }
+}
@@ -1,3 +1,8 @@
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
@@ -66,39 +71,39 @@ public class NoteController {
     }
 
     public List<Note> getSortedNotes() {
-        List<Note> notesToDisplay;
-        Folder effectiveCurrentFolder = getCurrentFolder();
-
-        if (effectiveCurrentFolder != null && !"Root".equalsIgnoreCase(effectiveCurrentFolder.getName()) && effectiveCurrentFolder.getId() > 0) {
-            final long currentFolderId = effectiveCurrentFolder.getId();
-            notesToDisplay = noteService.getAllNotesForDisplay().stream()
-                    .filter(note -> note.getFolder() != null && note.getFolder().getId() == currentFolderId)
-                    .collect(Collectors.toList());
-        } else {
-            notesToDisplay = noteService.getAllNotesForDisplay();
-        }
-
-        return notesToDisplay.stream()
-                .sorted(Comparator.comparing(Note::isFavorite, Comparator.reverseOrder())
-                        .thenComparing(Note::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder())))
-                .collect(Collectors.toList());
+        // Thứ tự yêu thích trước, cập nhật gần nhất trước được duy trì sẵn, không sắp xếp lại mỗi lần làm mới
+        return noteService.getNotesByRecent(currentFolderIdForSearch());
     }
 
     public List<Note> searchNotes(String query) {
         List<Note> notesToSearchIn = getSortedNotes();
-        if (query == null || query.trim().isEmpty()) {
+        LongIdSet matchingIds = noteService.findNoteIds(query);
+        if (matchingIds == null) {
             return notesToSearchIn;
         }
-        String lowerQuery = query.toLowerCase().trim();
         return notesToSearchIn.stream()
-                .filter(note -> (note.getTitle() != null && note.getTitle().toLowerCase().contains(lowerQuery)) ||
-                        (note.getContent() != null && note.getContent().toLowerCase().contains(lowerQuery)) ||
-                        (note.getTags() != null && note.getTags().stream()
-                                .anyMatch(tag -> tag.getName().toLowerCase().contains(lowerQuery)))
-                )
+                .filter(note -> matchingIds.contains(note.getId()))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Một trang kết quả của ô tìm kiếm chính trong folder hiện tại (xem {@link NoteQuery}), xếp theo độ liên
+     * quan thay vì thứ tự danh sách.
+     */
+    SearchPage searchNotesRanked(String queryText, boolean fuzzy, int offset, int limit) {
+        NoteQuery query = NoteQuery.parse(queryText, fuzzy, LocalDate.now());
+        return noteService.searchNotesRanked(query, currentFolderIdForSearch(), offset, limit);
+    }
+
+    // Root nghĩa là xem mọi note, giống getSortedNotes
+    private long currentFolderIdForSearch() {
+        Folder effectiveCurrentFolder = getCurrentFolder();
+        if (effectiveCurrentFolder != null && !"Root".equalsIgnoreCase(effectiveCurrentFolder.getName()) && effectiveCurrentFolder.getId() > 0) {
+            return effectiveCurrentFolder.getId();
+        }
+        return 0;
+    }
+
     private void ensureCurrentFolderIsValid() {
         if (this.currentFolder == null || this.currentFolder.getId() == 0) {
             System.out.println("[NoteController ensureCurrentFolderIsValid] currentFolder không hợp lệ, đang đặt lại về Root...");
@@ -390,22 +395,128 @@ public class NoteController {
         }
     }
 
+    public void moveNotesToFolder(List<Note> notes, Folder folder) {
+        if (notes == null || notes.isEmpty() || folder == null || folder.getId() == 0) {
+            JOptionPane.showMessageDialog(mainFrameInstance, "Ghi chú hoặc thư mục đích không hợp lệ.", "Lỗi", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        try {
+            int moved = noteService.moveNotes(idsOf(notes), folder);
+            JOptionPane.showMessageDialog(mainFrameInstance, "Đã chuyển " + moved + " ghi chú đến thư mục '" + folder.getName() + "'.", "Thành Công", JOptionPane.INFORMATION_MESSAGE);
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(mainFrameInstance, "Lỗi khi di chuyển ghi chú: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    public void addTagToNotes(List<Note> notes, String tagName) {
+        if (notes == null || notes.isEmpty() || tagName == null || tagName.trim().isEmpty()) {
+            JOptionPane.showMessageDialog(mainFrameInstance, "Tên tag không được để trống.", "Lỗi Nhập Liệu", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        try {
+            noteService.addTagToNotes(idsOf(notes), tagName);
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(mainFrameInstance, "Lỗi khi thêm tag: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    public void setNotesFavorite(List<Note> notes, boolean isFavorite) {
+        if (notes == null || notes.isEmpty()) return;
+        try {
+            noteService.inBatch(() -> {
+                for (Note note : notes) {
+                    if (note.getId() == 0 || note.isFavorite() == isFavorite) continue;
+                    note.setFavorite(isFavorite);
+                    note.updateUpdatedAt();
+                    noteService.updateExistingNote(note);
+                }
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(mainFrameInstance, "Lỗi khi cập nhật trạng thái yêu thích của ghi chú: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    public void deleteNotes(List<Note> notes) {
+        if (notes == null || notes.isEmpty()) return;
+        try {
+            noteService.deleteNotes(idsOf(notes));
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(mainFrameInstance, "Lỗi khi xóa ghi chú: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static List<Long> idsOf(List<Note> notes) {
+        List<Long> ids = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            if (note != null && note.getId() != 0) ids.add(note.getId());
+        }
+        return ids;
+    }
+
     public List<Note> getNotes() {
         return noteService.getAllNotesForDisplay();
     }
 
+    /**
+     * Danh sách note bất biến, dùng được từ luồng nền (ví dụ luồng kiểm tra báo thức) mà không cần khóa.
+     */
+    NoteSnapshot getNoteSnapshot() {
+        return noteService.getNoteSnapshot();
+    }
+
+    /**
+     * Màn hình đăng ký nhận thay đổi dữ liệu để tự vá phần hiển thị; listener được gọi trên EDT.
+     */
+    void addChangeListener(NoteChangeBus.Listener listener) {
+        noteService.addChangeListener(listener);
+    }
+
+    /**
+     * Gọi trên luồng nền mỗi khi chỉ mục toàn văn vừa sẵn sàng (xem {@link SearchPage#isIndexing()}).
+     */
+    void addTextIndexListener(Runnable listener) {
+        noteService.addTextIndexListener(listener);
+    }
+
+    Note getNoteById(long noteId) {
+        return noteService.getNoteById(noteId);
+    }
+
+    Folder getFolderById(long folderId) {
+        return noteService.getFolderById(folderId);
+    }
+
+    /**
+     * Note có thuộc danh sách đang xem không (Root nghĩa là mọi note, giống getSortedNotes).
+     */
+    boolean isInCurrentList(Note note) {
+        long folderId = currentFolderIdForSearch();
+        return folderId == 0 || note.getFolderId() == folderId;
+    }
+
+    /**
+     * Thứ tự của danh sách getSortedNotes().
+     */
+    Comparator<Note> getNoteListOrder() {
+        return NoteOrderIndex.RECENT_ORDER;
+    }
+
     public Optional<Folder> getFolderByName(String name) {
         if (name == null || name.trim().isEmpty()) return Optional.empty();
         Folder folder = noteService.getFolderByName(name.trim());
         return Optional.ofNullable(folder);
     }
 
-    public List<Note> getMissions() {
-        return noteService.getAllNotesForDisplay().stream()
-                .filter(note -> note.isMission() && (note.getMissionContent() != null && !note.getMissionContent().isEmpty()))
-                .sorted(Comparator.comparing(Note::isMissionCompleted)
-                        .thenComparing(Note::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder())))
-                .collect(Collectors.toList());
+    public List<Note> getMissions(NoteManager.MissionFilter filter, NoteManager.MissionOrder order, LocalDateTime now) {
+        return noteService.getMissions(filter, order, now);
+    }
+
+    public int countNotesInFolder(Folder folder) {
+        return folder == null || folder.getId() == 0 ? 0 : noteService.countNotesInFolder(folder.getId());
     }
 
     public void updateMission(Note note, String missionContent) {
@@ -489,6 +600,32 @@ public class NoteController {
         return this.noteService;
     }
 
+    /**
+     * Xuất toàn bộ dữ liệu ra một file JSON độc lập (nội dung và bản vẽ nằm ngay trong file).
+     */
+    public void exportDataToJson(File target) {
+        try {
+            noteService.getNoteManager().exportToJson(target);
+            JOptionPane.showMessageDialog(mainFrameInstance, "Đã xuất dữ liệu ra '" + target.getName() + "'.", "Thành Công", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(mainFrameInstance, "Lỗi khi xuất dữ liệu: " + e.getMessage(), "Lỗi Xuất Dữ Liệu", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Thay toàn bộ dữ liệu hiện tại bằng nội dung file JSON (file xuất hoặc notes.json cũ).
+     */
+    public void importDataFromJson(File source) {
+        try {
+            noteService.getNoteManager().importFromJson(source);
+            JOptionPane.showMessageDialog(mainFrameInstance, "Đã nhập dữ liệu từ '" + source.getName() + "'.", "Thành Công", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(mainFrameInstance, "Lỗi khi nhập dữ liệu: " + e.getMessage(), "Lỗi Nhập Dữ Liệu", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     public void updateExistingNoteInControllerList(long id, Note updatedNote) {
         List<Note> notes = getNotes();
         for (int i = 0; i < notes.size(); i++) {
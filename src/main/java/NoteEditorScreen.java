@@ -3,6 +3,7 @@ import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.io.UncheckedIOException;
 
 public class NoteEditorScreen extends JPanel {
     private static final String SAVE_LABEL = "Lưu";
@@ -22,6 +23,8 @@ public class NoteEditorScreen extends JPanel {
 
     private JTextField titleField;
     private JTextArea contentField;
+    // Nội dung đã lưu không đọc được: ô nội dung bị khóa và lưu note không được ghi đè nội dung
+    private boolean contentUnavailable;
     private JPanel tagPanelContainer;
     private JPanel actualTagDisplayPanel;
     private JLabel wordCountLabel;
@@ -51,7 +54,16 @@ public class NoteEditorScreen extends JPanel {
 
     private void setNoteFields(Note currentNote) {
         titleField.setText(currentNote.getTitle());
-        contentField.setText(currentNote.getContent());
+        contentUnavailable = false;
+        try {
+            contentField.setText(currentNote.getContent());
+        } catch (UncheckedIOException e) {
+            contentUnavailable = true;
+            contentField.setText("");
+            JOptionPane.showMessageDialog(mainFrame, "Không đọc được nội dung đã lưu của note này: " + e.getCause().getMessage()
+                    + "\nBạn vẫn sửa được tiêu đề, tag và báo thức; nội dung trên đĩa được giữ nguyên.", "Lỗi Đọc Nội Dung", JOptionPane.ERROR_MESSAGE);
+        }
+        contentField.setEditable(!contentUnavailable);
         contentField.setCaretPosition(0);
 
         updateTagDisplay();
@@ -474,7 +486,9 @@ public class NoteEditorScreen extends JPanel {
         }
 
         this.note.setTitle(newTitle);
-        this.note.setContent(newContent);
+        if (!contentUnavailable) {
+            this.note.setContent(newContent);
+        }
         this.note.updateUpdatedAt();
 
         try {
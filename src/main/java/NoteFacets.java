@@ -0,0 +1,182 @@
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Các facet của note dưới dạng {@link OrdinalBitmap} trên số thứ tự dày đặc của note: cờ yêu thích, nhiệm vụ,
+ * đã hoàn thành, có báo thức, cùng một bitmap cho mỗi folder và mỗi tag. Lọc kết hợp nhiều facet chỉ còn là
+ * and/or/andNot giữa các bitmap và số note của một facet (hay giao của hai facet) đếm được mà không duyệt note.
+ * <p>
+ * Mỗi phiên bản là bất biến với người đọc: {@link #with} và {@link #without} trả về phiên bản mới, dùng chung mọi
+ * bitmap không đổi (xem {@link LongIdTrie} về đối tượng edit). NoteRelationIndex cấp số thứ tự (số của note đã xóa
+ * được dùng lại nên các bitmap luôn dày đặc) và giữ phiên bản mới nhất.
+ */
+final class NoteFacets {
+    static final int FAVORITE = 0;
+    static final int MISSION = 1;
+    static final int COMPLETED = 2;
+    static final int ALARM = 3;
+    private static final int FLAGS = 4;
+
+    static final NoteFacets EMPTY = new NoteFacets(null);
+
+    private LongIdTrie<Integer> ordinalOf = LongIdTrie.empty();
+    private LongIdTrie<Long> noteOfOrdinal = LongIdTrie.empty();
+    private OrdinalBitmap all = new OrdinalBitmap();
+    private OrdinalBitmap[] flagged = new OrdinalBitmap[FLAGS];
+    private LongIdTrie<OrdinalBitmap> byFolder = LongIdTrie.empty();
+    private LongIdTrie<OrdinalBitmap> byTag = LongIdTrie.empty();
+    private final Object edit;
+
+    private NoteFacets(Object edit) {
+        this.edit = edit;
+        for (int i = 0; i < FLAGS; i++) flagged[i] = new OrdinalBitmap();
+    }
+
+    static int flagsOf(Note note) {
+        int flags = 0;
+        if (note.isFavorite()) flags |= 1 << FAVORITE;
+        if (note.isMission()) flags |= 1 << MISSION;
+        if (note.isMissionCompleted()) flags |= 1 << COMPLETED;
+        if (note.getAlarm() != null) flags |= 1 << ALARM;
+        return flags;
+    }
+
+    /**
+     * Đăng ký (lại) note với cờ và trạng thái folder/tag mới.
+     *
+     * @param ordinal  số thứ tự của note
+     * @param state    folderId rồi các tagId hiện tại (như trong NoteRelationIndex)
+     * @param oldFlags cờ đã đăng ký trước đó, 0 nếu note mới
+     * @param oldState trạng thái đã đăng ký trước đó, null nếu note mới
+     * @return phiên bản mới; là chính phiên bản này nếu không có gì đổi hoặc nó đã thuộc lần sửa {@code edit}
+     */
+    NoteFacets with(long noteId, int ordinal, int flags, long[] state, int oldFlags, long[] oldState, Object edit) {
+        if (oldState != null && oldFlags == flags && Arrays.equals(oldState, state)) return this;
+        NoteFacets facets = editable(edit);
+        if (oldState == null) {
+            facets.ordinalOf = facets.ordinalOf.put(noteId, ordinal, edit);
+            facets.noteOfOrdinal = facets.noteOfOrdinal.put(ordinal, noteId, edit);
+            facets.all = facets.all.editable(edit);
+            facets.all.add(ordinal);
+        }
+        for (int f = 0; f < FLAGS; f++) {
+            boolean now = (flags & (1 << f)) != 0;
+            if (now != ((oldFlags & (1 << f)) != 0)) {
+                facets.flagged[f] = facets.flagged[f].editable(edit);
+                if (now) facets.flagged[f].add(ordinal); else facets.flagged[f].remove(ordinal);
+            }
+        }
+        if (oldState == null || oldState[0] != state[0]) {
+            if (oldState != null) facets.byFolder = removeFrom(facets.byFolder, oldState[0], ordinal, edit);
+            facets.byFolder = addTo(facets.byFolder, state[0], ordinal, edit);
+        }
+        if (oldState != null) {
+            for (int i = 1; i < oldState.length; i++) {
+                if (!contains(state, oldState[i])) facets.byTag = removeFrom(facets.byTag, oldState[i], ordinal, edit);
+            }
+        }
+        for (int i = 1; i < state.length; i++) {
+            if (oldState == null || !contains(oldState, state[i])) facets.byTag = addTo(facets.byTag, state[i], ordinal, edit);
+        }
+        return facets;
+    }
+
+    /**
+     * @return phiên bản không còn note; số thứ tự của nó được trả lại cho bên cấp
+     */
+    NoteFacets without(long noteId, int ordinal, int oldFlags, long[] oldState, Object edit) {
+        NoteFacets facets = editable(edit);
+        facets.ordinalOf = facets.ordinalOf.remove(noteId, edit);
+        facets.noteOfOrdinal = facets.noteOfOrdinal.remove(ordinal, edit);
+        facets.all = facets.all.editable(edit);
+        facets.all.remove(ordinal);
+        for (int f = 0; f < FLAGS; f++) {
+            if ((oldFlags & (1 << f)) != 0) {
+                facets.flagged[f] = facets.flagged[f].editable(edit);
+                facets.flagged[f].remove(ordinal);
+            }
+        }
+        facets.byFolder = removeFrom(facets.byFolder, oldState[0], ordinal, edit);
+        for (int i = 1; i < oldState.length; i++) facets.byTag = removeFrom(facets.byTag, oldState[i], ordinal, edit);
+        return facets;
+    }
+
+    // Các bitmap dưới đây chỉ được đọc; folder/tag không có note cho một bitmap rỗng mới
+
+    OrdinalBitmap all() {
+        return all;
+    }
+
+    OrdinalBitmap flag(int flag) {
+        return flagged[flag];
+    }
+
+    OrdinalBitmap folder(long folderId) {
+        OrdinalBitmap bitmap = byFolder.get(folderId);
+        return bitmap != null ? bitmap : new OrdinalBitmap();
+    }
+
+    OrdinalBitmap tag(long tagId) {
+        OrdinalBitmap bitmap = byTag.get(tagId);
+        return bitmap != null ? bitmap : new OrdinalBitmap();
+    }
+
+    int countInFolder(long folderId) {
+        OrdinalBitmap bitmap = byFolder.get(folderId);
+        return bitmap != null ? bitmap.cardinality() : 0;
+    }
+
+    /**
+     * Duyệt ID note của bitmap theo thứ tự số thứ tự.
+     */
+    void forEachNote(OrdinalBitmap bitmap, LongConsumer action) {
+        bitmap.forEach(ordinal -> action.accept(noteOfOrdinal.get(ordinal)));
+    }
+
+    boolean contains(OrdinalBitmap bitmap, long noteId) {
+        Integer ordinal = ordinalOf.get(noteId);
+        return ordinal != null && bitmap.contains(ordinal);
+    }
+
+    LongIdSet toIdSet(OrdinalBitmap bitmap) {
+        LongIdSet ids = new LongIdSet(bitmap.cardinality());
+        forEachNote(bitmap, ids::add);
+        return ids;
+    }
+
+    private NoteFacets editable(Object edit) {
+        if (edit != null && this.edit == edit) return this;
+        NoteFacets copy = new NoteFacets(edit);
+        copy.ordinalOf = ordinalOf;
+        copy.noteOfOrdinal = noteOfOrdinal;
+        copy.all = all;
+        copy.flagged = flagged.clone();
+        copy.byFolder = byFolder;
+        copy.byTag = byTag;
+        return copy;
+    }
+
+    private static boolean contains(long[] state, long tagId) {
+        for (int i = 1; i < state.length; i++) {
+            if (state[i] == tagId) return true;
+        }
+        return false;
+    }
+
+    private static LongIdTrie<OrdinalBitmap> addTo(LongIdTrie<OrdinalBitmap> index, long key, int ordinal, Object edit) {
+        if (key == 0) return index;
+        OrdinalBitmap bitmap = index.get(key);
+        bitmap = (bitmap != null ? bitmap : new OrdinalBitmap()).editable(edit);
+        bitmap.add(ordinal);
+        return index.put(key, bitmap, edit);
+    }
+
+    private static LongIdTrie<OrdinalBitmap> removeFrom(LongIdTrie<OrdinalBitmap> index, long key, int ordinal, Object edit) {
+        if (key == 0) return index;
+        OrdinalBitmap bitmap = index.get(key);
+        if (bitmap == null || !bitmap.contains(ordinal)) return index;
+        bitmap = bitmap.editable(edit);
+        bitmap.remove(ordinal);
+        return bitmap.isEmpty() ? index.remove(key, edit) : index.put(key, bitmap, edit);
+    }
+}
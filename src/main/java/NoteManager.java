@@ -1,12 +1,89 @@
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
+/**
+ * Nơi giữ toàn bộ note, folder, tag cùng các chỉ mục của chúng.
+ * <p>
+ * Luồng: chỉ các phương thức ghi đồng bộ trên chính NoteManager. Chúng sửa bản làm việc (danh sách note, chỉ mục
+ * ID, danh sách folder/tag, chỉ mục quan hệ) rồi công bố một {@link ReadView} bất biến qua trường volatile, dùng
+ * chung cấu trúc với phiên bản trước ({@link NoteSnapshot}, {@link LongIdTrie}, {@link NoteFacets},
+ * {@link NoteOrderIndex}); mọi phương thức đọc chỉ lấy view đó, không khóa và không bao giờ phải chờ bên ghi.
+ * Chỉ mục toàn văn có khóa đọc/ghi riêng, bên ghi chỉ giữ khóa ghi trong lúc cập nhật một note. Luồng dựng chỉ
+ * mục toàn văn làm việc trên bản chụp văn bản của riêng nó và chỉ giữ khóa trong lúc cài chỉ mục đã dựng xong.
+ * Không ai chờ luồng đó: trong lúc chưa có chỉ mục, tìm kiếm toàn văn chỉ xét tiêu đề và tên tag.
+ */
 public class NoteManager {
-    private final List<Note> notes;
+    /**
+     * Bộ lọc của màn hình nhiệm vụ; OVERDUE là nhiệm vụ chưa xong có báo thức một lần đã qua.
+     */
+    public enum MissionFilter { ALL, INCOMPLETE, OVERDUE, COMPLETED }
+
+    /**
+     * Thứ tự của màn hình nhiệm vụ. DEFAULT: sắp tới (theo báo thức), quá hạn (theo báo thức) rồi đã xong
+     * (cập nhật gần nhất trước).
+     */
+    public enum MissionOrder { DEFAULT, DUE_ASC, DUE_DESC, MODIFIED_DESC }
+
+    // Snapshot nhị phân; notes.json cũ được tự động nhập ở lần chạy đầu tiên
+    private static final String DATA_FILE = "notes.bin";
+    // Tập ứng viên nhỏ hơn ngưỡng này thì kiểm tra văn bản trực tiếp trên từng note, không tra chỉ mục toàn văn
+    private static final int TEXT_CHECK_LIMIT = 500;
+
+    // Những gì người đọc thấy: công bố sau mỗi lần ghi, hoặc một lần khi cả nhóm thay đổi (inBatch) kết thúc
+    private volatile ReadView view = ReadView.EMPTY;
+    // Bản làm việc của bên ghi (chỉ dùng khi giữ khóa): danh sách note kèm vị trí của từng note để thay/xóa
+    // không phải tìm, chỉ mục ID -> note sửa dưới lần sửa noteEdit (xem LongIdTrie)
+    private NoteSnapshot notes = NoteSnapshot.EMPTY;
+    private final LongHashIndex<Integer> noteSlots = new LongHashIndex<>();
+    private LongIdTrie<Note> notesById = LongIdTrie.empty();
+    private Object noteEdit = new Object();
+    // Thay đổi phát cho các màn hình, gộp theo từng khung EDT
+    private final NoteChangeBus changes = new NoteChangeBus();
+    private int batchDepth;
     private final List<Folder> folders;
     private final List<Tag> tags;
+    // Danh sách folder/tag đã đổi kể từ lần công bố trước, cần dựng lại bản cho người đọc
+    private boolean foldersChanged;
+    private boolean tagsChanged;
+    // Chỉ mục ID -> đối tượng, luôn được cập nhật cùng lúc với danh sách tương ứng
+    private final LongHashIndex<Folder> folderIndex = new LongHashIndex<>();
+    private final LongHashIndex<Tag> tagIndex = new LongHashIndex<>();
+    // Chỉ mục tên đã chuẩn hóa (không phân biệt hoa thường) cho folder và tag
+    private final NameIndex<Folder> folderNames = new NameIndex<>(Folder::getName, Folder::getId);
+    private final NameIndex<Tag> tagNames = new NameIndex<>(Tag::getName, Tag::getId);
+    // Chỉ mục ngược tag -> note, folder -> note, thời điểm báo thức -> note
+    private final NoteRelationIndex relations = new NoteRelationIndex();
+    // Chỉ mục toàn văn: null cho tới khi luồng nền dựng xong và tự cài vào; thay đổi trong lúc dựng được ghi lại
+    // rồi áp dụng lúc cài. Lần dựng chỉ được cài nếu nó vẫn là lần dựng hiện hành (nhập JSON sẽ bắt đầu lần mới).
+    // Đọc dưới khóa đọc của textLock, sửa dưới khóa ghi
+    private volatile FullTextIndex textIndex;
+    private final ReentrantReadWriteLock textLock = new ReentrantReadWriteLock();
+    private final AtomicReference<Object> currentTextIndexBuild = new AtomicReference<>();
+    private Future<?> pendingTextIndex;
+    private final LongIdSet textChangesDuringBuild = new LongIdSet();
+    private final List<Runnable> textIndexListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService indexBuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "XiNoClo-SearchIndex");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
     private final DataStorage dataStorage;
+    // Checkpoint của chỉ mục toàn văn trên đĩa, nạp lại khi khởi động thay cho việc dựng từ đầu
+    private final SearchIndexStore searchIndexStore;
 
     private AtomicLong nextNoteId = new AtomicLong(1);
     private AtomicLong nextFolderId = new AtomicLong(1);
@@ -14,10 +91,17 @@ public class NoteManager {
     private AtomicLong nextAlarmId = new AtomicLong(1);
 
     public NoteManager() {
-        notes = new ArrayList<>();
+        this(DATA_FILE);
+    }
+
+    /**
+     * @param dataFile file snapshot (notes.bin khi chạy ứng dụng; các bài đo dùng file trong thư mục tạm)
+     */
+    NoteManager(String dataFile) {
         folders = new ArrayList<>();
         tags = new ArrayList<>();
-        dataStorage = new DataStorage("notes.json");
+        dataStorage = new DataStorage(dataFile);
+        searchIndexStore = new SearchIndexStore(dataStorage.getSearchIndexDir());
 
         System.out.println("[NoteManager Constructor] Đang tải dữ liệu từ DataStorage...");
         dataStorage.load(this);
@@ -25,6 +109,8 @@ public class NoteManager {
         initializeAndSanitizeIds();
         ensureRootFolderExists();
         relinkObjects();
+        startTextIndexBuild();
+        publishView();
 
         System.out.println("[NoteManager Constructor] Khởi tạo hoàn tất. Notes: " + notes.size() +
                 ", Folders: " + folders.size() +
@@ -40,10 +126,10 @@ public class NoteManager {
         boolean dataModified = false;
 
         // Tìm ID lớn nhất từ dữ liệu đã tải
-        long maxLoadedNoteId = notes.stream().mapToLong(Note::getId).filter(id -> id > 0).max().orElse(0);
+        long maxLoadedNoteId = notes.toList().stream().mapToLong(Note::getId).filter(id -> id > 0).max().orElse(0);
         long maxLoadedFolderId = folders.stream().mapToLong(Folder::getId).filter(id -> id > 0).max().orElse(0);
         long maxLoadedTagId = tags.stream().mapToLong(Tag::getId).filter(id -> id > 0).max().orElse(0);
-        long maxLoadedAlarmId = notes.stream()
+        long maxLoadedAlarmId = notes.toList().stream()
                 .filter(n -> n.getAlarm() != null && n.getAlarm().getId() > 0)
                 .mapToLong(n -> n.getAlarm().getId())
                 .max().orElse(0);
@@ -75,7 +161,7 @@ public class NoteManager {
             }
         }
 
-        for (Note note : new ArrayList<>(notes)) {
+        for (Note note : notes) {
             if (note.getId() == 0) {
                 System.out.println("[NoteManager] Note '" + note.getTitle() + "' có ID 0. Đang gán ID mới...");
                 note.setId(generateNewNoteId());
@@ -90,6 +176,8 @@ public class NoteManager {
             }
         }
 
+        rebuildIndexes();
+
         if (dataModified) {
             System.out.println("[NoteManager] Dữ liệu đã được sửa đổi trong quá trình chuẩn hóa ID, đang lưu lại...");
             saveData();
@@ -97,31 +185,71 @@ public class NoteManager {
         System.out.println("[NoteManager] Hoàn tất initializeAndSanitizeIds.");
     }
 
+    /**
+     * Dựng lại chỉ mục ID sau khi danh sách được nạp lại hoặc ID được gán lại.
+     * Nếu trùng ID thì giữ phần tử đứng trước, giống kết quả của việc quét danh sách.
+     */
+    private void rebuildIndexes() {
+        notesById = LongIdTrie.empty();
+        folderIndex.clear();
+        tagIndex.clear();
+        // Chỉ mục quan hệ được dựng lại trong relinkObjects, khi folder và tag của note đã được resolve
+        relations.clear();
+        currentTextIndexBuild.set(null);
+        if (pendingTextIndex != null) {
+            pendingTextIndex.cancel(true);
+            pendingTextIndex = null;
+        }
+        setTextIndex(null);
+        noteSlots.clear();
+        NoteSnapshot current = notes;
+        for (int slot = 0; slot < current.length(); slot++) {
+            Note note = current.get(slot);
+            if (note != null && note.getId() != 0 && notesById.get(note.getId()) == null) {
+                notesById = notesById.put(note.getId(), note, noteEdit);
+                noteSlots.put(note.getId(), slot);
+            }
+        }
+        for (Folder folder : folders) {
+            if (folder.getId() != 0) folderIndex.putIfAbsent(folder.getId(), folder);
+        }
+        for (Tag tag : tags) {
+            if (tag.getId() != 0) tagIndex.putIfAbsent(tag.getId(), tag);
+        }
+        folderNames.rebuild(folders);
+        tagNames.rebuild(tags);
+        foldersChanged = true;
+        tagsChanged = true;
+    }
+
     private void ensureRootFolderExists() {
         System.out.println("[NoteManager] Đang kiểm tra thư mục Root...");
-        Folder root = folders.stream()
-                .filter(f -> "Root".equalsIgnoreCase(f.getName()))
-                .findFirst()
-                .orElse(null);
+        Folder root = folderNames.get("Root");
         boolean rootModifiedOrCreated = false;
         if (root == null) {
             System.out.println("[NoteManager] Thư mục Root không tồn tại, đang tạo mới...");
             root = new Folder("Root");
             root.setId(generateNewFolderId());
             folders.add(0, root);
+            folderIndex.put(root.getId(), root);
+            folderNames.put(root, folders);
+            foldersChanged = true;
             System.out.println("[NoteManager] Đã tạo thư mục Root với ID: " + root.getId());
             rootModifiedOrCreated = true;
         } else {
             if (root.getId() == 0) {
                 System.out.println("[NoteManager] Thư mục Root có ID 0, đang gán ID mới: " + root.getName());
                 root.setId(generateNewFolderId());
+                folderIndex.put(root.getId(), root);
+                folderNames.put(root, folders);
+                foldersChanged = true;
                 System.out.println("[NoteManager] ID mới cho Root: " + root.getId());
                 rootModifiedOrCreated = true;
             }
             if (folders.indexOf(root) != 0) {
                 folders.remove(root);
                 folders.add(0, root);
-
+                foldersChanged = true;
             }
             System.out.println("[NoteManager] Thư mục Root đã tồn tại với ID: " + root.getId());
         }
@@ -132,35 +260,22 @@ public class NoteManager {
 
     private void relinkObjects() {
         System.out.println("[NoteManager] Đang tái liên kết các đối tượng...");
-        Map<Long, Folder> folderMapById = folders.stream()
-                .filter(f -> f.getId() != 0)
-                .collect(Collectors.toMap(Folder::getId, f -> f, (f1, f2) -> f1));
-        Map<Long, Tag> tagMapById = tags.stream()
-                .filter(t -> t.getId() != 0)
-                .collect(Collectors.toMap(Tag::getId, t -> t, (t1, t2) -> t1));
-        Folder rootFolder = getRootFolder();
+        Folder rootFolder = rootFolder();
 
         for (Note note : notes) {
             note.setDisableAutoUpdate(true);
             Folder associatedFolder = null;
             if (note.getFolderId() != 0) {
-                associatedFolder = folderMapById.get(note.getFolderId());
+                associatedFolder = folderIndex.get(note.getFolderId());
             }
 
-            if (associatedFolder != null) {
-                note.setFolder(associatedFolder);
-                if (!associatedFolder.getNotes().contains(note)) {
-                    associatedFolder.addNote(note);
-                }
-            } else {
+            if (associatedFolder == null) {
                 if (note.getFolderId() != 0) {
                     System.err.println("[NoteManager relink] Cảnh báo: Note '" + note.getTitle() + "' có folderId " + note.getFolderId() + " nhưng không tìm thấy folder. Gán vào Root.");
                 }
-                note.setFolder(rootFolder);
-                if (rootFolder != null && !rootFolder.getNotes().contains(note)) {
-                    rootFolder.addNote(note);
-                }
+                associatedFolder = rootFolder;
             }
+            note.setFolder(associatedFolder);
 
             // Liên kết Tags cho Note
             List<Tag> resolvedTags = new ArrayList<>();
@@ -168,12 +283,10 @@ public class NoteManager {
                 for (Tag tagStub : note.getTags()) {
                     Tag resolvedTag = null;
                     if (tagStub.getId() != 0) {
-                        resolvedTag = tagMapById.get(tagStub.getId());
+                        resolvedTag = tagIndex.get(tagStub.getId());
                     }
                     if (resolvedTag == null && tagStub.getName() != null && !tagStub.getName().isEmpty()) {
-                        resolvedTag = tags.stream()
-                                .filter(t -> t.getName().equalsIgnoreCase(tagStub.getName()))
-                                .findFirst().orElse(null);
+                        resolvedTag = tagNames.get(tagStub.getName());
                     }
                     if (resolvedTag != null) {
                         resolvedTags.add(resolvedTag);
@@ -183,6 +296,9 @@ public class NoteManager {
                 }
             }
             note.setTags(resolvedTags);
+            if (associatedFolder != null) {
+                indexNote(note, associatedFolder);
+            }
             note.setDisableAutoUpdate(false);
         }
 
@@ -191,9 +307,7 @@ public class NoteManager {
             if (folder.getSubFolderNames() != null && !folder.getSubFolderNames().isEmpty()) {
                 folder.getSubFolders().clear();
                 for (String subFolderName : folder.getSubFolderNames()) {
-                    Folder subFolder = folders.stream()
-                            .filter(f -> f.getName().equalsIgnoreCase(subFolderName))
-                            .findFirst().orElse(null);
+                    Folder subFolder = folderNames.get(subFolderName);
                     if (subFolder != null && subFolder.getId() != folder.getId()) {
                         folder.addSubFolder(subFolder);
                     } else if (subFolder != null && subFolder.getId() == folder.getId()){
@@ -212,17 +326,15 @@ public class NoteManager {
     public long generateNewTagId() { return nextTagId.getAndIncrement(); }
     public long generateNewAlarmId() { return nextAlarmId.getAndIncrement(); }
 
-    public void addFolder(Folder folder) {
+    public synchronized void addFolder(Folder folder) {
         if (folder == null) {
             throw new IllegalArgumentException("Folder cannot be null");
         }
         if (folder.getId() == 0) {
 
-            Optional<Folder> existingByName = folders.stream()
-                    .filter(f -> f.getName().equalsIgnoreCase(folder.getName()))
-                    .findFirst();
-            if (existingByName.isPresent()) {
-                System.out.println("[NoteManager addFolder] Thư mục '" + folder.getName() + "' đã tồn tại với ID " + existingByName.get().getId() + ". Không thêm mới.");
+            Folder existingByName = folderNames.get(folder.getName());
+            if (existingByName != null) {
+                System.out.println("[NoteManager addFolder] Thư mục '" + folder.getName() + "' đã tồn tại với ID " + existingByName.getId() + ". Không thêm mới.");
                return;
             }
             folder.setId(generateNewFolderId());
@@ -230,23 +342,32 @@ public class NoteManager {
 
 
         final long folderIdToAdd = folder.getId();
-        boolean alreadyExistsById = folders.stream().anyMatch(f -> f.getId() == folderIdToAdd);
+        Folder existingById = folderIndex.get(folderIdToAdd);
 
-        if (!alreadyExistsById) {
+        if (existingById == null) {
             folders.add(folder);
+            folderIndex.put(folderIdToAdd, folder);
+            folderNames.put(folder, folders);
+            foldersChanged = true;
             System.out.println("[NoteManager addFolder] Đã thêm thư mục: " + folder.getName() + " với ID: " + folder.getId());
-            saveData();
-        } else if (!folders.contains(folder)) {
+            dataStorage.saveFolder(folder);
+            publish(NoteChange.folderChanged(folder.getId()));
+        } else if (existingById != folder) {
 
             folders.removeIf(f -> f.getId() == folderIdToAdd);
             folders.add(folder);
+            folderIndex.put(folderIdToAdd, folder);
+            folderNames.remove(existingById, folders);
+            folderNames.put(folder, folders);
+            foldersChanged = true;
             System.out.println("[NoteManager addFolder] Đã cập nhật instance cho thư mục: " + folder.getName() + " với ID: " + folder.getId());
-            saveData();
+            dataStorage.saveFolder(folder);
+            publish(NoteChange.folderChanged(folder.getId()));
         }
     }
 
     // --- Note Management ---
-    public void addNote(Note note) {
+    public synchronized void addNote(Note note) {
         if (note == null) {
             throw new IllegalArgumentException("Note cannot be null");
         }
@@ -267,36 +388,36 @@ public class NoteManager {
 
         Folder parentFolder = note.getFolder();
         if (parentFolder == null || parentFolder.getId() == 0) {
-            parentFolder = getRootFolder();
+            parentFolder = rootFolder();
             note.setFolder(parentFolder);
         } else {
-            Folder managedParentFolder = getFolderById(parentFolder.getId());
+            Folder managedParentFolder = folderIndex.get(parentFolder.getId());
             if (managedParentFolder != null) {
                 parentFolder = managedParentFolder;
                 note.setFolder(parentFolder);
             } else {
                 System.err.println("Cảnh báo: Folder ID " + parentFolder.getId() + " cho note '" + note.getTitle() + "' không tìm thấy. Gán vào Root.");
-                parentFolder = getRootFolder();
+                parentFolder = rootFolder();
                 note.setFolder(parentFolder);
             }
         }
         note.setFolderId(parentFolder.getId());
 
 
-        if (!notes.contains(note)) {
-            notes.add(note);
-            if (!parentFolder.getNotes().contains(note)) {
-                parentFolder.addNote(note);
-            }
+        if (notesById.get(note.getId()) == null) {
+            appendNote(note);
+            indexNote(note, parentFolder);
+            reindexText(note);
         } else {
             updateNote(note);
             return;
         }
         System.out.println("[NoteManager addNote] Đã thêm/cập nhật note: " + note.getTitle() + " với ID: " + note.getId());
-        saveData();
+        dataStorage.saveNote(note);
+        publish(NoteChange.noteAdded(note.getId(), parentFolder.getId()));
     }
 
-    public void updateNote(Note noteToUpdate) {
+    public synchronized void updateNote(Note noteToUpdate) {
         if (noteToUpdate == null || noteToUpdate.getId() == 0) {
             throw new IllegalArgumentException("Note to update must not be null and must have a valid ID.");
         }
@@ -314,120 +435,238 @@ public class NoteManager {
 
         Folder parentFolder = noteToUpdate.getFolder();
         if (parentFolder == null || parentFolder.getId() == 0) {
-            parentFolder = getRootFolder();
+            parentFolder = rootFolder();
             noteToUpdate.setFolder(parentFolder);
         } else {
-            Folder managedParentFolder = getFolderById(parentFolder.getId());
+            Folder managedParentFolder = folderIndex.get(parentFolder.getId());
             if (managedParentFolder != null) {
                 parentFolder = managedParentFolder;
                 noteToUpdate.setFolder(parentFolder);
             } else {
                 System.err.println("Cảnh báo: Folder ID " + parentFolder.getId() + " cho note update '" + noteToUpdate.getTitle() + "' không tìm thấy. Gán vào Root.");
-                parentFolder = getRootFolder();
+                parentFolder = rootFolder();
                 noteToUpdate.setFolder(parentFolder);
             }
         }
         noteToUpdate.setFolderId(parentFolder.getId());
 
 
-        int index = -1;
-        for (int i = 0; i < notes.size(); i++) {
-            if (notes.get(i).getId() == noteToUpdate.getId()) {
-                index = i;
-                break;
-            }
-        }
-        if (index != -1) {
-            Note oldNoteVersion = notes.get(index);
-            if (oldNoteVersion.getFolder() != null && oldNoteVersion.getFolder().getId() != noteToUpdate.getFolderId()) {
-                Folder oldActualFolder = getFolderById(oldNoteVersion.getFolder().getId());
-                if(oldActualFolder != null) oldActualFolder.removeNote(oldNoteVersion);
-            }
-            notes.set(index, noteToUpdate);
-            if (parentFolder != null && !parentFolder.getNotes().contains(noteToUpdate)) {
-                parentFolder.addNote(noteToUpdate);
+        Note oldNoteVersion = notesById.get(noteToUpdate.getId());
+        NoteChange change;
+        if (oldNoteVersion != null) {
+            long previousFolderId;
+            // Thường là cùng một instance; chỉ khi thay instance mới phải tìm vị trí trong danh sách
+            if (oldNoteVersion != noteToUpdate) {
+                notes = notes.set(noteSlots.get(noteToUpdate.getId()), noteToUpdate);
+                notesById = notesById.put(noteToUpdate.getId(), noteToUpdate, noteEdit);
+                previousFolderId = relations.noteRemoved(noteToUpdate.getId());
+                Folder oldActualFolder = folderIndex.get(previousFolderId);
+                if (oldActualFolder != null) oldActualFolder.getNotes().remove(oldNoteVersion);
+                indexNote(noteToUpdate, parentFolder);
+            } else {
+                previousFolderId = indexNote(noteToUpdate, parentFolder);
             }
+            reindexText(noteToUpdate);
+            change = NoteChange.noteSaved(noteToUpdate.getId(), previousFolderId, parentFolder.getId());
             System.out.println("[NoteManager updateNote] Đã cập nhật note: " + noteToUpdate.getTitle() + " với ID: " + noteToUpdate.getId());
         } else {
             System.err.println("[NoteManager updateNote] Cảnh báo: updateNote được gọi cho note không có trong danh sách. ID: " + noteToUpdate.getId() + ". Thêm như note mới.");
-            notes.add(noteToUpdate);
-            if (parentFolder != null && !parentFolder.getNotes().contains(noteToUpdate)) {
-                parentFolder.addNote(noteToUpdate);
-            }
+            appendNote(noteToUpdate);
+            indexNote(noteToUpdate, parentFolder);
+            reindexText(noteToUpdate);
+            change = NoteChange.noteAdded(noteToUpdate.getId(), parentFolder.getId());
         }
-        saveData();
+        dataStorage.saveNote(noteToUpdate);
+        publish(change);
     }
 
-    public void deleteNote(long noteId) {
-        Note noteToRemove = getNoteById(noteId);
+    public synchronized void deleteNote(long noteId) {
+        Note noteToRemove = notesById.get(noteId);
         if (noteToRemove != null) {
-            if (noteToRemove.getFolder() != null) {
-                Folder parent = getFolderById(noteToRemove.getFolder().getId());
-                if(parent != null) parent.removeNote(noteToRemove);
-            }
-            notes.remove(noteToRemove);
+            long folderId = relations.noteRemoved(noteId);
+            Folder parent = folderIndex.get(folderId);
+            if(parent != null) parent.removeNote(noteToRemove);
+            removeNoteSlot(noteId);
+            notesById = notesById.remove(noteId, noteEdit);
+            unindexText(noteId);
             System.out.println("[NoteManager deleteNote] Đã xóa note với ID: " + noteId);
-            saveData();
+            dataStorage.deleteNote(noteId);
+            publish(NoteChange.noteDeleted(noteId, folderId));
         } else {
             System.err.println("[NoteManager deleteNote] Note với ID " + noteId + " không tìm thấy để xóa.");
         }
     }
 
     public Note getNoteById(long noteId) {
-        return notes.stream().filter(note -> note.getId() == noteId).findFirst().orElse(null);
+        return view.notesById.get(noteId);
     }
 
     public List<Note> getAllNotes() {
-        return new ArrayList<>(notes);
+        return getNoteSnapshot().toList();
+    }
+
+    /**
+     * Danh sách note hiện hành dưới dạng bất biến: đọc được từ bất kỳ luồng nào không cần khóa và không phải
+     * chép, thay đổi sau đó chỉ tạo phiên bản mới.
+     */
+    NoteSnapshot getNoteSnapshot() {
+        return view.notes;
+    }
+
+    /**
+     * Đăng ký nhận các thay đổi dữ liệu, giao trên EDT và đã gộp theo từng khung (xem {@link NoteChangeBus}).
+     */
+    void addChangeListener(NoteChangeBus.Listener listener) {
+        changes.addListener(listener);
+    }
+
+    void removeChangeListener(NoteChangeBus.Listener listener) {
+        changes.removeListener(listener);
     }
 
+    /**
+     * Chạy một nhóm thay đổi dưới cùng một khóa: mọi bản ghi của nhóm ra đĩa trong đúng một lần ghi và tới
+     * màn hình trong đúng một lượt thay đổi khi nhóm kết thúc. View chỉ được công bố một lần ở cuối nhóm nên
+     * người đọc không khóa chỉ thấy dữ liệu trước hoặc sau cả nhóm, và mỗi phần cấu trúc chỉ bị chép một lần.
+     * Có thể lồng nhau.
+     */
+    public synchronized void inBatch(Runnable operations) {
+        if (operations == null) throw new IllegalArgumentException("Operations cannot be null.");
+        batchDepth++;
+        dataStorage.beginBatch();
+        changes.hold();
+        try {
+            operations.run();
+        } finally {
+            if (--batchDepth == 0) publishView();
+            changes.release();
+            dataStorage.endBatch();
+        }
+    }
+
+    /**
+     * Chuyển nhiều note sang một thư mục trong một nhóm thay đổi; note không tồn tại hoặc đã ở đó được bỏ qua.
+     *
+     * @return số note đã được chuyển
+     */
+    public synchronized int moveNotes(Collection<Long> noteIds, Folder newFolder) {
+        if (noteIds == null || newFolder == null || newFolder.getId() == 0) {
+            throw new IllegalArgumentException("Note IDs or new Folder cannot be null or unsaved.");
+        }
+        Folder folderInManager = folderIndex.get(newFolder.getId());
+        if (folderInManager == null) {
+            throw new IllegalArgumentException("Folder not found in manager for move operation.");
+        }
+        int[] moved = {0};
+        inBatch(() -> {
+            for (long noteId : noteIds) {
+                Note note = notesById.get(noteId);
+                if (note == null || relations.folderOf(noteId) == folderInManager.getId()) continue;
+                note.setFolder(folderInManager);
+                note.setFolderId(folderInManager.getId());
+                long previousFolderId = indexNote(note, folderInManager);
+                dataStorage.saveNote(note);
+                publish(NoteChange.noteSaved(noteId, previousFolderId, folderInManager.getId()));
+                moved[0]++;
+            }
+        });
+        System.out.println("[NoteManager moveNotes] Đã chuyển " + moved[0] + " note sang thư mục '" + folderInManager.getName() + "'.");
+        return moved[0];
+    }
+
+    /**
+     * Gắn một tag (tạo mới nếu chưa có) cho nhiều note trong một nhóm thay đổi.
+     *
+     * @return số note được gắn thêm tag (không tính note đã có sẵn)
+     */
+    public synchronized int addTagToNotes(Collection<Long> noteIds, String tagName) {
+        if (noteIds == null) throw new IllegalArgumentException("Note IDs cannot be null.");
+        int[] tagged = {0};
+        Tag[] tag = new Tag[1];
+        inBatch(() -> {
+            tag[0] = getOrCreateTag(tagName);
+            for (long noteId : noteIds) {
+                Note note = notesById.get(noteId);
+                if (note == null || note.getTags().stream().anyMatch(t -> t.getId() == tag[0].getId())) continue;
+                note.addTag(tag[0]);
+                Folder parent = folderIndex.get(relations.folderOf(noteId));
+                if (parent == null) parent = rootFolder();
+                long previousFolderId = indexNote(note, parent);
+                reindexText(note);
+                dataStorage.saveNote(note);
+                publish(NoteChange.noteSaved(noteId, previousFolderId, parent.getId()));
+                tagged[0]++;
+            }
+        });
+        System.out.println("[NoteManager addTagToNotes] Đã thêm tag '" + tag[0].getName() + "' vào " + tagged[0] + " note.");
+        return tagged[0];
+    }
+
+    /**
+     * Xóa nhiều note trong một nhóm thay đổi.
+     *
+     * @return số note đã xóa
+     */
+    public synchronized int deleteNotes(Collection<Long> noteIds) {
+        if (noteIds == null) throw new IllegalArgumentException("Note IDs cannot be null.");
+        int[] deleted = {0};
+        inBatch(() -> {
+            for (long noteId : noteIds) {
+                if (notesById.get(noteId) == null) continue;
+                deleteNote(noteId);
+                deleted[0]++;
+            }
+        });
+        return deleted[0];
+    }
+
+    /**
+     * Note trong một thư mục theo thứ tự ID, đọc từ bitmap facet của view hiện hành.
+     */
     public List<Note> getNotesInFolder(Folder folder) {
         if (folder == null || folder.getId() == 0) {
             System.err.println("[NoteManager getNotesInFolder] Nhận folder null hoặc ID 0. Trả về danh sách rỗng.");
             return new ArrayList<>();
         }
-        Folder managedFolder = getFolderById(folder.getId());
-        if (managedFolder == null) {
+        ReadView v = view;
+        if (v.folders.byId.get(folder.getId()) == null) {
             System.err.println("[NoteManager getNotesInFolder] Không tìm thấy folder được quản lý với ID: " + folder.getId() + ". Trả về danh sách rỗng.");
             return new ArrayList<>();
         }
-        return new ArrayList<>(managedFolder.getNotes());
+        return notesByIds(v.notesById, v.facets.toIdSet(v.facets.folder(folder.getId())).toSortedArray());
     }
 
-    public void updateFolder(Folder folderToUpdate) {
+    public synchronized void updateFolder(Folder folderToUpdate) {
         if (folderToUpdate == null || folderToUpdate.getId() == 0) {
             throw new IllegalArgumentException("Folder to update must not be null and must have a valid ID.");
         }
-        if ("Root".equalsIgnoreCase(folderToUpdate.getName()) && getRootFolder().getId() != folderToUpdate.getId()) {
+        if ("Root".equalsIgnoreCase(folderToUpdate.getName()) && rootFolder().getId() != folderToUpdate.getId()) {
             throw new IllegalArgumentException("Cannot rename another folder to 'Root'.");
         }
 
-        int index = -1;
-        for (int i = 0; i < folders.size(); i++) {
-            if (folders.get(i).getId() == folderToUpdate.getId()) {
-                index = i;
-                break;
-            }
-        }
-        if (index != -1) {
-            final long currentId = folderToUpdate.getId();
-            Optional<Folder> conflictingFolder = folders.stream()
-                    .filter(f -> f.getName().equalsIgnoreCase(folderToUpdate.getName()) && f.getId() != currentId)
-                    .findFirst();
-
-            if (conflictingFolder.isPresent()) {
+        Folder existing = folderIndex.get(folderToUpdate.getId());
+        if (existing != null) {
+            Folder conflictingFolder = folderNames.get(folderToUpdate.getName());
+            if (conflictingFolder != null && conflictingFolder.getId() != folderToUpdate.getId()) {
                 throw new IllegalArgumentException("Another folder with the name '" + folderToUpdate.getName() + "' already exists.");
             }
-            folders.set(index, folderToUpdate);
+            if (existing != folderToUpdate) {
+                folders.set(folders.indexOf(existing), folderToUpdate);
+                folderIndex.put(folderToUpdate.getId(), folderToUpdate);
+                folderNames.remove(existing, folders);
+            }
+            folderNames.put(folderToUpdate, folders);
+            foldersChanged = true;
             System.out.println("[NoteManager updateFolder] Đã cập nhật folder: " + folderToUpdate.getName() + " với ID: " + folderToUpdate.getId());
-            saveData();
+            dataStorage.saveFolder(folderToUpdate);
+            publish(NoteChange.folderChanged(folderToUpdate.getId()));
         } else {
             throw new IllegalArgumentException("Folder with ID " + folderToUpdate.getId() + " not found for update.");
         }
     }
 
-    public void deleteFolder(long folderId, boolean deleteAssociatedNotes) {
-        Folder folderToRemove = getFolderById(folderId);
+    public synchronized void deleteFolder(long folderId, boolean deleteAssociatedNotes) {
+        Folder folderToRemove = folderIndex.get(folderId);
         if (folderToRemove == null) {
             System.err.println("[NoteManager deleteFolder] Folder với ID " + folderId + " không tìm thấy để xóa.");
             return;
@@ -436,27 +675,43 @@ public class NoteManager {
             throw new IllegalStateException("Cannot delete the Root folder.");
         }
 
-        if (deleteAssociatedNotes) {
-            List<Note> notesInFolderCopy = new ArrayList<>(folderToRemove.getNotes());
-            for (Note note : notesInFolderCopy) {
-                deleteNote(note.getId());
-            }
-        } else {
-            Folder root = getRootFolder();
-            if (root == null) throw new IllegalStateException("Root folder not found, cannot move notes.");
-            List<Note> notesToMoveCopy = new ArrayList<>(folderToRemove.getNotes());
-            for (Note note : notesToMoveCopy) {
-                note.setFolder(root);
-                note.setFolderId(root.getId());
-                updateNote(note);
+        List<Long> noteIds = new ArrayList<>();
+        for (Note note : folderToRemove.getNotes()) noteIds.add(note.getId());
+        inBatch(() -> {
+            if (deleteAssociatedNotes) {
+                deleteNotes(noteIds);
+            } else {
+                Folder root = rootFolder();
+                if (root == null) throw new IllegalStateException("Root folder not found, cannot move notes.");
+                moveNotes(noteIds, root);
             }
-        }
-        folders.remove(folderToRemove);
-        System.out.println("[NoteManager deleteFolder] Đã xóa folder: " + folderToRemove.getName() + " với ID: " + folderId);
-        saveData();
+            folders.remove(folderToRemove);
+            folderIndex.remove(folderId);
+            folderNames.remove(folderToRemove, folders);
+            foldersChanged = true;
+            System.out.println("[NoteManager deleteFolder] Đã xóa folder: " + folderToRemove.getName() + " với ID: " + folderId);
+            dataStorage.deleteFolder(folderId);
+            publish(NoteChange.folderChanged(folderId));
+        });
     }
 
+    /**
+     * Root luôn đứng đầu danh sách folder của view; chỉ khi nó không hợp lệ mới phải lấy khóa để sửa lại.
+     */
     public Folder getRootFolder() {
+        List<Folder> published = view.folders.list;
+        if (!published.isEmpty() && "Root".equalsIgnoreCase(published.get(0).getName()) && published.get(0).getId() != 0) {
+            return published.get(0);
+        }
+        synchronized (this) {
+            Folder root = rootFolder();
+            publishView();
+            return root;
+        }
+    }
+
+    // Root của bản làm việc, tạo lại nếu cần; chỉ gọi khi giữ khóa
+    private Folder rootFolder() {
         if (folders.isEmpty() || !"Root".equalsIgnoreCase(folders.get(0).getName()) || folders.get(0).getId() == 0) {
             System.err.println("[NoteManager getRootFolder] Root folder không hợp lệ hoặc không ở vị trí đầu. Đang thử đảm bảo lại...");
             ensureRootFolderExists();
@@ -466,7 +721,11 @@ public class NoteManager {
                     Folder tempRoot = new Folder("Root (Fallback Cấp Cứu)");
                     tempRoot.setId(generateNewFolderId());
                     folders.add(0, tempRoot);
-                    saveData();
+                    folderIndex.put(tempRoot.getId(), tempRoot);
+                    folderNames.put(tempRoot, folders);
+                    foldersChanged = true;
+                    dataStorage.saveFolder(tempRoot);
+                    publish(NoteChange.folderChanged(tempRoot.getId()));
                     return tempRoot;
                 }
             }
@@ -475,42 +734,42 @@ public class NoteManager {
     }
 
     public List<Folder> getAllFolders() {
-        return new ArrayList<>(folders);
+        return new ArrayList<>(view.folders.list);
     }
 
     public Folder getFolderById(long folderId) {
-        if (folderId == 0) return null;
-        return folders.stream().filter(folder -> folder.getId() == folderId).findFirst().orElse(null);
+        return view.folders.byId.get(folderId);
     }
 
     public Optional<Folder> getFolderByName(String name) {
-        if (name == null || name.trim().isEmpty()) return Optional.empty();
-        return folders.stream().filter(f -> f.getName().equalsIgnoreCase(name.trim())).findFirst();
+        return Optional.ofNullable(view.folders.byName.get(name));
     }
 
-    public Tag getOrCreateTag(String tagName) {
+    public synchronized Tag getOrCreateTag(String tagName) {
         if (tagName == null || tagName.trim().isEmpty()) {
             throw new IllegalArgumentException("Tag name cannot be null or empty.");
         }
         String trimmedName = tagName.trim();
-        Optional<Tag> existingTag = tags.stream()
-                .filter(t -> t.getName().equalsIgnoreCase(trimmedName))
-                .findFirst();
-        if (existingTag.isPresent()) {
-            return existingTag.get();
+        Tag existingTag = tagNames.get(trimmedName);
+        if (existingTag != null) {
+            return existingTag;
         } else {
             Tag newTag = new Tag(trimmedName);
             newTag.setId(generateNewTagId());
             tags.add(newTag);
+            tagIndex.put(newTag.getId(), newTag);
+            tagNames.put(newTag, tags);
+            tagsChanged = true;
             System.out.println("[NoteManager getOrCreateTag] Đã tạo tag mới: " + newTag.getName() + " với ID: " + newTag.getId());
-            saveData();
+            dataStorage.saveTag(newTag);
+            publish(NoteChange.tagChanged(newTag.getId()));
             return newTag;
         }
     }
 
-    public void addTagToNote(Note note, String tagName) {
+    public synchronized void addTagToNote(Note note, String tagName) {
         if (note == null || note.getId() == 0) throw new IllegalArgumentException("Note cannot be null or unsaved.");
-        Note managedNote = getNoteById(note.getId());
+        Note managedNote = notesById.get(note.getId());
         if(managedNote == null) throw new IllegalArgumentException("Note not found in manager.");
 
         Tag tag = getOrCreateTag(tagName);
@@ -525,11 +784,11 @@ public class NoteManager {
         }
     }
 
-    public void removeTagFromNote(Note note, Tag tagToRemove) {
+    public synchronized void removeTagFromNote(Note note, Tag tagToRemove) {
         if (note == null || note.getId() == 0 || tagToRemove == null || tagToRemove.getId() == 0) {
             throw new IllegalArgumentException("Note or Tag to remove cannot be null or unsaved");
         }
-        Note managedNote = getNoteById(note.getId());
+        Note managedNote = notesById.get(note.getId());
         if(managedNote == null) throw new IllegalArgumentException("Note not found in manager.");
 
         boolean removed = managedNote.getTags().removeIf(t -> t.getId() == tagToRemove.getId());
@@ -540,133 +799,743 @@ public class NoteManager {
     }
 
     public List<Tag> getAllTags() {
-        return new ArrayList<>(tags);
+        return new ArrayList<>(view.tags.list);
     }
 
     public Tag getTagById(long tagId) {
-        if (tagId == 0) return null;
-        return tags.stream().filter(tag -> tag.getId() == tagId).findFirst().orElse(null);
+        return view.tags.byId.get(tagId);
     }
 
     public Tag getTagByName(String name) {
-        if (name == null || name.trim().isEmpty()) return null;
-        return tags.stream().filter(t -> t.getName().equalsIgnoreCase(name.trim())).findFirst().orElse(null);
+        return view.tags.byName.get(name);
     }
 
-    public void updateTag(Tag tagToUpdate) {
+    public synchronized void updateTag(Tag tagToUpdate) {
         if (tagToUpdate == null || tagToUpdate.getId() == 0) {
             throw new IllegalArgumentException("Tag to update must not be null and must have a valid ID.");
         }
-        int index = -1;
-        for (int i = 0; i < tags.size(); i++) {
-            if (tags.get(i).getId() == tagToUpdate.getId()) {
-                index = i;
-                break;
-            }
-        }
-        if (index != -1) {
-            final long currentId = tagToUpdate.getId();
-            Optional<Tag> conflictingTag = tags.stream()
-                    .filter(t -> t.getName().equalsIgnoreCase(tagToUpdate.getName()) && t.getId() != currentId)
-                    .findFirst();
-            if (conflictingTag.isPresent()) {
+        Tag existing = tagIndex.get(tagToUpdate.getId());
+        if (existing != null) {
+            Tag conflictingTag = tagNames.get(tagToUpdate.getName());
+            if (conflictingTag != null && conflictingTag.getId() != tagToUpdate.getId()) {
                 throw new IllegalArgumentException("Another tag with the name '" + tagToUpdate.getName() + "' already exists.");
             }
-            tags.set(index, tagToUpdate);
+            if (existing != tagToUpdate) {
+                tags.set(tags.indexOf(existing), tagToUpdate);
+                tagIndex.put(tagToUpdate.getId(), tagToUpdate);
+                tagNames.remove(existing, tags);
+            }
+            tagNames.put(tagToUpdate, tags);
+            tagsChanged = true;
+            // Tên tag là một phần văn bản được đánh chỉ mục của các note mang tag đó
+            for (Note note : notesByIds(notesById, relations.notesWithTag(tagToUpdate.getId()))) {
+                reindexText(note);
+            }
             System.out.println("[NoteManager updateTag] Đã cập nhật tag: " + tagToUpdate.getName() + " với ID: " + tagToUpdate.getId());
-            saveData();
+            dataStorage.saveTag(tagToUpdate);
+            publish(NoteChange.tagChanged(tagToUpdate.getId()));
         } else {
             throw new IllegalArgumentException("Tag with ID " + tagToUpdate.getId() + " not found for update.");
         }
     }
 
-    public void deleteTag(long tagId) {
-        Tag tagToDelete = getTagById(tagId);
+    public synchronized void deleteTag(long tagId) {
+        Tag tagToDelete = tagIndex.get(tagId);
         if (tagToDelete == null) {
             System.err.println("[NoteManager deleteTag] Tag với ID " + tagId + " không tìm thấy để xóa.");
             return;
         }
-        for (Note note : notes) {
+        for (Note note : notesByIds(notesById, relations.notesWithTag(tagId))) {
             boolean modified = note.getTags().removeIf(t -> t.getId() == tagId);
             if (modified) {
+                long folderId = relations.noteChanged(note);
+                reindexText(note);
+                dataStorage.saveNote(note);
+                publish(NoteChange.noteSaved(note.getId(), folderId, folderId));
             }
         }
         tags.remove(tagToDelete);
+        tagIndex.remove(tagId);
+        tagNames.remove(tagToDelete, tags);
+        tagsChanged = true;
         System.out.println("[NoteManager deleteTag] Đã xóa tag: " + tagToDelete.getName() + " với ID: " + tagId + " và xóa khỏi tất cả các notes.");
-        saveData();
+        dataStorage.deleteTag(tagId);
+        publish(NoteChange.tagChanged(tagId));
     }
 
+    /**
+     * Tìm note có tiêu đề, nội dung hoặc tên tag chứa chuỗi truy vấn (kể cả giữa từ), không phân biệt
+     * hoa thường và dấu tiếng Việt. Chỉ mục trigram thu hẹp ứng viên trước khi kiểm tra lại từng note.
+     */
     public List<Note> searchNotes(String query) {
-        if (query == null || query.trim().isEmpty()) {
-            return getAllNotes();
+        ReadView v = view;
+        LongIdSet ids = findNoteIds(v, query);
+        if (ids == null) {
+            return v.notes.toList();
+        }
+        return notesByIds(v.notesById, ids.toSortedArray());
+    }
+
+    /**
+     * Kết quả của truy vấn có cấu trúc theo độ liên quan (BM25F trên các từ của điều kiện toàn văn và title:),
+     * từng trang một. Chỉ {@code offset + limit} note tốt nhất được giữ lại nên trang đầu không phải sắp xếp
+     * mọi kết quả. Truy vấn không có từ để chấm điểm (chỉ tag:, folder:, is:, due) giữ thứ tự của
+     * {@link #getNotesByRecent(long)}; truy vấn rỗng trả về chính danh sách đó. Trong lúc chỉ mục toàn văn
+     * chưa sẵn sàng, điều kiện toàn văn chỉ xét tiêu đề và tên tag, kết quả cũng theo thứ tự đó và trang được
+     * đánh dấu {@link SearchPage#isIndexing()}.
+     *
+     * @param folderId chỉ tìm trong folder này, 0 nếu tìm trong mọi folder
+     */
+    SearchPage searchNotesRanked(NoteQuery query, long folderId, int offset, int limit) {
+        if (offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("offset phải >= 0 và limit phải > 0.");
+        }
+        ReadView v = view;
+        boolean indexing = !isTextIndexReady() && hasTextClause(query);
+        LongIdSet ids = findNoteIds(v, query, folderId);
+        String rankText = ids != null ? rankTextOf(query) : "";
+        int wanted = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        long[] top = rankText.isEmpty() ? null : withTextIndex(index -> index.rank(ids, rankText, wanted), () -> null);
+        if (top == null) {
+            List<Note> ordered = notesInOrder(v.notesById, v.order.recent(folderId));
+            if (ids != null) {
+                ordered = ordered.stream().filter(note -> ids.contains(note.getId())).collect(Collectors.toList());
+            }
+            int from = Math.min(offset, ordered.size());
+            int to = (int) Math.min((long) offset + limit, ordered.size());
+            return new SearchPage(new ArrayList<>(ordered.subList(from, to)), offset, ordered.size(), indexing);
+        }
+        long[] page = Arrays.copyOfRange(top, Math.min(offset, top.length), top.length);
+        return new SearchPage(notesByIds(v.notesById, page), offset, ids.size(), false);
+    }
+
+    private static boolean hasTextClause(NoteQuery query) {
+        if (query == null) return false;
+        for (NoteQuery.Clause clause : query.getClauses()) {
+            if (clause.kind == NoteQuery.Kind.TEXT || clause.kind == NoteQuery.Kind.PREFIX) return true;
+        }
+        return false;
+    }
+
+    // Các từ dùng để chấm điểm: điều kiện toàn văn, tiền tố và title: không phủ định
+    private static String rankTextOf(NoteQuery query) {
+        StringBuilder text = new StringBuilder();
+        for (NoteQuery.Clause clause : query.getClauses()) {
+            if (!clause.negated && (clause.kind == NoteQuery.Kind.TEXT || clause.kind == NoteQuery.Kind.PREFIX
+                    || clause.kind == NoteQuery.Kind.TITLE)) {
+                if (text.length() > 0) text.append(' ');
+                text.append(clause.value);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return ID các note khớp truy vấn (chỉ đọc), hoặc null nếu truy vấn rỗng
+     */
+    LongIdSet findNoteIds(String query) {
+        return findNoteIds(view, query);
+    }
+
+    private LongIdSet findNoteIds(ReadView v, String query) {
+        String folded = FullTextIndex.fold(query);
+        if (folded.isEmpty()) {
+            return null;
+        }
+        return withTextIndex(index -> index.searchSubstring(folded, id -> {
+            Note note = v.notesById.get(id);
+            return note != null && FullTextIndex.containsFolded(note, folded);
+        }), () -> scanTitlesAndTags(v, folded, null));
+    }
+
+    /**
+     * Thực thi truy vấn có cấu trúc. Folder, tag và cờ is: (kể cả phủ định) là facet nên được gộp trước bằng
+     * and/andNot trên bitmap ({@link NoteFacets}); tập đó rồi mới được giao với khoảng thời gian báo thức và
+     * cuối cùng là toàn văn. Khi tập ứng viên đã nhỏ thì điều kiện toàn văn được kiểm tra trực tiếp trên từng
+     * note thay vì tra chỉ mục. Các điều kiện phủ định khác dùng chỉ mục để loại trừ, còn title: được kiểm tra
+     * trên ứng viên còn lại.
+     *
+     * @param folderId chỉ tìm trong folder này, 0 nếu tìm trong mọi folder
+     * @return ID các note khớp, hoặc null nếu truy vấn rỗng (không lọc)
+     */
+    LongIdSet findNoteIds(NoteQuery query, long folderId) {
+        return findNoteIds(view, query, folderId);
+    }
+
+    private LongIdSet findNoteIds(ReadView v, NoteQuery query, long folderId) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        NoteFacets facets = v.facets;
+        OrdinalBitmap facet = folderId > 0 ? facets.folder(folderId) : null;
+        List<NoteQuery.Clause> indexed = new ArrayList<>();
+        List<NoteQuery.Clause> checks = new ArrayList<>();
+        List<LongIdSet> excluded = new ArrayList<>();
+        for (NoteQuery.Clause clause : query.getClauses()) {
+            if (clause.kind == NoteQuery.Kind.FOLDER || clause.kind == NoteQuery.Kind.TAG || clause.kind == NoteQuery.Kind.IS) {
+                OrdinalBitmap bitmap = facetOf(v, clause);
+                if (clause.negated) {
+                    facet = OrdinalBitmap.andNot(facet != null ? facet : facets.all(), bitmap);
+                } else {
+                    facet = facet != null ? OrdinalBitmap.and(facet, bitmap) : bitmap;
+                }
+            } else if (clause.kind == NoteQuery.Kind.TITLE) {
+                checks.add(clause);
+            } else if (clause.negated) {
+                excluded.add(clauseIds(v, clause, null));
+            } else {
+                indexed.add(clause);
+            }
+        }
+        LongIdSet candidates = facet != null ? facets.toIdSet(facet) : null;
+        if (candidates != null && candidates.isEmpty()) return candidates;
+        indexed.sort(Comparator.comparingLong(clause -> estimateClause(v, clause)));
+        for (NoteQuery.Clause clause : indexed) {
+            if (clause.kind == NoteQuery.Kind.TEXT && !clause.fuzzy && candidates != null && candidates.size() <= TEXT_CHECK_LIMIT) {
+                checks.add(clause);
+                continue;
+            }
+            // Toàn văn chỉ xét các ứng viên đã có; khoảng báo thức thì giao sau
+            LongIdSet ids = clauseIds(v, clause, candidates);
+            boolean alreadyWithin = clause.kind != NoteQuery.Kind.DUE;
+            candidates = candidates == null || alreadyWithin ? ids : LongIdSet.intersect(candidates, ids);
+            if (candidates.isEmpty()) return candidates;
+        }
+        LongIdSet result = new LongIdSet(candidates != null ? candidates.size() : v.notes.size());
+        if (candidates == null) {
+            for (Note note : v.notes) {
+                if (note.getId() != 0 && matchesRemaining(note, checks, excluded)) result.add(note.getId());
+            }
+        } else {
+            candidates.forEach(id -> {
+                Note note = v.notesById.get(id);
+                if (note != null && matchesRemaining(note, checks, excluded)) result.add(id);
+            });
+        }
+        return result;
+    }
+
+    // Toàn văn luôn xếp sau khoảng báo thức; cụm dài hơn thường chọn lọc hơn nên đứng trước
+    private static long estimateClause(ReadView v, NoteQuery.Clause clause) {
+        if (clause.kind == NoteQuery.Kind.DUE) {
+            return v.order.countWithAlarm();
+        }
+        return Integer.MAX_VALUE + (long) (Integer.MAX_VALUE - clause.value.length());
+    }
+
+    private static OrdinalBitmap facetOf(ReadView v, NoteQuery.Clause clause) {
+        NoteFacets facets = v.facets;
+        switch (clause.kind) {
+            case FOLDER:
+                Folder folder = v.folders.byName.get(clause.value);
+                return folder != null ? facets.folder(folder.getId()) : new OrdinalBitmap();
+            case TAG:
+                // Mọi tag có tên chứa giá trị: hợp các bitmap của chúng
+                OrdinalBitmap tagged = new OrdinalBitmap();
+                for (Tag tag : tagsMatching(v, clause.value)) tagged = OrdinalBitmap.or(tagged, facets.tag(tag.getId()));
+                return tagged;
+            default:
+                return facets.flag(flagOf(clause.value));
+        }
+    }
+
+    private static int flagOf(String isValue) {
+        switch (isValue) {
+            case NoteQuery.IS_MISSION:
+                return NoteFacets.MISSION;
+            case NoteQuery.IS_DONE:
+                return NoteFacets.COMPLETED;
+            case NoteQuery.IS_FAVORITE:
+                return NoteFacets.FAVORITE;
+            default:
+                return NoteFacets.ALARM;
+        }
+    }
+
+    private LongIdSet clauseIds(ReadView v, NoteQuery.Clause clause, LongIdSet within) {
+        switch (clause.kind) {
+            case DUE:
+                return v.order.notesWithAlarmBetween(clause.from, clause.to);
+            case PREFIX:
+                // Tra dải từ của từ điển; trong lúc chưa có chỉ mục thì quét như chuỗi con
+                return withTextIndex(index -> {
+                    LongIdSet ids = index.searchWords(clause.value);
+                    return within != null ? LongIdSet.intersect(ids, within) : ids;
+                }, () -> scanTitlesAndTags(v, clause.value, within));
+            default:
+                final String folded = clause.value;
+                return withTextIndex(index -> {
+                    LongIdSet ids = index.searchSubstring(folded, within, id -> {
+                        Note note = v.notesById.get(id);
+                        return note != null && FullTextIndex.containsFolded(note, folded);
+                    });
+                    if (!clause.fuzzy) return ids;
+                    LongIdSet withTypos = new LongIdSet(ids.size());
+                    withTypos.addAll(ids);
+                    LongIdSet typos = index.searchTitlesFuzzy(folded);
+                    withTypos.addAll(within != null ? LongIdSet.intersect(typos, within) : typos);
+                    return withTypos;
+                }, () -> scanTitlesAndTags(v, folded, within));
+        }
+    }
+
+    /**
+     * Tra chỉ mục toàn văn dưới khóa đọc; khi chỉ mục chưa được cài thì chạy {@code fallback}, ngoài khóa.
+     */
+    private <T> T withTextIndex(Function<FullTextIndex, T> search, Supplier<T> fallback) {
+        textLock.readLock().lock();
+        try {
+            FullTextIndex index = textIndex;
+            if (index != null) return search.apply(index);
+        } finally {
+            textLock.readLock().unlock();
+        }
+        return fallback.get();
+    }
+
+    // Thay cho chỉ mục toàn văn khi nó chưa được cài: chỉ quét tiêu đề và tên tag, không đọc nội dung note
+    private static LongIdSet scanTitlesAndTags(ReadView v, String folded, LongIdSet within) {
+        LongIdSet result = new LongIdSet();
+        if (within != null) {
+            within.forEach(id -> {
+                Note note = v.notesById.get(id);
+                if (note != null && FullTextIndex.titleOrTagsContainFolded(note, folded)) result.add(id);
+            });
+        } else {
+            for (Note note : v.notes) {
+                if (note.getId() != 0 && FullTextIndex.titleOrTagsContainFolded(note, folded)) result.add(note.getId());
+            }
+        }
+        return result;
+    }
+
+    private boolean matchesRemaining(Note note, List<NoteQuery.Clause> checks, List<LongIdSet> excluded) {
+        for (LongIdSet ids : excluded) {
+            if (ids.contains(note.getId())) return false;
+        }
+        for (NoteQuery.Clause clause : checks) {
+            if (matchesClause(note, clause) == clause.negated) return false;
+        }
+        return true;
+    }
+
+    private boolean matchesClause(Note note, NoteQuery.Clause clause) {
+        if (clause.kind == NoteQuery.Kind.TITLE) {
+            return FullTextIndex.fold(note.getTitle()).contains(clause.value);
+        }
+        return FullTextIndex.containsFolded(note, clause.value);
+    }
+
+    private static List<Tag> tagsMatching(ReadView v, String foldedName) {
+        List<Tag> matching = new ArrayList<>();
+        for (Tag tag : v.tags.list) {
+            if (FullTextIndex.fold(tag.getName()).contains(foldedName)) matching.add(tag);
+        }
+        return matching;
+    }
+
+    /**
+     * Chụp lại văn bản của mọi note rồi mở chỉ mục toàn văn trên luồng nền: nạp checkpoint trên đĩa và chỉ
+     * đánh chỉ mục lại các note đã đổi, hoặc dựng lại từ đầu nếu checkpoint không dùng được. Khởi động
+     * không phải chờ việc này và cũng không phải đọc nội dung của tất cả note; luồng nền tự cài chỉ mục khi xong.
+     */
+    private void startTextIndexBuild() {
+        List<FullTextIndex.Document> documents = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            if (note.getId() != 0) documents.add(new FullTextIndex.Document(note));
+        }
+        long generation = dataStorage.getGeneration();
+        NoteBodyStore bodyStore = dataStorage.getBodyStore();
+        textChangesDuringBuild.clear();
+        Object build = new Object();
+        currentTextIndexBuild.set(build);
+        pendingTextIndex = indexBuilder.submit(() -> {
+            // Nội dung vừa chuyển đổi có thể vẫn đang chờ ghi xuống BlobStore
+            dataStorage.flush();
+            FullTextIndex built;
+            try {
+                built = searchIndexStore.open(documents, bodyStore, generation);
+            } catch (RuntimeException e) {
+                System.err.println("[NoteManager startTextIndexBuild] Mở chỉ mục thất bại, dựng lại từ đầu: " + e);
+                built = FullTextIndex.build(documents, bodyStore);
+            }
+            installTextIndex(build, built);
+        });
+    }
+
+    /**
+     * Chạy trên luồng dựng chỉ mục: cài chỉ mục vừa dựng nếu lần dựng này vẫn là lần hiện hành, áp dụng các
+     * thay đổi xảy ra trong lúc dựng rồi báo cho người đăng ký. Chỉ giữ khóa trong lúc cài.
+     */
+    private void installTextIndex(Object build, FullTextIndex built) {
+        synchronized (this) {
+            if (!currentTextIndexBuild.compareAndSet(build, null)) {
+                return;
+            }
+            textChangesDuringBuild.forEach(id -> {
+                Note note = notesById.get(id);
+                if (note != null) built.update(note); else built.remove(id);
+            });
+            textChangesDuringBuild.clear();
+            setTextIndex(built);
+            pendingTextIndex = null;
+        }
+        System.out.println("[NoteManager installTextIndex] Chỉ mục toàn văn đã sẵn sàng: " + built.getTermCount() + " từ.");
+        for (Runnable listener : textIndexListeners) listener.run();
+    }
+
+    /**
+     * Đăng ký được gọi (trên luồng dựng chỉ mục) mỗi khi chỉ mục toàn văn vừa được cài: sau khi khởi động
+     * và sau mỗi lần nhập JSON. Kết quả tìm kiếm có {@link SearchPage#isIndexing()} nên được tìm lại lúc đó.
+     */
+    void addTextIndexListener(Runnable listener) {
+        textIndexListeners.add(listener);
+    }
+
+    boolean isTextIndexReady() {
+        return textIndex != null;
+    }
+
+    private void setTextIndex(FullTextIndex index) {
+        textLock.writeLock().lock();
+        try {
+            textIndex = index;
+        } finally {
+            textLock.writeLock().unlock();
+        }
+    }
+
+    private void reindexText(Note note) {
+        textLock.writeLock().lock();
+        try {
+            if (textIndex != null) {
+                textIndex.update(note);
+            } else if (currentTextIndexBuild.get() != null) {
+                textChangesDuringBuild.add(note.getId());
+            }
+        } finally {
+            textLock.writeLock().unlock();
+        }
+    }
+
+    private void unindexText(long noteId) {
+        textLock.writeLock().lock();
+        try {
+            if (textIndex != null) {
+                textIndex.remove(noteId);
+            } else if (currentTextIndexBuild.get() != null) {
+                textChangesDuringBuild.add(noteId);
+            }
+        } finally {
+            textLock.writeLock().unlock();
         }
-        String lowerQuery = query.trim().toLowerCase();
-        return notes.stream()
-                .filter(note -> (note.getTitle() != null && note.getTitle().toLowerCase().contains(lowerQuery)) ||
-                        (note.getContent() != null && note.getContent().toLowerCase().contains(lowerQuery)) ||
-                        (note.getTags().stream().anyMatch(tag -> tag.getName().toLowerCase().contains(lowerQuery)))
-                )
-                .collect(Collectors.toList());
     }
 
     public List<Note> searchNotesByTag(Tag tag) {
         if (tag == null || tag.getId() == 0) {
             return new ArrayList<>();
         }
-        return notes.stream()
-                .filter(note -> note.getTags().stream().anyMatch(t -> t.getId() == tag.getId()))
-                .collect(Collectors.toList());
+        ReadView v = view;
+        return notesByIds(v.notesById, v.facets.toIdSet(v.facets.tag(tag.getId())).toSortedArray());
+    }
+
+    /**
+     * Số note trong thư mục, đếm từ bitmap facet thay vì duyệt note.
+     */
+    public int countNotesInFolder(long folderId) {
+        return view.facets.countInFolder(folderId);
+    }
+
+    /**
+     * Các nhiệm vụ theo bộ lọc và thứ tự, đọc thẳng từ các thứ tự được duy trì sẵn nên không phải sắp xếp.
+     * Quá hạn phụ thuộc thời điểm hiện tại nên DEFAULT tách hai nhóm này trong một lượt theo báo thức.
+     */
+    public List<Note> getMissions(MissionFilter filter, MissionOrder order, LocalDateTime now) {
+        ReadView v = view;
+        OrdinalBitmap selected = missionsMatching(v, filter);
+        NoteOrderIndex views = v.order;
+        List<Note> result = new ArrayList<>(selected.cardinality());
+        switch (order) {
+            case DUE_ASC:
+                collectMissions(v, views.missionsByDue(), selected, filter, now, result);
+                break;
+            case DUE_DESC:
+                collectMissions(v, views.missionsByDueDesc(), selected, filter, now, result);
+                break;
+            case MODIFIED_DESC:
+                collectMissions(v, views.missionsByUpdated(), selected, filter, now, result);
+                break;
+            default:
+                OrdinalBitmap completed = v.facets.flag(NoteFacets.COMPLETED);
+                List<Note> incomplete = new ArrayList<>();
+                collectMissions(v, views.missionsByDue(), OrdinalBitmap.andNot(selected, completed), filter, now, incomplete);
+                List<Note> overdue = new ArrayList<>();
+                for (Note note : incomplete) {
+                    if (isOverdue(note, now)) overdue.add(note); else result.add(note);
+                }
+                result.addAll(overdue);
+                collectMissions(v, views.missionsByUpdated(), OrdinalBitmap.and(selected, completed), filter, now, result);
+                break;
+        }
+        return result;
+    }
+
+    // Tập ứng viên là and/andNot giữa các bitmap cờ nhiệm vụ, hoàn thành và báo thức
+    private static OrdinalBitmap missionsMatching(ReadView v, MissionFilter filter) {
+        NoteFacets facets = v.facets;
+        OrdinalBitmap missions = facets.flag(NoteFacets.MISSION);
+        switch (filter) {
+            case COMPLETED:
+                return OrdinalBitmap.and(missions, facets.flag(NoteFacets.COMPLETED));
+            case INCOMPLETE:
+                return OrdinalBitmap.andNot(missions, facets.flag(NoteFacets.COMPLETED));
+            case OVERDUE:
+                return OrdinalBitmap.and(OrdinalBitmap.andNot(missions, facets.flag(NoteFacets.COMPLETED)),
+                        facets.flag(NoteFacets.ALARM));
+            default:
+                return missions;
+        }
+    }
+
+    // Theo thứ tự đã duy trì, giữ các note thuộc bitmap; chỉ OVERDUE còn phải xem giờ báo thức
+    private static void collectMissions(ReadView v, SortedKeyIndex ordered, OrdinalBitmap selected, MissionFilter filter,
+                                        LocalDateTime now, List<Note> result) {
+        if (selected.isEmpty()) return;
+        ordered.forEachId(id -> {
+            if (!v.facets.contains(selected, id)) return;
+            Note note = v.notesById.get(id);
+            if (note == null || note.getMissionContent() == null || note.getMissionContent().isEmpty()) return;
+            if (filter == MissionFilter.OVERDUE && !isOverdue(note, now)) return;
+            result.add(note);
+        });
+    }
+
+    private static boolean isOverdue(Note note, LocalDateTime now) {
+        Alarm alarm = note.getAlarm();
+        return !note.isMissionCompleted() && alarm != null && !alarm.isRecurring()
+                && alarm.getAlarmTime() != null && alarm.getAlarmTime().isBefore(now);
     }
 
-    public void moveNoteToFolder(Note note, Folder newFolder) {
+    /**
+     * Note theo thứ tự của danh sách chính: yêu thích trước, rồi cập nhật gần nhất trước.
+     *
+     * @param folderId chỉ lấy note của folder này, 0 nếu lấy mọi note
+     */
+    public List<Note> getNotesByRecent(long folderId) {
+        ReadView v = view;
+        return notesInOrder(v.notesById, v.order.recent(folderId));
+    }
+
+    private void appendNote(Note note) {
+        noteSlots.put(note.getId(), notes.length());
+        notes = notes.append(note);
+        notesById = notesById.put(note.getId(), note, noteEdit);
+    }
+
+    private void removeNoteSlot(long noteId) {
+        Integer slot = noteSlots.remove(noteId);
+        if (slot == null) return;
+        NoteSnapshot next = notes.remove(slot);
+        if (next.needsCompaction()) {
+            next = next.compact();
+            noteSlots.clear();
+            for (int i = 0; i < next.length(); i++) {
+                Note note = next.get(i);
+                if (note.getId() != 0) noteSlots.putIfAbsent(note.getId(), i);
+            }
+        }
+        notes = next;
+    }
+
+    private static List<Note> notesInOrder(LongIdTrie<Note> byId, SortedKeyIndex ordered) {
+        List<Note> result = new ArrayList<>(ordered.size());
+        ordered.forEachId(id -> {
+            Note note = byId.get(id);
+            if (note != null) result.add(note);
+        });
+        return result;
+    }
+
+    private static List<Note> notesByIds(LongIdTrie<Note> byId, long[] ids) {
+        List<Note> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Note note = byId.get(id);
+            if (note != null) result.add(note);
+        }
+        return result;
+    }
+
+    /**
+     * Đăng ký lại folder/tag của note trong chỉ mục quan hệ và đồng bộ danh sách note của folder:
+     * chỉ khi folder đã đăng ký thay đổi mới phải gỡ khỏi folder cũ và gắn vào folder mới.
+     *
+     * @return folderId đã đăng ký trước đó, 0 nếu note chưa có trong chỉ mục
+     */
+    private long indexNote(Note note, Folder parentFolder) {
+        long previousFolderId = relations.noteChanged(note);
+        if (previousFolderId == parentFolder.getId()) {
+            return previousFolderId;
+        }
+        Folder previousFolder = folderIndex.get(previousFolderId);
+        if (previousFolder != null) previousFolder.removeNote(note);
+        parentFolder.attachNote(note);
+        return previousFolderId;
+    }
+
+    public synchronized void moveNoteToFolder(Note note, Folder newFolder) {
         if (note == null || newFolder == null || note.getId() == 0 || newFolder.getId() == 0) {
             throw new IllegalArgumentException("Note or new Folder cannot be null or unsaved.");
         }
-        Note noteInManager = getNoteById(note.getId());
-        Folder folderInManager = getFolderById(newFolder.getId());
+        Note noteInManager = notesById.get(note.getId());
+        Folder folderInManager = folderIndex.get(newFolder.getId());
 
         if (noteInManager == null || folderInManager == null) {
             throw new IllegalArgumentException("Note or Folder not found in manager for move operation.");
         }
 
-        Folder oldFolder = noteInManager.getFolder();
-
-        if (oldFolder != null && oldFolder.getId() == folderInManager.getId()) {
+        if (relations.folderOf(noteInManager.getId()) == folderInManager.getId()) {
             System.out.println("[NoteManager moveNoteToFolder] Note đã ở trong thư mục đích.");
             return;
         }
 
-        if (oldFolder != null) {
-            oldFolder.removeNote(noteInManager);
-        }
-
         noteInManager.setFolder(folderInManager);
         noteInManager.setFolderId(folderInManager.getId());
-        if (!folderInManager.getNotes().contains(noteInManager)) {
-            folderInManager.addNote(noteInManager);
-        }
+        long previousFolderId = indexNote(noteInManager, folderInManager);
         System.out.println("[NoteManager moveNoteToFolder] Đã chuyển note '" + noteInManager.getTitle() + "' sang thư mục '" + folderInManager.getName() + "'.");
-        saveData();
+        dataStorage.saveNote(noteInManager);
+        publish(NoteChange.noteSaved(noteInManager.getId(), previousFolderId, folderInManager.getId()));
     }
 
+    /**
+     * Yêu thích trước, nhiệm vụ chưa xong trước, rồi tạo gần nhất trước; đọc từ thứ tự được duy trì sẵn.
+     */
     public List<Note> getSortedNotes() {
-        return notes.stream()
-                .sorted(Comparator.comparing(Note::isFavorite, Comparator.reverseOrder())
-                        .thenComparing(note -> !note.isMission() || note.isMissionCompleted())
-                        .thenComparing(Note::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())))
-                .collect(Collectors.toList());
+        ReadView v = view;
+        return notesInOrder(v.notesById, v.order.created());
     }
 
-    void saveData() {
+    /**
+     * Công bố bản làm việc hiện tại cho người đọc, trừ khi đang giữa một nhóm thay đổi (inBatch công bố khi
+     * nhóm kết thúc). Danh sách folder/tag chỉ được chép lại khi đã đổi; note, chỉ mục ID, facet và thứ tự là
+     * cấu trúc dùng chung nên chỉ cần đổi lần sửa để phiên bản vừa công bố không còn bị sửa tại chỗ.
+     */
+    private void publishView() {
+        if (batchDepth > 0) return;
+        ReadView current = view;
+        Catalog<Folder> folderCatalog = foldersChanged ? new Catalog<>(folders, Folder::getName, Folder::getId) : current.folders;
+        Catalog<Tag> tagCatalog = tagsChanged ? new Catalog<>(tags, Tag::getName, Tag::getId) : current.tags;
+        foldersChanged = false;
+        tagsChanged = false;
+        relations.freeze();
+        noteEdit = new Object();
+        view = new ReadView(notes, notesById, folderCatalog, tagCatalog, relations.getFacets(), relations.getOrder());
+    }
+
+    // View phải có trước khi màn hình nhận thay đổi (NoteChangeBus phát trên EDT)
+    private void publish(NoteChange change) {
+        publishView();
+        changes.publish(change);
+    }
+
+    synchronized void saveData() {
         try {
             dataStorage.save(this);
         } catch (Exception e) {
-            System.err.println("Nghiêm trọng: Không thể lưu dữ liệu vào " + "notes.json" + ": " + e.getMessage());
+            System.err.println("Nghiêm trọng: Không thể lưu dữ liệu vào " + DATA_FILE + ": " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    List<Note> getModifiableNotesList() { return notes; }
+    public synchronized void exportToJson(File target) throws IOException {
+        dataStorage.exportJson(this, target);
+    }
+
+    /**
+     * Thay toàn bộ dữ liệu hiện tại bằng dữ liệu trong file JSON rồi lưu lại snapshot.
+     */
+    public synchronized void importFromJson(File source) throws IOException {
+        dataStorage.importJson(this, source);
+        initializeAndSanitizeIds();
+        ensureRootFolderExists();
+        relinkObjects();
+        startTextIndexBuild();
+        saveData();
+        publishView();
+        changes.publishReload();
+    }
+
+    BlobStore getBlobStore() {
+        return dataStorage.getBlobStore();
+    }
+
+    void flushData() {
+        dataStorage.flush();
+    }
+
+    public int getPendingSaveCount() {
+        return dataStorage.getQueueDepth();
+    }
+
+    public long getLastSaveLatencyMillis() {
+        return dataStorage.getLastSaveLatencyMillis();
+    }
+
+    /**
+     * Thay toàn bộ danh sách note bằng dữ liệu vừa nạp; chỉ mục được dựng lại sau đó trong initializeAndSanitizeIds.
+     */
+    synchronized void replaceLoadedNotes(List<Note> loaded) {
+        notes = loaded != null ? NoteSnapshot.of(loaded) : NoteSnapshot.EMPTY;
+    }
+
+    // Chỉ DataStorage dùng khi tải/nhập/lưu, lúc đó NoteManager đang trong constructor hoặc đã giữ khóa, nên
+    // thấy cả thay đổi của nhóm đang chạy mà view chưa có
+    NoteSnapshot getWorkingNotes() { return notes; }
     List<Folder> getModifiableFoldersList() { return folders; }
     List<Tag> getModifiableTagsList() { return tags; }
+
+    /**
+     * Những gì người đọc thấy, công bố trọn gói qua một trường volatile nên mọi phần luôn cùng một phiên bản.
+     */
+    private static final class ReadView {
+        static final ReadView EMPTY = new ReadView(NoteSnapshot.EMPTY, LongIdTrie.empty(),
+                new Catalog<>(Collections.emptyList(), Folder::getName, Folder::getId),
+                new Catalog<>(Collections.emptyList(), Tag::getName, Tag::getId),
+                NoteFacets.EMPTY, NoteOrderIndex.EMPTY);
+
+        final NoteSnapshot notes;
+        final LongIdTrie<Note> notesById;
+        final Catalog<Folder> folders;
+        final Catalog<Tag> tags;
+        final NoteFacets facets;
+        final NoteOrderIndex order;
+
+        ReadView(NoteSnapshot notes, LongIdTrie<Note> notesById, Catalog<Folder> folders, Catalog<Tag> tags,
+                 NoteFacets facets, NoteOrderIndex order) {
+            this.notes = notes;
+            this.notesById = notesById;
+            this.folders = folders;
+            this.tags = tags;
+            this.facets = facets;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Bản chép chỉ đọc của danh sách folder hoặc tag cùng chỉ mục ID và tên, dựng một lần lúc công bố.
+     */
+    private static final class Catalog<T> {
+        final List<T> list;
+        final LongHashIndex<T> byId = new LongHashIndex<>();
+        final NameIndex<T> byName;
+
+        Catalog(List<T> items, Function<T, String> nameOf, ToLongFunction<T> idOf) {
+            list = Collections.unmodifiableList(new ArrayList<>(items));
+            for (T item : list) {
+                long id = idOf.applyAsLong(item);
+                if (id != 0) byId.putIfAbsent(id, item);
+            }
+            byName = new NameIndex<>(nameOf, idOf);
+            byName.rebuild(list);
+        }
+    }
 }
@@ -0,0 +1,198 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Các thứ tự hiển thị được duy trì sẵn thay vì sắp xếp lại mỗi lần làm mới danh sách. Mỗi view là một
+ * {@link SortedKeyIndex} với khóa đã đóng gói thành long:
+ * <ul>
+ *   <li>recent: yêu thích trước, rồi cập nhật gần nhất trước (danh sách chính, cả theo từng folder)</li>
+ *   <li>created: yêu thích trước, nhiệm vụ chưa xong trước, rồi tạo gần nhất trước</li>
+ *   <li>missionsByDue / missionsByDueDesc: nhiệm vụ theo báo thức tăng/giảm dần (không báo thức ở cuối),
+ *       cùng giờ thì cập nhật gần nhất trước</li>
+ *   <li>missionsByUpdated: nhiệm vụ theo cập nhật gần nhất trước</li>
+ *   <li>alarms: mọi note có báo thức theo thời điểm báo thức, để lọc theo khoảng thời gian</li>
+ * </ul>
+ * Như {@link NoteFacets}, mỗi phiên bản là bất biến với người đọc và {@link #with} trả về phiên bản mới chỉ chép
+ * những view có khóa đổi. NoteRelationIndex ghi nhớ khóa đã đăng ký ({@link #keysOf}) của từng note để khi note
+ * bị sửa tại chỗ vẫn gỡ được đúng vị trí cũ.
+ */
+final class NoteOrderIndex {
+    // Vị trí trong khóa đã đăng ký của một note
+    private static final int FOLDER = 0;
+    private static final int FAVORITE_RANK = 1;
+    private static final int UPDATED = 2;
+    private static final int CREATED_RANK = 3;
+    private static final int CREATED = 4;
+    private static final int MISSION = 5;
+    private static final int DUE = 6;
+    private static final int DUE_DESC = 7;
+    private static final int KEYS = 8;
+    // Khóa DUE của note không có báo thức (timeKey bão hòa ở Long.MAX_VALUE - 1 nên không trùng)
+    private static final long NO_DUE = Long.MAX_VALUE;
+
+    /**
+     * Cùng thứ tự với view {@link #recent(long)}, để màn hình chèn một note vào danh sách đã sắp mà không phải
+     * đọc lại cả view.
+     */
+    static final Comparator<Note> RECENT_ORDER = Comparator.<Note>comparingLong(note -> note.isFavorite() ? 0 : 1)
+            .thenComparingLong(note -> descending(note.getUpdatedAt()))
+            .thenComparingLong(Note::getId);
+
+    static final NoteOrderIndex EMPTY = new NoteOrderIndex(null);
+
+    private SortedKeyIndex recent = new SortedKeyIndex();
+    private LongIdTrie<SortedKeyIndex> recentByFolder = LongIdTrie.empty();
+    private SortedKeyIndex created = new SortedKeyIndex();
+    private SortedKeyIndex missionsByDue = new SortedKeyIndex();
+    private SortedKeyIndex missionsByDueDesc = new SortedKeyIndex();
+    private SortedKeyIndex missionsByUpdated = new SortedKeyIndex();
+    private SortedKeyIndex alarms = new SortedKeyIndex();
+    private final Object edit;
+
+    private NoteOrderIndex(Object edit) {
+        this.edit = edit;
+    }
+
+    /**
+     * @param oldKeys khóa đã đăng ký trước đó, null nếu note mới
+     * @param keys    khóa hiện tại, null nếu note bị xóa
+     * @return phiên bản mới; là chính phiên bản này nếu khóa không đổi hoặc nó đã thuộc lần sửa {@code edit}
+     */
+    NoteOrderIndex with(long noteId, long[] oldKeys, long[] keys, Object edit) {
+        if (Arrays.equals(oldKeys, keys)) return this;
+        NoteOrderIndex order = editable(edit);
+        if (oldKeys != null) order.unregister(noteId, oldKeys, edit);
+        if (keys != null) order.register(noteId, keys, edit);
+        return order;
+    }
+
+    // Các view dưới đây chỉ được đọc
+
+    /**
+     * @param folderId 0 nghĩa là mọi note
+     */
+    SortedKeyIndex recent(long folderId) {
+        if (folderId == 0) return recent;
+        SortedKeyIndex folderView = recentByFolder.get(folderId);
+        return folderView != null ? folderView : new SortedKeyIndex();
+    }
+
+    SortedKeyIndex created() {
+        return created;
+    }
+
+    SortedKeyIndex missionsByDue() {
+        return missionsByDue;
+    }
+
+    SortedKeyIndex missionsByDueDesc() {
+        return missionsByDueDesc;
+    }
+
+    SortedKeyIndex missionsByUpdated() {
+        return missionsByUpdated;
+    }
+
+    int countWithAlarm() {
+        return alarms.size();
+    }
+
+    /**
+     * Các note có báo thức trong khoảng [from, to); null ở một đầu nghĩa là không giới hạn phía đó.
+     */
+    LongIdSet notesWithAlarmBetween(LocalDateTime from, LocalDateTime to) {
+        LongIdSet result = new LongIdSet();
+        alarms.forEachIdBetween(from != null ? timeKey(from) : Long.MIN_VALUE, to != null ? timeKey(to) : NO_DUE, result::add);
+        return result;
+    }
+
+    private NoteOrderIndex editable(Object edit) {
+        if (edit != null && this.edit == edit) return this;
+        NoteOrderIndex copy = new NoteOrderIndex(edit);
+        copy.recent = recent;
+        copy.recentByFolder = recentByFolder;
+        copy.created = created;
+        copy.missionsByDue = missionsByDue;
+        copy.missionsByDueDesc = missionsByDueDesc;
+        copy.missionsByUpdated = missionsByUpdated;
+        copy.alarms = alarms;
+        return copy;
+    }
+
+    private void register(long noteId, long[] keys, Object edit) {
+        recent = recent.with(keys[FAVORITE_RANK], keys[UPDATED], noteId, edit);
+        if (keys[FOLDER] != 0) {
+            SortedKeyIndex folderView = recentByFolder.get(keys[FOLDER]);
+            if (folderView == null) folderView = new SortedKeyIndex();
+            SortedKeyIndex changed = folderView.with(keys[FAVORITE_RANK], keys[UPDATED], noteId, edit);
+            if (changed != folderView) recentByFolder = recentByFolder.put(keys[FOLDER], changed, edit);
+        }
+        created = created.with(keys[CREATED_RANK], keys[CREATED], noteId, edit);
+        if (keys[MISSION] != 0) {
+            missionsByDue = missionsByDue.with(keys[DUE], keys[UPDATED], noteId, edit);
+            missionsByDueDesc = missionsByDueDesc.with(keys[DUE_DESC], keys[UPDATED], noteId, edit);
+            missionsByUpdated = missionsByUpdated.with(keys[UPDATED], 0, noteId, edit);
+        }
+        if (keys[DUE] != NO_DUE) alarms = alarms.with(keys[DUE], 0, noteId, edit);
+    }
+
+    private void unregister(long noteId, long[] old, Object edit) {
+        recent = recent.without(old[FAVORITE_RANK], old[UPDATED], noteId, edit);
+        if (old[FOLDER] != 0) {
+            SortedKeyIndex folderView = recentByFolder.get(old[FOLDER]);
+            if (folderView != null) {
+                SortedKeyIndex changed = folderView.without(old[FAVORITE_RANK], old[UPDATED], noteId, edit);
+                if (changed.size() == 0) {
+                    recentByFolder = recentByFolder.remove(old[FOLDER], edit);
+                } else if (changed != folderView) {
+                    recentByFolder = recentByFolder.put(old[FOLDER], changed, edit);
+                }
+            }
+        }
+        created = created.without(old[CREATED_RANK], old[CREATED], noteId, edit);
+        if (old[MISSION] != 0) {
+            missionsByDue = missionsByDue.without(old[DUE], old[UPDATED], noteId, edit);
+            missionsByDueDesc = missionsByDueDesc.without(old[DUE_DESC], old[UPDATED], noteId, edit);
+            missionsByUpdated = missionsByUpdated.without(old[UPDATED], 0, noteId, edit);
+        }
+        if (old[DUE] != NO_DUE) alarms = alarms.without(old[DUE], 0, noteId, edit);
+    }
+
+    /**
+     * Khóa của note trong các view, so sánh được bằng {@link Arrays#equals(long[], long[])} để biết có phải
+     * đăng ký lại hay không.
+     */
+    static long[] keysOf(Note note, long folderId) {
+        long[] keys = new long[KEYS];
+        keys[FOLDER] = folderId;
+        keys[FAVORITE_RANK] = note.isFavorite() ? 0 : 1;
+        keys[UPDATED] = descending(note.getUpdatedAt());
+        boolean activeMission = note.isMission() && !note.isMissionCompleted();
+        keys[CREATED_RANK] = (note.isFavorite() ? 0 : 2) + (activeMission ? 0 : 1);
+        keys[CREATED] = descending(note.getCreatedAt());
+        boolean mission = note.isMission() && note.getMissionContent() != null && !note.getMissionContent().isEmpty();
+        keys[MISSION] = mission ? 1 : 0;
+        LocalDateTime due = note.getAlarm() != null ? note.getAlarm().getAlarmTime() : null;
+        keys[DUE] = due != null ? timeKey(due) : NO_DUE;
+        keys[DUE_DESC] = descending(due);
+        return keys;
+    }
+
+    // Mới trước, null sau cùng
+    private static long descending(LocalDateTime time) {
+        return time != null ? -timeKey(time) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Thời điểm tính bằng nano giây từ epoch (coi như UTC), bão hòa ở hai đầu để không tràn số;
+     * đủ chính xác để giữ đúng thứ tự của LocalDateTime trong khoảng năm 1678-2262.
+     */
+    static long timeKey(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        if (seconds >= Long.MAX_VALUE / 1_000_000_000L) return Long.MAX_VALUE - 1;
+        if (seconds <= Long.MIN_VALUE / 1_000_000_000L) return Long.MIN_VALUE + 2;
+        return seconds * 1_000_000_000L + time.getNano();
+    }
+}
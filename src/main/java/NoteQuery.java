@@ -0,0 +1,205 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Truy vấn có cấu trúc của ô tìm kiếm chính, ví dụ
+ * {@code tag:work folder:Projects is:mission -is:done due<2026-11-01 "exact phrase"}.
+ * Các điều kiện nối với nhau bằng AND, dấu "-" phía trước phủ định một điều kiện. Từ khóa hỗ trợ:
+ * <ul>
+ *   <li>{@code tag:x} - note có tag mà tên chứa x</li>
+ *   <li>{@code folder:x} - note nằm trong folder tên x (không phân biệt hoa thường)</li>
+ *   <li>{@code title:x} - tiêu đề chứa x</li>
+ *   <li>{@code is:mission}, {@code is:done}, {@code is:favorite}, {@code is:alarm}</li>
+ *   <li>{@code due<d}, {@code due<=d}, {@code due>d}, {@code due>=d}, {@code due:d} - báo thức so với ngày d
+ *       (yyyy-MM-dd, today hoặc tomorrow)</li>
+ * </ul>
+ * Từ thường và cụm trong ngoặc kép tìm như chuỗi con trong tiêu đề, nội dung và tên tag; từ không trong
+ * ngoặc kép kết thúc bằng {@code *} (ví dụ {@code ghi*}) chỉ khớp note có từ bắt đầu bằng phần đứng trước.
+ * Phần nào không hiểu được (chẳng hạn ngày đang gõ dở) được coi là văn bản thường thay vì báo lỗi.
+ */
+class NoteQuery {
+    enum Kind { TEXT, PREFIX, TITLE, TAG, FOLDER, IS, DUE }
+
+    static final String IS_MISSION = "mission";
+    static final String IS_DONE = "done";
+    static final String IS_FAVORITE = "favorite";
+    static final String IS_ALARM = "alarm";
+
+    /**
+     * Một điều kiện của truy vấn. Với TEXT, PREFIX, TITLE và TAG, {@code value} đã được gập bằng
+     * {@link FullTextIndex#fold(String)}; với DUE, điều kiện là khoảng [from, to).
+     */
+    static final class Clause {
+        final Kind kind;
+        final String value;
+        final boolean negated;
+        // Từ thường có thể khớp gần đúng tiêu đề/tag; cụm trong ngoặc kép thì không
+        final boolean fuzzy;
+        final LocalDateTime from;
+        final LocalDateTime to;
+
+        private Clause(Kind kind, String value, boolean negated, boolean fuzzy, LocalDateTime from, LocalDateTime to) {
+            this.kind = kind;
+            this.value = value;
+            this.negated = negated;
+            this.fuzzy = fuzzy;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final List<Clause> clauses;
+
+    private NoteQuery(List<Clause> clauses) {
+        this.clauses = Collections.unmodifiableList(clauses);
+    }
+
+    List<Clause> getClauses() {
+        return clauses;
+    }
+
+    boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+
+    static NoteQuery parse(String text) {
+        return parse(text, false, LocalDate.now());
+    }
+
+    /**
+     * @param fuzzy từ thường còn khớp gần đúng (sai chính tả) với từ trong tiêu đề và tên tag
+     * @param today ngày dùng cho "today"/"tomorrow"
+     */
+    static NoteQuery parse(String text, boolean fuzzy, LocalDate today) {
+        List<Clause> clauses = new ArrayList<>();
+        if (text == null) return new NoteQuery(clauses);
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            while (i < n && Character.isWhitespace(text.charAt(i))) i++;
+            if (i >= n) break;
+            boolean negated = false;
+            if (text.charAt(i) == '-' && i + 1 < n && !Character.isWhitespace(text.charAt(i + 1))) {
+                negated = true;
+                i++;
+            }
+            StringBuilder token = new StringBuilder();
+            boolean quoted = false;
+            while (i < n && !Character.isWhitespace(text.charAt(i))) {
+                char c = text.charAt(i++);
+                if (c != '"') {
+                    token.append(c);
+                    continue;
+                }
+                quoted = true;
+                while (i < n && text.charAt(i) != '"') token.append(text.charAt(i++));
+                i++;
+            }
+            Clause clause = toClause(token.toString(), quoted, negated, fuzzy, today);
+            if (clause != null) clauses.add(clause);
+        }
+        return new NoteQuery(clauses);
+    }
+
+    private static Clause toClause(String token, boolean quoted, boolean negated, boolean fuzzy, LocalDate today) {
+        int colon = token.indexOf(':');
+        String lower = token.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("due")) {
+            Clause due = dueClause(lower.substring(3), negated, today);
+            if (due != null) return due;
+        } else if (colon > 0 && colon < token.length() - 1) {
+            String key = lower.substring(0, colon);
+            String value = token.substring(colon + 1);
+            switch (key) {
+                case "tag":
+                    return textClause(Kind.TAG, value, negated, false);
+                case "folder":
+                    return new Clause(Kind.FOLDER, value.trim(), negated, false, null, null);
+                case "title":
+                    return textClause(Kind.TITLE, value, negated, false);
+                case "is":
+                    String flag = flagOf(value.toLowerCase(Locale.ROOT));
+                    if (flag != null) return new Clause(Kind.IS, flag, negated, false, null, null);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (!quoted && token.length() > 1 && token.endsWith("*")) {
+            return textClause(Kind.PREFIX, token.substring(0, token.length() - 1), negated, false);
+        }
+        return textClause(Kind.TEXT, token, negated, fuzzy && !quoted);
+    }
+
+    private static Clause textClause(Kind kind, String value, boolean negated, boolean fuzzy) {
+        String folded = FullTextIndex.fold(value);
+        return folded.isEmpty() ? null : new Clause(kind, folded, negated, fuzzy, null, null);
+    }
+
+    private static String flagOf(String value) {
+        switch (value) {
+            case "mission":
+            case "task":
+                return IS_MISSION;
+            case "done":
+            case "completed":
+                return IS_DONE;
+            case "favorite":
+            case "fav":
+            case "starred":
+                return IS_FAVORITE;
+            case "alarm":
+                return IS_ALARM;
+            default:
+                return null;
+        }
+    }
+
+    // Phần sau "due": toán tử rồi ngày; null nếu chưa phải một điều kiện hoàn chỉnh
+    private static Clause dueClause(String rest, boolean negated, LocalDate today) {
+        String op;
+        if (rest.startsWith("<=") || rest.startsWith(">=")) {
+            op = rest.substring(0, 2);
+        } else if (rest.startsWith("<") || rest.startsWith(">") || rest.startsWith(":") || rest.startsWith("=")) {
+            op = rest.substring(0, 1);
+        } else {
+            return null;
+        }
+        LocalDate date = parseDate(rest.substring(op.length()), today);
+        if (date == null) return null;
+        LocalDateTime dayStart = date.atStartOfDay();
+        LocalDateTime nextDay = date.plusDays(1).atStartOfDay();
+        switch (op) {
+            case "<":
+                return new Clause(Kind.DUE, rest, negated, false, null, dayStart);
+            case "<=":
+                return new Clause(Kind.DUE, rest, negated, false, null, nextDay);
+            case ">":
+                return new Clause(Kind.DUE, rest, negated, false, nextDay, null);
+            case ">=":
+                return new Clause(Kind.DUE, rest, negated, false, dayStart, null);
+            default:
+                return new Clause(Kind.DUE, rest, negated, false, dayStart, nextDay);
+        }
+    }
+
+    private static LocalDate parseDate(String value, LocalDate today) {
+        switch (value) {
+            case "today":
+                return today;
+            case "tomorrow":
+                return today.plusDays(1);
+            default:
+                try {
+                    return LocalDate.parse(value);
+                } catch (DateTimeParseException e) {
+                    return null;
+                }
+        }
+    }
+}
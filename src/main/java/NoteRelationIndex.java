@@ -0,0 +1,138 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trạng thái đã đăng ký của từng note (folder, tag, cờ, khóa thứ tự, số thứ tự facet) do NoteManager cập nhật
+ * mỗi khi một note được lưu hay xóa, cùng phiên bản mới nhất của các bitmap facet ({@link NoteFacets}) và các thứ
+ * tự hiển thị ({@link NoteOrderIndex}, kể cả thứ tự báo thức) suy ra từ đó.
+ * Chỉ mục nhớ trạng thái đã đăng ký của từng note để khi note bị sửa tại chỗ vẫn biết cần gỡ note khỏi những
+ * tập nào, không phải quét lại toàn bộ note.
+ * <p>
+ * Trạng thái đăng ký chỉ bên ghi dùng, dưới khóa của NoteManager; facet và thứ tự là giá trị bất biến để NoteManager
+ * công bố cho người đọc không khóa. Mọi thay đổi giữa hai lần {@link #freeze()} thuộc cùng một lần sửa, nên dựng
+ * chỉ mục lúc khởi động hay một nhóm thay đổi chỉ chép mỗi phần cấu trúc một lần.
+ */
+class NoteRelationIndex {
+    private final LongHashIndex<Registration> registered = new LongHashIndex<>();
+    // Số thứ tự facet của note đã xóa, cấp lại trước khi dùng số mới
+    private int[] freeOrdinals = new int[16];
+    private int freeCount;
+    private int nextOrdinal;
+    private NoteFacets facets = NoteFacets.EMPTY;
+    private NoteOrderIndex order = NoteOrderIndex.EMPTY;
+    private Object edit = new Object();
+
+    /**
+     * Đăng ký (lại) folder, tag, cờ và khóa thứ tự hiện tại của note.
+     *
+     * @return folderId đã đăng ký trước đó, 0 nếu note chưa có trong chỉ mục
+     */
+    long noteChanged(Note note) {
+        long noteId = note.getId();
+        Registration old = registered.get(noteId);
+        long[] state = stateOf(note);
+        Registration current = new Registration(old != null ? old.ordinal : allocateOrdinal(), state,
+                NoteFacets.flagsOf(note), NoteOrderIndex.keysOf(note, state[0]));
+        registered.put(noteId, current);
+        facets = facets.with(noteId, current.ordinal, current.flags, state,
+                old != null ? old.flags : 0, old != null ? old.state : null, edit);
+        order = order.with(noteId, old != null ? old.orderKeys : null, current.orderKeys, edit);
+        return old != null ? old.state[0] : 0;
+    }
+
+    /**
+     * @return folderId đã đăng ký của note, 0 nếu không có
+     */
+    long noteRemoved(long noteId) {
+        Registration old = registered.remove(noteId);
+        if (old == null) return 0;
+        facets = facets.without(noteId, old.ordinal, old.flags, old.state, edit);
+        order = order.with(noteId, old.orderKeys, null, edit);
+        if (freeCount == freeOrdinals.length) freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+        freeOrdinals[freeCount++] = old.ordinal;
+        return old.state[0];
+    }
+
+    long folderOf(long noteId) {
+        Registration registration = registered.get(noteId);
+        return registration != null ? registration.state[0] : 0;
+    }
+
+    long[] notesWithTag(long tagId) {
+        return facets.toIdSet(facets.tag(tagId)).toSortedArray();
+    }
+
+    void clear() {
+        registered.clear();
+        freeCount = 0;
+        nextOrdinal = 0;
+        facets = NoteFacets.EMPTY;
+        order = NoteOrderIndex.EMPTY;
+        edit = new Object();
+    }
+
+    /**
+     * Kết thúc lần sửa hiện tại: các phiên bản {@link #getFacets()} và {@link #getOrder()} lấy từ giờ trở đi không
+     * còn bị sửa tại chỗ nữa nên công bố được cho người đọc; thay đổi kế tiếp sẽ tạo phiên bản mới.
+     */
+    void freeze() {
+        edit = new Object();
+    }
+
+    /**
+     * Các bitmap facet của mọi note đã đăng ký; chỉ bất biến sau {@link #freeze()}.
+     */
+    NoteFacets getFacets() {
+        return facets;
+    }
+
+    /**
+     * Các thứ tự hiển thị của mọi note đã đăng ký; chỉ bất biến sau {@link #freeze()}.
+     */
+    NoteOrderIndex getOrder() {
+        return order;
+    }
+
+    private int allocateOrdinal() {
+        return freeCount > 0 ? freeOrdinals[--freeCount] : nextOrdinal++;
+    }
+
+    private static long[] stateOf(Note note) {
+        List<Tag> tags = note.getTags();
+        long[] state = new long[1 + (tags != null ? tags.size() : 0)];
+        state[0] = note.getFolderId();
+        int n = 1;
+        if (tags != null) {
+            for (Tag tag : tags) {
+                long id = tag.getId();
+                if (id != 0 && !containsTag(state, n, id)) state[n++] = id;
+            }
+        }
+        return n == state.length ? state : Arrays.copyOf(state, n);
+    }
+
+    // Mỗi note chỉ có vài tag nên tìm tuyến tính là đủ
+    private static boolean containsTag(long[] state, int length, long tagId) {
+        for (int i = 1; i < length; i++) {
+            if (state[i] == tagId) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Những gì đã đăng ký cho một note: số thứ tự facet, folderId rồi các tagId, cờ facet và khóa thứ tự.
+     */
+    private static final class Registration {
+        final int ordinal;
+        final long[] state;
+        final int flags;
+        final long[] orderKeys;
+
+        Registration(int ordinal, long[] state, int flags, long[] orderKeys) {
+            this.ordinal = ordinal;
+            this.state = state;
+            this.flags = flags;
+            this.orderKeys = orderKeys;
+        }
+    }
+}
@@ -1,4 +1,8 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 
@@ -101,10 +105,94 @@ public class NoteService {
         return noteManager.getNoteById(noteId);
     }
 
+    /**
+     * Lưu ảnh PNG của bản vẽ vào BlobStore và trả về mã băm để gán cho note.
+     */
+    public String storeDrawingImage(byte[] pngBytes) throws IOException {
+        if (pngBytes == null || pngBytes.length == 0) {
+            throw new IllegalArgumentException("Drawing image cannot be empty.");
+        }
+        return noteManager.getBlobStore().put(pngBytes);
+    }
+
+    /**
+     * Mở ảnh của note DRAWING (file được map vào bộ nhớ, không nạp lên heap). Trả về null nếu note chưa có ảnh.
+     */
+    public InputStream openDrawingImage(Note note) throws IOException {
+        if (note == null || note.getDrawingHash() == null) {
+            return null;
+        }
+        return noteManager.getBlobStore().openStream(note.getDrawingHash());
+    }
+
     public List<Note> getAllNotesForDisplay() {
         return noteManager.getAllNotes();
     }
 
+    NoteSnapshot getNoteSnapshot() {
+        return noteManager.getNoteSnapshot();
+    }
+
+    void addChangeListener(NoteChangeBus.Listener listener) {
+        noteManager.addChangeListener(listener);
+    }
+
+    void removeChangeListener(NoteChangeBus.Listener listener) {
+        noteManager.removeChangeListener(listener);
+    }
+
+    void addTextIndexListener(Runnable listener) {
+        noteManager.addTextIndexListener(listener);
+    }
+
+    public int countNotesInFolder(long folderId) {
+        return noteManager.countNotesInFolder(folderId);
+    }
+
+    public List<Note> getMissions(NoteManager.MissionFilter filter, NoteManager.MissionOrder order, LocalDateTime now) {
+        return noteManager.getMissions(filter, order, now);
+    }
+
+    public List<Note> getNotesByRecent(long folderId) {
+        return noteManager.getNotesByRecent(folderId);
+    }
+
+    /**
+     * ID các note khớp truy vấn toàn văn, hoặc null nếu truy vấn rỗng.
+     */
+    LongIdSet findNoteIds(String query) {
+        return noteManager.findNoteIds(query);
+    }
+
+    /**
+     * Một trang kết quả của truy vấn có cấu trúc, xếp theo độ liên quan.
+     */
+    SearchPage searchNotesRanked(NoteQuery query, long folderId, int offset, int limit) {
+        return noteManager.searchNotesRanked(query, folderId, offset, limit);
+    }
+
+    /**
+     * Ghi báo thức do bộ hẹn giờ dời sang kỳ kế tiếp hoặc xóa sau khi kêu. Đây không phải chỉnh sửa của người
+     * dùng nên updatedAt được giữ nguyên (note không nhảy lên đầu danh sách) và lỗi chỉ được ném ra cho bên gọi,
+     * không hiện hộp thoại.
+     */
+    void replaceFiredAlarm(Note note, Alarm alarm) {
+        if (note == null || note.getId() == 0) {
+            throw new IllegalArgumentException("Note cannot be null or unsaved.");
+        }
+        LocalDateTime updatedAt = note.getUpdatedAt();
+        if (alarm != null) ensureAlarmHasId(alarm);
+        note.setAlarm(alarm);
+        note.setUpdatedAt(updatedAt);
+        // updateNote gán lại folder và tag của note, việc đó cũng không được tính là chỉnh sửa
+        note.setDisableAutoUpdate(true);
+        try {
+            noteManager.updateNote(note);
+        } finally {
+            note.setDisableAutoUpdate(false);
+        }
+    }
+
     public void updateExistingNote(Note note) {
         if (note == null || note.getId() <= 0) {
             throw new IllegalArgumentException("Note for update cannot be null and must have a valid ID.");
@@ -152,6 +240,29 @@ public class NoteService {
         noteManager.deleteNote(noteId);
     }
 
+    // --- Thao tác hàng loạt: một khóa, một lần ghi đĩa cho cả nhóm ---
+    public void inBatch(Runnable operations) {
+        noteManager.inBatch(operations);
+    }
+
+    public int moveNotes(Collection<Long> noteIds, Folder folder) {
+        if (folder == null || folder.getId() <= 0) {
+            throw new IllegalArgumentException("Target folder must not be null and must have a valid ID.");
+        }
+        return noteManager.moveNotes(noteIds, folder);
+    }
+
+    public int addTagToNotes(Collection<Long> noteIds, String tagName) {
+        if (tagName == null || tagName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Tag name cannot be null or empty");
+        }
+        return noteManager.addTagToNotes(noteIds, tagName.trim());
+    }
+
+    public int deleteNotes(Collection<Long> noteIds) {
+        return noteManager.deleteNotes(noteIds);
+    }
+
     // --- Các phương thức quản lý Folder ---
     public List<Folder> getAllFolders() {
         return noteManager.getAllFolders();
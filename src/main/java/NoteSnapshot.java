@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Danh sách note bất biến, các phiên bản liên tiếp dùng chung cấu trúc: note nằm trong các khối {@link #CHUNK}
+ * phần tử, mỗi thay đổi chỉ chép mảng khối ngoài và đúng một khối, mọi khối khác được dùng lại. NoteManager công
+ * bố phiên bản mới qua một trường volatile sau mỗi thay đổi nên luồng nào cũng đọc được mà không cần khóa, và
+ * một phiên bản đã lấy không bao giờ đổi dưới tay người đọc (chỉ danh sách là bất biến, bản thân Note thì không).
+ * Vị trí của note bị xóa được để trống cho tới khi đủ nhiều thì dồn lại bằng {@link #compact()}.
+ */
+final class NoteSnapshot implements Iterable<Note> {
+    private static final int SHIFT = 6;
+    private static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    static final NoteSnapshot EMPTY = new NoteSnapshot(new Note[0][], 0, 0);
+
+    private final Note[][] chunks;
+    // Số vị trí đã dùng (kể cả vị trí trống) và số note thực sự còn lại
+    private final int length;
+    private final int size;
+
+    private NoteSnapshot(Note[][] chunks, int length, int size) {
+        this.chunks = chunks;
+        this.length = length;
+        this.size = size;
+    }
+
+    static NoteSnapshot of(Collection<Note> notes) {
+        Note[][] chunks = new Note[(notes.size() + MASK) >>> SHIFT][];
+        int slot = 0;
+        for (Note note : notes) {
+            if (note == null) continue;
+            if ((slot & MASK) == 0) chunks[slot >>> SHIFT] = new Note[CHUNK];
+            chunks[slot >>> SHIFT][slot & MASK] = note;
+            slot++;
+        }
+        return new NoteSnapshot(Arrays.copyOf(chunks, (slot + MASK) >>> SHIFT), slot, slot);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Số vị trí đã dùng; vị trí trong [0, length) mà {@link #get(int)} trả về null là note đã xóa.
+     */
+    int length() {
+        return length;
+    }
+
+    Note get(int slot) {
+        if (slot < 0 || slot >= length) {
+            throw new IndexOutOfBoundsException("Vị trí " + slot + " ngoài khoảng [0, " + length + ")");
+        }
+        return chunks[slot >>> SHIFT][slot & MASK];
+    }
+
+    /**
+     * @return phiên bản mới có thêm note ở vị trí {@link #length()} hiện tại
+     */
+    NoteSnapshot append(Note note) {
+        int slot = length;
+        Note[][] copy;
+        if ((slot & MASK) == 0) {
+            copy = Arrays.copyOf(chunks, chunks.length + 1);
+            copy[slot >>> SHIFT] = new Note[CHUNK];
+        } else {
+            copy = chunks.clone();
+            copy[slot >>> SHIFT] = chunks[slot >>> SHIFT].clone();
+        }
+        copy[slot >>> SHIFT][slot & MASK] = note;
+        return new NoteSnapshot(copy, length + 1, size + 1);
+    }
+
+    NoteSnapshot set(int slot, Note note) {
+        if (get(slot) == null) {
+            throw new IllegalArgumentException("Vị trí " + slot + " đã bị xóa.");
+        }
+        return new NoteSnapshot(withSlot(slot, note), length, size);
+    }
+
+    NoteSnapshot remove(int slot) {
+        if (get(slot) == null) return this;
+        return new NoteSnapshot(withSlot(slot, null), length, size - 1);
+    }
+
+    /**
+     * Số vị trí trống vượt một phần tư số note (và hơn một khối) thì nên dồn lại.
+     */
+    boolean needsCompaction() {
+        int holes = length - size;
+        return holes > CHUNK && holes > size / 4;
+    }
+
+    /**
+     * Phiên bản không còn vị trí trống, giữ nguyên thứ tự; vị trí của các note thay đổi.
+     */
+    NoteSnapshot compact() {
+        return of(toList());
+    }
+
+    List<Note> toList() {
+        List<Note> result = new ArrayList<>(size);
+        for (Note note : this) result.add(note);
+        return result;
+    }
+
+    @Override
+    public Iterator<Note> iterator() {
+        return new Iterator<Note>() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < length && chunks[from >>> SHIFT][from & MASK] == null) from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < length;
+            }
+
+            @Override
+            public Note next() {
+                if (slot >= length) throw new NoSuchElementException();
+                Note note = chunks[slot >>> SHIFT][slot & MASK];
+                slot = advance(slot + 1);
+                return note;
+            }
+        };
+    }
+
+    private Note[][] withSlot(int slot, Note note) {
+        Note[][] copy = chunks.clone();
+        copy[slot >>> SHIFT] = chunks[slot >>> SHIFT].clone();
+        copy[slot >>> SHIFT][slot & MASK] = note;
+        return copy;
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Bitmap nén trên các số thứ tự không âm, theo cách của Roaring: số thứ tự được chia thành các khối 65536 giá trị
+ * theo 16 bit cao; khối thưa (không quá {@link #ARRAY_LIMIT} phần tử) là mảng char đã sắp xếp, khối dày là
+ * 1024 long. Tag hay folder ít note chỉ tốn vài byte mỗi note, còn các cờ phủ gần hết note vẫn gọn như BitSet.
+ * Các phép and/or/andNot tạo bitmap mới và không sửa hai toán hạng.
+ * <p>
+ * Bitmap đã công bố cho người đọc không khóa không được sửa tại chỗ: bên ghi lấy {@link #editable(Object)} rồi
+ * mới add/remove, giống cách {@link LongIdTrie} chép nút của phiên bản cũ.
+ */
+class OrdinalBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+    private static final Object[] NO_CHUNKS = new Object[0];
+
+    // Khối thứ i: null, char[] (phần tử ở [0, counts[i]) đã sắp xếp) hoặc long[WORDS]
+    private Object[] chunks = NO_CHUNKS;
+    private int[] counts = new int[0];
+    private int cardinality;
+    // Lần sửa sở hữu bitmap này; null với bitmap tạo mới (kết quả and/or/andNot, bitmap rỗng)
+    private Object edit;
+
+    /**
+     * Bản sửa được cho lần sửa {@code edit}: chính bitmap này nếu nó đã thuộc lần sửa đó, nếu không thì một bản
+     * chép các khối (chỉ vài khối 8 KB mỗi 65536 note) còn bản này giữ nguyên.
+     */
+    OrdinalBitmap editable(Object edit) {
+        if (edit != null && this.edit == edit) return this;
+        OrdinalBitmap copy = new OrdinalBitmap();
+        copy.allocate(chunks.length);
+        for (int high = 0; high < chunks.length; high++) {
+            Object chunk = chunks[high];
+            copy.chunks[high] = chunk instanceof long[] ? ((long[]) chunk).clone() : chunk != null ? ((char[]) chunk).clone() : null;
+        }
+        copy.counts = counts.clone();
+        copy.cardinality = cardinality;
+        copy.edit = edit;
+        return copy;
+    }
+
+    boolean add(int ordinal) {
+        int high = ordinal >>> 16;
+        char low = (char) ordinal;
+        if (high >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, high + 1);
+            counts = Arrays.copyOf(counts, high + 1);
+        }
+        Object chunk = chunks[high];
+        if (chunk == null) {
+            chunks[high] = new char[]{low, 0, 0, 0};
+        } else if (chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) != 0) return false;
+            words[low >>> 6] |= mask;
+        } else {
+            char[] values = (char[]) chunk;
+            int count = counts[high];
+            int pos = Arrays.binarySearch(values, 0, count, low);
+            if (pos >= 0) return false;
+            pos = -pos - 1;
+            if (count == ARRAY_LIMIT) {
+                long[] words = toWords(values, count);
+                words[low >>> 6] |= 1L << low;
+                chunks[high] = words;
+            } else {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, count * 2));
+                    chunks[high] = values;
+                }
+                System.arraycopy(values, pos, values, pos + 1, count - pos);
+                values[pos] = low;
+            }
+        }
+        counts[high]++;
+        cardinality++;
+        return true;
+    }
+
+    boolean remove(int ordinal) {
+        int high = ordinal >>> 16;
+        if (high >= chunks.length || chunks[high] == null) return false;
+        char low = (char) ordinal;
+        Object chunk = chunks[high];
+        int count = counts[high];
+        if (chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) == 0) return false;
+            words[low >>> 6] &= ~mask;
+            // Chỉ đổi về mảng khi còn một nửa ngưỡng, để thêm/xóa quanh ngưỡng không phải đổi qua đổi lại
+            if (count == 1) {
+                chunks[high] = null;
+            } else if (count - 1 <= ARRAY_LIMIT / 2) {
+                chunks[high] = toValues(words, count - 1);
+            }
+        } else {
+            char[] values = (char[]) chunk;
+            int pos = Arrays.binarySearch(values, 0, count, low);
+            if (pos < 0) return false;
+            System.arraycopy(values, pos + 1, values, pos, count - pos - 1);
+            if (count == 1) chunks[high] = null;
+        }
+        counts[high]--;
+        cardinality--;
+        return true;
+    }
+
+    boolean contains(int ordinal) {
+        int high = ordinal >>> 16;
+        return high < chunks.length && chunkContains(chunks[high], counts[high], (char) ordinal);
+    }
+
+    void clear() {
+        chunks = NO_CHUNKS;
+        counts = new int[0];
+        cardinality = 0;
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Duyệt các phần tử theo thứ tự tăng dần.
+     */
+    void forEach(IntConsumer action) {
+        for (int high = 0; high < chunks.length; high++) {
+            Object chunk = chunks[high];
+            int base = high << 16;
+            if (chunk instanceof long[]) {
+                long[] words = (long[]) chunk;
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(base + (w << 6) + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else if (chunk != null) {
+                char[] values = (char[]) chunk;
+                for (int i = 0; i < counts[high]; i++) action.accept(base + values[i]);
+            }
+        }
+    }
+
+    static OrdinalBitmap and(OrdinalBitmap a, OrdinalBitmap b) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        int length = Math.min(a.chunks.length, b.chunks.length);
+        result.allocate(length);
+        for (int high = 0; high < length; high++) {
+            Object x = a.chunks[high];
+            Object y = b.chunks[high];
+            if (x == null || y == null) continue;
+            if (x instanceof long[] && y instanceof long[]) {
+                long[] words = new long[WORDS];
+                long[] xw = (long[]) x;
+                long[] yw = (long[]) y;
+                for (int w = 0; w < WORDS; w++) words[w] = xw[w] & yw[w];
+                result.setWords(high, words);
+            } else if (x instanceof char[]) {
+                result.setFiltered(high, (char[]) x, a.counts[high], y, b.counts[high], true);
+            } else {
+                result.setFiltered(high, (char[]) y, b.counts[high], x, a.counts[high], true);
+            }
+        }
+        return result;
+    }
+
+    static OrdinalBitmap or(OrdinalBitmap a, OrdinalBitmap b) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        int length = Math.max(a.chunks.length, b.chunks.length);
+        result.allocate(length);
+        for (int high = 0; high < length; high++) {
+            Object x = high < a.chunks.length ? a.chunks[high] : null;
+            Object y = high < b.chunks.length ? b.chunks[high] : null;
+            int xCount = x != null ? a.counts[high] : 0;
+            int yCount = y != null ? b.counts[high] : 0;
+            if (x == null && y == null) continue;
+            if (x instanceof char[] && y instanceof char[] && xCount + yCount <= ARRAY_LIMIT) {
+                result.setValues(high, merge((char[]) x, xCount, (char[]) y, yCount));
+            } else {
+                long[] words = x instanceof long[] ? ((long[]) x).clone() : toWords((char[]) x, xCount);
+                if (y instanceof long[]) {
+                    long[] yw = (long[]) y;
+                    for (int w = 0; w < WORDS; w++) words[w] |= yw[w];
+                } else if (y != null) {
+                    char[] values = (char[]) y;
+                    for (int i = 0; i < yCount; i++) words[values[i] >>> 6] |= 1L << values[i];
+                }
+                result.setWords(high, words);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Các phần tử của a không có trong b.
+     */
+    static OrdinalBitmap andNot(OrdinalBitmap a, OrdinalBitmap b) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        result.allocate(a.chunks.length);
+        for (int high = 0; high < a.chunks.length; high++) {
+            Object x = a.chunks[high];
+            if (x == null) continue;
+            Object y = high < b.chunks.length ? b.chunks[high] : null;
+            if (x instanceof char[]) {
+                result.setFiltered(high, (char[]) x, a.counts[high], y, y != null ? b.counts[high] : 0, false);
+                continue;
+            }
+            long[] words = ((long[]) x).clone();
+            if (y instanceof long[]) {
+                long[] yw = (long[]) y;
+                for (int w = 0; w < WORDS; w++) words[w] &= ~yw[w];
+            } else if (y != null) {
+                char[] values = (char[]) y;
+                for (int i = 0; i < b.counts[high]; i++) words[values[i] >>> 6] &= ~(1L << values[i]);
+            }
+            result.setWords(high, words);
+        }
+        return result;
+    }
+
+    /**
+     * Số phần tử chung của a và b, không tạo bitmap kết quả.
+     */
+    static int andCardinality(OrdinalBitmap a, OrdinalBitmap b) {
+        int total = 0;
+        int length = Math.min(a.chunks.length, b.chunks.length);
+        for (int high = 0; high < length; high++) {
+            Object x = a.chunks[high];
+            Object y = b.chunks[high];
+            if (x == null || y == null) continue;
+            if (x instanceof long[] && y instanceof long[]) {
+                long[] xw = (long[]) x;
+                long[] yw = (long[]) y;
+                for (int w = 0; w < WORDS; w++) total += Long.bitCount(xw[w] & yw[w]);
+            } else {
+                boolean xArray = x instanceof char[];
+                char[] values = (char[]) (xArray ? x : y);
+                int count = xArray ? a.counts[high] : b.counts[high];
+                Object other = xArray ? y : x;
+                int otherCount = xArray ? b.counts[high] : a.counts[high];
+                for (int i = 0; i < count; i++) {
+                    if (chunkContains(other, otherCount, values[i])) total++;
+                }
+            }
+        }
+        return total;
+    }
+
+    private void allocate(int length) {
+        chunks = length > 0 ? new Object[length] : NO_CHUNKS;
+        counts = new int[length];
+    }
+
+    // Giữ (keep = true) hoặc bỏ (keep = false) các phần tử của mảng có trong khối kia
+    private void setFiltered(int high, char[] values, int count, Object other, int otherCount, boolean keep) {
+        char[] kept = new char[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (chunkContains(other, otherCount, values[i]) == keep) kept[n++] = values[i];
+        }
+        if (n > 0) {
+            chunks[high] = kept;
+            counts[high] = n;
+            cardinality += n;
+        }
+    }
+
+    private void setValues(int high, char[] values) {
+        chunks[high] = values;
+        counts[high] = values.length;
+        cardinality += values.length;
+    }
+
+    private void setWords(int high, long[] words) {
+        int count = 0;
+        for (long word : words) count += Long.bitCount(word);
+        if (count == 0) return;
+        chunks[high] = count <= ARRAY_LIMIT ? toValues(words, count) : words;
+        counts[high] = count;
+        cardinality += count;
+    }
+
+    private static boolean chunkContains(Object chunk, int count, char low) {
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return chunk != null && Arrays.binarySearch((char[]) chunk, 0, count, low) >= 0;
+    }
+
+    private static char[] merge(char[] x, int xCount, char[] y, int yCount) {
+        char[] merged = new char[xCount + yCount];
+        int i = 0, j = 0, n = 0;
+        while (i < xCount && j < yCount) {
+            if (x[i] < y[j]) {
+                merged[n++] = x[i++];
+            } else if (x[i] > y[j]) {
+                merged[n++] = y[j++];
+            } else {
+                merged[n++] = x[i++];
+                j++;
+            }
+        }
+        while (i < xCount) merged[n++] = x[i++];
+        while (j < yCount) merged[n++] = y[j++];
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    private static long[] toWords(char[] values, int count) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < count; i++) words[values[i] >>> 6] |= 1L << values[i];
+        return words;
+    }
+
+    private static char[] toValues(long[] words, int count) {
+        char[] values = new char[Math.max(count, 4)];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Luồng ghi nền (write-behind) cho DataStorage.
+ * Bản ghi nhỏ được mã hóa sẵn trên luồng gọi rồi gom theo từng đối tượng trong một cửa sổ thời gian; snapshot
+ * được nhận ở dạng bản sao tách rời và mã hóa trên luồng nền cùng với I/O, nên thao tác hàng loạt trên EDT chỉ
+ * tạo ra một lần ghi đĩa và không phải mã hóa cả kho.
+ */
+public class PersistenceWriter {
+    public static final long DEFAULT_COALESCE_MILLIS = 500;
+    private static final long RETRY_DELAY_MILLIS = 5000;
+    private static final long FLUSH_TIMEOUT_SECONDS = 10;
+
+    private final DataStorage storage;
+    private final long coalesceMillis;
+    private final ScheduledExecutorService executor;
+    private final Object lock = new Object();
+
+    // Khóa dạng "note:12" nên nhiều lần cập nhật cùng một note trong cửa sổ chỉ còn bản ghi cuối cùng
+    private final LinkedHashMap<String, String> pendingRecords = new LinkedHashMap<>();
+    // Shard bị các bản ghi đang chờ chạm tới, để việc gộp journal chỉ ghi lại các shard này
+    private final Set<Long> pendingRecordShards = new HashSet<>();
+    // Nội dung note (mã băm -> UTF-8) phải nằm trên đĩa trước snapshot/bản ghi tham chiếu đến nó
+    private final LinkedHashMap<String, byte[]> pendingBodies = new LinkedHashMap<>();
+    private ShardedSnapshot pendingSnapshot;
+    private boolean flushScheduled;
+    // Số nhóm thay đổi đang mở (xem beginBatch); lần ghi đến hạn trong lúc đó được hoãn tới khi nhóm đóng
+    private int batchDepth;
+    private boolean drainDeferred;
+    private volatile Thread writerThread;
+    private volatile long lastSaveLatencyMillis = -1;
+
+    PersistenceWriter(DataStorage storage, long coalesceMillis) {
+        this.storage = storage;
+        this.coalesceMillis = Math.max(0, coalesceMillis);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "XiNoClo-Persistence");
+            t.setDaemon(true);
+            writerThread = t;
+            return t;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "XiNoClo-Persistence-Flush"));
+    }
+
+    void enqueueRecord(String key, String line, Set<Long> shards) {
+        synchronized (lock) {
+            pendingRecords.remove(key);
+            pendingRecords.put(key, line);
+            pendingRecordShards.addAll(shards);
+            scheduleDrainLocked(coalesceMillis);
+        }
+    }
+
+    void enqueueBlob(String hash, byte[] data) {
+        synchronized (lock) {
+            pendingBodies.put(hash, data);
+            scheduleDrainLocked(coalesceMillis);
+        }
+    }
+
+    /**
+     * Snapshot chứa toàn bộ trạng thái tại thời điểm gọi nên các bản ghi đang chờ trước đó không cần ghi nữa.
+     */
+    void enqueueSnapshot(ShardedSnapshot snapshot) {
+        synchronized (lock) {
+            pendingRecords.clear();
+            pendingRecordShards.clear();
+            if (pendingSnapshot != null) {
+                snapshot.absorbOlder(pendingSnapshot);
+            }
+            pendingSnapshot = snapshot;
+            scheduleDrainLocked(coalesceMillis);
+        }
+    }
+
+    /**
+     * Mở một nhóm thay đổi: cho tới khi {@link #endBatch()} tương ứng được gọi, mọi bản ghi chỉ được gom lại
+     * chứ không ghi, nên cả nhóm dù kéo dài hơn cửa sổ gom vẫn ra đúng một lần ghi đĩa. Có thể lồng nhau;
+     * {@link #flush()} vẫn ghi ngay bất kể nhóm đang mở.
+     */
+    void beginBatch() {
+        synchronized (lock) {
+            batchDepth++;
+        }
+    }
+
+    void endBatch() {
+        synchronized (lock) {
+            if (batchDepth == 0) {
+                throw new IllegalStateException("endBatch() được gọi khi không có nhóm thay đổi nào đang mở.");
+            }
+            if (--batchDepth == 0 && drainDeferred) {
+                drainDeferred = false;
+                scheduleDrainLocked(0);
+            }
+        }
+    }
+
+    private void scheduleDrainLocked(long delayMillis) {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(() -> drain(false), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain(boolean force) {
+        ShardedSnapshot snapshot;
+        Map<String, String> records;
+        Set<Long> recordShards;
+        Map<String, byte[]> bodies;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (batchDepth > 0 && !force) {
+                drainDeferred = true;
+                return;
+            }
+            drainDeferred = false;
+            bodies = new LinkedHashMap<>(pendingBodies);
+            pendingBodies.clear();
+            snapshot = pendingSnapshot;
+            pendingSnapshot = null;
+            records = new LinkedHashMap<>(pendingRecords);
+            pendingRecords.clear();
+            recordShards = new HashSet<>(pendingRecordShards);
+            pendingRecordShards.clear();
+        }
+        if (snapshot == null && records.isEmpty() && bodies.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean bodiesWritten = false;
+        boolean snapshotWritten = false;
+        try {
+            if (!bodies.isEmpty()) {
+                storage.writeBodies(bodies);
+            }
+            bodiesWritten = true;
+            if (snapshot != null) {
+                storage.commitSnapshot(snapshot);
+                snapshotWritten = true;
+            }
+            if (!records.isEmpty()) {
+                storage.appendRecords(new ArrayList<>(records.values()), recordShards);
+            }
+            storage.compactIfNeeded();
+            lastSaveLatencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[PersistenceWriter] Lỗi khi ghi dữ liệu: " + e.getMessage() + ". Sẽ thử lại sau " + RETRY_DELAY_MILLIS + "ms.");
+            requeue(bodiesWritten ? new LinkedHashMap<>() : bodies, snapshotWritten ? null : snapshot, records, recordShards);
+        }
+    }
+
+    private void requeue(Map<String, byte[]> bodies, ShardedSnapshot snapshot, Map<String, String> records, Set<Long> recordShards) {
+        synchronized (lock) {
+            for (Map.Entry<String, byte[]> entry : bodies.entrySet()) {
+                pendingBodies.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            if (pendingSnapshot == null) {
+                pendingSnapshot = snapshot;
+                // Bản ghi mới hơn cho cùng đối tượng (nếu có) được giữ nguyên
+                for (Map.Entry<String, String> entry : records.entrySet()) {
+                    pendingRecords.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                pendingRecordShards.addAll(recordShards);
+            } else if (snapshot != null) {
+                pendingSnapshot.absorbOlder(snapshot);
+            }
+            scheduleDrainLocked(RETRY_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Ghi ngay mọi thay đổi đang chờ và đợi đến khi xong. Được gọi khi thoát ứng dụng.
+     */
+    public void flush() {
+        if (Thread.currentThread() == writerThread) {
+            drain(true);
+            return;
+        }
+        try {
+            executor.submit(() -> drain(true)).get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+            System.err.println("[PersistenceWriter] Không thể flush dữ liệu: " + e.getMessage());
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return pendingRecords.size() + pendingBodies.size() + (pendingSnapshot != null ? 1 : 0);
+        }
+    }
+
+    public long getLastSaveLatencyMillis() {
+        return lastSaveLatencyMillis;
+    }
+
+    public long getCoalesceMillis() {
+        return coalesceMillis;
+    }
+}
@@ -0,0 +1,356 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Quy tắc lặp kiểu RRULE cho báo thức: tần suất, khoảng cách (INTERVAL), các thứ trong tuần (BYDAY, chỉ với
+ * WEEKLY), số lần (COUNT), ngày kết thúc (UNTIL) và mốc bắt đầu (DTSTART). Lưu trong
+ * {@link Alarm#getRecurrencePattern()} dưới dạng chuỗi, ví dụ {@code FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE;COUNT=10};
+ * các mẫu cũ DAILY/WEEKLY/MONTHLY/YEARLY vẫn đọc được và vẫn được ghi lại y như cũ khi không có phần mở rộng.
+ * <p>
+ * Lần lặp kế tiếp được tính thẳng bằng số học từ mốc bắt đầu ({@link #firstAfter}), không lần lượt cộng từng kỳ,
+ * nên bỏ lỡ bao nhiêu kỳ cũng chỉ tốn một phép tính. Ngày trong tháng không tồn tại (31/4, 29/2) được lùi về
+ * ngày cuối tháng như plusMonths trước đây, nhưng luôn tính lại từ mốc nên không bị trôi.
+ */
+final class RecurrenceRule {
+    enum Frequency { DAILY, WEEKLY, MONTHLY, YEARLY }
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmm");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String[] DAY_CODES = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+    private static final String[] DAY_LABELS = {"T2", "T3", "T4", "T5", "T6", "T7", "CN"};
+
+    private final Frequency frequency;
+    private final int interval;
+    // Bit i là thứ DayOfWeek.of(i + 1); 0 nghĩa là theo thứ của mốc bắt đầu
+    private final int dayMask;
+    private final int count;
+    private final LocalDateTime until;
+    private final LocalDateTime start;
+
+    /**
+     * @param count 0 nghĩa là không giới hạn số lần
+     * @param until null nghĩa là không có ngày kết thúc
+     * @param start null nghĩa là lấy chính thời điểm báo thức làm mốc
+     */
+    RecurrenceRule(Frequency frequency, int interval, int dayMask, int count, LocalDateTime until, LocalDateTime start) {
+        if (frequency == null) throw new IllegalArgumentException("Thiếu tần suất lặp.");
+        if (interval < 1) throw new IllegalArgumentException("Khoảng lặp phải từ 1 trở lên: " + interval);
+        if (dayMask < 0 || dayMask >= 1 << 7) throw new IllegalArgumentException("Tập thứ không hợp lệ: " + dayMask);
+        if (dayMask != 0 && frequency != Frequency.WEEKLY) {
+            throw new IllegalArgumentException("BYDAY chỉ dùng được với WEEKLY.");
+        }
+        if (count < 0) throw new IllegalArgumentException("Số lần lặp không được âm: " + count);
+        if (count > 0 && start == null) {
+            throw new IllegalArgumentException("COUNT cần mốc bắt đầu (DTSTART) để đếm số lần.");
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.dayMask = dayMask;
+        this.count = count;
+        this.until = until;
+        this.start = start != null ? start.withSecond(0).withNano(0) : null;
+    }
+
+    static RecurrenceRule of(Frequency frequency) {
+        return new RecurrenceRule(frequency, 1, 0, 0, null, null);
+    }
+
+    /**
+     * Đọc mẫu lặp (không phân biệt hoa thường).
+     *
+     * @throws IllegalArgumentException nếu mẫu không hợp lệ
+     */
+    static RecurrenceRule parse(String pattern) {
+        if (pattern == null || pattern.trim().isEmpty()) {
+            throw new IllegalArgumentException("Mẫu lặp trống.");
+        }
+        String text = pattern.trim().toUpperCase(Locale.ROOT);
+        if (text.startsWith("RRULE:")) text = text.substring(6);
+        if (text.indexOf('=') < 0) {
+            return of(frequencyOf(text));
+        }
+        Frequency frequency = null;
+        int interval = 1;
+        int dayMask = 0;
+        int count = 0;
+        LocalDateTime until = null;
+        LocalDateTime start = null;
+        for (String part : text.split(";")) {
+            if (part.isEmpty()) continue;
+            int eq = part.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Thành phần lặp không hợp lệ: " + part);
+            String key = part.substring(0, eq);
+            String value = part.substring(eq + 1);
+            switch (key) {
+                case "FREQ": frequency = frequencyOf(value); break;
+                case "INTERVAL": interval = number(key, value); break;
+                case "COUNT": count = number(key, value); break;
+                case "BYDAY": dayMask = dayMaskOf(value); break;
+                case "UNTIL": until = dateTime(key, value, true); break;
+                case "DTSTART": start = dateTime(key, value, false); break;
+                default: throw new IllegalArgumentException("Không hỗ trợ thành phần lặp: " + key);
+            }
+        }
+        return new RecurrenceRule(frequency, interval, dayMask, count, until, start);
+    }
+
+    Frequency getFrequency() {
+        return frequency;
+    }
+
+    int getInterval() {
+        return interval;
+    }
+
+    boolean repeatsOn(DayOfWeek day) {
+        return (dayMask & bit(day)) != 0;
+    }
+
+    boolean hasDays() {
+        return dayMask != 0;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    LocalDateTime getUntil() {
+        return until;
+    }
+
+    LocalDateTime getStart() {
+        return start;
+    }
+
+    /**
+     * Cùng quy tắc nhưng báo vào giờ khác trong ngày (mốc bắt đầu giữ nguyên ngày).
+     */
+    RecurrenceRule withTime(LocalTime time) {
+        return new RecurrenceRule(frequency, interval, dayMask, count, until, start != null ? start.with(time) : null);
+    }
+
+    /**
+     * Cùng quy tắc nhưng có mốc bắt đầu cố định, dùng trước khi thời điểm báo thức được dời sang lần kế tiếp:
+     * MONTHLY/YEARLY tính từ mốc mới sẽ trôi ngày (31/1 -> 28/2 -> 28/3). Quy tắc đã có DTSTART giữ nguyên.
+     */
+    RecurrenceRule withStart(LocalDateTime start) {
+        if (this.start != null) return this;
+        return new RecurrenceRule(frequency, interval, dayMask, count, until, start);
+    }
+
+    /**
+     * Quy tắc chỉ có tần suất (ghi ra đúng một từ như mẫu cũ).
+     */
+    boolean isSimple() {
+        return interval == 1 && dayMask == 0 && count == 0 && until == null
+                && (start == null || frequency == Frequency.DAILY || frequency == Frequency.WEEKLY);
+    }
+
+    /**
+     * Lần lặp đầu tiên sau hẳn {@code after}, null nếu chuỗi lặp đã hết (COUNT/UNTIL). Tốn O(1) dù after cách
+     * mốc bao xa.
+     *
+     * @param anchor mốc khi quy tắc không có DTSTART (thời điểm báo thức hiện tại, vốn là một lần lặp)
+     */
+    LocalDateTime firstAfter(LocalDateTime anchor, LocalDateTime after) {
+        LocalDateTime base = start != null ? start : anchor.withSecond(0).withNano(0);
+        LocalDateTime from = after.isBefore(base) ? base.minusMinutes(1) : after;
+        long index;
+        LocalDateTime next;
+        if (frequency == Frequency.WEEKLY && dayMask != 0) {
+            long[] found = firstWeekdayAfter(base, from);
+            index = found[0];
+            next = base.plusDays(found[1]);
+        } else {
+            long k = Math.max(0, Math.floorDiv(periodsBetween(base, from), interval));
+            next = occurrence(base, k);
+            while (!next.isAfter(from)) {
+                next = occurrence(base, ++k);
+            }
+            index = k;
+        }
+        if (count > 0 && index >= count) return null;
+        if (until != null && next.isAfter(until)) return null;
+        return next;
+    }
+
+    /**
+     * Lần lặp đầu tiên không sớm hơn {@code time} (chính time nếu nó là một lần lặp).
+     */
+    LocalDateTime firstAtOrAfter(LocalDateTime anchor, LocalDateTime time) {
+        return firstAfter(anchor, time.withSecond(0).withNano(0).minusMinutes(1));
+    }
+
+    /**
+     * Mô tả ngắn cho giao diện, ví dụ "Mỗi 2 tuần: T2, T4 (10 lần)".
+     */
+    String describe() {
+        String unit;
+        String every;
+        switch (frequency) {
+            case DAILY: unit = "ngày"; every = "Hằng ngày"; break;
+            case WEEKLY: unit = "tuần"; every = "Hằng tuần"; break;
+            case MONTHLY: unit = "tháng"; every = "Hằng tháng"; break;
+            default: unit = "năm"; every = "Hằng năm";
+        }
+        StringBuilder sb = new StringBuilder(interval == 1 ? every : "Mỗi " + interval + " " + unit);
+        if (dayMask != 0) {
+            sb.append(": ");
+            appendDays(sb, DAY_LABELS, ", ");
+        }
+        if (count > 0) sb.append(" (").append(count).append(" lần)");
+        if (until != null) sb.append(" đến ").append(until.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        if (isSimple()) return frequency.name();
+        StringBuilder sb = new StringBuilder("FREQ=").append(frequency.name());
+        if (interval != 1) sb.append(";INTERVAL=").append(interval);
+        if (dayMask != 0) {
+            sb.append(";BYDAY=");
+            appendDays(sb, DAY_CODES, ",");
+        }
+        if (count > 0) sb.append(";COUNT=").append(count);
+        if (until != null) sb.append(";UNTIL=").append(until.format(DATE_TIME));
+        if (start != null) sb.append(";DTSTART=").append(start.format(DATE_TIME));
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RecurrenceRule && toString().equals(o.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    // Số kỳ (ngày/tuần/tháng/năm) trọn vẹn hoặc gần trọn từ base tới time; có thể lệch một kỳ, firstAfter bù lại
+    private long periodsBetween(LocalDateTime base, LocalDateTime time) {
+        switch (frequency) {
+            case DAILY: return ChronoUnit.DAYS.between(base.toLocalDate(), time.toLocalDate()) - 1;
+            case WEEKLY: return ChronoUnit.DAYS.between(base.toLocalDate(), time.toLocalDate()) / 7 - 1;
+            case MONTHLY: return monthIndex(time) - monthIndex(base) - 1;
+            default: return time.getYear() - (long) base.getYear() - 1;
+        }
+    }
+
+    // Lần lặp thứ k (tính từ 0) của tần suất không có BYDAY
+    private LocalDateTime occurrence(LocalDateTime base, long k) {
+        long step = k * interval;
+        switch (frequency) {
+            case DAILY: return base.plusDays(step);
+            case WEEKLY: return base.plusWeeks(step);
+            case MONTHLY: return withDayClamped(base, YearMonth.from(base).plusMonths(step));
+            default: return withDayClamped(base, YearMonth.from(base).plusYears(step));
+        }
+    }
+
+    private static LocalDateTime withDayClamped(LocalDateTime base, YearMonth month) {
+        int day = Math.min(base.getDayOfMonth(), month.lengthOfMonth());
+        return LocalDateTime.of(month.atDay(day), base.toLocalTime());
+    }
+
+    /**
+     * WEEKLY có BYDAY: tuần được đánh số từ tuần (thứ Hai) chứa mốc, chỉ các tuần chia hết cho interval có lần
+     * lặp, và trong tuần đầu chỉ tính các thứ không sớm hơn mốc.
+     *
+     * @return {số thứ tự của lần lặp, số ngày kể từ mốc}
+     */
+    private long[] firstWeekdayAfter(LocalDateTime base, LocalDateTime from) {
+        LocalDate weekStart = base.toLocalDate().minusDays(base.getDayOfWeek().getValue() - 1);
+        int baseDay = base.getDayOfWeek().getValue() - 1;
+        int perWeek = Integer.bitCount(dayMask);
+        int inFirstWeek = Integer.bitCount(dayMask >>> baseDay);
+        long week = ChronoUnit.DAYS.between(weekStart, from.toLocalDate()) / 7;
+        week = Math.max(0, Math.floorDiv(week, interval) * interval);
+        // Lần lặp sau from nằm trong tuần được chọn hiện tại hoặc tuần được chọn kế tiếp
+        for (int attempt = 0; attempt < 2; attempt++, week += interval) {
+            for (int day = week == 0 ? baseDay : 0; day < 7; day++) {
+                if ((dayMask & (1 << day)) == 0) continue;
+                long offset = week * 7 + day - baseDay;
+                if (!base.plusDays(offset).isAfter(from)) continue;
+                long index;
+                if (week == 0) {
+                    index = Integer.bitCount(dayMask & ((1 << day) - 1)) - (perWeek - inFirstWeek);
+                } else {
+                    index = inFirstWeek + (week / interval - 1) * perWeek + Integer.bitCount(dayMask & ((1 << day) - 1));
+                }
+                return new long[]{index, offset};
+            }
+        }
+        throw new IllegalStateException("Không tìm thấy lần lặp kế tiếp.");
+    }
+
+    private static long monthIndex(LocalDateTime time) {
+        return time.getYear() * 12L + time.getMonthValue() - 1;
+    }
+
+    private void appendDays(StringBuilder sb, String[] names, String separator) {
+        boolean first = true;
+        for (int day = 0; day < 7; day++) {
+            if ((dayMask & (1 << day)) == 0) continue;
+            if (!first) sb.append(separator);
+            sb.append(names[day]);
+            first = false;
+        }
+    }
+
+    static int bit(DayOfWeek day) {
+        return 1 << (day.getValue() - 1);
+    }
+
+    private static Frequency frequencyOf(String value) {
+        try {
+            return Frequency.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Tần suất lặp không hợp lệ: " + value);
+        }
+    }
+
+    private static int number(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " phải là số: " + value);
+        }
+    }
+
+    private static int dayMaskOf(String value) {
+        int mask = 0;
+        for (String code : value.split(",")) {
+            int day = -1;
+            for (int i = 0; i < DAY_CODES.length; i++) {
+                if (DAY_CODES[i].equals(code)) day = i;
+            }
+            if (day < 0) throw new IllegalArgumentException("Thứ không hợp lệ trong BYDAY: " + code);
+            mask |= 1 << day;
+        }
+        return mask;
+    }
+
+    // UNTIL chỉ có ngày thì tính hết ngày đó
+    private static LocalDateTime dateTime(String key, String value, boolean endOfDay) {
+        try {
+            if (value.length() == 8) {
+                LocalDate date = LocalDate.parse(value, DATE);
+                return endOfDay ? date.atTime(23, 59) : date.atStartOfDay();
+            }
+            String trimmed = value.endsWith("Z") ? value.substring(0, value.length() - 1) : value;
+            if (trimmed.length() == 15) trimmed = trimmed.substring(0, 13);
+            return LocalDateTime.parse(trimmed, DATE_TIME);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(key + " không đúng dạng yyyyMMdd'T'HHmm: " + value);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Lưu {@link FullTextIndex} thành các file segment trong thư mục cạnh snapshot (notes.search/), để lần khởi động
+ * sau chỉ phải đọc lại chúng rồi đánh chỉ mục lại các note đã đổi, thay vì đọc nội dung và dựng lại mọi note.
+ *
+ * <pre>
+ * terms.seg     từ điển từ; với mỗi note: dấu vân tay, độ dài các trường, các từ kèm tần suất
+ * trigrams.seg  danh sách posting của {@link TrigramIndex}
+ * titles.seg    các từ tiêu đề/tag và biến thể xóa của {@link FuzzyTitleIndex}
+ * checkpoint    "XNCI" | u8 version | varint generation | varint n, n x (string tên, varint độ dài, u32 CRC32)
+ * </pre>
+ * File checkpoint ghi sau cùng và giữ CRC của từng segment, nên segment ghi dở hay lẫn từ hai lần ghi khác nhau
+ * đều bị phát hiện. {@code generation} là thế hệ của kho ({@link DataStorage#getGeneration()}) lúc chụp các note.
+ */
+class SearchIndexStore {
+    static final int VERSION = 1;
+    private static final byte[] MAGIC = {'X', 'N', 'C', 'I'};
+    private static final String[] SEGMENTS = {"terms.seg", "trigrams.seg", "titles.seg"};
+    private static final String CHECKPOINT = "checkpoint";
+    // Chỉ ghi lại checkpoint khi phải đánh chỉ mục lại từ chừng này note; ít hơn thì lần sau replay lại vẫn rẻ
+    private static final int CHECKPOINT_MIN_CHANGES = 256;
+
+    private final File dir;
+
+    SearchIndexStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Nạp checkpoint rồi đánh chỉ mục lại các note có dấu vân tay khác (và bỏ các note không còn); nếu không có
+     * checkpoint hợp lệ hoặc quá nửa số note đã đổi thì dựng lại từ đầu. Chạy trên luồng nền của NoteManager.
+     *
+     * @param storeGeneration thế hệ của kho mà {@code documents} được chụp từ đó
+     */
+    FullTextIndex open(List<FullTextIndex.Document> documents, NoteBodyStore bodyStore, long storeGeneration) {
+        long start = System.nanoTime();
+        FullTextIndex index = load(storeGeneration);
+        int changed = 0;
+        if (index != null) {
+            int stale = index.countStale(documents);
+            if (stale * 2 > documents.size()) {
+                System.out.println("[SearchIndexStore open] " + stale + "/" + documents.size() + " notes đã đổi kể từ checkpoint, dựng lại chỉ mục.");
+                index = null;
+            } else {
+                changed = index.replay(documents, bodyStore);
+                System.out.println("[SearchIndexStore open] Đã nạp chỉ mục từ " + dir.getName() + " và đánh chỉ mục lại " + changed +
+                        " notes trong " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+            }
+        }
+        boolean rebuilt = index == null;
+        if (rebuilt) {
+            index = FullTextIndex.build(documents, bodyStore);
+            System.out.println("[SearchIndexStore open] Đã đánh chỉ mục " + documents.size() + " notes, " +
+                    index.getTermCount() + " từ trong " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        }
+        if (rebuilt || changed >= CHECKPOINT_MIN_CHANGES) {
+            try {
+                long saveStart = System.nanoTime();
+                long bytes = save(index, storeGeneration);
+                System.out.println("[SearchIndexStore open] Đã ghi checkpoint thế hệ " + storeGeneration + " (" + bytes + " bytes) trong " +
+                        (System.nanoTime() - saveStart) / 1_000_000 + " ms.");
+            } catch (IOException e) {
+                System.err.println("[SearchIndexStore open] Không thể ghi checkpoint chỉ mục: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return chỉ mục đọc từ checkpoint, hoặc null nếu chưa có, bị hỏng hay thuộc về một kho khác
+     */
+    FullTextIndex load(long storeGeneration) {
+        File checkpointFile = new File(dir, CHECKPOINT);
+        if (!checkpointFile.isFile()) {
+            return null;
+        }
+        try {
+            Input header = new Input(ByteBuffer.wrap(Files.readAllBytes(checkpointFile.toPath())));
+            byte[] magic = new byte[MAGIC.length];
+            header.buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.u8() != VERSION) {
+                System.out.println("[SearchIndexStore load] Checkpoint chỉ mục có định dạng khác, sẽ dựng lại.");
+                return null;
+            }
+            long generation = header.varint();
+            if (generation > storeGeneration) {
+                // Kho trên đĩa cũ hơn kho đã dựng checkpoint (khôi phục bản sao lưu, chép đè file...)
+                System.out.println("[SearchIndexStore load] Checkpoint thế hệ " + generation + " mới hơn kho (thế hệ " +
+                        storeGeneration + "), sẽ dựng lại.");
+                return null;
+            }
+            int count = header.count();
+            if (count != SEGMENTS.length) {
+                throw new IOException("Số segment không khớp: " + count);
+            }
+            Input[] segments = new Input[count];
+            for (int i = 0; i < count; i++) {
+                String name = header.string();
+                long length = header.varint();
+                long crc = header.u32();
+                if (!SEGMENTS[i].equals(name)) {
+                    throw new IOException("Segment không mong đợi: " + name);
+                }
+                File segmentFile = new File(dir, name);
+                if (!segmentFile.isFile() || segmentFile.length() != length) {
+                    throw new IOException("Segment " + name + " thiếu hoặc sai độ dài.");
+                }
+                byte[] data = Files.readAllBytes(segmentFile.toPath());
+                CRC32 checksum = new CRC32();
+                checksum.update(data);
+                if (checksum.getValue() != crc) {
+                    throw new IOException("Segment " + name + " sai CRC.");
+                }
+                segments[i] = new Input(ByteBuffer.wrap(data));
+            }
+            return FullTextIndex.read(segments[0], segments[1], segments[2]);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("[SearchIndexStore load] Checkpoint chỉ mục không hợp lệ, sẽ dựng lại: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Ghi chỉ mục thành một checkpoint mới. Chỉ mục không được bị sửa trong lúc ghi.
+     *
+     * @return tổng số byte đã ghi
+     */
+    long save(FullTextIndex index, long storeGeneration) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Không thể tạo thư mục chỉ mục: " + dir);
+        }
+        Output[] segments = new Output[SEGMENTS.length];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Output(1 << 16);
+        }
+        index.write(segments[0], segments[1], segments[2]);
+
+        // Bỏ checkpoint cũ trước: nếu bị tắt giữa chừng thì lần sau dựng lại chứ không đọc segment lẫn lộn
+        Files.deleteIfExists(new File(dir, CHECKPOINT).toPath());
+        Output header = new Output(128);
+        header.bytes(MAGIC, 0, MAGIC.length);
+        header.u8(VERSION);
+        header.varint(storeGeneration);
+        header.varint(segments.length);
+        long total = 0;
+        for (int i = 0; i < segments.length; i++) {
+            CRC32 checksum = new CRC32();
+            checksum.update(segments[i].buf, 0, segments[i].size);
+            writeAtomically(new File(dir, SEGMENTS[i]), segments[i]);
+            header.string(SEGMENTS[i]);
+            header.varint(segments[i].size);
+            header.u32(checksum.getValue());
+            total += segments[i].size;
+        }
+        writeAtomically(new File(dir, CHECKPOINT), header);
+        return total + header.size;
+    }
+
+    // Không fsync: chỉ mục chỉ là dữ liệu dẫn xuất, hỏng thì CRC phát hiện và dựng lại được
+    private static void writeAtomically(File target, Output content) throws IOException {
+        File temp = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(content.buf, 0, content.size);
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Bộ đệm ghi của segment: varint không dấu, chuỗi UTF-8 có tiền tố độ dài (độ dài + 1, 0 là null), long 8 byte.
+     */
+    static final class Output {
+        private byte[] buf;
+        private int size;
+
+        Output(int initialCapacity) {
+            buf = new byte[initialCapacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        void u8(int value) {
+            ensure(1);
+            buf[size++] = (byte) value;
+        }
+
+        void u32(long value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void fixed64(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void bytes(byte[] value, int offset, int length) {
+            ensure(length);
+            System.arraycopy(value, offset, buf, size, length);
+            size += length;
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1L);
+            bytes(utf8, 0, utf8.length);
+        }
+    }
+
+    static final class Input {
+        private final ByteBuffer buffer;
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int u8() {
+            return buffer.get() & 0xFF;
+        }
+
+        long u32() {
+            return buffer.getInt() & 0xFFFFFFFFL;
+        }
+
+        long fixed64() {
+            return buffer.getLong();
+        }
+
+        byte[] bytes(int length) {
+            byte[] result = new byte[length];
+            buffer.get(result);
+            return result;
+        }
+
+        long varint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Varint quá dài trong segment chỉ mục.");
+        }
+
+        /**
+         * Số phần tử (hoặc độ dài) sắp đọc; không thể lớn hơn số byte còn lại.
+         */
+        int count() throws IOException {
+            long value = varint();
+            if (value < 0 || value > buffer.remaining()) {
+                throw new IOException("Số phần tử không hợp lệ trong segment chỉ mục: " + value);
+            }
+            return (int) value;
+        }
+
+        /**
+         * Chỉ số vào một bảng có {@code limit} phần tử.
+         */
+        int index(int limit) throws IOException {
+            long value = varint();
+            if (value < 0 || value >= limit) {
+                throw new IOException("Chỉ số ngoài bảng trong segment chỉ mục: " + value);
+            }
+            return (int) value;
+        }
+
+        String string() throws IOException {
+            long lengthPlusOne = varint();
+            if (lengthPlusOne == 0) {
+                return null;
+            }
+            int length = (int) (lengthPlusOne - 1);
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Độ dài chuỗi không hợp lệ trong segment chỉ mục: " + length);
+            }
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+    }
+}
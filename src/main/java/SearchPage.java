@@ -0,0 +1,40 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Một trang kết quả tìm kiếm đã xếp hạng: các note của trang cùng tổng số note khớp để phân trang tiếp.
+ * Trang được tìm trong lúc chỉ mục toàn văn chưa sẵn sàng thì chỉ xét tiêu đề và tên tag ({@link #isIndexing()}).
+ */
+public class SearchPage {
+    private final List<Note> notes;
+    private final int offset;
+    private final int totalMatches;
+    private final boolean indexing;
+
+    public SearchPage(List<Note> notes, int offset, int totalMatches, boolean indexing) {
+        this.notes = Collections.unmodifiableList(notes);
+        this.offset = offset;
+        this.totalMatches = totalMatches;
+        this.indexing = indexing;
+    }
+
+    public List<Note> getNotes() {
+        return notes;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotalMatches() {
+        return totalMatches;
+    }
+
+    public boolean hasMore() {
+        return offset + notes.size() < totalMatches;
+    }
+
+    public boolean isIndexing() {
+        return indexing;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bố cục lưu trữ theo thư mục: file snapshot chính chỉ còn là manifest (folder, tag), còn note của mỗi folder
+ * nằm trong một shard riêng &lt;tên&gt;.shards/&lt;folderId&gt;&lt;đuôi&gt;.
+ * Lớp này theo dõi note nào nằm ở shard nào và shard nào đã thay đổi kể từ lần ghi snapshot trước,
+ * để lần lưu sau chỉ ghi lại các shard bẩn.
+ */
+class ShardLayout {
+    private final File dir;
+    private final String extension;
+
+    private final Object lock = new Object();
+    private final Map<Long, Long> noteShards = new HashMap<>();
+    private final Set<Long> knownShards = new HashSet<>();
+    private final Set<Long> dirtyShards = new HashSet<>();
+    private boolean allDirty;
+
+    ShardLayout(File dir, String extension) {
+        this.dir = dir;
+        this.extension = extension;
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    File shardFile(long folderId) {
+        return new File(dir, folderId + extension);
+    }
+
+    /**
+     * Các shard đang có trên đĩa (file tạm và file lạ bị bỏ qua).
+     */
+    List<Long> listShardIdsOnDisk() {
+        List<Long> ids = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return ids;
+        }
+        for (String name : names) {
+            if (!name.endsWith(extension)) continue;
+            try {
+                ids.add(Long.parseLong(name.substring(0, name.length() - extension.length())));
+            } catch (NumberFormatException ignored) {
+                // không phải file shard
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Khởi tạo lại sau khi tải. {@code markAllDirty} khi dữ liệu không đến từ các shard hiện có
+     * (snapshot một file cũ, nhập JSON, vừa chuyển đổi dữ liệu) nên lần lưu tới phải ghi lại toàn bộ.
+     */
+    void reset(Collection<Note> notes, Collection<Long> shardsOnDisk, Collection<Long> touchedShards, boolean markAllDirty) {
+        synchronized (lock) {
+            noteShards.clear();
+            knownShards.clear();
+            dirtyShards.clear();
+            knownShards.addAll(shardsOnDisk);
+            for (Note note : notes) {
+                noteShards.put(note.getId(), note.getFolderId());
+                knownShards.add(note.getFolderId());
+            }
+            dirtyShards.addAll(touchedShards);
+            allDirty = markAllDirty;
+        }
+    }
+
+    void markAllDirty() {
+        synchronized (lock) {
+            allDirty = true;
+        }
+    }
+
+    /**
+     * @return các shard bị ảnh hưởng: shard cũ (nếu note vừa chuyển thư mục) và shard mới
+     */
+    Set<Long> noteSaved(long noteId, long folderId) {
+        synchronized (lock) {
+            Set<Long> affected = new HashSet<>(2);
+            Long previous = noteShards.put(noteId, folderId);
+            if (previous != null) affected.add(previous);
+            affected.add(folderId);
+            knownShards.add(folderId);
+            dirtyShards.addAll(affected);
+            return affected;
+        }
+    }
+
+    Set<Long> noteDeleted(long noteId) {
+        synchronized (lock) {
+            Long previous = noteShards.remove(noteId);
+            if (previous == null) {
+                return Collections.emptySet();
+            }
+            dirtyShards.add(previous);
+            return Collections.singleton(previous);
+        }
+    }
+
+    /**
+     * Lấy và xóa danh sách shard bẩn để ghi snapshot từ dữ liệu đang có trong bộ nhớ.
+     * Ánh xạ note -> shard cũng được đồng bộ lại theo dữ liệu đó.
+     */
+    Set<Long> takeDirty(Collection<Note> liveNotes) {
+        synchronized (lock) {
+            Set<Long> result = new HashSet<>(dirtyShards);
+            noteShards.clear();
+            Set<Long> liveShards = new HashSet<>();
+            for (Note note : liveNotes) {
+                noteShards.put(note.getId(), note.getFolderId());
+                liveShards.add(note.getFolderId());
+            }
+            if (allDirty) {
+                result.addAll(knownShards);
+                result.addAll(liveShards);
+            }
+            // Shard không còn note nào sẽ bị xóa khi ghi nên không cần theo dõi nữa
+            knownShards.retainAll(liveShards);
+            knownShards.addAll(liveShards);
+            dirtyShards.clear();
+            allDirty = false;
+            return result;
+        }
+    }
+
+    int getDirtyCount() {
+        synchronized (lock) {
+            return allDirty ? knownShards.size() : dirtyShards.size();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Một lần ghi snapshot theo shard: manifest và các shard cần ghi lại, ở dạng dữ liệu chưa mã hóa. Dữ liệu là
+ * bản sao tách rời khỏi các đối tượng UI đang sửa, nên luồng ghi nền mã hóa nó mà không cần khóa.
+ * Giá trị null trong {@code shards} nghĩa là shard đã rỗng và file của nó phải bị xóa.
+ */
+class ShardedSnapshot {
+    final SnapshotData manifest;
+    final Map<Long, SnapshotData> shards;
+    final long generation;
+
+    ShardedSnapshot(SnapshotData manifest, Map<Long, SnapshotData> shards, long generation) {
+        this.manifest = manifest;
+        this.generation = generation;
+        this.shards = new LinkedHashMap<>(shards);
+    }
+
+    /**
+     * Gộp một snapshot cũ hơn chưa được ghi: shard nào snapshot này không ghi lại thì vẫn phải ghi bản cũ,
+     * vì danh sách shard bẩn đã bị lấy đi khi tạo snapshot cũ.
+     */
+    void absorbOlder(ShardedSnapshot older) {
+        for (Map.Entry<Long, SnapshotData> entry : older.shards.entrySet()) {
+            if (!shards.containsKey(entry.getKey())) {
+                shards.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Toàn bộ dữ liệu của một snapshot, dùng chung cho định dạng JSON và nhị phân.
+ */
+class SnapshotData {
+    List<Note> notes = new ArrayList<>();
+    List<Folder> folders = new ArrayList<>();
+    List<Tag> tags = new ArrayList<>();
+    // Số thế hệ của kho, tăng mỗi lần ghi manifest; 0 với shard, file xuất và snapshot cũ chưa có trường này
+    long generation;
+}
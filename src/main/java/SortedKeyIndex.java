@@ -0,0 +1,219 @@
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Tập có thứ tự các bộ ba long (khóa chính, khóa phụ, ID note), so sánh lần lượt theo ba thành phần.
+ * Phần tử nằm trong các khối mảng đã sắp xếp, mỗi khối tối đa {@link #BLOCK} bộ: tìm khối bằng tìm kiếm nhị phân
+ * trên phần tử đầu của các khối rồi tìm nhị phân trong khối, nên thêm/xóa một note chỉ dời tối đa một khối thay
+ * vì cả danh sách, và duyệt theo thứ tự không phải sắp xếp lại.
+ * <p>
+ * Như {@link LongIdTrie}, mỗi lần sửa nhận đối tượng {@code edit} của bên ghi: view đã công bố cho người đọc
+ * không bị sửa mà được chép mảng khối ngoài cùng đúng những khối bị đụng tới; khối đã thuộc lần sửa hiện tại
+ * được sửa tại chỗ.
+ */
+class SortedKeyIndex {
+    private static final int BLOCK = 256;
+    private static final long[][] NO_BLOCKS = new long[0][];
+
+    // Khối thứ i chứa sizes[i] bộ ba liên tiếp (primary, secondary, id)
+    private long[][] blocks = NO_BLOCKS;
+    private int[] sizes = new int[0];
+    private int blockCount;
+    private int size;
+    // Lần sửa sở hữu view này và các khối đã được chép (hoặc tạo) trong lần sửa đó
+    private Object edit;
+    private boolean[] ownedBlocks = new boolean[0];
+
+    /**
+     * @return view có thêm bộ ba; là chính view này nếu nó đã thuộc lần sửa {@code edit} hoặc bộ ba đã có
+     */
+    SortedKeyIndex with(long primary, long secondary, long id, Object edit) {
+        if (contains(primary, secondary, id)) return this;
+        SortedKeyIndex index = editable(edit);
+        index.add(primary, secondary, id);
+        return index;
+    }
+
+    /**
+     * @return view không còn bộ ba; là chính view này nếu nó đã thuộc lần sửa {@code edit} hoặc bộ ba vốn không có
+     */
+    SortedKeyIndex without(long primary, long secondary, long id, Object edit) {
+        if (!contains(primary, secondary, id)) return this;
+        SortedKeyIndex index = editable(edit);
+        index.remove(primary, secondary, id);
+        return index;
+    }
+
+    boolean contains(long primary, long secondary, long id) {
+        if (blockCount == 0) return false;
+        int b = blockFor(primary, secondary, id);
+        return search(blocks[b], sizes[b], primary, secondary, id) >= 0;
+    }
+
+    private SortedKeyIndex editable(Object edit) {
+        if (edit != null && this.edit == edit) return this;
+        SortedKeyIndex copy = new SortedKeyIndex();
+        copy.blocks = blocks.clone();
+        copy.sizes = sizes.clone();
+        copy.ownedBlocks = new boolean[blocks.length];
+        copy.blockCount = blockCount;
+        copy.size = size;
+        copy.edit = edit;
+        return copy;
+    }
+
+    // Khối b sửa được: khối của phiên bản cũ được chép trước
+    private long[] ownBlock(int b) {
+        if (!ownedBlocks[b]) {
+            blocks[b] = blocks[b].clone();
+            ownedBlocks[b] = true;
+        }
+        return blocks[b];
+    }
+
+    private boolean add(long primary, long secondary, long id) {
+        if (blockCount == 0) {
+            insertBlock(0, new long[BLOCK * 3], 0);
+        }
+        int b = blockFor(primary, secondary, id);
+        long[] block = blocks[b];
+        int pos = search(block, sizes[b], primary, secondary, id);
+        if (pos >= 0) return false;
+        pos = -pos - 1;
+        if (sizes[b] == BLOCK) {
+            // Tách đôi khối đầy rồi chèn vào nửa tương ứng
+            int half = BLOCK / 2;
+            long[] upper = new long[BLOCK * 3];
+            System.arraycopy(block, half * 3, upper, 0, half * 3);
+            sizes[b] = half;
+            insertBlock(b + 1, upper, half);
+            if (pos > half) {
+                b++;
+                pos -= half;
+            }
+        }
+        block = ownBlock(b);
+        int count = sizes[b];
+        System.arraycopy(block, pos * 3, block, pos * 3 + 3, (count - pos) * 3);
+        block[pos * 3] = primary;
+        block[pos * 3 + 1] = secondary;
+        block[pos * 3 + 2] = id;
+        sizes[b]++;
+        size++;
+        return true;
+    }
+
+    private boolean remove(long primary, long secondary, long id) {
+        if (blockCount == 0) return false;
+        int b = blockFor(primary, secondary, id);
+        int count = sizes[b];
+        int pos = search(blocks[b], count, primary, secondary, id);
+        if (pos < 0) return false;
+        long[] block = ownBlock(b);
+        System.arraycopy(block, pos * 3 + 3, block, pos * 3, (count - pos - 1) * 3);
+        sizes[b]--;
+        size--;
+        if (sizes[b] == 0) {
+            removeBlock(b);
+        } else if (b + 1 < blockCount && sizes[b] + sizes[b + 1] <= BLOCK / 2) {
+            // Gộp hai khối thưa liền nhau để số khối tỷ lệ với số phần tử
+            System.arraycopy(blocks[b + 1], 0, block, sizes[b] * 3, sizes[b + 1] * 3);
+            sizes[b] += sizes[b + 1];
+            removeBlock(b + 1);
+        }
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Duyệt ID theo thứ tự tăng dần của khóa.
+     */
+    void forEachId(LongConsumer action) {
+        for (int b = 0; b < blockCount; b++) {
+            long[] block = blocks[b];
+            for (int i = 0; i < sizes[b]; i++) action.accept(block[i * 3 + 2]);
+        }
+    }
+
+    /**
+     * Duyệt theo thứ tự ID của các bộ ba có khóa chính trong khoảng [fromPrimary, toPrimary).
+     */
+    void forEachIdBetween(long fromPrimary, long toPrimary, LongConsumer action) {
+        if (blockCount == 0) return;
+        int b = blockFor(fromPrimary, Long.MIN_VALUE, Long.MIN_VALUE);
+        int pos = search(blocks[b], sizes[b], fromPrimary, Long.MIN_VALUE, Long.MIN_VALUE);
+        for (int i = pos >= 0 ? pos : -pos - 1; b < blockCount; b++, i = 0) {
+            long[] block = blocks[b];
+            for (; i < sizes[b]; i++) {
+                if (block[i * 3] >= toPrimary) return;
+                action.accept(block[i * 3 + 2]);
+            }
+        }
+    }
+
+    // Khối cuối cùng có phần tử đầu không lớn hơn khóa (khối 0 nếu khóa nhỏ hơn mọi phần tử)
+    private int blockFor(long primary, long secondary, long id) {
+        int low = 1;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(blocks[mid], 0, primary, secondary, id) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    private static int search(long[] block, int count, long primary, long secondary, long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(block, mid, primary, secondary, id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(long[] block, int index, long primary, long secondary, long id) {
+        int cmp = Long.compare(block[index * 3], primary);
+        if (cmp != 0) return cmp;
+        cmp = Long.compare(block[index * 3 + 1], secondary);
+        return cmp != 0 ? cmp : Long.compare(block[index * 3 + 2], id);
+    }
+
+    private void insertBlock(int index, long[] block, int count) {
+        if (blockCount == blocks.length) {
+            int capacity = Math.max(4, blockCount * 2);
+            blocks = Arrays.copyOf(blocks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            ownedBlocks = Arrays.copyOf(ownedBlocks, capacity);
+        }
+        System.arraycopy(blocks, index, blocks, index + 1, blockCount - index);
+        System.arraycopy(sizes, index, sizes, index + 1, blockCount - index);
+        System.arraycopy(ownedBlocks, index, ownedBlocks, index + 1, blockCount - index);
+        blocks[index] = block;
+        sizes[index] = count;
+        ownedBlocks[index] = true;
+        blockCount++;
+    }
+
+    private void removeBlock(int index) {
+        System.arraycopy(blocks, index + 1, blocks, index, blockCount - index - 1);
+        System.arraycopy(sizes, index + 1, sizes, index, blockCount - index - 1);
+        System.arraycopy(ownedBlocks, index + 1, ownedBlocks, index, blockCount - index - 1);
+        blockCount--;
+        blocks[blockCount] = null;
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Chỉ mục trigram (3 ký tự liên tiếp) trên văn bản đã gập của note, dùng để thu hẹp ứng viên cho tìm kiếm
+ * chuỗi con: note chứa chuỗi truy vấn thì phải chứa mọi trigram của nó. Ngược lại thì chưa chắc, nên với
+ * truy vấn dài hơn 3 ký tự bên gọi phải kiểm tra lại từng ứng viên.
+ * <p>
+ * Mỗi lần một note được đánh chỉ mục nó nhận một số thứ tự tài liệu mới, tăng dần, nên danh sách posting
+ * chỉ việc ghi nối vào cuối và luôn được sắp xếp: lưu dưới dạng khoảng cách giữa các số thứ tự, mã hóa
+ * varint (thường 1-2 byte mỗi phần tử). Bản cũ của note chỉ bị đánh dấu chết và được dọn khi số tài liệu
+ * chết vượt số tài liệu sống.
+ */
+class TrigramIndex {
+    static final int GRAM = 3;
+    // Ranh giới giữa các trường (tiêu đề, nội dung, tag): trigram chứa ký tự này không được đánh chỉ mục
+    static final char FIELD_BREAK = '\n';
+    private static final int MIN_DEAD_TO_COMPACT = 1024;
+
+    private final LongHashIndex<Postings> postings = new LongHashIndex<>();
+    private final LongHashIndex<Integer> docOfNote = new LongHashIndex<>();
+    private long[] noteOfDoc = new long[1024];
+    private BitSet live = new BitSet();
+    private int nextDoc;
+    private int liveDocs;
+
+    /**
+     * Đánh chỉ mục (lại) văn bản đã gập của một note.
+     */
+    void put(long noteId, String foldedText) {
+        remove(noteId);
+        LongIdSet grams = new LongIdSet();
+        for (int i = 0; i + GRAM <= foldedText.length(); i++) {
+            long gram = gramAt(foldedText, i);
+            if (gram != 0) grams.add(gram);
+        }
+        if (grams.isEmpty()) return;
+        int doc = nextDoc++;
+        if (doc == noteOfDoc.length) noteOfDoc = Arrays.copyOf(noteOfDoc, doc * 2);
+        noteOfDoc[doc] = noteId;
+        live.set(doc);
+        liveDocs++;
+        docOfNote.put(noteId, doc);
+        grams.forEach(gram -> {
+            Postings list = postings.get(gram);
+            if (list == null) {
+                list = new Postings();
+                postings.put(gram, list);
+            }
+            list.append(doc);
+        });
+    }
+
+    void remove(long noteId) {
+        Integer doc = docOfNote.remove(noteId);
+        if (doc == null) return;
+        live.clear(doc);
+        liveDocs--;
+        int dead = nextDoc - liveDocs;
+        if (dead >= MIN_DEAD_TO_COMPACT && dead > liveDocs) {
+            compact();
+        }
+    }
+
+    void clear() {
+        postings.clear();
+        docOfNote.clear();
+        noteOfDoc = new long[1024];
+        live = new BitSet();
+        nextDoc = 0;
+        liveDocs = 0;
+    }
+
+    /**
+     * Các note chứa mọi trigram của truy vấn đã gập, hoặc null nếu truy vấn ngắn hơn {@link #GRAM} ký tự.
+     */
+    LongIdSet candidates(String foldedQuery) {
+        if (foldedQuery.length() < GRAM) return null;
+        LongIdSet grams = new LongIdSet();
+        for (int i = 0; i + GRAM <= foldedQuery.length(); i++) {
+            long gram = gramAt(foldedQuery, i);
+            if (gram == 0) return new LongIdSet();
+            grams.add(gram);
+        }
+        Postings[] lists = new Postings[grams.size()];
+        long[] keys = grams.toSortedArray();
+        for (int i = 0; i < keys.length; i++) {
+            lists[i] = postings.get(keys[i]);
+            if (lists[i] == null) return new LongIdSet();
+        }
+        // Bắt đầu từ danh sách ngắn nhất để tập ứng viên nhỏ ngay từ đầu
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] docs = lists[0].decodeLive(live);
+        int count = docs.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = lists[i].retainAll(docs, count);
+        }
+        LongIdSet result = new LongIdSet(count);
+        for (int i = 0; i < count; i++) result.add(noteOfDoc[docs[i]]);
+        return result;
+    }
+
+    /**
+     * Ghi vào segment: bảng số thứ tự tài liệu -&gt; ID note rồi từng danh sách posting nguyên dạng đã mã hóa.
+     * Các tài liệu chết được dọn trước để bảng chỉ còn tài liệu sống.
+     */
+    void write(SearchIndexStore.Output out) {
+        if (liveDocs < nextDoc) compact();
+        out.varint(nextDoc);
+        for (int doc = 0; doc < nextDoc; doc++) out.varint(noteOfDoc[doc]);
+        out.varint(postings.size());
+        postings.forEachEntry((list, gram) -> {
+            out.varint(gram);
+            out.varint(list.last + 1L);
+            out.varint(list.length);
+            out.bytes(list.data, 0, list.length);
+        });
+    }
+
+    /**
+     * Nạp lại chỉ mục rỗng này từ segment do {@link #write} ghi.
+     */
+    void read(SearchIndexStore.Input in) throws IOException {
+        clear();
+        int docs = in.count();
+        noteOfDoc = new long[Math.max(1024, docs)];
+        for (int doc = 0; doc < docs; doc++) {
+            noteOfDoc[doc] = in.varint();
+            docOfNote.put(noteOfDoc[doc], doc);
+        }
+        live.set(0, docs);
+        nextDoc = docs;
+        liveDocs = docs;
+        int gramCount = in.count();
+        for (int i = 0; i < gramCount; i++) {
+            long gram = in.varint();
+            int last = (int) in.varint() - 1;
+            int length = in.count();
+            if (last >= docs) {
+                throw new IOException("Danh sách trigram trỏ tới tài liệu không tồn tại: " + last);
+            }
+            if (length > 0) postings.put(gram, new Postings(in.bytes(length), last));
+        }
+    }
+
+    // Dồn số thứ tự các tài liệu còn sống về 0..liveDocs-1; ánh xạ đơn điệu nên các danh sách vẫn được sắp xếp
+    private void compact() {
+        int[] remap = new int[nextDoc];
+        long[] notes = new long[Math.max(1024, liveDocs * 2)];
+        int n = 0;
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (live.get(doc)) {
+                remap[doc] = n;
+                notes[n] = noteOfDoc[doc];
+                docOfNote.put(noteOfDoc[doc], n);
+                n++;
+            } else {
+                remap[doc] = -1;
+            }
+        }
+        postings.forEachValue(list -> list.remap(remap));
+        noteOfDoc = notes;
+        live = new BitSet(n);
+        live.set(0, n);
+        nextDoc = n;
+    }
+
+    // Ba ký tự gói vào một long (khác 0 vì ký tự đã gập không bao giờ là 0); 0 nếu vắt qua ranh giới trường
+    private static long gramAt(String text, int i) {
+        char a = text.charAt(i), b = text.charAt(i + 1), c = text.charAt(i + 2);
+        if (a == FIELD_BREAK || b == FIELD_BREAK || c == FIELD_BREAK) return 0;
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    /**
+     * Danh sách số thứ tự tài liệu tăng dần, lưu khoảng cách giữa hai phần tử liên tiếp dạng varint.
+     */
+    private static final class Postings {
+        private byte[] data;
+        private int length;
+        private int last;
+
+        Postings() {
+            data = new byte[4];
+            last = -1;
+        }
+
+        Postings(byte[] encoded, int last) {
+            this.data = encoded;
+            this.length = encoded.length;
+            this.last = last;
+        }
+
+        void append(int doc) {
+            int delta = doc - last;
+            last = doc;
+            if (length + 5 > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+        }
+
+        int[] decodeLive(BitSet live) {
+            int[] docs = new int[16];
+            int n = 0;
+            int doc = -1;
+            int pos = 0;
+            while (pos < length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                if (live.get(doc)) {
+                    if (n == docs.length) docs = Arrays.copyOf(docs, n * 2);
+                    docs[n++] = doc;
+                }
+            }
+            return Arrays.copyOf(docs, n);
+        }
+
+        /**
+         * Giữ lại trong docs[0..count) các tài liệu có trong danh sách này (trộn hai dãy đã sắp xếp).
+         *
+         * @return số phần tử còn lại
+         */
+        int retainAll(int[] docs, int count) {
+            int kept = 0;
+            int i = 0;
+            int doc = -1;
+            int pos = 0;
+            while (pos < length && i < count) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                while (i < count && docs[i] < doc) i++;
+                if (i < count && docs[i] == doc) docs[kept++] = docs[i++];
+            }
+            return kept;
+        }
+
+        void remap(int[] remap) {
+            byte[] old = data;
+            int oldLength = length;
+            data = new byte[Math.max(4, oldLength)];
+            length = 0;
+            last = -1;
+            int doc = -1;
+            int pos = 0;
+            while (pos < oldLength) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = old[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                if (remap[doc] >= 0) append(remap[doc]);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Sinh bộ dữ liệu giả cho các bài đo (StorageLoadHarness, SubstringSearchHarness): một file notes.json theo
+ * định dạng cũ (nội dung nằm ngay trong file), tiêu đề và nội dung ghép từ một bộ âm tiết tiếng Việt cố định,
+ * 50 folder và 20 tag. Cùng số note và seed thì cùng dữ liệu.
+ */
+final class HarnessCorpus {
+    static final int FOLDERS = 50;
+    static final int TAGS = 20;
+    // Bộ từ nhỏ nên các từ ngắn, phổ biến xuất hiện ở rất nhiều note (trường hợp xấu của chỉ mục trigram)
+    private static final String[] WORDS = {
+            "ghi", "chú", "công", "việc", "dự", "án", "báo", "cáo", "tuần", "họp", "nhóm", "kế", "hoạch",
+            "mua", "sắm", "quà", "tặng", "sinh", "nhật", "du", "lịch", "đà", "lạt", "hà", "nội", "sài", "gòn",
+            "java", "python", "code", "review", "lỗi", "sửa", "kiểm", "thử", "học", "tiếng", "anh", "sách",
+            "đọc", "phim", "xem", "nhạc", "nghe", "ăn", "uống", "nấu", "bếp", "nhà", "cửa"};
+
+    private HarnessCorpus() {
+    }
+
+    /**
+     * Tạo thư mục tạm mới chứa notes.json với {@code noteCount} note, nội dung khoảng {@code contentChars} ký tự.
+     */
+    static File generate(int noteCount, int contentChars, long seed) throws IOException {
+        if (noteCount < 1 || contentChars < 1) {
+            throw new IllegalArgumentException("Số note và độ dài nội dung phải dương.");
+        }
+        File dir = Files.createTempDirectory("xinoclo-harness").toFile();
+        Random random = new Random(seed);
+        File file = new File(dir, "notes.json");
+        try (JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            out.beginObject();
+            out.name("notes").beginArray();
+            StringBuilder text = new StringBuilder(contentChars + 16);
+            for (int id = 1; id <= noteCount; id++) {
+                out.beginObject();
+                out.name("id").value(id);
+                out.name("title").value(words(random, 3 + random.nextInt(4), text) + " " + id);
+                text.setLength(0);
+                while (text.length() < contentChars) {
+                    text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(8) == 0 ? ". " : " ");
+                }
+                text.append(id);
+                out.name("content").value(text.toString());
+                out.name("createdAt").value("2026-01-01T08:00:00");
+                out.name("updatedAt").value("2026-01-02T09:30:00");
+                out.name("isFavorite").value(random.nextInt(10) == 0);
+                out.name("isMission").value(false);
+                out.name("isMissionCompleted").value(false);
+                out.name("missionContent").value("");
+                out.name("folderId").value(1 + random.nextInt(FOLDERS));
+                out.name("tags").beginArray();
+                int tagCount = random.nextInt(3);
+                for (int t = 0; t < tagCount; t++) {
+                    int tagId = 1 + random.nextInt(TAGS);
+                    out.beginObject().name("id").value(tagId).name("name").value("tag" + tagId).endObject();
+                }
+                out.endArray();
+                out.name("noteType").value("TEXT");
+                out.endObject();
+            }
+            out.endArray();
+            out.name("folders").beginArray();
+            for (int id = 1; id <= FOLDERS; id++) {
+                out.beginObject().name("id").value(id).name("name").value(id == 1 ? "Root" : "Folder " + id)
+                        .name("isFavorite").value(false).endObject();
+            }
+            out.endArray();
+            out.name("tags").beginArray();
+            for (int id = 1; id <= TAGS; id++) {
+                out.beginObject().name("id").value(id).name("name").value("tag" + id).endObject();
+            }
+            out.endArray();
+            out.endObject();
+        }
+        return dir;
+    }
+
+    private static String words(Random random, int count, StringBuilder scratch) {
+        scratch.setLength(0);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) scratch.append(' ');
+            scratch.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return scratch.toString();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        if (!file.delete() && file.exists()) {
+            System.err.println("[HarnessCorpus] Không xóa được " + file);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bài đo tra cứu theo ID: so sánh cách quét danh sách bằng {@code stream().filter()} (cách cũ của
+ * getNoteById/getFolderById) với {@link LongHashIndex} mà NoteManager đang dùng. Mỗi thao tác tra một note
+ * ngẫu nhiên và một folder ngẫu nhiên; ID hợp lệ nên lần quét trung bình đi qua nửa danh sách.
+ * <p>
+ * Không dùng JMH (dự án không có module benchmark): mỗi cách được chạy làm nóng rồi đo nhiều vòng, in
+ * trung vị thời gian cho một thao tác.
+ * <p>
+ * Chạy: {@code java -cp target/classes:target/test-classes IdLookupHarness [soNote] [soFolder] [soVong]}
+ */
+final class IdLookupHarness {
+    private final List<Note> notes;
+    private final List<Folder> folders;
+    private final LongHashIndex<Note> noteIndex;
+    private final LongHashIndex<Folder> folderIndex;
+    private final long[] noteIds;
+    private final long[] folderIds;
+    // Tích lũy kết quả để JIT không bỏ được vòng tra cứu
+    private long sink;
+
+    private IdLookupHarness(int noteCount, int folderCount, long seed) {
+        if (noteCount < 1 || folderCount < 1) {
+            throw new IllegalArgumentException("Số note và số folder phải dương.");
+        }
+        notes = new ArrayList<>(noteCount);
+        folders = new ArrayList<>(folderCount);
+        noteIndex = new LongHashIndex<>(noteCount);
+        folderIndex = new LongHashIndex<>(folderCount);
+        for (int id = 1; id <= folderCount; id++) {
+            Folder folder = new Folder(id, "Folder " + id);
+            folders.add(folder);
+            folderIndex.put(id, folder);
+        }
+        Random random = new Random(seed);
+        for (int id = 1; id <= noteCount; id++) {
+            Note note = new Note("Note " + id, "", false);
+            note.setId(id);
+            note.setFolderId(1 + random.nextInt(folderCount));
+            notes.add(note);
+            noteIndex.put(id, note);
+        }
+        // Dãy ID tra cứu cố định, dùng chung cho cả hai cách
+        noteIds = new long[4096];
+        folderIds = new long[noteIds.length];
+        for (int i = 0; i < noteIds.length; i++) {
+            noteIds[i] = 1 + random.nextInt(noteCount);
+            folderIds[i] = 1 + random.nextInt(folderCount);
+        }
+    }
+
+    public static void main(String[] args) {
+        int noteCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int folderCount = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        if (rounds < 1) {
+            throw new IllegalArgumentException("Số vòng phải dương.");
+        }
+        IdLookupHarness harness = new IdLookupHarness(noteCount, folderCount, 1);
+
+        System.out.println("[IdLookupHarness] " + noteCount + " note, " + folderCount + " folder, trung vị "
+                + rounds + " vòng (1 thao tác = 1 note + 1 folder)");
+        // Quét chậm hơn cỡ vạn lần nên mỗi vòng quét ít thao tác hơn
+        double scan = harness.measure(false, 200, rounds);
+        double index = harness.measure(true, 2_000_000, rounds);
+        System.out.printf("  stream().filter(): %,12.0f ns/thao tác%n", scan);
+        System.out.printf("  LongHashIndex:     %,12.1f ns/thao tác%n", index);
+        System.out.printf("  nhanh hơn %,.0f lần%n", scan / index);
+        if (harness.sink == 42) System.out.println();
+    }
+
+    private double measure(boolean indexed, int opsPerRound, int rounds) {
+        // Làm nóng bằng số vòng như khi đo để JIT biên dịch xong
+        for (int i = 0; i < rounds; i++) run(indexed, opsPerRound);
+        double[] perOp = new double[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            run(indexed, opsPerRound);
+            perOp[i] = (double) (System.nanoTime() - start) / opsPerRound;
+        }
+        Arrays.sort(perOp);
+        return perOp[rounds / 2];
+    }
+
+    private void run(boolean indexed, int ops) {
+        long acc = 0;
+        for (int i = 0; i < ops; i++) {
+            int slot = i & (noteIds.length - 1);
+            Note note;
+            Folder folder;
+            if (indexed) {
+                note = noteIndex.get(noteIds[slot]);
+                folder = folderIndex.get(folderIds[slot]);
+            } else {
+                long noteId = noteIds[slot];
+                long folderId = folderIds[slot];
+                note = notes.stream().filter(n -> n.getId() == noteId).findFirst().orElse(null);
+                folder = folders.stream().filter(f -> f.getId() == folderId).findFirst().orElse(null);
+            }
+            acc += note.getFolderId() + folder.getId();
+        }
+        sink += acc;
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bài thử tải song song cho NoteManager: vài luồng ghi liên tục thêm/sửa/xóa note, tạo tag và folder, trong khi
+ * nhiều luồng đọc gọi các phương thức đọc (tra ID, danh sách folder/tag, tìm kiếm toàn văn và truy vấn có cấu
+ * trúc, danh sách theo thứ tự) và kiểm tra kết quả nhất quán. Chỉ mục toàn văn vẫn đang dựng ở luồng nền khi
+ * bài thử bắt đầu nên được cài giữa chừng, trong lúc các luồng đọc đang tìm bằng cách quét tiêu đề và tag.
+ * <p>
+ * In số thao tác và mọi lỗi gặp phải; thoát với mã 1 nếu có lỗi.
+ * <p>
+ * Chạy: {@code java -cp target/classes:target/test-classes:<gson> NoteManagerStressHarness [soNote] [soGiay] [luongGhi] [luongDoc]}
+ */
+final class NoteManagerStressHarness {
+    private static final String[] QUERIES = {"java", "ông vi", "tag:tag3", "folder:Root java", "is:favorite", "kế hoạch -java"};
+    // Chỉ in vài lỗi đầu, phần còn lại chỉ đếm
+    private static final int PRINTED_FAILURES = 10;
+
+    private final NoteManager manager;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+    private NoteManagerStressHarness(NoteManager manager) {
+        this.manager = manager;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int noteCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int readers = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+        if (seconds < 1 || writers < 1 || readers < 1) {
+            throw new IllegalArgumentException("Thời gian và số luồng phải dương.");
+        }
+        File dir = HarnessCorpus.generate(noteCount, 200, 1);
+        boolean failed;
+        try {
+            NoteManager manager = new NoteManager(new File(dir, "notes.bin").getPath());
+            NoteManagerStressHarness harness = new NoteManagerStressHarness(manager);
+            failed = harness.run(seconds, writers, readers);
+            manager.flushData();
+        } finally {
+            HarnessCorpus.deleteRecursively(dir);
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private boolean run(int seconds, int writerCount, int readerCount) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writerCount; i++) {
+            Random random = new Random(i + 1);
+            threads.add(new Thread(() -> loop(start, () -> write(random)), "XiNoClo-StressWriter-" + i));
+        }
+        for (int i = 0; i < readerCount; i++) {
+            threads.add(new Thread(() -> loop(start, this::read), "XiNoClo-StressReader-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) thread.join(10_000);
+
+        System.out.println("[NoteManagerStressHarness] " + seconds + " s, " + writerCount + " luồng ghi, "
+                + readerCount + " luồng đọc: " + writes.get() + " lần ghi, " + reads.get() + " lần đọc, "
+                + failureCount.get() + " lỗi");
+        for (String failure : failures) System.out.println("  " + failure);
+        return failureCount.get() > 0;
+    }
+
+    private void loop(CountDownLatch start, Runnable body) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        while (running.get()) {
+            try {
+                body.run();
+            } catch (RuntimeException | Error e) {
+                fail(e.toString());
+            }
+        }
+    }
+
+    // Một vòng ghi; mỗi luồng ghi có Random riêng với seed cố định
+    private void write(Random random) {
+        int kind = random.nextInt(10);
+        if (kind < 4) {
+            Note note = new Note("stress " + random.nextInt(1000) + " java", "nội dung kế hoạch " + random.nextInt(), false);
+            manager.addNote(note);
+        } else if (kind < 7) {
+            Note note = anyNote(random);
+            if (note != null) {
+                note.setTitle("sửa " + random.nextInt(1000) + " ông việc");
+                manager.updateNote(note);
+            }
+        } else if (kind < 9) {
+            Note note = anyNote(random);
+            if (note != null) manager.deleteNote(note.getId());
+        } else if (random.nextBoolean()) {
+            Note note = anyNote(random);
+            if (note != null) manager.addTagToNote(note, "stress" + random.nextInt(50));
+        } else {
+            manager.addFolder(new Folder("Stress " + random.nextInt(200)));
+        }
+        writes.incrementAndGet();
+    }
+
+    private Note anyNote(Random random) {
+        NoteSnapshot snapshot = manager.getNoteSnapshot();
+        if (snapshot.length() == 0) return null;
+        return snapshot.get(random.nextInt(snapshot.length()));
+    }
+
+    private void read() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        NoteSnapshot snapshot = manager.getNoteSnapshot();
+        if (snapshot.length() > 0) {
+            Note note = snapshot.get(random.nextInt(snapshot.length()));
+            if (note != null) {
+                Note byId = manager.getNoteById(note.getId());
+                if (byId != null && byId.getId() != note.getId()) {
+                    fail("getNoteById(" + note.getId() + ") trả về note " + byId.getId());
+                }
+            }
+        }
+        for (Folder folder : manager.getAllFolders()) {
+            if (folder == null) {
+                fail("getAllFolders chứa null");
+            } else if (manager.getFolderById(folder.getId()) == null) {
+                fail("Folder " + folder.getId() + " có trong danh sách nhưng không có trong chỉ mục");
+            }
+        }
+        for (Tag tag : manager.getAllTags()) {
+            if (tag == null) {
+                fail("getAllTags chứa null");
+            } else if (manager.getTagById(tag.getId()) == null) {
+                fail("Tag " + tag.getId() + " có trong danh sách nhưng không có trong chỉ mục");
+            }
+        }
+        String query = QUERIES[random.nextInt(QUERIES.length)];
+        LongIdSet ids = manager.findNoteIds(NoteQuery.parse(query, false, LocalDate.now()), 0);
+        if (ids != null) {
+            ids.forEach(id -> {
+                if (id == 0) fail("findNoteIds(\"" + query + "\") trả về ID 0");
+            });
+        }
+        for (Note note : manager.searchNotes(query)) {
+            if (note == null) fail("searchNotes trả về null");
+        }
+        for (Note note : manager.getNotesByRecent(0)) {
+            if (note == null) fail("getNotesByRecent trả về null");
+        }
+        reads.incrementAndGet();
+    }
+
+    private void fail(String message) {
+        if (failureCount.incrementAndGet() <= PRINTED_FAILURES) {
+            failures.add(Thread.currentThread().getName() + ": " + message);
+        }
+    }
+}
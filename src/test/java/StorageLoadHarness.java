@@ -0,0 +1,106 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Bài đo thời gian tải và heap đỉnh của {@link DataStorage#load(NoteManager)} trên bộ dữ liệu sinh bởi
+ * {@link HarnessCorpus} (mặc định 10 000 và 100 000 note). Mỗi cỡ đo ba đường tải khi khởi động:
+ * <ul>
+ *     <li>nhập notes.json cũ một lần duy nhất: đọc bằng các TypeAdapter dạng luồng, ghi từng nội dung vào kho body
+ *     (mỗi body một lần fsync) rồi ghi snapshot nhị phân đầu tiên;</li>
+ *     <li>tải snapshot JSON đã chuyển đổi (manifest + shard JSON, nội dung chỉ còn mã băm), tức phần đọc JSON thuần;</li>
+ *     <li>tải snapshot nhị phân notes.bin.</li>
+ * </ul>
+ * Mỗi lần chạy dùng một thư mục tạm mới; in trung vị của các lần chạy. Heap đỉnh là tổng đỉnh của các vùng heap
+ * trừ phần đã dùng trước khi tải.
+ * <p>
+ * Chạy: {@code java -Xmx2g -cp target/classes:target/test-classes:<gson> StorageLoadHarness [soNote,...] [soLan] [doDaiNoiDung]}
+ */
+final class StorageLoadHarness {
+    private StorageLoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10_000, 100_000};
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int contentChars = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        if (runs < 1) {
+            throw new IllegalArgumentException("Số lần chạy phải dương.");
+        }
+
+        for (int noteCount : sizes) {
+            long[][] importRuns = new long[runs][];
+            long[][] jsonRuns = new long[runs][];
+            long[][] binaryRuns = new long[runs][];
+            long jsonBytes = 0;
+            for (int run = 0; run < runs; run++) {
+                File dir = HarnessCorpus.generate(noteCount, contentChars, run + 1);
+                try {
+                    File legacy = new File(dir, "notes.json");
+                    jsonBytes = legacy.length();
+                    File jsonSnapshot = new File(dir, "converted.json");
+                    Files.copy(legacy.toPath(), jsonSnapshot.toPath());
+                    String snapshot = new File(dir, "notes.bin").getPath();
+                    importRuns[run] = measure(snapshot, noteCount);
+                    binaryRuns[run] = measure(snapshot, noteCount);
+                    // Lần tải đầu chuyển converted.json sang manifest + shard JSON (body đã có sẵn trong kho)
+                    measure(jsonSnapshot.getPath(), noteCount);
+                    jsonRuns[run] = measure(jsonSnapshot.getPath(), noteCount);
+                } finally {
+                    HarnessCorpus.deleteRecursively(dir);
+                }
+            }
+            System.out.println("[StorageLoadHarness] " + noteCount + " note, notes.json " + (jsonBytes >> 20)
+                    + " MB, trung vị " + runs + " lần");
+            print("  nhập notes.json:     ", importRuns);
+            print("  tải snapshot JSON:   ", jsonRuns);
+            print("  tải snapshot .bin:   ", binaryRuns);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Tải {@code snapshot} vào một NoteManager rỗng; trả về {thời gian ms, heap đỉnh byte}.
+     */
+    private static long[] measure(String snapshot, int expectedNotes) throws Exception {
+        File hostDir = Files.createTempDirectory("xinoclo-host").toFile();
+        try {
+            NoteManager host = new NoteManager(new File(hostDir, "notes.bin").getPath());
+            DataStorage storage = new DataStorage(snapshot);
+            long before = usedHeapAfterGc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+            long start = System.nanoTime();
+            storage.load(host);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+            }
+            if (host.getAllNotes().size() != expectedNotes) {
+                throw new IllegalStateException("Tải được " + host.getAllNotes().size() + " note, cần " + expectedNotes);
+            }
+            // Snapshot đầu tiên phải nằm trên đĩa trước lần tải kế tiếp
+            storage.flush();
+            return new long[]{millis, Math.max(0, peak - before)};
+        } finally {
+            HarnessCorpus.deleteRecursively(hostDir);
+        }
+    }
+
+    private static void print(String label, long[][] runs) {
+        long[] millis = Arrays.stream(runs).mapToLong(r -> r[0]).sorted().toArray();
+        long[] peaks = Arrays.stream(runs).mapToLong(r -> r[1]).sorted().toArray();
+        System.out.printf("%s%6d ms, heap đỉnh %4d MB%n", label, millis[millis.length / 2], peaks[peaks.length / 2] >> 20);
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Bài đo tìm chuỗi con: so sánh {@link NoteManager#searchNotes(String)} (chỉ mục trigram + kiểm tra lại)
+ * với cách quét tuyến tính cũ ({@code toLowerCase().contains()} trên tiêu đề, nội dung và tên tag của mọi
+ * note) trên bộ dữ liệu của {@link HarnessCorpus}. Cách quét cũ được cho lợi thế: nội dung mọi note được đọc
+ * sẵn vào bộ nhớ như trước khi có kho body.
+ * <p>
+ * Số kết quả của hai cách có thể khác nhau vì searchNotes còn bỏ qua dấu tiếng Việt và gộp dấu câu.
+ * <p>
+ * Chạy: {@code java -Xmx2g -cp target/classes:target/test-classes:<gson> SubstringSearchHarness [soNote] [soLan] [doDaiNoiDung]}
+ */
+final class SubstringSearchHarness {
+    // Từ ngắn/phổ biến, giữa từ, nhiều từ, truy vấn dài và không khớp
+    private static final String[] QUERIES = {
+            "ho", "java", "ông vi", "kế hoạch", "tag7", "sài gòn du lịch",
+            "báo cáo tuần họp nhóm kế hoạch mua sắm", "sửa lỗi code review kiểm thử", "xyzzy"};
+
+    private final List<String[]> scanFields = new ArrayList<>();
+
+    private SubstringSearchHarness(NoteManager manager) {
+        for (Note note : manager.getAllNotes()) {
+            StringBuilder tagNames = new StringBuilder();
+            for (Tag tag : note.getTags()) tagNames.append(tag.getName()).append('\n');
+            scanFields.add(new String[]{note.getTitle(), note.getContent(), tagNames.toString()});
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int noteCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        int contentChars = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        if (repeats < 1) {
+            throw new IllegalArgumentException("Số lần lặp phải dương.");
+        }
+        File dir = HarnessCorpus.generate(noteCount, contentChars, 1);
+        try {
+            NoteManager manager = new NoteManager(new File(dir, "notes.bin").getPath());
+            SubstringSearchHarness harness = new SubstringSearchHarness(manager);
+
+            // Tìm kiếm không chờ chỉ mục, nên bài đo tự chờ luồng nền cài xong
+            long start = System.nanoTime();
+            CountDownLatch ready = new CountDownLatch(1);
+            manager.addTextIndexListener(ready::countDown);
+            if (!manager.isTextIndexReady()) ready.await();
+            long indexMillis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println("[SubstringSearchHarness] " + noteCount + " note, trung vị " + repeats
+                    + " lần; chờ chỉ mục sẵn sàng " + indexMillis + " ms");
+            System.out.printf("  %-42s %12s %12s %9s %9s%n", "truy vấn", "quét (µs)", "chỉ mục (µs)", "kq quét", "kq c.mục");
+            for (String query : QUERIES) {
+                int[] scanCount = new int[1];
+                int[] indexCount = new int[1];
+                // Làm nóng một lượt cho cả hai cách
+                harness.scan(query);
+                manager.searchNotes(query);
+                long scanMicros = median(repeats, () -> scanCount[0] = harness.scan(query));
+                long indexMicros = median(repeats, () -> indexCount[0] = manager.searchNotes(query).size());
+                System.out.printf("  %-42s %,12d %,12d %9d %9d%n",
+                        "\"" + query + "\"", scanMicros, indexMicros, scanCount[0], indexCount[0]);
+            }
+            manager.flushData();
+        } finally {
+            HarnessCorpus.deleteRecursively(dir);
+        }
+        System.exit(0);
+    }
+
+    // Cách tìm trước khi có chỉ mục: chỉ không phân biệt hoa thường
+    private int scan(String query) {
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        int matches = 0;
+        for (String[] fields : scanFields) {
+            for (String field : fields) {
+                if (field != null && field.toLowerCase(Locale.ROOT).contains(lowerQuery)) {
+                    matches++;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static long median(int repeats, Runnable action) {
+        long[] micros = new long[repeats];
+        for (int i = 0; i < repeats; i++) {
+            long start = System.nanoTime();
+            action.run();
+            micros[i] = (System.nanoTime() - start) / 1_000;
+        }
+        Arrays.sort(micros);
+        return micros[repeats / 2];
+    }
+}